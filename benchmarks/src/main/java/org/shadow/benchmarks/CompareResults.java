@@ -0,0 +1,124 @@
+package org.shadow.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CompareResults program compares two runs of the benchmarks, stored as CSV files by JMH ("-rf csv").
+ *
+ * For each benchmark (and each combination of its parameters) found in both runs, it prints the two scores and the
+ * relative change. A change is flagged when the two confidence intervals do not overlap.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar org.shadow.benchmarks.CompareResults baseline.csv candidate.csv
+ */
+
+public class CompareResults {
+
+    /**
+     * A Score is the result of a benchmark.
+     *
+     * @param score the score.
+     * @param error the half-width of the confidence interval (99.9%), or 0 if it is not known.
+     * @param unit the unit of the score.
+     */
+
+    private record Score(double score, double error, String unit) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: CompareResults <baseline.csv> <candidate.csv>");
+            System.exit(1);
+        }
+        final Map<String, Score> baseline = read(args[0]);
+        final Map<String, Score> candidate = read(args[1]);
+
+        System.out.printf("%-80s %14s %14s %9s%n", "Benchmark", "Baseline", "Candidate", "Change");
+        for (Map.Entry<String, Score> entry : baseline.entrySet()) {
+            final Score before = entry.getValue();
+            final Score after = candidate.get(entry.getKey());
+            if (null == after) continue;
+            final double change = before.score() == 0 ? 0 : (after.score() - before.score()) / before.score() * 100;
+            final boolean significant = Math.abs(after.score() - before.score()) > before.error() + after.error();
+            System.out.printf("%-80s %14.3f %14.3f %+8.1f%% %s%s%n", entry.getKey(), before.score(), after.score(), change,
+                    before.unit(), significant ? "  *" : "");
+        }
+        System.out.println("(*) the confidence intervals do not overlap.");
+    }
+
+    /**
+     * Reads the scores of a run.
+     *
+     * @param path the path to the CSV file written by JMH.
+     * @return the scores, indexed by the name of the benchmark followed by its parameters.
+     */
+
+    private static Map<String, Score> read(String path) throws IOException {
+        final List<String> lines = Files.readAllLines(Paths.get(path));
+        final Map<String, Score> scores = new LinkedHashMap<>();
+        if (lines.isEmpty()) return scores;
+        final List<String> header = split(lines.getFirst());
+        final int score = header.indexOf("Score");
+        final int unit = header.indexOf("Unit");
+        int error = -1;
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).startsWith("Score Error")) error = i;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) continue;
+            final List<String> fields = split(line);
+            final StringBuilder key = new StringBuilder(fields.get(0));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring("Param: ".length())).append('=').append(fields.get(i));
+                }
+            }
+            scores.put(key.toString(), new Score(number(fields.get(score)), error < 0 ? 0 : number(fields.get(error)), fields.get(unit)));
+        }
+        return scores;
+    }
+
+    /**
+     * Parses a number written by JMH, whose decimal separator depends on the locale.
+     */
+
+    private static double number(String text) {
+        try {
+            return Double.parseDouble(text.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return 0; // for example: "NaN" for the error of a single sample
+        }
+    }
+
+    /**
+     * Splits a line of CSV into fields. The fields may be quoted.
+     */
+
+    private static List<String> split(String line) {
+        final List<String> fields = new ArrayList<>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
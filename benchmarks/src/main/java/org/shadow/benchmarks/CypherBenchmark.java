@@ -0,0 +1,77 @@
+package org.shadow.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.cryptography.SkrivaCypherV1;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end-to-end encryption and decryption of a file (key derivation, digest, cipher and file operations),
+ * for both formats.
+ *
+ * The input files are entirely filled with random bytes (see Fixtures.createRandom): a sparse file would mostly
+ * measure the segments of zeros, which the v2 format stores without encrypting them. Random bytes are not
+ * compressible either: the figures measure the cipher, not the compression.
+ *
+ * The large sizes are excluded by default (each operation writes the whole file, and the input file uses its whole
+ * size on disk). Run them explicitly, for example:
+ *
+ *     java -jar benchmarks/target/benchmarks.jar CypherBenchmark -p size=4G -wi 1 -i 3
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CypherBenchmark {
+    private static final String password = "correct horse battery staple";
+
+    @Param({"1K", "1M", "256M"})
+    public String size;
+
+    @Param({"v1", "v2"})
+    public String format;
+
+    private SkrivaCypher cypher;
+    private Path input;
+    private Path encrypted;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        cypher = format.equals("v1") ? new SkrivaCypherV1() : new SkrivaCypherV2();
+        input = Fixtures.createRandom(Fixtures.parseSize(size));
+        encrypted = Fixtures.output();
+        output = Fixtures.output();
+        cypher.EncryptFile(input.toString(), encrypted.toString(), password, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(encrypted);
+        Files.deleteIfExists(output);
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void encrypt() {
+        cypher.EncryptFile(input.toString(), output.toString(), password, null);
+    }
+
+    @Benchmark
+    public void decrypt() {
+        cypher.DecryptFile(encrypted.toString(), output.toString(), password, null);
+    }
+}
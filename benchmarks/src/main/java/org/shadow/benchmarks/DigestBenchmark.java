@@ -0,0 +1,48 @@
+package org.shadow.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.shadow.lib.cryptography.MD5File;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the MD5 digest of a file (DigestFile), depending on the size of the file and on the length of the chunks.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DigestBenchmark {
+
+    @Param({"1K", "1M", "64M"})
+    public String size;
+
+    @Param({"4096", "65536", "1048576"})
+    public long chunkLength;
+
+    private Path input;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = Fixtures.create(Fixtures.parseSize(size));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    public byte[] digest() throws Exception {
+        try (MD5File md5 = new MD5File(input.toString(), chunkLength)) {
+            md5.digestAll();
+            return md5.getDigestAsBytes();
+        }
+    }
+}
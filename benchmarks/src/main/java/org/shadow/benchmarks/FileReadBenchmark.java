@@ -0,0 +1,103 @@
+package org.shadow.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of reading a file that the cyphers could use: a FileInputStream (as AESFile and DigestFile do), a
+ * FileChannel with a heap or a direct buffer, and a memory-mapped file. Each chunk goes through an MD5 digest, so that
+ * the figures include the cost of consuming the bytes.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileReadBenchmark {
+    private static final long mappedRegionLength = 1L << 30;
+
+    @Param({"1M", "64M", "1G"})
+    public String size;
+
+    @Param({"4096", "65536", "1048576"})
+    public int chunkLength;
+
+    private Path input;
+    private MessageDigest md;
+    private byte[] heapBuffer;
+    private ByteBuffer directBuffer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        input = Fixtures.create(Fixtures.parseSize(size));
+        md = MessageDigest.getInstance("MD5");
+        heapBuffer = new byte[chunkLength];
+        directBuffer = ByteBuffer.allocateDirect(chunkLength);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+    }
+
+    @Benchmark
+    public void stream(Blackhole blackhole) throws IOException {
+        md.reset();
+        try (FileInputStream stream = new FileInputStream(input.toFile())) {
+            int length;
+            while ((length = stream.read(heapBuffer)) > 0) md.update(heapBuffer, 0, length);
+        }
+        blackhole.consume(md.digest());
+    }
+
+    @Benchmark
+    public void channelHeap(Blackhole blackhole) throws IOException {
+        md.reset();
+        final ByteBuffer buffer = ByteBuffer.wrap(heapBuffer);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(buffer.clear()) > 0) md.update(heapBuffer, 0, buffer.position());
+        }
+        blackhole.consume(md.digest());
+    }
+
+    @Benchmark
+    public void channelDirect(Blackhole blackhole) throws IOException {
+        md.reset();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (channel.read(directBuffer.clear()) > 0) md.update(directBuffer.flip());
+        }
+        blackhole.consume(md.digest());
+    }
+
+    @Benchmark
+    public void mmap(Blackhole blackhole) throws IOException {
+        md.reset();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            final long length = channel.size();
+            // A mapping is limited to 2 GB: the file is mapped by regions.
+            for (long position = 0; position < length; position += mappedRegionLength) {
+                final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(mappedRegionLength, length - position));
+                while (region.hasRemaining()) {
+                    final int chunk = Math.min(chunkLength, region.remaining());
+                    md.update(region.slice(region.position(), chunk));
+                    region.position(region.position() + chunk);
+                }
+            }
+        }
+        blackhole.consume(md.digest());
+    }
+}
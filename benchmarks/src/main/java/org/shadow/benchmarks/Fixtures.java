@@ -0,0 +1,98 @@
+package org.shadow.benchmarks;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * The Fixtures class generates the files processed by the benchmarks.
+ *
+ * The files up to 64 MB are filled with pseudo-random bytes (always the same ones). The larger files are sparse:
+ * only their first 64 MB are written, the rest is a hole that reads as zeros. Thus, a file of several GB can be
+ * generated at once, and does not use disk space. Please note that reading a hole does not hit the disk: the
+ * figures of the large files measure the CPU and the page cache, not the storage.
+ *
+ * The files processed by the cyphers must not be sparse (see `createRandom`): the v2 format stores the segments of
+ * zeros without encrypting them, and compresses the redundant data, so a hole would be measured instead of the cipher.
+ */
+
+final class Fixtures {
+    private static final long writtenLength = 64L << 20;
+    private static final int bufferLength = 1 << 20;
+
+    private Fixtures() {}
+
+    /**
+     * Parses a size, such as "1K", "16M" or "4G".
+     *
+     * @param text the size.
+     * @return the number of bytes.
+     */
+
+    static long parseSize(String text) {
+        final String value = text.trim().toUpperCase();
+        final int shift = switch (value.charAt(value.length() - 1)) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        return Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1)) << shift;
+    }
+
+    /**
+     * Creates a temporary file of a given size.
+     *
+     * @param size the size of the file.
+     * @return the path to the file. The caller must delete it.
+     * @throws IOException if the file cannot be written.
+     */
+
+    static Path create(long size) throws IOException {
+        return create(size, writtenLength);
+    }
+
+    /**
+     * Creates a temporary file of a given size, entirely filled with pseudo-random bytes (the file is not sparse).
+     *
+     * @param size the size of the file.
+     * @return the path to the file. The caller must delete it.
+     * @throws IOException if the file cannot be written.
+     */
+
+    static Path createRandom(long size) throws IOException {
+        return create(size, size);
+    }
+
+    private static Path create(long size, long randomLength) throws IOException {
+        final Path path = Files.createTempFile("skriva-bench", ".bin");
+        final Random random = new Random(size);
+        final byte[] buffer = new byte[bufferLength];
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long written = 0;
+            while (written < Math.min(size, randomLength)) {
+                random.nextBytes(buffer);
+                final int length = (int) Math.min(buffer.length, Math.min(size, randomLength) - written);
+                file.write(buffer, 0, length);
+                written += length;
+            }
+            file.setLength(size);
+        }
+        return path;
+    }
+
+    /**
+     * Creates the path to a temporary output file. The file does not exist.
+     *
+     * @return the path. The caller must delete the file.
+     * @throws IOException if the path cannot be created.
+     */
+
+    static Path output() throws IOException {
+        final Path path = Files.createTempFile("skriva-bench", ".out");
+        Files.delete(path);
+        return path;
+    }
+}
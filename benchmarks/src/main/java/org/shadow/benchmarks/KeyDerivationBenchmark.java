@@ -0,0 +1,29 @@
+package org.shadow.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.shadow.lib.cryptography.AES256;
+
+import javax.crypto.SecretKey;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the derivation of a key from a password (PBKDF2), which is paid once per file.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KeyDerivationBenchmark {
+    private final byte[] salt = new byte[16];
+
+    @Param({"10000", "65536", "600000"})
+    public int iterations;
+
+    @Benchmark
+    public SecretKey derive() {
+        return AES256.generateKeyFromPassword("correct horse battery staple", salt, iterations);
+    }
+}
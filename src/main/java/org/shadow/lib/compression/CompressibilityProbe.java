@@ -0,0 +1,54 @@
+package org.shadow.lib.compression;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+
+/**
+ * The CompressibilityProbe class estimates whether a file is worth compressing, by compressing a few small
+ * windows spread over the file. Media files and data that is already compressed or encrypted are detected after
+ * reading a few hundred kilobytes, so that they do not pay the cost of a full compression.
+ */
+
+public class CompressibilityProbe {
+    private static final int windowCount = 8;
+    private static final int windowLength = 64 * 1024;
+    private static final double maximumRatio = 0.9;
+
+    /**
+     * Tests whether the content of a file is compressible.
+     *
+     * @param channel the channel opened on the file. Its position is not modified.
+     * @return true if the sampled windows shrink by at least 10% when compressed, false otherwise.
+     * @throws IOException if an I/O error occurs.
+     */
+
+    public static boolean isCompressible(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size == 0) return false;
+
+        try (DeflateCodec codec = new DeflateCodec(Deflater.BEST_SPEED)) {
+            final byte[] window = new byte[windowLength];
+            final byte[] compressed = new byte[windowLength];
+            final int count = size <= (long) windowCount * windowLength ? (int) ((size + windowLength - 1) / windowLength) : windowCount;
+            final long stride = count == 1 ? 0 : (size - windowLength) / (count - 1);
+            long sampledLength = 0;
+            long compressedLength = 0;
+
+            for (int i = 0; i < count; i++) {
+                final ByteBuffer buffer = ByteBuffer.wrap(window);
+                final long position = Math.min(i * stride, Math.max(0, size - windowLength));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) break;
+                }
+                final int length = buffer.position();
+                if (length == 0) continue;
+                final int result = codec.compress(window, length, compressed);
+                sampledLength += length;
+                compressedLength += result < 0 ? length : result;
+            }
+            return sampledLength > 0 && compressedLength <= sampledLength * maximumRatio;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.shadow.lib.compression;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The DeflateCodec class compresses and decompresses independent blocks using the Deflate algorithm.
+ *
+ * The compressors and decompressors are cached per thread, so that the methods of this class can be called
+ * concurrently from a pool of threads without allocating native resources for each block. The native resources of
+ * all the threads are released when the codec is closed: the codec must not be used afterward.
+ */
+
+public class DeflateCodec implements AutoCloseable {
+    private final int level;
+    private final Queue<Deflater> createdDeflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Inflater> createdInflaters = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters;
+
+    /**
+     * Creates a codec.
+     *
+     * @param level the compression level (from `Deflater.BEST_SPEED` to `Deflater.BEST_COMPRESSION`).
+     */
+
+    public DeflateCodec(int level) {
+        this.level = level;
+        this.deflaters = ThreadLocal.withInitial(() -> {
+            final Deflater deflater = new Deflater(this.level);
+            createdDeflaters.add(deflater);
+            return deflater;
+        });
+        this.inflaters = ThreadLocal.withInitial(() -> {
+            final Inflater inflater = new Inflater();
+            createdInflaters.add(inflater);
+            return inflater;
+        });
+    }
+
+    /**
+     * Compresses a block. The compression is abandoned as soon as the compressed block would not be smaller than
+     * the original one.
+     *
+     * @param input the buffer that contains the block to compress.
+     * @param length the length of the block.
+     * @param output the buffer that receives the compressed block (its length must be at least `length`).
+     * @return the length of the compressed block, or -1 if the block is not compressible.
+     */
+
+    public int compress(byte[] input, int length, byte[] output) {
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished() && compressedLength < length) {
+            compressedLength += deflater.deflate(output, compressedLength, length - compressedLength);
+        }
+        return deflater.finished() && compressedLength < length ? compressedLength : -1;
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @param input the buffer that contains the compressed block.
+     * @param length the length of the compressed block.
+     * @param output the buffer that receives the decompressed block.
+     * @param expectedLength the expected length of the decompressed block.
+     * @throws DataFormatException if the compressed block is not valid or if its decompressed length is not the expected one.
+     */
+
+    public void decompress(byte[] input, int length, byte[] output, int expectedLength) throws DataFormatException {
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(input, 0, length);
+        int decompressedLength = 0;
+        while (!inflater.finished() && decompressedLength < expectedLength) {
+            final int count = inflater.inflate(output, decompressedLength, expectedLength - decompressedLength);
+            if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            decompressedLength += count;
+        }
+        if (!inflater.finished() || decompressedLength != expectedLength) {
+            throw new DataFormatException(String.format("unexpected decompressed length (%d instead of %d)", decompressedLength, expectedLength));
+        }
+    }
+
+    /**
+     * Releases the compressors and decompressors created by all the threads.
+     */
+
+    @Override
+    public void close() {
+        Deflater deflater;
+        while (null != (deflater = createdDeflaters.poll())) deflater.end();
+        Inflater inflater;
+        while (null != (inflater = createdInflaters.poll())) inflater.end();
+    }
+}
@@ -0,0 +1,46 @@
+package org.shadow.lib.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The RateLimiter class limits the rate at which a resource (typically: bytes read from a disk) is consumed.
+ *
+ * Permits are granted at a constant rate. A caller that acquires permits is delayed until the permits reserved
+ * by the previous callers have been granted. Unused permits do not accumulate while the limiter is idle.
+ */
+
+public class RateLimiter {
+    private final double nanosPerPermit;
+    private long nextFreeNanos;
+
+    /**
+     * Creates a rate limiter.
+     *
+     * @param permitsPerSecond the number of permits granted per second. A value lower or equal to 0 means "unlimited".
+     */
+
+    public RateLimiter(long permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond <= 0 ? 0 : 1_000_000_000.0 / permitsPerSecond;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Acquires a given number of permits, waiting if necessary.
+     *
+     * @param permits the number of permits to acquire.
+     * @throws InterruptedException if the current thread is interrupted while waiting.
+     */
+
+    public void acquire(long permits) throws InterruptedException {
+        if (nanosPerPermit == 0) return;
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (nextFreeNanos < now) nextFreeNanos = now;
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += (long) (permits * nanosPerPermit);
+        }
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+}
@@ -0,0 +1,457 @@
+package org.shadow.lib.container;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.compression.DeflateCodec;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.cryptography.SegmentedFile;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EncryptedContainer class packs many files into a single segmented file (see SegmentedFile).
+ *
+ * The contents of the members are concatenated into a single stream, which is cut into segments. Thus, small files
+ * share segments, and the whole container uses a single key derivation. The list of the members (name, position
+ * in the stream, length and modification time) is stored, encrypted, in the footer of the segmented file.
+ *
+ * A member is extracted by decrypting only the segments that overlap it. Members can be added to an existing
+ * container (the new data is appended, the index is rewritten by the commit). Removing or replacing a member only
+ * updates the index: the space it occupies is reclaimed by `compact`.
+ *
+ * Please note that an instance of this class must not be used by several threads at the same time.
+ */
+
+public class EncryptedContainer implements AutoCloseable {
+
+    /**
+     * A Member describes a file stored in the container.
+     *
+     * @param name the name of the member (a relative path, using "/" as separator).
+     * @param offset the position of the content of the member within the stream of the container.
+     * @param length the length of the member.
+     * @param lastModified the time of the last modification of the file (in milliseconds since the epoch).
+     */
+
+    public record Member(String name, long offset, long length, long lastModified) {}
+
+    private static final int metadataVersion = 1;
+
+    private final SegmentedFile file;
+    private final Map<String, Member> members = new LinkedHashMap<>();
+    private final @Nullable DeflateCodec compressor;
+    private final byte[] pending;
+    private int pendingLength = 0;
+    private long[] segmentPositions = new long[0];
+    private final byte[] cache;
+    private int cachedSegment = -1;
+    private int cachedLength = 0;
+
+    private EncryptedContainer(SegmentedFile file, @Nullable DeflateCodec compressor) {
+        this.file = file;
+        this.compressor = compressor;
+        this.pending = new byte[file.getHeader().getSegmentSize()];
+        this.cache = new byte[file.getHeader().getSegmentSize()];
+    }
+
+    /**
+     * Creates a new, empty container. If the file already exists, it is truncated.
+     *
+     * @param path the path to the container.
+     * @param password the password used to derive the key.
+     * @param configuration the configuration (only the cipher suite, the segment size, the compression and the
+     *                      cost of the key derivation are used).
+     * @return the container, opened for writing.
+     * @throws FatalRuntimeException if the container cannot be created.
+     */
+
+    public static EncryptedContainer create(String path, String password, SegmentedConfiguration configuration) throws FatalRuntimeException {
+        return create(path, password, configuration, configuration.getKdfLanes(), configuration.getKdfIterations());
+    }
+
+    private static EncryptedContainer create(String path, String password, SegmentedConfiguration configuration,
+                                             int kdfLanes, int kdfIterations) throws FatalRuntimeException {
+        final SegmentedHeader header = SegmentedHeader.generate(configuration.getSuite(), configuration.getSegmentSize(),
+                SegmentedHeader.contentContainer, kdfLanes, kdfIterations);
+        return new EncryptedContainer(SegmentedFile.create(path, password, header),
+                configuration.isCompression() ? new DeflateCodec(configuration.getCompressionLevel()) : null);
+    }
+
+    /**
+     * Opens an existing container.
+     *
+     * @param path the path to the container.
+     * @param password the password used to derive the key.
+     * @param writable true to open the container for adding or removing members.
+     * @param compressor if not null, the codec used to compress the members added to the container (closed with the
+     *                   container).
+     * @return the container.
+     * @throws FatalRuntimeException if the file is not a container, if it is corrupted or if the password is not valid.
+     */
+
+    public static EncryptedContainer open(String path, String password, boolean writable, @Nullable DeflateCodec compressor) throws FatalRuntimeException {
+        final SegmentedFile file = SegmentedFile.open(path, password, writable);
+        if (file.getHeader().getContentType() != SegmentedHeader.contentContainer) {
+            file.close();
+            throw new FatalRuntimeException("the encrypted file is not a container", String.format("input file: \"%s\"", path));
+        }
+        final EncryptedContainer container = new EncryptedContainer(file, compressor);
+        try {
+            container.loadMembers(file.getMetadata());
+        } catch (IOException e) {
+            file.close();
+            throw new FatalRuntimeException("the index of the container is corrupted", String.format("input file: \"%s\"", path));
+        }
+        container.updateSegmentPositions();
+        return container;
+    }
+
+    /**
+     * Returns the members of the container, in the order in which they have been added.
+     *
+     * @return the members.
+     */
+
+    public List<Member> getMembers() {
+        return new ArrayList<>(members.values());
+    }
+
+    public @Nullable Member getMember(String name) {
+        return members.get(name);
+    }
+
+    /**
+     * Returns the number of bytes, in the stream of the container, that do not belong to any member anymore
+     * (because the members have been removed or replaced).
+     *
+     * @return the number of unused bytes.
+     */
+
+    public long getUnusedLength() {
+        long used = 0;
+        for (Member member : members.values()) used += member.length();
+        return getStreamLength() - used;
+    }
+
+    public long getStreamLength() {
+        return file.getPlaintextLength() + pendingLength;
+    }
+
+    /**
+     * Returns the number of bytes of the file that are used neither by the segments nor by the current index:
+     * the previous indexes (each commit writes the whole list of the members), and the previous versions of the
+     * segments (see SegmentedFile.getUnusedLength).
+     *
+     * @return the number of unused bytes.
+     */
+
+    public long getUnusedFileLength() {
+        return file.getUnusedLength();
+    }
+
+    /**
+     * Returns the configuration of the container: the cipher suite, the segment size and the cost of the key
+     * derivation recorded in its header. The compression is not recorded in the header: it is enabled if at least
+     * one segment of the container is compressed (the segments that do not shrink are stored uncompressed anyway).
+     *
+     * @return a new configuration.
+     */
+
+    public SegmentedConfiguration getConfiguration() {
+        final SegmentedHeader header = file.getHeader();
+        final SegmentedConfiguration configuration = new SegmentedConfiguration();
+        configuration.setSuite(header.getSuite());
+        configuration.setSegmentSize(header.getSegmentSize());
+        configuration.setKdfLanes(header.getKdfLanes());
+        configuration.setKdfIterations(header.getKdfIterations());
+        configuration.setKdfTargetMillis(0);
+        boolean compression = false;
+        for (int i = 0; i < file.getSegmentCount() && !compression; i++) {
+            compression = file.getEntry(i).kind() == SegmentedFile.kindDeflate;
+        }
+        configuration.setCompression(compression);
+        return configuration;
+    }
+
+    /**
+     * Adds a file to the container. If a member with the same name already exists, it is replaced.
+     * The member becomes visible to readers after the next commit.
+     *
+     * @param name the name of the member.
+     * @param path the path to the file to add.
+     * @throws FatalRuntimeException if the file cannot be read, or if the container cannot be written.
+     */
+
+    public void add(String name, Path path) throws FatalRuntimeException {
+        final long offset = getStreamLength();
+        try (FileChannel input = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long lastModified = Files.getLastModifiedTime(path).toMillis();
+            final ByteBuffer buffer = ByteBuffer.wrap(pending);
+            while (true) {
+                buffer.position(pendingLength);
+                final int bytesRead = input.read(buffer);
+                if (bytesRead < 0) break;
+                pendingLength = buffer.position();
+                if (pendingLength == pending.length) flushPending();
+            }
+            members.remove(name);
+            members.put(name, new Member(name, offset, getStreamLength() - offset, lastModified));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Removes a member from the container. The member disappears for readers after the next commit.
+     *
+     * @param name the name of the member.
+     * @return true if the member has been removed, false if it does not exist.
+     */
+
+    public boolean remove(String name) {
+        return null != members.remove(name);
+    }
+
+    /**
+     * Writes the content of a member.
+     *
+     * @param member the member to extract.
+     * @param output the stream that receives the content of the member.
+     * @throws FatalRuntimeException if the container is corrupted or cannot be read.
+     * @throws IOException if the output stream cannot be written.
+     */
+
+    public void extract(Member member, OutputStream output) throws FatalRuntimeException, IOException {
+        long position = member.offset();
+        final long end = member.offset() + member.length();
+        if (end > file.getPlaintextLength()) {
+            throw new FatalRuntimeException("the member has not been committed yet", String.format("member: \"%s\"", member.name()));
+        }
+
+        while (position < end) {
+            final int index = findSegment(position);
+            loadSegment(index);
+            final int start = (int) (position - segmentPositions[index]);
+            final int length = (int) Math.min(cachedLength - start, end - position);
+            output.write(cache, start, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Extracts a member into a directory. The relative path of the member is preserved.
+     *
+     * @param member the member to extract.
+     * @param directory the directory into which the member is extracted.
+     * @return the path to the extracted file.
+     * @throws FatalRuntimeException if the member cannot be extracted, or if its name designates a location outside
+     *                               the directory.
+     */
+
+    public Path extract(Member member, Path directory) throws FatalRuntimeException {
+        final Path root = directory.toAbsolutePath().normalize();
+        final Path target = root.resolve(member.name()).normalize();
+        if (!target.startsWith(root) || target.equals(root)) {
+            throw new FatalRuntimeException("the name of the member is not valid", String.format("member: \"%s\"", member.name()));
+        }
+
+        try {
+            Files.createDirectories(target.getParent());
+            try (OutputStream output = Files.newOutputStream(target)) {
+                extract(member, output);
+            }
+            Files.setLastModifiedTime(target, FileTime.fromMillis(member.lastModified()));
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(target.toString());
+            throw new FatalRuntimeException(String.format("cannot write the file \"%s\"", target), e.getMessage());
+        } catch (FatalRuntimeException e) {
+            FileManip.DeleteIfExists(target.toString());
+            throw e;
+        }
+        return target;
+    }
+
+    /**
+     * Writes the pending data and the list of the members, then makes them visible to readers.
+     *
+     * @throws FatalRuntimeException if the container cannot be written.
+     */
+
+    public void commit() throws FatalRuntimeException {
+        if (pendingLength > 0) flushPending();
+        file.setMetadata(saveMembers());
+        file.commit();
+        updateSegmentPositions();
+    }
+
+    @Override
+    public void close() throws FatalRuntimeException {
+        if (null != compressor) compressor.close();
+        file.close();
+    }
+
+    /**
+     * Rewrites a container without the unused bytes. The new container is written next to the existing one, then
+     * it replaces the existing one. Thus, the existing container remains readable during the compaction, and it is
+     * left intact if the compaction fails.
+     *
+     * @param path the path to the container.
+     * @param password the password used to derive the key.
+     * @param configuration the configuration of the new container (see `getConfiguration` to keep the configuration
+     *                      of the existing container; the cost of the key derivation of the existing container is
+     *                      kept in any case).
+     * @throws FatalRuntimeException if the container cannot be compacted.
+     */
+
+    public static void compact(String path, String password, SegmentedConfiguration configuration) throws FatalRuntimeException {
+        final Path temporaryPath;
+        try {
+            temporaryPath = Files.createTempFile(Paths.get(path).toAbsolutePath().getParent(), "skriva-tmp", ".tmp");
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot create temporary file: \"%s\"", e.getMessage()));
+        }
+
+        try (EncryptedContainer source = open(path, password, false, null);
+             EncryptedContainer target = create(temporaryPath.toString(), password, configuration,
+                     source.file.getHeader().getKdfLanes(), source.file.getHeader().getKdfIterations())) {
+            for (Member member : source.members.values()) {
+                final long offset = target.getStreamLength();
+                source.extract(member, target.new PendingOutputStream());
+                target.members.put(member.name(), new Member(member.name(), offset, member.length(), member.lastModified()));
+            }
+            target.commit();
+        } catch (IOException | FatalRuntimeException e) {
+            FileManip.DeleteIfExists(temporaryPath.toString());
+            if (e instanceof FatalRuntimeException fatal) throw fatal;
+            throw new FatalRuntimeException(String.format("cannot compact the container \"%s\"", path), e.getMessage());
+        }
+
+        try {
+            Files.move(temporaryPath, Paths.get(path), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(temporaryPath.toString());
+            throw new FatalRuntimeException(String.format("cannot compact the container \"%s\"", path),
+                    String.format("cannot move file \"%s\" to \"%s\"", temporaryPath, path));
+        }
+    }
+
+    /**
+     * An output stream that appends the bytes written through it to the stream of the container.
+     */
+
+    private class PendingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                while (len > 0) {
+                    final int length = Math.min(len, pending.length - pendingLength);
+                    System.arraycopy(b, off, pending, pendingLength, length);
+                    pendingLength += length;
+                    off += length;
+                    len -= length;
+                    if (pendingLength == pending.length) flushPending();
+                }
+            } catch (FatalRuntimeException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void flushPending() throws FatalRuntimeException {
+        file.appendSealed(file.sealSegment(file.getSegmentCount(), pending, pendingLength, compressor));
+        pendingLength = 0;
+    }
+
+    /**
+     * Reads and decrypts a segment, unless it is the segment read last.
+     */
+
+    private void loadSegment(int index) throws FatalRuntimeException {
+        if (index == cachedSegment) return;
+        cachedSegment = -1;
+        cachedLength = file.readSegment(index, cache);
+        cachedSegment = index;
+    }
+
+    /**
+     * Returns the index of the segment that contains a given position of the stream.
+     */
+
+    private int findSegment(long position) {
+        final int index = Arrays.binarySearch(segmentPositions, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Calculates the position, within the stream, of the first byte of each segment.
+     * Empty segments are not expected, since segments are only written when they contain data.
+     */
+
+    private void updateSegmentPositions() {
+        segmentPositions = new long[file.getSegmentCount()];
+        long position = 0;
+        for (int i = 0; i < segmentPositions.length; i++) {
+            segmentPositions[i] = position;
+            position += file.getEntry(i).plainLength();
+        }
+    }
+
+    private byte[] saveMembers() throws FatalRuntimeException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(metadataVersion);
+            output.writeInt(members.size());
+            for (Member member : members.values()) {
+                output.writeUTF(member.name());
+                output.writeLong(member.offset());
+                output.writeLong(member.length());
+                output.writeLong(member.lastModified());
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+        return bytes.toByteArray();
+    }
+
+    private void loadMembers(byte[] metadata) throws IOException {
+        members.clear();
+        if (metadata.length == 0) return;
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(metadata))) {
+            if (input.readInt() != metadataVersion) throw new IOException("unknown version");
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final Member member = new Member(input.readUTF(), input.readLong(), input.readLong(), input.readLong());
+                if (member.offset() < 0 || member.length() < 0 || member.offset() + member.length() > file.getPlaintextLength()) {
+                    throw new IOException("invalid member");
+                }
+                members.put(member.name(), member);
+            }
+        }
+    }
+}
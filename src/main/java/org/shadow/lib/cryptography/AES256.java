@@ -1,13 +1,27 @@
 package org.shadow.lib.cryptography;
 
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.monitoring.KeyDerivationEvent;
+
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The AES256 class provides methods for generating a key from a password and salt,
@@ -15,10 +29,21 @@ import java.security.spec.KeySpec;
  */
 
 public class AES256 {
+    public static final int defaultIterationCount = 65536;
+    public static final int maxKdfLanes = 64;
+    public static final int minCalibratedIterationCount = 10000;
+    private static final long calibrationNanos = 20_000_000L;
+    private static final int calibrationSamples = 3;
+    private static final byte[] laneLabel = "skriva-kdf-lane".getBytes(StandardCharsets.US_ASCII);
+
+    private static volatile double nanosPerIteration = 0; // measured once, see calibrateIterationCount
+    @Nullable private static volatile KeyCache keyCache = null;
 
     /**
      * Generates a SecretKey from a given password and salt using PBKDF2 with HmacSHA256 algorithm.
      *
+     * The salt is a random IV (see AESFile and StreamingCypherV1) that is never used again: the key is not cached.
+     *
      * @param password the password to be used for key generation.
      * @param salt the salt to be used for key generation.
      * @return the generated SecretKey for AES encryption.
@@ -26,16 +51,162 @@ public class AES256 {
      */
 
     protected static SecretKey generateKeyFromPassword(String password, byte[] salt) throws RuntimeException {
+        return generateKeyFromPassword(password, salt, defaultIterationCount);
+    }
+
+    /**
+     * Generates a SecretKey from a given password and salt using PBKDF2 with HmacSHA256 algorithm,
+     * with a given number of iterations.
+     *
+     * @param password the password to be used for key generation.
+     * @param salt the salt to be used for key generation.
+     * @param iterations the number of PBKDF2 iterations.
+     * @return the generated SecretKey for AES encryption.
+     * @throws RuntimeException if a NoSuchAlgorithmException or InvalidKeySpecException occurs.
+     */
+
+    public static SecretKey generateKeyFromPassword(String password, byte[] salt, int iterations) throws RuntimeException {
         try {
+            final KeyDerivationEvent event = KeyDerivationEvent.start();
             SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
-            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, 65536, 256);
+            KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 256);
             SecretKey tmp = factory.generateSecret(spec);
+            event.finish(factory.getAlgorithm(), iterations, 256);
             return new SecretKeySpec(tmp.getEncoded(), "AES");
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
             throw new RuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
         }
     }
 
+    /**
+     * Generates a SecretKey from a given password and salt using several independent PBKDF2 chains ("lanes"),
+     * computed in parallel.
+     *
+     * Each lane runs PBKDF2 with HmacSHA256 over its own salt (the given salt, followed by a label and the index of
+     * the lane), and the key is the SHA-256 digest of the outputs of all the lanes. Thus, on a host with as many
+     * processors as lanes, the derivation takes as long as a single chain, while an attacker has to compute all the
+     * chains for each password.
+     *
+     * With a single lane, the key is the same as the one returned by `generateKeyFromPassword(password, salt, iterations)`.
+     *
+     * If a key cache is set (see setKeyCache), it is looked up first: a cached key is returned without derivation,
+     * and a derived key is cached.
+     *
+     * @param password the password to be used for key generation.
+     * @param salt the salt to be used for key generation.
+     * @param iterations the number of PBKDF2 iterations of each lane.
+     * @param lanes the number of lanes (from 1 to `maxKdfLanes`).
+     * @return the generated SecretKey for AES encryption.
+     * @throws FatalRuntimeException if the number of lanes is not valid, or if a lane cannot be computed.
+     */
+
+    public static SecretKey generateKeyFromPassword(String password, byte[] salt, int iterations, int lanes) throws FatalRuntimeException {
+        if (lanes < 1 || lanes > maxKdfLanes) {
+            throw new FatalRuntimeException(String.format("invalid number of key derivation lanes %d (expected: 1 to %d)", lanes, maxKdfLanes));
+        }
+        @Nullable final KeyCache cache = keyCache;
+        @Nullable final byte[] secret = null == cache ? null : cache.getSecret();
+        @Nullable final String identifier = null == secret ? null : KeyCache.identifier(secret, password, salt, iterations, lanes);
+        if (null != identifier) {
+            @Nullable final byte[] cached = cache.get(identifier);
+            if (null != cached) return new SecretKeySpec(cached, "AES");
+        }
+        final SecretKey key = lanes == 1 ? generateKeyFromPassword(password, salt, iterations) : deriveLanes(password, salt, iterations, lanes);
+        if (null != identifier) cache.put(identifier, key.getEncoded());
+        return key;
+    }
+
+    /**
+     * Sets the cache of the keys derived by `generateKeyFromPassword(password, salt, iterations, lanes)`, for the
+     * rest of the execution. Only this derivation, whose salt comes from the header of a segmented file, is cached:
+     * the other derivations (the ones salted with a random IV or used for measurements, in particular) never are.
+     *
+     * @param cache the cache, or null to derive all the keys.
+     */
+
+    public static void setKeyCache(@Nullable KeyCache cache) {
+        keyCache = cache;
+    }
+
+    private static SecretKey deriveLanes(String password, byte[] salt, int iterations, int lanes) throws FatalRuntimeException {
+        final int threads = Math.min(lanes, Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "skriva-kdf");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            final List<Future<byte[]>> outputs = new ArrayList<>(lanes);
+            for (int lane = 0; lane < lanes; lane++) {
+                final byte[] laneSalt = ByteBuffer.allocate(salt.length + laneLabel.length + 1)
+                        .put(salt).put(laneLabel).put((byte) lane).array();
+                outputs.add(executor.submit(() -> generateKeyFromPassword(password, laneSalt, iterations).getEncoded()));
+            }
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(laneLabel);
+            md.update((byte) lanes);
+            for (Future<byte[]> output : outputs) {
+                final byte[] bytes = output.get();
+                md.update(bytes);
+                Arrays.fill(bytes, (byte) 0);
+            }
+            return new SecretKeySpec(md.digest(), "AES");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FatalRuntimeException("the key derivation has been interrupted");
+        } catch (ExecutionException | NoSuchAlgorithmException e) {
+            final Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new FatalRuntimeException("cannot derive the key from the password",
+                    String.format("%s: %s", cause.getClass().getName(), cause.getMessage()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Calculates the number of PBKDF2 iterations that makes the derivation of a key last a given time on the current
+     * host. Thus, the time needed to unlock a file is the same on all the hosts, instead of being fixed by a constant:
+     * the slow hosts are not penalized, and the fast hosts get a stronger key.
+     *
+     * The speed of PBKDF2 is measured the first time (the number of iterations is doubled until a derivation lasts
+     * at least 20 ms, then the fastest of a few derivations of this length is kept), and reused for the rest of the
+     * execution.
+     *
+     * @param targetMillis the time a derivation should last, in milliseconds.
+     * @param lanes the number of lanes of the derivation (the lanes beyond the number of processors run in turn).
+     * @return the number of iterations of each lane (at least `minCalibratedIterationCount`, at most
+     *         SegmentedHeader.maxKdfIterations).
+     */
+
+    public static int calibrateIterationCount(int targetMillis, int lanes) {
+        double nanos = nanosPerIteration;
+        if (nanos <= 0) {
+            // The first derivation loads the security providers, and the next ones run before the JIT compiler has
+            // optimized HMAC: they are discarded.
+            final byte[] salt = new byte[16];
+            generateKeyFromPassword("calibration", salt, 1);
+            int iterations = 1000;
+            long elapsed;
+            do {
+                iterations *= 2;
+                final long start = System.nanoTime();
+                generateKeyFromPassword("calibration", salt, iterations);
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < calibrationNanos && iterations < (1 << 24));
+            long best = Long.MAX_VALUE;
+            for (int sample = 0; sample < calibrationSamples; sample++) {
+                final long start = System.nanoTime();
+                generateKeyFromPassword("calibration", salt, iterations);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            nanos = Math.max(1, (double) best / iterations);
+            nanosPerIteration = nanos;
+        }
+        final int rounds = (lanes + Runtime.getRuntime().availableProcessors() - 1) / Runtime.getRuntime().availableProcessors();
+        final double iterations = targetMillis * 1e6 / nanos / Math.max(1, rounds);
+        return (int) Math.max(minCalibratedIterationCount, Math.min(SegmentedHeader.maxKdfIterations, iterations));
+    }
+
     /**
      * Generates a secure random initialization vector (IV) for AES encryption.
      *
@@ -1,11 +1,16 @@
 package org.shadow.lib.cryptography;
 
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.monitoring.ChunkIoEvent;
+
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.rmi.UnexpectedException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -14,14 +19,23 @@ import java.security.NoSuchAlgorithmException;
 /**
  * The AESFile class provides functionality for encrypting and decrypting files
  * using the AES 256 algorithm in CBC mode.
+ *
+ * The length of the chunks and the way the input file is read come from the tuning profile of the host (see
+ * TuningProfile).
  */
 
 public class AESFile extends AES256 implements AutoCloseable {
-    private static final long bufferLength = 4096L;
+    private final long bufferLength;
+    private final boolean channelIo;
+    @Nullable private byte[] buffer = null; // allocated by the first chunk, then reused
     private final Cipher cipher;
     private final String secretKey;
+    private final String inputPath;
+    private final String outputPath;
     private final FileInputStream inputStream;
-    private final FileOutputStream outputStream;
+    private final OutputStream outputStream;
+    private final long inputLength;
+    private long remaining;
     private CipherOutputStream cipherOutputStream;
     private boolean started = false;
 
@@ -36,7 +50,28 @@ public class AESFile extends AES256 implements AutoCloseable {
      */
 
     public AESFile(String secretKey, String inputPath, String outputPath) throws RuntimeException {
+        this(secretKey, inputPath, outputPath, -1L, null);
+    }
+
+    /**
+     * Constructor for creating an instance of AESFile that processes only the first bytes of the input file,
+     * and that optionally seals the output file with an integrity trailer.
+     *
+     * @param secretKey the secret key used for AES encryption.
+     * @param inputPath the file path of the input file to be encrypted or decrypted.
+     * @param outputPath the file path of the output file where the encrypted or decrypted data will be stored.
+     * @param inputLength the number of bytes of the input file to process, or -1 to process the whole file.
+     * @param trailerAlgorithm if not null, the algorithm used to compute the integrity trailer appended to the output file.
+     * @throws RuntimeException if the input or output file specified does not exist.
+     */
+
+    public AESFile(String secretKey, String inputPath, String outputPath, long inputLength, @Nullable IntegrityTrailer.Algorithm trailerAlgorithm) throws RuntimeException {
+        final TuningProfile profile = TuningProfile.current();
+        this.bufferLength = profile.getChunkLength();
+        this.channelIo = profile.getIoMode() == TuningProfile.IoMode.Channel;
         this.secretKey = secretKey;
+        this.inputPath = inputPath;
+        this.outputPath = outputPath;
 
         try {
             cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
@@ -53,7 +88,15 @@ public class AESFile extends AES256 implements AutoCloseable {
         }
 
         try {
-            this.outputStream = new FileOutputStream(outputPath);
+            this.inputLength = inputLength < 0 ? inputStream.getChannel().size() : inputLength;
+            this.remaining = this.inputLength;
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Cannot determine the size of the input file \"%s\"", inputPath));
+        }
+
+        try {
+            final FileOutputStream fileOutputStream = new FileOutputStream(outputPath);
+            this.outputStream = null == trailerAlgorithm ? fileOutputStream : new IntegrityTrailer.SealingOutputStream(fileOutputStream, trailerAlgorithm);
         } catch (FileNotFoundException e) {
             throw new RuntimeException(String.format("The output file \"%s\" does not exist", outputPath));
         }
@@ -73,6 +116,26 @@ public class AESFile extends AES256 implements AutoCloseable {
         this.outputStream.close();
     }
 
+    /**
+     * Returns the number of bytes of the input file processed by a call to `encryptChunk` or `decryptChunk`.
+     *
+     * @return the length of a chunk.
+     */
+
+    public long getChunkLength() {
+        return bufferLength;
+    }
+
+    /**
+     * Returns the number of bytes of the input file to process.
+     *
+     * @return the number of bytes.
+     */
+
+    public long getInputLength() {
+        return inputLength;
+    }
+
     /**
      * Calculates the number of iterations needed based on the file size and buffer length.
      *
@@ -81,8 +144,7 @@ public class AESFile extends AES256 implements AutoCloseable {
      */
 
     public long calculateIterationNumber() throws IOException {
-        final long fileSize = inputStream.getChannel().size();
-        return fileSize / bufferLength + (fileSize % bufferLength == 0 ? 0 : 1);
+        return inputLength / bufferLength + (inputLength % bufferLength == 0 ? 0 : 1);
     }
 
     /**
@@ -134,6 +196,7 @@ public class AESFile extends AES256 implements AutoCloseable {
         try {
             if (! started) {
                 byte[] ivBytes = inputStream.readNBytes(16);
+                remaining -= ivBytes.length;
                 IvParameterSpec ivParam = new IvParameterSpec(ivBytes);
                 // Generate the secret key.
                 SecretKey secretKey = generateKeyFromPassword(this.secretKey, ivBytes);
@@ -191,12 +254,22 @@ public class AESFile extends AES256 implements AutoCloseable {
      */
 
     private boolean process() throws IOException {
-        byte[] buffer = new byte[(int) bufferLength];
-        int bytesRead = inputStream.read(buffer);
+        if (remaining <= 0) {
+            return false; // we've reached the end of the input data
+        }
+        if (null == buffer) buffer = new byte[(int) bufferLength];
+        final ChunkIoEvent readEvent = ChunkIoEvent.start();
+        final int length = (int) Math.min(bufferLength, remaining);
+        // The channel shares its position with the stream.
+        int bytesRead = channelIo ? inputStream.getChannel().read(ByteBuffer.wrap(buffer, 0, length)) : inputStream.read(buffer, 0, length);
+        readEvent.finish(ChunkIoEvent.read, inputPath, bytesRead);
         if (bytesRead == -1) {
             return false; // we've reached the end of the input file
         }
+        remaining -= bytesRead;
+        final ChunkIoEvent writeEvent = ChunkIoEvent.start();
         cipherOutputStream.write(buffer, 0, bytesRead);
+        writeEvent.finish(ChunkIoEvent.write, outputPath, bytesRead);
         return true;
     }
 }
@@ -0,0 +1,179 @@
+package org.shadow.lib.cryptography;
+
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * The CipherSuite enumeration lists the authenticated ciphers that can protect the segments of a segmented file.
+ * The identifier of the suite is recorded in the header of the file (see SegmentedHeader): a file is always decrypted
+ * with the suite it has been encrypted with.
+ *
+ * AES-GCM is the fastest suite on the hosts whose processor accelerates AES. On the other hosts (some ARM processors,
+ * some virtual machines), ChaCha20-Poly1305 is several times faster. The suite that fits the host can be selected
+ * by a short measurement (see preferred).
+ */
+
+public enum CipherSuite {
+    AES_256_GCM((byte) 1, "AES/GCM/NoPadding", "AES"),
+    CHACHA20_POLY1305((byte) 2, "ChaCha20-Poly1305", "ChaCha20");
+
+    private static final int nonceLength = 12;
+    private static final int tagLength = 16;
+    private static final int measurementRounds = 3;
+    private static final int measurementLength = 1 << 20;
+    private static final int measurementChunkLength = 1 << 16;
+
+    private static volatile CipherSuite measured = null;
+
+    private final byte identifier;
+    private final String transformation;
+    private final String keyAlgorithm;
+
+    CipherSuite(byte identifier, String transformation, String keyAlgorithm) {
+        this.identifier = identifier;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    public byte getIdentifier() {
+        return identifier;
+    }
+
+    public int getNonceLength() {
+        return nonceLength;
+    }
+
+    public int getTagLength() {
+        return tagLength;
+    }
+
+    /**
+     * Creates a new, uninitialized, cipher for this suite.
+     *
+     * @return the cipher.
+     * @throws FatalRuntimeException if the cipher is not available.
+     */
+
+    public Cipher newCipher() throws FatalRuntimeException {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new FatalRuntimeException(String.format("the cipher \"%s\" is not available!", transformation));
+        }
+    }
+
+    /**
+     * Builds the parameters used to initialize the cipher for a given nonce.
+     *
+     * @param nonce the buffer that contains the nonce.
+     * @param offset the offset of the nonce within the buffer.
+     * @return the parameters.
+     */
+
+    public AlgorithmParameterSpec parameterSpec(byte[] nonce, int offset) {
+        return switch (this) {
+            case AES_256_GCM -> new GCMParameterSpec(tagLength * 8, nonce, offset, nonceLength);
+            case CHACHA20_POLY1305 -> new IvParameterSpec(nonce, offset, nonceLength);
+        };
+    }
+
+    /**
+     * Converts raw key material into a key usable by this suite.
+     *
+     * @param material the key material (32 bytes).
+     * @return the key.
+     */
+
+    public SecretKey toKey(byte[] material) {
+        return new SecretKeySpec(material, keyAlgorithm);
+    }
+
+    /**
+     * Measures the throughput of this suite on the current host, by encrypting data in memory.
+     *
+     * @param length the number of bytes to encrypt.
+     * @return the throughput, in bytes per second, or 0 if the suite is not available.
+     */
+
+    public double measureThroughput(int length) {
+        try {
+            final Cipher cipher = newCipher();
+            final SecretKey key = toKey(new byte[32]);
+            final SecureRandom random = new SecureRandom();
+            final byte[] nonce = new byte[nonceLength];
+            final byte[] input = new byte[measurementChunkLength];
+            final byte[] output = new byte[measurementChunkLength + tagLength];
+            final long start = System.nanoTime();
+            for (int done = 0; done < length; done += input.length) {
+                random.nextBytes(nonce);
+                cipher.init(Cipher.ENCRYPT_MODE, key, parameterSpec(nonce, 0));
+                cipher.doFinal(input, 0, input.length, output, 0);
+            }
+            final long nanos = System.nanoTime() - start;
+            return nanos <= 0 ? 0 : length / (nanos / 1e9);
+        } catch (FatalRuntimeException | GeneralSecurityException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the suite that fits the current host: the suite of the tuning profile, if any (see TuningProfile).
+     * Otherwise, the suites are measured (a few megabytes each, alternately, so that they get the same warm-up), and
+     * the fastest one is kept for the rest of the execution.
+     *
+     * @return the suite.
+     */
+
+    public static CipherSuite preferred() {
+        final CipherSuite configured = TuningProfile.current().getSuite();
+        if (null != configured) return configured;
+        CipherSuite suite = measured;
+        if (null == suite) {
+            final double[] rates = new double[values().length];
+            for (int round = 0; round < measurementRounds; round++) {
+                for (CipherSuite candidate : values()) {
+                    rates[candidate.ordinal()] = Math.max(rates[candidate.ordinal()], candidate.measureThroughput(measurementLength));
+                }
+            }
+            suite = AES_256_GCM;
+            for (CipherSuite candidate : values()) {
+                if (rates[candidate.ordinal()] > rates[suite.ordinal()]) suite = candidate;
+            }
+            measured = suite;
+        }
+        return suite;
+    }
+
+    public static CipherSuite identifierToEnum(byte identifier) throws FatalRuntimeException {
+        for (CipherSuite suite : values()) {
+            if (suite.identifier == identifier) return suite;
+        }
+        throw new FatalRuntimeException("the encrypted file uses an unknown cipher suite",
+                String.format("cipher suite identifier: %d", identifier));
+    }
+
+    public static CipherSuite nameToEnum(String name) throws FatalRuntimeException {
+        return switch (name.toLowerCase()) {
+            case "aes-256-gcm", "aes-gcm", "aes" -> AES_256_GCM;
+            case "chacha20-poly1305", "chacha20", "chacha" -> CHACHA20_POLY1305;
+            default -> throw new FatalRuntimeException(String.format("unknown cipher suite \"%s\"", name));
+        };
+    }
+
+    public static String enumToName(CipherSuite suite) {
+        return switch (suite) {
+            case AES_256_GCM -> "aes-256-gcm";
+            case CHACHA20_POLY1305 -> "chacha20-poly1305";
+        };
+    }
+}
@@ -0,0 +1,227 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.file.FileManip;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DigestCache class remembers the MD5 digests of plaintext files, so that a file encrypted again (for example,
+ * to another destination) is not read once more only to calculate its digest.
+ *
+ * A digest is recorded together with the size and the modification time of the file, and it is used only if they
+ * still match. The digest is stored into a user-defined extended attribute of the file ("user.skriva.md5"). If the
+ * file system does not support extended attributes (or if the attribute cannot be written), the digest is stored
+ * into a sidecar index instead: a text file to which one line is appended per digest.
+ *
+ *     extended attribute: [version (1)][size (8)][modification time, in nanoseconds (8)][digest (16)]
+ *     index line:         <size> <modification time, in nanoseconds> <digest (hexadecimal)> <absolute path>
+ *
+ * A file modified less than two seconds ago is not cached: its modification time may not change if it is modified
+ * again within the resolution of the file system clock.
+ *
+ * Please note that this class is thread-safe.
+ */
+
+public class DigestCache {
+    public static final String attributeName = "skriva.md5";
+    private static final byte attributeVersion = 1;
+    private static final int digestLength = 16;
+    private static final int attributeLength = 1 + 8 + 8 + digestLength;
+    private static final long racyNanos = TimeUnit.SECONDS.toNanos(2);
+    private static final HexFormat hex = HexFormat.of();
+
+    private record Entry(long size, long modified, byte[] digest) {}
+
+    private final Path indexPath;
+    @Nullable private Map<String, Entry> index = null;
+
+    /**
+     * Creates a cache that uses the default sidecar index ("~/.skriva/digest-cache").
+     */
+
+    public DigestCache() {
+        this(Paths.get(System.getProperty("user.home"), ".skriva", "digest-cache"));
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param indexPath the path to the sidecar index, used for the files that do not support extended attributes.
+     */
+
+    public DigestCache(Path indexPath) {
+        this.indexPath = indexPath;
+    }
+
+    /**
+     * Returns the cached digest of a file, if its size and its modification time have not changed.
+     *
+     * @param file the path to the file.
+     * @return the digest, or null if the digest of the file is not cached (or is out of date).
+     */
+
+    public @Nullable byte[] lookup(Path file) {
+        @Nullable final BasicFileAttributes attributes = readAttributes(file);
+        if (null == attributes) return null;
+        @Nullable Entry entry = readAttribute(file);
+        if (null == entry) entry = readIndex(file);
+        if (null == entry || entry.size() != attributes.size() || entry.modified() != modifiedNanos(attributes)) return null;
+        return entry.digest();
+    }
+
+    /**
+     * Records the digest of a file. The digest is not recorded if the file has been modified since its digest has
+     * been calculated, or if it has been modified too recently.
+     *
+     * @param file the path to the file.
+     * @param before the attributes of the file, read before its digest has been calculated.
+     * @param digest the digest of the file.
+     */
+
+    public void store(Path file, BasicFileAttributes before, byte[] digest) {
+        @Nullable final BasicFileAttributes after = readAttributes(file);
+        if (null == after || after.size() != before.size() || modifiedNanos(after) != modifiedNanos(before)) return;
+        final long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        if (now - modifiedNanos(after) < racyNanos) return;
+
+        final Entry entry = new Entry(after.size(), modifiedNanos(after), digest.clone());
+        if (!writeAttribute(file, entry)) writeIndex(file, entry);
+    }
+
+    /**
+     * Reads the attributes of a file, for calling `store` once its digest has been calculated.
+     *
+     * @param file the path to the file.
+     * @return the attributes of the file, or null if they cannot be read.
+     */
+
+    public static @Nullable BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long modifiedNanos(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static @Nullable Entry readAttribute(Path file) {
+        @Nullable final UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (null == view) return null;
+        try {
+            if (view.size(attributeName) != attributeLength) return null;
+            final ByteBuffer buffer = ByteBuffer.allocate(attributeLength);
+            view.read(attributeName, buffer);
+            buffer.flip();
+            if (buffer.get() != attributeVersion) return null;
+            final long size = buffer.getLong();
+            final long modified = buffer.getLong();
+            final byte[] digest = new byte[digestLength];
+            buffer.get(digest);
+            return new Entry(size, modified, digest);
+        } catch (IOException | RuntimeException e) {
+            // The attribute does not exist, or extended attributes are not supported.
+            return null;
+        }
+    }
+
+    private static boolean writeAttribute(Path file, Entry entry) {
+        @Nullable final UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (null == view) return false;
+        final ByteBuffer buffer = ByteBuffer.allocate(attributeLength)
+                .put(attributeVersion)
+                .putLong(entry.size())
+                .putLong(entry.modified())
+                .put(entry.digest())
+                .flip();
+        try {
+            view.write(attributeName, buffer);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private synchronized @Nullable Entry readIndex(Path file) {
+        return loadIndex().get(file.toAbsolutePath().normalize().toString());
+    }
+
+    private synchronized void writeIndex(Path file, Entry entry) {
+        final String name = file.toAbsolutePath().normalize().toString();
+        if (name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0) return;
+        loadIndex().put(name, entry);
+        try {
+            FileManip.createPrivateDirectories(indexPath.getParent());
+            try (Writer writer = Files.newBufferedWriter(indexPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(String.format("%d %d %s %s%n", entry.size(), entry.modified(), hex.formatHex(entry.digest()), name));
+            }
+        } catch (IOException e) {
+            // The cache is only an optimization: the digest will be calculated again.
+        }
+    }
+
+    /**
+     * Loads the sidecar index. The last line recorded for a file overrides the previous ones. Malformed lines
+     * (for example, a line partially written by an interrupted process) are ignored. If most of the lines are
+     * obsolete, the index is rewritten.
+     */
+
+    private Map<String, Entry> loadIndex() {
+        if (null != index) return index;
+        index = new HashMap<>();
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                lines++;
+                final String[] fields = line.split(" ", 4);
+                if (fields.length != 4 || fields[2].length() != 2 * digestLength) continue;
+                try {
+                    index.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), hex.parseHex(fields[2])));
+                } catch (IllegalArgumentException e) {
+                    // Ignore the line.
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // The index has not been created yet.
+        } catch (IOException e) {
+            // The cache is only an optimization: the digests will be calculated.
+        }
+        if (lines > 2 * index.size() + 1000) compactIndex(index);
+        return index;
+    }
+
+    private void compactIndex(Map<String, Entry> entries) {
+        final Path temporaryPath = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(String.format("%d %d %s %s%n", entry.getValue().size(), entry.getValue().modified(),
+                            hex.formatHex(entry.getValue().digest()), entry.getKey()));
+                }
+            }
+            Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The index will be compacted later.
+        }
+    }
+}
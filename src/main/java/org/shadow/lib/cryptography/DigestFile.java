@@ -1,10 +1,12 @@
 package org.shadow.lib.cryptography;
 
 import org.shadow.lib.exception.CompileTimeError;
+import org.shadow.lib.monitoring.ChunkIoEvent;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -12,12 +14,15 @@ import java.security.NoSuchAlgorithmException;
 public abstract class DigestFile implements AutoCloseable {
     private final long bufferLength;
     private final FileInputStream inputStream;
+    private byte[] buffer = new byte[0]; // allocated by the first chunk, then reused
+    private final boolean channelIo = TuningProfile.current().getIoMode() == TuningProfile.IoMode.Channel;
+    private final String path; // only used to identify the file in the recorded events
     protected final MessageDigest md;
-    private static final long defaultChunkLength = 4096L;
 
     /**
      * Initializes a new instance of the DigestFile class with the specified file path and message digest.
-     * Sets up the input stream from the file and prepares the message digest.
+     * Sets up the input stream from the file and prepares the message digest. The chunks have the length given by
+     * the tuning profile of the host (see TuningProfile).
      *
      * @param path The path to the input file to be processed.
      * @param md The MessageDigest instance to be used for calculating the file's digest.
@@ -25,7 +30,8 @@ public abstract class DigestFile implements AutoCloseable {
      */
 
     protected DigestFile(String path, MessageDigest md) throws RuntimeException {
-        this.bufferLength = defaultChunkLength;
+        this.bufferLength = TuningProfile.current().getChunkLength();
+        this.path = path;
 
         try {
             this.inputStream = new FileInputStream(path);
@@ -47,6 +53,7 @@ public abstract class DigestFile implements AutoCloseable {
 
     protected DigestFile(String path, MessageDigest md, long chunkLength) throws RuntimeException {
         this.bufferLength = chunkLength;
+        this.path = path;
 
         try {
             this.inputStream = new FileInputStream(path);
@@ -58,14 +65,16 @@ public abstract class DigestFile implements AutoCloseable {
 
     /**
      * Initializes a new instance of the DigestFile class with the specified input stream and message digest.
+     * The chunks have the length given by the tuning profile of the host (see TuningProfile).
      *
      * @param inputStream The FileInputStream instance to be used for reading the file's content.
      * @param md The MessageDigest instance to be used for calculating the file's digest.
      */
 
     protected DigestFile(FileInputStream inputStream, MessageDigest md) {
-        this.bufferLength = defaultChunkLength;
+        this.bufferLength = TuningProfile.current().getChunkLength();
         this.inputStream = inputStream;
+        this.path = "";
         this.md = md;
     }
 
@@ -81,9 +90,20 @@ public abstract class DigestFile implements AutoCloseable {
     protected DigestFile(FileInputStream inputStream, MessageDigest md, long chunkLength) {
         this.bufferLength = chunkLength;
         this.inputStream = inputStream;
+        this.path = "";
         this.md = md;
     }
 
+    /**
+     * Returns the number of bytes of the file processed by a call to `digestChunk`.
+     *
+     * @return the length of a chunk.
+     */
+
+    public long getChunkLength() {
+        return bufferLength;
+    }
+
     /**
      * Calculates the number of iterations needed based on the file size and buffer length.
      *
@@ -106,13 +126,15 @@ public abstract class DigestFile implements AutoCloseable {
      */
 
     public boolean digestChunk() throws RuntimeException {
-        byte[] buffer = new byte[(int) bufferLength];
+        if (buffer.length == 0) buffer = new byte[(int) bufferLength];
         int bytesRead;
+        final ChunkIoEvent event = ChunkIoEvent.start();
         try {
-            bytesRead = inputStream.read(buffer);
+            bytesRead = channelIo ? inputStream.getChannel().read(ByteBuffer.wrap(buffer)) : inputStream.read(buffer);
         } catch (IOException e) {
             throw new RuntimeException(String.format("An error occurred while calculating the MD5: %s", e.getMessage()));
         }
+        event.finish(ChunkIoEvent.read, path, bytesRead);
         if (bytesRead == -1) {
             return false;
         }
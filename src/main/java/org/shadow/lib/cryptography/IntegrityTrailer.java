@@ -0,0 +1,331 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * The IntegrityTrailer class manages an optional, keyless checksum appended to the end of an encrypted file.
+ *
+ * The trailer covers the ciphertext only. It allows the storage layer to detect bit rot and truncated copies
+ * without knowing the password and without running AES. It is unrelated to the MD5 digest embedded inside the
+ * ciphertext by SkrivaCypherV1, which can only be verified after decryption.
+ *
+ * Layout of a sealed file:
+ *
+ *     [payload (ciphertext)][digest][algorithm identifier (1 byte)][magic (8 bytes)]
+ */
+
+public class IntegrityTrailer {
+    private static final byte[] magic = "SKRVSEAL".getBytes(StandardCharsets.US_ASCII);
+    private static final int footerLength = 1 + magic.length;
+    private static final int ioBufferLength = 1024 * 1024;
+
+    public enum Status { VALID, CORRUPTED, UNSEALED }
+
+    public enum Algorithm {
+        CRC32C((byte) 1, 4), SHA256((byte) 2, 32);
+
+        private final byte identifier;
+        private final int digestLength;
+
+        Algorithm(byte identifier, int digestLength) {
+            this.identifier = identifier;
+            this.digestLength = digestLength;
+        }
+
+        public int getDigestLength() {
+            return digestLength;
+        }
+
+        public static Algorithm nameToEnum(String name) throws FatalRuntimeException {
+            return switch (name.toLowerCase()) {
+                case "crc32c" -> CRC32C;
+                case "sha256", "sha-256" -> SHA256;
+                default -> throw new FatalRuntimeException(String.format("unknown integrity algorithm \"%s\"", name));
+            };
+        }
+
+        public static String enumToName(Algorithm algorithm) {
+            return switch (algorithm) {
+                case CRC32C -> "crc32c";
+                case SHA256 -> "sha256";
+            };
+        }
+
+        private static @Nullable Algorithm identifierToEnum(byte identifier) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.identifier == identifier) return algorithm;
+            }
+            return null;
+        }
+
+        /**
+         * Creates a new accumulator that computes the digest associated with this algorithm.
+         *
+         * @return a new accumulator.
+         * @throws FatalRuntimeException if the underlying algorithm is not available.
+         */
+
+        public Accumulator newAccumulator() throws FatalRuntimeException {
+            if (this == CRC32C) return new Crc32cAccumulator();
+            try {
+                return new MessageDigestAccumulator(MessageDigest.getInstance("SHA-256"));
+            } catch (NoSuchAlgorithmException e) {
+                throw new FatalRuntimeException("the SHA-256 algorithm is not available!");
+            }
+        }
+    }
+
+    /**
+     * An Accumulator computes a digest incrementally.
+     */
+
+    public interface Accumulator {
+        void update(byte[] buffer, int offset, int length);
+        void update(ByteBuffer buffer);
+        byte[] finish();
+    }
+
+    private static class Crc32cAccumulator implements Accumulator {
+        private final CRC32C crc = new CRC32C();
+
+        public void update(byte[] buffer, int offset, int length) { crc.update(buffer, offset, length); }
+
+        public void update(ByteBuffer buffer) { crc.update(buffer); }
+
+        public byte[] finish() { return ByteBuffer.allocate(4).putInt((int) crc.getValue()).array(); }
+    }
+
+    private static class MessageDigestAccumulator implements Accumulator {
+        private final MessageDigest md;
+
+        MessageDigestAccumulator(MessageDigest md) { this.md = md; }
+
+        public void update(byte[] buffer, int offset, int length) { md.update(buffer, offset, length); }
+
+        public void update(ByteBuffer buffer) { md.update(buffer); }
+
+        public byte[] finish() { return md.digest(); }
+    }
+
+    /**
+     * An output stream that computes the digest of all the bytes written through it, and that appends the
+     * trailer to the underlying stream when it is closed.
+     *
+     * Please note that closing this stream more than once writes the trailer only once.
+     */
+
+    public static class SealingOutputStream extends FilterOutputStream {
+        private final Algorithm algorithm;
+        private final Accumulator accumulator;
+        private boolean closed = false;
+
+        public SealingOutputStream(OutputStream out, Algorithm algorithm) throws FatalRuntimeException {
+            super(out);
+            this.algorithm = algorithm;
+            this.accumulator = algorithm.newAccumulator();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            accumulator.update(new byte[]{(byte) b}, 0, 1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            accumulator.update(b, off, len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            out.write(buildTrailer(algorithm, accumulator.finish()));
+            super.close();
+        }
+    }
+
+    /**
+     * Detects the algorithm of the trailer that terminates a given file.
+     *
+     * @param channel the channel opened on the file to inspect.
+     * @return the algorithm used by the trailer, or null if the file is not sealed.
+     * @throws IOException if an I/O error occurs.
+     */
+
+    private static @Nullable Algorithm detect(FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size < footerLength) return null;
+
+        ByteBuffer footer = ByteBuffer.allocate(footerLength);
+        channel.read(footer, size - footerLength);
+        final byte[] bytes = footer.array();
+        if (!Arrays.equals(bytes, 1, footerLength, magic, 0, magic.length)) return null;
+
+        Algorithm algorithm = Algorithm.identifierToEnum(bytes[0]);
+        if (null == algorithm || size < footerLength + algorithm.getDigestLength()) return null;
+        return algorithm;
+    }
+
+    /**
+     * Returns the maximum length of a trailer.
+     *
+     * @return the length of the longest trailer, in bytes.
+     */
+
+    static int maximumLength() {
+        int length = 0;
+        for (Algorithm algorithm : Algorithm.values()) length = Math.max(length, footerLength + algorithm.getDigestLength());
+        return length;
+    }
+
+    /**
+     * Returns the length of the trailer that terminates the given bytes (the last bytes of a stream).
+     *
+     * @param tail the buffer that contains the last bytes of the stream.
+     * @param length the number of bytes in the buffer.
+     * @return the length of the trailer, or 0 if the bytes are not terminated by a trailer.
+     */
+
+    static int trailerLength(byte[] tail, int length) {
+        if (length < footerLength) return 0;
+        if (!Arrays.equals(tail, length - magic.length, length, magic, 0, magic.length)) return 0;
+        @Nullable final Algorithm algorithm = Algorithm.identifierToEnum(tail[length - footerLength]);
+        if (null == algorithm || length < footerLength + algorithm.getDigestLength()) return 0;
+        return footerLength + algorithm.getDigestLength();
+    }
+
+    /**
+     * Returns the algorithm used to seal a given file.
+     *
+     * @param path the path to the file to inspect.
+     * @return the algorithm used by the trailer, or null if the file is not sealed.
+     * @throws FatalRuntimeException if the file cannot be read.
+     */
+
+    public static @Nullable Algorithm detect(String path) throws FatalRuntimeException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return detect(channel);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the length of the payload stored in a given file. That is: the length of the file, minus the length
+     * of its trailer (if the file is sealed).
+     *
+     * @param path the path to the file to inspect.
+     * @return the length of the payload.
+     * @throws FatalRuntimeException if the file cannot be read.
+     */
+
+    public static long payloadLength(String path) throws FatalRuntimeException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            @Nullable Algorithm algorithm = detect(channel);
+            final long size = channel.size();
+            return null == algorithm ? size : size - footerLength - algorithm.getDigestLength();
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Computes the digest of the first bytes of a file.
+     *
+     * @param channel the channel opened on the file.
+     * @param length the number of bytes to digest.
+     * @param algorithm the algorithm to use.
+     * @return the digest.
+     * @throws IOException if an I/O error occurs or if the file is shorter than expected.
+     */
+
+    private static byte[] digest(FileChannel channel, long length, Algorithm algorithm) throws IOException {
+        final Accumulator accumulator = algorithm.newAccumulator();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(ioBufferLength, Math.max(length, 1)));
+        long position = 0;
+
+        while (position < length) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            final int bytesRead = channel.read(buffer, position);
+            if (bytesRead < 0) throw new IOException("unexpected end of file");
+            buffer.flip();
+            accumulator.update(buffer);
+            position += bytesRead;
+        }
+        return accumulator.finish();
+    }
+
+    /**
+     * Seals an existing file by appending a trailer to it. If the file is already sealed, it is left unchanged.
+     *
+     * @param path the path to the file to seal.
+     * @param algorithm the algorithm used to compute the digest of the file.
+     * @return true if a trailer has been appended, false if the file was already sealed.
+     * @throws FatalRuntimeException if the file cannot be read or written.
+     */
+
+    public static boolean seal(String path, Algorithm algorithm) throws FatalRuntimeException {
+        final Path filePath = Paths.get(path);
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (null != detect(channel)) return false;
+            final long size = channel.size();
+            final ByteBuffer trailer = ByteBuffer.wrap(buildTrailer(algorithm, digest(channel, size, algorithm)));
+            while (trailer.hasRemaining()) {
+                channel.write(trailer, size + trailer.position());
+            }
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot seal the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Verifies the trailer of a given file.
+     *
+     * @param path the path to the file to verify.
+     * @return VALID if the trailer matches the payload, CORRUPTED if it does not, UNSEALED if the file has no trailer.
+     * @throws FatalRuntimeException if the file cannot be read.
+     */
+
+    public static Status verify(String path) throws FatalRuntimeException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            @Nullable Algorithm algorithm = detect(channel);
+            if (null == algorithm) return Status.UNSEALED;
+
+            final long payloadLength = channel.size() - footerLength - algorithm.getDigestLength();
+            final ByteBuffer expected = ByteBuffer.allocate(algorithm.getDigestLength());
+            channel.read(expected, payloadLength);
+            final byte[] actual = digest(channel, payloadLength, algorithm);
+            return MessageDigest.isEqual(expected.array(), actual) ? Status.VALID : Status.CORRUPTED;
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    static byte[] buildTrailer(Algorithm algorithm, byte[] digest) {
+        return ByteBuffer.allocate(digest.length + footerLength)
+                .put(digest)
+                .put(algorithm.identifier)
+                .put(magic)
+                .array();
+    }
+}
@@ -0,0 +1,75 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The KeyCache interface lets the keys derived from passwords be reused (see AES256.setKeyCache), so that opening
+ * the same file again does not pay the cost of the key derivation.
+ *
+ * The keys are designated by an identifier that combines the salt of the file, the parameters of the derivation and
+ * a fingerprint of the password, keyed by a secret of the cache (see identifier). Thus, a cache never returns the key
+ * of another password, and an identifier cannot be used to test passwords without the secret.
+ */
+
+public interface KeyCache {
+
+    /**
+     * Returns a cached key.
+     *
+     * @param identifier the identifier of the key.
+     * @return the encoded key, or null if the key is not cached.
+     */
+
+    @Nullable byte[] get(String identifier);
+
+    /**
+     * Caches a key.
+     *
+     * @param identifier the identifier of the key.
+     * @param key the encoded key.
+     */
+
+    void put(String identifier, byte[] key);
+
+    /**
+     * Returns the secret that keys the identifiers of the cache: a random value, drawn when the cache is created.
+     *
+     * @return the secret, or null if it is not available (the cache is not used then).
+     */
+
+    @Nullable byte[] getSecret();
+
+    /**
+     * Calculates the identifier of a key: the HMAC-SHA256 of the salt, the parameters of the derivation and the
+     * password, keyed by the secret of the cache, in hexadecimal.
+     *
+     * @param secret the secret of the cache (see getSecret).
+     * @param password the password the key is derived from.
+     * @param salt the salt of the derivation.
+     * @param iterations the number of iterations of the derivation.
+     * @param lanes the number of lanes of the derivation.
+     * @return the identifier.
+     */
+
+    static String identifier(byte[] secret, String password, byte[] salt, int iterations, int lanes) {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            mac.update("skriva-key-cache".getBytes(StandardCharsets.US_ASCII));
+            mac.update(ByteBuffer.allocate(12).putInt(salt.length).putInt(iterations).putInt(lanes).array());
+            mac.update(salt);
+            mac.update(password.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(mac.doFinal());
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * The MemoryKeyCache class keeps derived keys in memory, for a limited time (see KeyCache).
+ *
+ * Each key expires a fixed time after it has been cached, whether it is used or not. When the cache is full, the
+ * least recently used key is evicted. The keys that leave the cache (expired, evicted or cleared) are overwritten
+ * with zeros.
+ *
+ * This class is thread-safe.
+ */
+
+public class MemoryKeyCache implements KeyCache {
+    private record Entry(byte[] key, long expiresNanos) {}
+
+    private final long ttlNanos;
+    private final int capacity;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final byte[] secret = new byte[32];
+
+    /**
+     * Creates a cache.
+     *
+     * @param ttlMillis the time a key is kept, in milliseconds.
+     * @param capacity the maximum number of keys.
+     */
+
+    public MemoryKeyCache(long ttlMillis, int capacity) {
+        this(ttlMillis, capacity, System::nanoTime);
+    }
+
+    MemoryKeyCache(long ttlMillis, int capacity, LongSupplier clock) {
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.capacity = capacity;
+        this.clock = clock;
+        new SecureRandom().nextBytes(secret);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= MemoryKeyCache.this.capacity) return false;
+                wipe(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public synchronized @Nullable byte[] get(String identifier) {
+        @Nullable final Entry entry = entries.get(identifier);
+        if (null == entry) return null;
+        if (clock.getAsLong() - entry.expiresNanos() >= 0) {
+            entries.remove(identifier);
+            wipe(entry);
+            return null;
+        }
+        return entry.key().clone();
+    }
+
+    @Override
+    public synchronized void put(String identifier, byte[] key) {
+        @Nullable final Entry previous = entries.put(identifier, new Entry(key.clone(), clock.getAsLong() + ttlNanos));
+        if (null != previous) wipe(previous);
+    }
+
+    @Override
+    public byte[] getSecret() {
+        return secret.clone();
+    }
+
+    /**
+     * Removes the expired keys.
+     *
+     * @return the number of keys removed.
+     */
+
+    public synchronized int purge() {
+        final long now = clock.getAsLong();
+        int removed = 0;
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+            final Entry entry = iterator.next();
+            if (now - entry.expiresNanos() >= 0) {
+                iterator.remove();
+                wipe(entry);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all the keys.
+     *
+     * @return the number of keys removed.
+     */
+
+    public synchronized int clear() {
+        final int removed = entries.size();
+        entries.values().forEach(MemoryKeyCache::wipe);
+        entries.clear();
+        return removed;
+    }
+
+    /**
+     * Returns the number of cached keys (including the expired keys that have not been purged yet).
+     *
+     * @return the number of keys.
+     */
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static void wipe(Entry entry) {
+        Arrays.fill(entry.key(), (byte) 0);
+    }
+}
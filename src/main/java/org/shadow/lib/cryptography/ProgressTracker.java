@@ -0,0 +1,167 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The ProgressTracker class turns the progress of the phases of an operation into a single, steady progress report.
+ *
+ * An operation is made of phases (for example: digest, copy, then encrypt), each with a relative weight that
+ * reflects its cost. The phases report the number of bytes they process. The tracker combines them into one
+ * fraction that never goes backwards, and derives the throughput and the estimated time left.
+ *
+ * The bytes are counted with lock-free counters, and the reports are limited to a fixed rate: whatever the number of
+ * chunks, the consumer (see TaskUpdater) receives at most a few reports per second, plus the final one.
+ */
+
+public class ProgressTracker {
+    public static final long defaultIntervalNanos = 100_000_000L;
+
+    /**
+     * A Phase describes a step of an operation.
+     *
+     * @param name the name of the phase.
+     * @param weight the relative cost of the phase, per byte.
+     */
+
+    public record Phase(String name, double weight) {}
+
+    /**
+     * A Report describes the progress of an operation.
+     *
+     * @param phase the name of the current phase.
+     * @param bytes the number of bytes of the file processed so far, all phases included (that is: the fraction of
+     *        the operation, expressed as a number of bytes of the file).
+     * @param totalBytes the size of the file.
+     * @param fraction the fraction of the operation that has been done, between 0 and 1.
+     * @param bytesPerSecond the throughput since the beginning of the operation.
+     * @param etaMillis the estimated time left, in milliseconds, or -1 if it cannot be estimated yet.
+     */
+
+    public record Report(String phase, long bytes, long totalBytes, double fraction, double bytesPerSecond, long etaMillis) {}
+
+    @Nullable private final TaskUpdater updater;
+    private final long size;
+    private final Phase[] phases;
+    private final double totalWeight;
+    private final long intervalNanos;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong phaseBytes = new AtomicLong();
+    private final AtomicLong nextReportNanos;
+    private volatile int phaseIndex = 0;
+    private volatile long phaseLength = 0;
+    private volatile double completedWeight = 0;
+    private volatile double lastFraction = 0;
+
+    /**
+     * Creates a tracker that reports at the default rate.
+     *
+     * @param updater the consumer of the reports. If null, nothing is reported.
+     * @param size the size of the file processed by the operation.
+     * @param phases the phases of the operation, in order.
+     */
+
+    public ProgressTracker(@Nullable TaskUpdater updater, long size, Phase... phases) {
+        this(updater, size, defaultIntervalNanos, phases);
+    }
+
+    /**
+     * Creates a tracker.
+     *
+     * @param updater the consumer of the reports. If null, nothing is reported.
+     * @param size the size of the file processed by the operation.
+     * @param intervalNanos the minimum interval between two reports.
+     * @param phases the phases of the operation, in order.
+     */
+
+    public ProgressTracker(@Nullable TaskUpdater updater, long size, long intervalNanos, Phase... phases) {
+        this.updater = updater;
+        this.size = size;
+        this.phases = phases;
+        this.intervalNanos = intervalNanos;
+        this.nextReportNanos = new AtomicLong(startNanos);
+        double weight = 0;
+        for (Phase phase : phases) weight += phase.weight();
+        this.totalWeight = weight;
+    }
+
+    /**
+     * Starts a phase. The phases declared before it are considered as done, even if they have been skipped (for
+     * example, because a digest was found in a cache).
+     *
+     * @param name the name of the phase, as declared.
+     * @param length the number of bytes that the phase processes.
+     * @throws IllegalArgumentException if the phase has not been declared.
+     */
+
+    public void begin(String name, long length) throws IllegalArgumentException {
+        double weight = 0;
+        for (int i = 0; i < phases.length; i++) {
+            if (phases[i].name().equals(name)) {
+                completedWeight = weight;
+                phaseLength = length;
+                phaseBytes.set(0);
+                phaseIndex = i;
+                report(false);
+                return;
+            }
+            weight += phases[i].weight();
+        }
+        throw new IllegalArgumentException(String.format("unknown phase \"%s\"", name));
+    }
+
+    /**
+     * Records bytes processed by the current phase. This method can be called by several threads at the same time.
+     *
+     * @param bytes the number of bytes processed since the last call.
+     */
+
+    public void advance(long bytes) {
+        phaseBytes.addAndGet(bytes);
+        if (null != updater) report(false);
+    }
+
+    /**
+     * Reports the end of the operation.
+     */
+
+    public void finish() {
+        completedWeight = totalWeight;
+        phaseLength = 0;
+        report(true);
+    }
+
+    /**
+     * Returns the fraction of the operation that has been done.
+     *
+     * @return the fraction, between 0 and 1.
+     */
+
+    public double getFraction() {
+        if (totalWeight <= 0) return 0;
+        final long length = phaseLength;
+        final double phaseFraction = length <= 0 ? 0 : Math.min(1.0, (double) phaseBytes.get() / length);
+        final double weight = phases[phaseIndex].weight();
+        return Math.min(1.0, (completedWeight + phaseFraction * weight) / totalWeight);
+    }
+
+    private void report(boolean force) {
+        if (null == updater) return;
+        final long now = System.nanoTime();
+        if (!force) {
+            // Only the thread that wins the slot reports: the other ones return at once.
+            final long next = nextReportNanos.get();
+            if (now < next || !nextReportNanos.compareAndSet(next, now + intervalNanos)) return;
+        }
+        // The fraction never goes backwards, even if the phases overlap (several threads).
+        final double fraction = force ? 1.0 : Math.max(lastFraction, getFraction());
+        lastFraction = fraction;
+        final long bytes = Math.round(fraction * size);
+        final double seconds = (now - startNanos) / 1e9;
+        final double bytesPerSecond = seconds <= 0 ? 0 : bytes / seconds;
+        final long etaMillis = fraction <= 0 ? -1 : Math.round(seconds * (1 - fraction) / fraction * 1000);
+        final String phase = phases.length == 0 ? "" : phases[phaseIndex].name();
+        updater.report(new Report(phase, bytes, size, fraction, bytesPerSecond, etaMillis));
+    }
+}
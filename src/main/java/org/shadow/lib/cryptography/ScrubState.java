@@ -0,0 +1,122 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * The ScrubState class persists the progress of the SegmentScrubber, so that an interrupted scrub resumes
+ * where it stopped. The state is stored as a properties file, one entry per scrubbed file.
+ */
+
+public class ScrubState {
+    private static final String roundKey = "round";
+
+    /**
+     * The Position of the scrubber within a file.
+     *
+     * @param generation the generation of the file when the sample has been drawn. A new sample is drawn if the file changes.
+     * @param seed the seed used to draw the sample.
+     * @param cursor the number of sampled segments already verified.
+     * @param sampleSize the number of segments in the sample.
+     */
+
+    public record Position(long generation, long seed, int cursor, int sampleSize) {
+        public boolean isComplete() { return cursor >= sampleSize; }
+
+        private String serialize() { return String.format("%d:%d:%d:%d", generation, seed, cursor, sampleSize); }
+
+        private static @Nullable Position parse(String value) {
+            final String[] fields = value.split(":");
+            if (fields.length != 4) return null;
+            try {
+                return new Position(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final Path path;
+    private final Properties properties = new Properties();
+
+    private ScrubState(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Loads the state from a given file. If the file does not exist, the state is empty.
+     *
+     * @param path the path to the state file.
+     * @return the state.
+     * @throws FatalRuntimeException if the state file exists but cannot be read.
+     */
+
+    public static ScrubState load(String path) throws FatalRuntimeException {
+        final ScrubState state = new ScrubState(Paths.get(path));
+        if (Files.exists(state.path)) {
+            try (InputStream input = Files.newInputStream(state.path)) {
+                state.properties.load(input);
+            } catch (IOException e) {
+                throw new FatalRuntimeException(String.format("cannot read the scrub state file \"%s\"", path), e.getMessage());
+            }
+        }
+        return state;
+    }
+
+    public synchronized long getRound() {
+        try {
+            return Long.parseLong(properties.getProperty(roundKey, "1"));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    public synchronized @Nullable Position get(String file) {
+        final String value = properties.getProperty(file);
+        return null == value ? null : Position.parse(value);
+    }
+
+    public synchronized void put(String file, Position position) {
+        properties.setProperty(file, position.serialize());
+    }
+
+    /**
+     * Forgets the positions within all files and increments the round number.
+     */
+
+    public synchronized void startNewRound() {
+        final long round = getRound();
+        properties.clear();
+        properties.setProperty(roundKey, Long.toString(round + 1));
+    }
+
+    /**
+     * Saves the state. The state file is replaced atomically, so that it is never left half-written.
+     *
+     * @throws FatalRuntimeException if the state file cannot be written.
+     */
+
+    public synchronized void save() throws FatalRuntimeException {
+        try {
+            final Path parent = path.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            final Path temp = Files.createTempFile(parent, "scrub", ".tmp");
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                properties.store(output, "Skriva scrub state");
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the scrub state file \"%s\"", path), e.getMessage());
+        }
+    }
+}
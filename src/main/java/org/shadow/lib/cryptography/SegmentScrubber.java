@@ -0,0 +1,206 @@
+package org.shadow.lib.cryptography;
+
+import org.shadow.lib.concurrent.RateLimiter;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The SegmentScrubber class detects corrupted segments in segmented files (see SegmentedFile), without decrypting
+ * the files entirely.
+ *
+ * For each file, a uniform random sample of segments is drawn, and only the sampled segments are read and
+ * authenticated. A file in which a fraction p of the segments is corrupted goes unnoticed with a probability
+ * of at most (1 - p)^k, where k is the size of the sample. The sampled segments are visited in the order of their
+ * offsets, to keep the reads as sequential as possible.
+ *
+ * The read rate can be capped, and the progress is saved into a ScrubState, so that an interrupted scrub resumes
+ * where it stopped. When all the files have been scrubbed, the next scrub starts a new round with new samples.
+ */
+
+public class SegmentScrubber {
+    private static final long checkpointIntervalNanos = 5_000_000_000L;
+
+    /**
+     * A Corruption describes a segment that cannot be authenticated.
+     *
+     * @param segment the index of the segment.
+     * @param offset the position of the stored segment within the file.
+     * @param storedLength the number of bytes used to store the segment.
+     */
+
+    public record Corruption(int segment, long offset, int storedLength) {}
+
+    /**
+     * A Report describes the result of the scrubbing of a file.
+     *
+     * @param path the path to the file.
+     * @param segmentCount the number of segments in the file.
+     * @param sampleSize the number of segments in the sample.
+     * @param verified the number of segments verified during this run.
+     * @param corruptions the corrupted segments found during this run.
+     */
+
+    public record Report(String path, int segmentCount, int sampleSize, int verified, List<Corruption> corruptions) {
+
+        /**
+         * Returns a lower bound of the probability that the sample contains at least one corrupted segment, given
+         * the fraction of corrupted segments in the file.
+         *
+         * @param corruptedFraction the fraction of corrupted segments in the file (between 0 and 1).
+         * @return the probability of detection.
+         */
+
+        public double detectionProbability(double corruptedFraction) {
+            return 1.0 - Math.pow(1.0 - corruptedFraction, sampleSize);
+        }
+    }
+
+    /**
+     * The Listener interface receives the result of each scrubbed file.
+     */
+
+    public interface Listener {
+        void scrubbed(Report report);
+        void failed(String path, FatalRuntimeException exception);
+    }
+
+    private final double sampleFraction;
+    private final RateLimiter rateLimiter;
+    private final ScrubState state;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Creates a scrubber.
+     *
+     * @param sampleFraction the fraction of the segments of each file to verify (between 0 exclusive and 1 inclusive).
+     * @param rateLimiter the limiter of the read rate (in bytes per second).
+     * @param state the state used to resume an interrupted scrub.
+     */
+
+    public SegmentScrubber(double sampleFraction, RateLimiter rateLimiter, ScrubState state) {
+        this.sampleFraction = sampleFraction;
+        this.rateLimiter = rateLimiter;
+        this.state = state;
+    }
+
+    /**
+     * Scrubs a list of files. Files already scrubbed during the current round are skipped. If all the files have
+     * already been scrubbed, a new round is started.
+     *
+     * @param paths the paths to the files to scrub.
+     * @param password the password used to derive the keys of the files.
+     * @param listener the listener that receives the result of each file.
+     * @throws InterruptedException if the current thread is interrupted. The progress is saved beforehand.
+     * @throws FatalRuntimeException if the state cannot be saved.
+     */
+
+    public void scrub(List<String> paths, String password, Listener listener) throws InterruptedException, FatalRuntimeException {
+        boolean roundComplete = true;
+        for (String path : paths) {
+            final ScrubState.Position position = state.get(path);
+            if (null == position || !position.isComplete()) {
+                roundComplete = false;
+                break;
+            }
+        }
+        if (roundComplete) state.startNewRound();
+
+        for (String path : paths) {
+            final ScrubState.Position position = state.get(path);
+            if (null != position && position.isComplete()) continue;
+            try {
+                listener.scrubbed(scrub(path, password));
+            } catch (FatalRuntimeException e) {
+                // The file cannot be opened. It is considered as scrubbed for the current round.
+                state.put(path, new ScrubState.Position(-1L, 0L, 0, 0));
+                listener.failed(path, e);
+            }
+        }
+        state.save();
+    }
+
+    /**
+     * Scrubs a file, resuming the previous scrub of this file if it has been interrupted.
+     *
+     * @param path the path to the file to scrub.
+     * @param password the password used to derive the key of the file.
+     * @return the report.
+     * @throws InterruptedException if the current thread is interrupted. The progress is saved beforehand.
+     * @throws FatalRuntimeException if the file cannot be opened (for example, if its index is corrupted).
+     */
+
+    public Report scrub(String path, String password) throws InterruptedException, FatalRuntimeException {
+        try (SegmentedFile file = SegmentedFile.open(path, password, false)) {
+            final int segmentCount = file.getSegmentCount();
+            final int sampleSize = calculateSampleSize(segmentCount);
+
+            ScrubState.Position position = state.get(path);
+            if (null == position || position.generation() != file.getGeneration() || position.sampleSize() != sampleSize) {
+                position = new ScrubState.Position(file.getGeneration(), random.nextLong(), 0, sampleSize);
+            }
+
+            final int[] sample = drawSample(segmentCount, sampleSize, position.seed());
+            final List<Corruption> corruptions = new ArrayList<>();
+            long lastCheckpoint = System.nanoTime();
+            int cursor = position.cursor();
+
+            try {
+                while (cursor < sampleSize) {
+                    final int index = sample[cursor];
+                    final SegmentedFile.Entry entry = file.getEntry(index);
+                    rateLimiter.acquire(entry.storedLength());
+                    if (!file.verifySegment(index)) {
+                        corruptions.add(new Corruption(index, entry.offset(), entry.storedLength()));
+                    }
+                    cursor++;
+
+                    if (System.nanoTime() - lastCheckpoint > checkpointIntervalNanos) {
+                        state.put(path, new ScrubState.Position(position.generation(), position.seed(), cursor, sampleSize));
+                        state.save();
+                        lastCheckpoint = System.nanoTime();
+                    }
+                }
+            } finally {
+                state.put(path, new ScrubState.Position(position.generation(), position.seed(), cursor, sampleSize));
+                state.save();
+            }
+            return new Report(path, segmentCount, sampleSize, cursor - position.cursor(), corruptions);
+        }
+    }
+
+    private int calculateSampleSize(int segmentCount) {
+        if (segmentCount == 0) return 0;
+        return (int) Math.max(1, Math.min(segmentCount, Math.ceil(segmentCount * sampleFraction)));
+    }
+
+    /**
+     * Draws a uniform random sample of segment indexes (without replacement), using a partial Fisher-Yates shuffle.
+     * The same seed always produces the same sample, which allows an interrupted scrub to resume.
+     *
+     * @param segmentCount the number of segments in the file.
+     * @param sampleSize the number of segments to draw.
+     * @param seed the seed of the pseudo-random generator.
+     * @return the indexes of the sampled segments, in ascending order.
+     */
+
+    static int[] drawSample(int segmentCount, int sampleSize, long seed) {
+        final int[] indexes = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) indexes[i] = i;
+
+        final Random generator = new Random(seed);
+        for (int i = 0; i < sampleSize; i++) {
+            final int j = i + generator.nextInt(segmentCount - i);
+            final int swap = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = swap;
+        }
+        final int[] sample = Arrays.copyOf(indexes, sampleSize);
+        Arrays.sort(sample);
+        return sample;
+    }
+}
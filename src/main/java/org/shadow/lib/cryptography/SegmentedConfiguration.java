@@ -0,0 +1,146 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.zip.Deflater;
+
+/**
+ * The SegmentedConfiguration class holds the settings used by SkrivaCypherV2 to produce and read segmented files.
+ */
+
+public class SegmentedConfiguration {
+    @Nullable private CipherSuite suite = null; // selected for the host when it is first needed
+    private int segmentSize = SegmentedFile.defaultSegmentSize;
+    private boolean compression = false;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private int threads = TuningProfile.current().getWorkers();
+    private boolean segmentDigests = false;
+    private int kdfLanes = 1;
+    private int kdfIterations = AES256.defaultIterationCount;
+    private int kdfTargetMillis = TuningProfile.current().getKdfTargetMillis();
+
+    /**
+     * Returns the cipher suite used to encrypt new files. Unless a suite has been set, the suite that fits the host
+     * is used (see CipherSuite.preferred). Please note that the existing files are always decrypted with the suite
+     * recorded in their header.
+     *
+     * @return the suite.
+     */
+
+    public CipherSuite getSuite() {
+        if (null == suite) suite = CipherSuite.preferred();
+        return suite;
+    }
+
+    public void setSuite(@Nullable CipherSuite suite) {
+        this.suite = suite;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Tells whether the segments are compressed before being encrypted. Please note that, even if the compression
+     * is enabled, files whose content does not compress are stored uncompressed (see CompressibilityProbe).
+     *
+     * @return true if the compression is enabled.
+     */
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the number of segments processed in parallel.
+     *
+     * @return the number of threads.
+     */
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Tells whether the digest of the plaintext of each segment is recorded (see SegmentedFile). The digests speed
+     * up the update of an encrypted file, since the unchanged segments are detected without being decrypted.
+     *
+     * @return true if the digests are recorded.
+     */
+
+    public boolean isSegmentDigests() {
+        return segmentDigests;
+    }
+
+    public void setSegmentDigests(boolean segmentDigests) {
+        this.segmentDigests = segmentDigests;
+    }
+
+    /**
+     * Returns the number of PBKDF2 chains computed in parallel to derive the key of new files (see AES256). With N
+     * lanes, an attacker does N times more work per password, for the same unlock time on a host with N processors.
+     * Please note that the files with more than one lane cannot be read by the versions of the application that
+     * predate the lanes.
+     *
+     * @return the number of lanes (1 by default).
+     */
+
+    public int getKdfLanes() {
+        return kdfLanes;
+    }
+
+    public void setKdfLanes(int kdfLanes) {
+        this.kdfLanes = kdfLanes;
+    }
+
+    /**
+     * Returns the number of PBKDF2 iterations of each lane, for new files. If a target unlock time is set, the
+     * number of iterations is calibrated on the current host (see AES256.calibrateIterationCount). It is recorded in
+     * the header of the file, so that the file can be decrypted on any host.
+     *
+     * @return the number of iterations.
+     */
+
+    public int getKdfIterations() {
+        return kdfTargetMillis > 0 ? AES256.calibrateIterationCount(kdfTargetMillis, kdfLanes) : kdfIterations;
+    }
+
+    public void setKdfIterations(int kdfIterations) {
+        this.kdfIterations = kdfIterations;
+    }
+
+    /**
+     * Returns the time the derivation of the key of a new file should last on the current host.
+     *
+     * @return the time, in milliseconds, or 0 to use a fixed number of iterations (the default, unless the tuning
+     *         profile sets a target).
+     */
+
+    public int getKdfTargetMillis() {
+        return kdfTargetMillis;
+    }
+
+    public void setKdfTargetMillis(int kdfTargetMillis) {
+        this.kdfTargetMillis = kdfTargetMillis;
+    }
+}
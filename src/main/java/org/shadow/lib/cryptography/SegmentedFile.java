@@ -0,0 +1,742 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.compression.DeflateCodec;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+/**
+ * The SegmentedFile class implements an encrypted file format made of independently authenticated segments.
+ *
+ * Unlike the format produced by AESFile (a single CBC stream), each segment can be read, verified or rewritten
+ * without processing the rest of the file.
+ *
+ * Layout:
+ *
+ *     [header (see SegmentedHeader)][slot 0][slot 1][segment 0][segment 1]...[footer]
+ *
+ * - A slot contains a generation number (8 bytes), the offset of a footer (8 bytes) and its length (4 bytes).
+ *   The slot with the greatest generation whose footer can be authenticated designates the current footer.
+ *   A new footer is always written before the slot that designates it. Thus, an interrupted update leaves
+ *   the previous state of the file intact.
+ * - A segment is stored as [nonce][ciphertext][tag]. Its associated data binds it to the header, to its position
+ *   in the file, to its kind and to its plaintext length.
+ * - The footer is stored like a segment. It contains the index of the segments (offset, stored length, plaintext
+ *   length and kind of each segment), optionally followed by the SHA-256 digest of the plaintext of each segment,
+ *   and by application metadata (for example, the list of the members of a container).
+ *
+ * Segments of kind "deflate" are compressed before being encrypted. Since each segment is compressed independently
+ * and the index records its location, segments can be compressed, and decompressed, in parallel.
+ *
+ * Segments of kind "zero" contain only zero bytes. They occupy no space in the file: their entry in the index (which
+ * is authenticated along with the footer) records their plaintext length only. When a file is decrypted, they are
+ * left as holes, so that sparse files (VM images, preallocated database files...) remain sparse.
+ *
+ * Segments can be replaced. The new version of a segment is appended to the file and the next commit designates it,
+ * so that the previous state remains intact until the commit. The space used by the previous version is not reused:
+ * see `getUnusedLength`.
+ *
+ * The methods that seal and read segments are thread-safe. The methods that append segments and commit the index
+ * must be called from a single thread.
+ */
+
+public class SegmentedFile implements AutoCloseable {
+    public static final int defaultSegmentSize = 1024 * 1024;
+    public static final byte kindData = 1;
+    public static final byte kindDeflate = 2;
+    public static final byte kindZero = 3;
+    private static final int slotLength = 20;
+    private static final long footerIndex = -1L;
+    private static final int flagMetadata = 1;
+    private static final int flagDigests = 2;
+    public static final int digestLength = 32;
+    static final int dataOffset = SegmentedHeader.length + 2 * slotLength;
+
+    /**
+     * An Entry describes the location and the content of a segment.
+     *
+     * @param offset the position of the stored segment within the file.
+     * @param storedLength the number of bytes used to store the segment.
+     * @param plainLength the number of plaintext bytes represented by the segment.
+     * @param kind the kind of segment.
+     */
+
+    public record Entry(long offset, int storedLength, int plainLength, byte kind) {}
+
+    /**
+     * A Sealed segment is a segment that has been encrypted, but not yet written into the file.
+     *
+     * @param index the index of the segment.
+     * @param kind the kind of segment.
+     * @param plainLength the number of plaintext bytes represented by the segment.
+     * @param stored the stored representation of the segment.
+     * @param digest the SHA-256 digest of the plaintext, or null if the file does not record digests.
+     */
+
+    public record Sealed(int index, byte kind, int plainLength, byte[] stored, byte @Nullable [] digest) {}
+
+    private record Slot(long generation, long footerOffset, int footerLength) {}
+
+    private static final byte[] zeroes = new byte[64 * 1024];
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("the SHA-256 algorithm is not available!");
+        }
+    });
+
+    private final String path;
+    private final FileChannel channel;
+    private final SegmentedHeader header;
+    private final byte[] headerBytes;
+    private final SecretKey key;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> ciphers;
+    private final ThreadLocal<byte[]> scratchBuffers;
+    private final DeflateCodec decompressor = new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+    private final List<Entry> entries;
+    private final List<byte[]> digests = new ArrayList<>();
+    private boolean segmentDigests = false;
+    private byte[] metadata = new byte[0];
+    private long plaintextLength;
+    private long generation;
+    private long nextOffset;
+    private long footerLength;
+
+    private SegmentedFile(String path, FileChannel channel, SegmentedHeader header, SecretKey key) {
+        this.path = path;
+        this.channel = channel;
+        this.header = header;
+        this.headerBytes = header.serialize();
+        this.key = key;
+        this.ciphers = ThreadLocal.withInitial(header.getSuite()::newCipher);
+        this.scratchBuffers = ThreadLocal.withInitial(() -> new byte[header.getSegmentSize()]);
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * Creates a new segmented file. If the file already exists, it is truncated.
+     * Please note that the file is not readable until `commit` has been called.
+     *
+     * @param path the path to the file to create.
+     * @param password the password used to derive the key.
+     * @param header the header of the file.
+     * @return the new file, opened for writing.
+     * @throws FatalRuntimeException if the file cannot be created.
+     */
+
+    public static SegmentedFile create(String path, String password, SegmentedHeader header) throws FatalRuntimeException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot create the output file \"%s\"", path), e.getMessage());
+        }
+
+        final SegmentedFile file = new SegmentedFile(path, channel, header, deriveKey(password, header));
+        try {
+            file.write(ByteBuffer.allocate(dataOffset).put(file.headerBytes).rewind(), 0);
+        } catch (IOException e) {
+            file.closeQuietly();
+            throw new FatalRuntimeException(String.format("cannot write the header of the file \"%s\"", path), e.getMessage());
+        }
+        file.nextOffset = dataOffset;
+        return file;
+    }
+
+    /**
+     * Opens an existing segmented file and loads its index.
+     *
+     * @param path the path to the file to open.
+     * @param password the password used to derive the key.
+     * @param writable true to open the file for appending segments, false to open it for reading only.
+     * @return the opened file.
+     * @throws FatalRuntimeException if the file is not a segmented file, if it is corrupted or if the password is not valid.
+     */
+
+    public static SegmentedFile open(String path, String password, boolean writable) throws FatalRuntimeException {
+        final FileChannel channel;
+        try {
+            channel = writable
+                    ? FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot open the input file \"%s\"", path), e.getMessage());
+        }
+
+        try {
+            final ByteBuffer prefix = ByteBuffer.allocate(dataOffset);
+            readFully(channel, prefix, 0);
+            final SegmentedHeader header = SegmentedHeader.parse(prefix.array());
+            final SegmentedFile file = new SegmentedFile(path, channel, header, deriveKey(password, header));
+
+            // Try the most recent footer first.
+            prefix.position(SegmentedHeader.length);
+            final Slot first = new Slot(prefix.getLong(), prefix.getLong(), prefix.getInt());
+            final Slot second = new Slot(prefix.getLong(), prefix.getLong(), prefix.getInt());
+            final Slot[] slots = first.generation() >= second.generation() ? new Slot[]{first, second} : new Slot[]{second, first};
+            for (Slot slot : slots) {
+                if (slot.generation() > 0 && file.loadFooter(slot)) {
+                    file.nextOffset = channel.size();
+                    return file;
+                }
+            }
+            channel.close();
+            throw new FatalRuntimeException("the encrypted file is corrupted or the given secret key is not valid",
+                    String.format("input file: \"%s\"", path));
+        } catch (EOFException e) {
+            closeQuietly(channel);
+            throw new FatalRuntimeException("the input file is not a segmented encrypted file",
+                    String.format("input file: \"%s\"", path));
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new FatalRuntimeException(String.format("cannot read the input file \"%s\"", path), e.getMessage());
+        } catch (FatalRuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public SegmentedHeader getHeader() {
+        return header;
+    }
+
+    public int getSegmentCount() {
+        return entries.size();
+    }
+
+    public Entry getEntry(int index) {
+        return entries.get(index);
+    }
+
+    public long getPlaintextLength() {
+        return plaintextLength;
+    }
+
+    /**
+     * Tells whether the file records the SHA-256 digest of the plaintext of each segment. The digests allow
+     * detecting the segments of a plaintext file that have changed, without decrypting the segments.
+     *
+     * @return true if the digests are recorded.
+     */
+
+    public boolean hasSegmentDigests() {
+        return segmentDigests;
+    }
+
+    /**
+     * Enables the recording of the digests of the segments. It can only be enabled before the first segment is
+     * appended.
+     *
+     * @throws FatalRuntimeException if the file already contains segments.
+     */
+
+    public void enableSegmentDigests() throws FatalRuntimeException {
+        if (!entries.isEmpty()) {
+            throw new FatalRuntimeException("the digests of the segments can only be enabled for an empty file");
+        }
+        segmentDigests = true;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the plaintext of a segment.
+     *
+     * @param index the index of the segment.
+     * @return the digest, or null if the file does not record digests.
+     */
+
+    public byte @Nullable [] getDigest(int index) {
+        return segmentDigests ? digests.get(index).clone() : null;
+    }
+
+    /**
+     * Computes the SHA-256 digest of a buffer, as recorded for the segments.
+     *
+     * @param buffer the buffer.
+     * @param length the number of bytes to digest.
+     * @return the digest.
+     */
+
+    public static byte[] digest(byte[] buffer, int length) {
+        final MessageDigest md = sha256.get();
+        md.update(buffer, 0, length);
+        return md.digest();
+    }
+
+    /**
+     * Returns the number of bytes of the file that are not used by the segments or by the current footer: previous
+     * versions of replaced segments, and previous footers.
+     *
+     * @return the number of unused bytes.
+     */
+
+    public long getUnusedLength() {
+        long used = dataOffset;
+        for (Entry entry : entries) used += entry.storedLength();
+        return nextOffset - used - footerLength;
+    }
+
+    /**
+     * Returns the application metadata stored in the footer.
+     *
+     * @return the metadata (empty if the file has no metadata).
+     */
+
+    public byte[] getMetadata() {
+        return metadata.clone();
+    }
+
+    /**
+     * Sets the application metadata stored in the footer. The metadata is encrypted and authenticated along with
+     * the index of the segments. It is written by the next commit.
+     *
+     * @param metadata the metadata.
+     */
+
+    public void setMetadata(byte[] metadata) {
+        this.metadata = metadata.clone();
+    }
+
+    /**
+     * Returns the generation of the footer currently in use. The generation is incremented by each commit.
+     *
+     * @return the generation.
+     */
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Encrypts a segment and appends it to the file. The segment becomes visible to readers after the next commit.
+     *
+     * @param buffer the buffer that contains the plaintext.
+     * @param length the number of plaintext bytes (at most the segment size).
+     * @throws FatalRuntimeException if the segment cannot be written.
+     */
+
+    public void appendSegment(byte[] buffer, int length) throws FatalRuntimeException {
+        appendSealed(sealSegment(entries.size(), buffer, length, null));
+    }
+
+    /**
+     * Encrypts a segment, optionally after compressing it. A segment that contains only zero bytes is not encrypted:
+     * it is recorded as a "zero" segment. This method does not modify the file, and it can be called concurrently
+     * for different segments.
+     *
+     * @param index the index that the segment will have in the file.
+     * @param buffer the buffer that contains the plaintext.
+     * @param length the number of plaintext bytes (at most the segment size).
+     * @param compressor if not null, the codec used to compress the segment. The segment is stored uncompressed
+     *                   if the compression does not reduce its size.
+     * @return the sealed segment.
+     * @throws FatalRuntimeException if an unexpected cryptographic error occurs.
+     */
+
+    public Sealed sealSegment(int index, byte[] buffer, int length, @Nullable DeflateCodec compressor) throws FatalRuntimeException {
+        final byte @Nullable [] digest = segmentDigests ? digest(buffer, length) : null;
+        if (isZero(buffer, length)) {
+            return new Sealed(index, kindZero, length, new byte[0], digest);
+        }
+        if (null != compressor) {
+            final byte[] compressed = scratchBuffers.get();
+            final int compressedLength = compressor.compress(buffer, length, compressed);
+            if (compressedLength >= 0) {
+                return new Sealed(index, kindDeflate, length, seal(segmentAad(index, kindDeflate, length), compressed, 0, compressedLength), digest);
+            }
+        }
+        return new Sealed(index, kindData, length, seal(segmentAad(index, kindData, length), buffer, 0, length), digest);
+    }
+
+    /**
+     * Appends a sealed segment to the file. The segments must be appended in the order of their indexes.
+     * The segment becomes visible to readers after the next commit.
+     *
+     * @param sealed the sealed segment.
+     * @throws FatalRuntimeException if the segment is out of order or if it cannot be written.
+     */
+
+    public void appendSealed(Sealed sealed) throws FatalRuntimeException {
+        if (sealed.index() != entries.size()) {
+            throw new FatalRuntimeException("unexpected segment order",
+                    String.format("segment %d appended at position %d", sealed.index(), entries.size()));
+        }
+        replaceSealed(sealed);
+    }
+
+    /**
+     * Writes a sealed segment that replaces an existing segment, or that is appended (if its index is the number of
+     * segments). The new version of the segment is written at the end of the file, and it becomes visible to readers
+     * after the next commit.
+     *
+     * @param sealed the sealed segment.
+     * @throws FatalRuntimeException if the index is out of range or if the segment cannot be written.
+     */
+
+    public void replaceSealed(Sealed sealed) throws FatalRuntimeException {
+        final int index = sealed.index();
+        if (index < 0 || index > entries.size()) {
+            throw new FatalRuntimeException("unexpected segment order",
+                    String.format("segment %d written, but the file has %d segments", index, entries.size()));
+        }
+        if (segmentDigests && null == sealed.digest()) {
+            throw new FatalRuntimeException("the digest of the segment is missing", String.format("segment %d", index));
+        }
+        try {
+            write(ByteBuffer.wrap(sealed.stored()), nextOffset);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write to the file \"%s\"", path), e.getMessage());
+        }
+        final Entry entry = new Entry(nextOffset, sealed.stored().length, sealed.plainLength(), sealed.kind());
+        if (index == entries.size()) {
+            entries.add(entry);
+            if (segmentDigests) digests.add(sealed.digest());
+        } else {
+            plaintextLength -= entries.get(index).plainLength();
+            entries.set(index, entry);
+            if (segmentDigests) digests.set(index, sealed.digest());
+        }
+        nextOffset += sealed.stored().length;
+        plaintextLength += sealed.plainLength();
+    }
+
+    /**
+     * Removes the last segments of the file. The change becomes visible to readers after the next commit.
+     *
+     * @param count the number of segments to keep.
+     */
+
+    public void truncateSegments(int count) {
+        while (entries.size() > count) {
+            plaintextLength -= entries.removeLast().plainLength();
+            if (segmentDigests) digests.removeLast();
+        }
+    }
+
+    /**
+     * Reads, authenticates and decrypts a segment.
+     *
+     * @param index the index of the segment.
+     * @param destination the buffer that receives the plaintext (its length must be at least the segment size).
+     * @return the number of plaintext bytes written into the destination buffer.
+     * @throws FatalRuntimeException if the segment cannot be read or authenticated.
+     */
+
+    public int readSegment(int index, byte[] destination) throws FatalRuntimeException {
+        return readSegment(index, entries.get(index), destination);
+    }
+
+    /**
+     * Reads, authenticates and decrypts a segment, designated by an entry read beforehand (see getEntry). Unlike
+     * `readSegment(index, destination)`, this method does not read the index of the file: it can be called while
+     * another thread replaces segments, as long as the given segment has not been committed over.
+     *
+     * @param index the index of the segment.
+     * @param entry the entry of the segment.
+     * @param destination the buffer that receives the plaintext (its length must be at least the segment size).
+     * @return the number of plaintext bytes written into the destination buffer.
+     * @throws FatalRuntimeException if the segment cannot be read or authenticated.
+     */
+
+    public int readSegment(int index, Entry entry, byte[] destination) throws FatalRuntimeException {
+        if (entry.kind() == kindZero) {
+            Arrays.fill(destination, 0, entry.plainLength(), (byte) 0);
+            return entry.plainLength();
+        }
+        try {
+            final byte[] aad = segmentAad(index, entry.kind(), entry.plainLength());
+            if (entry.kind() == kindDeflate) {
+                final byte[] compressed = scratchBuffers.get();
+                final int compressedLength = open(aad, readStored(entry), compressed);
+                decompressor.decompress(compressed, compressedLength, destination, entry.plainLength());
+                return entry.plainLength();
+            }
+            return open(aad, readStored(entry), destination);
+        } catch (DataFormatException e) {
+            throw new FatalRuntimeException("the encrypted file is corrupted",
+                    String.format("segment %d at offset %d in \"%s\" cannot be decompressed: %s", index, entry.offset(), path, e.getMessage()));
+        } catch (AEADBadTagException e) {
+            throw new FatalRuntimeException("the encrypted file is corrupted",
+                    String.format("segment %d at offset %d in \"%s\" cannot be authenticated", index, entry.offset(), path));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", path),
+                    String.format("segment %d at offset %d: %s", index, entry.offset(), e.getMessage()));
+        }
+    }
+
+    /**
+     * Verifies that a segment can be read and authenticated.
+     *
+     * @param index the index of the segment.
+     * @return true if the segment is valid, false if it is corrupted or truncated.
+     * @throws FatalRuntimeException if an unexpected cryptographic error occurs.
+     */
+
+    public boolean verifySegment(int index) throws FatalRuntimeException {
+        final Entry entry = entries.get(index);
+        if (entry.kind() == kindZero) return true;
+        try {
+            open(segmentAad(index, entry.kind(), entry.plainLength()), readStored(entry), scratchBuffers.get());
+            return true;
+        } catch (AEADBadTagException | IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the index of the segments, then makes it the current index of the file.
+     *
+     * @throws FatalRuntimeException if the index cannot be written.
+     */
+
+    public void commit() throws FatalRuntimeException {
+        final long newGeneration = generation + 1;
+        final int flags = (metadata.length > 0 ? flagMetadata : 0) | (segmentDigests ? flagDigests : 0);
+        final ByteBuffer footer = ByteBuffer.allocate(4 + 4 + 8 + entries.size() * 17
+                + (segmentDigests ? entries.size() * digestLength : 0)
+                + (metadata.length > 0 ? 4 + metadata.length : 0));
+        footer.putInt(flags);
+        footer.putInt(entries.size());
+        footer.putLong(plaintextLength);
+        for (Entry entry : entries) {
+            footer.putLong(entry.offset()).putInt(entry.storedLength()).putInt(entry.plainLength()).put(entry.kind());
+        }
+        if (segmentDigests) {
+            for (byte[] digest : digests) footer.put(digest);
+        }
+        if (metadata.length > 0) {
+            footer.putInt(metadata.length).put(metadata);
+        }
+        final byte[] stored = seal(footerAad(newGeneration), footer.array(), 0, footer.capacity());
+
+        try {
+            final long footerOffset = nextOffset;
+            write(ByteBuffer.wrap(stored), footerOffset);
+            channel.force(false);
+            final ByteBuffer slot = ByteBuffer.allocate(slotLength).putLong(newGeneration).putLong(footerOffset).putInt(stored.length);
+            write(slot.rewind(), SegmentedHeader.length + (newGeneration % 2) * slotLength);
+            channel.force(false);
+            nextOffset += stored.length;
+            footerLength = stored.length;
+            generation = newGeneration;
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the index of the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the current segments, their digests and the metadata into a new file, without the unused space (see
+     * `getUnusedLength`). The segments are copied as they are stored: they are neither decrypted nor encrypted again.
+     * Since the new file has the same header (hence the same salt and key), the copied segments remain valid there.
+     *
+     * Please note that the segments that have not been committed are copied, and committed in the new file.
+     *
+     * @param targetPath the path to the new file. If the file already exists, it is truncated.
+     * @throws FatalRuntimeException if the file cannot be read, or if the new file cannot be written.
+     */
+
+    public void copyTo(String targetPath) throws FatalRuntimeException {
+        final FileChannel targetChannel;
+        try {
+            targetChannel = FileChannel.open(Paths.get(targetPath), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot create the output file \"%s\"", targetPath), e.getMessage());
+        }
+        try (SegmentedFile target = new SegmentedFile(targetPath, targetChannel, header, key)) {
+            target.write(ByteBuffer.allocate(dataOffset).put(target.headerBytes).rewind(), 0);
+            target.nextOffset = dataOffset;
+            target.segmentDigests = segmentDigests;
+            target.metadata = metadata.clone();
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                final byte[] stored = entry.kind() == kindZero ? new byte[0] : readStored(entry);
+                target.replaceSealed(new Sealed(i, entry.kind(), entry.plainLength(), stored, segmentDigests ? digests.get(i) : null));
+            }
+            target.commit();
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot copy the file \"%s\" to \"%s\"", path, targetPath), e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws FatalRuntimeException {
+        decompressor.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot close the file \"%s\"", path), e.getMessage());
+        }
+    }
+
+    private void closeQuietly() {
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing can be done.
+        }
+    }
+
+    /**
+     * Loads the footer designated by a given slot.
+     *
+     * @param slot the slot.
+     * @return true if the footer has been loaded, false if it cannot be authenticated.
+     * @throws IOException if an I/O error occurs.
+     */
+
+    private boolean loadFooter(Slot slot) throws IOException {
+        if (slot.footerOffset() < dataOffset || slot.footerLength() < header.getSuite().getNonceLength() + header.getSuite().getTagLength()
+                || slot.footerOffset() + slot.footerLength() > channel.size()) {
+            return false;
+        }
+
+        final byte[] plain;
+        try {
+            final byte[] stored = readStored(new Entry(slot.footerOffset(), slot.footerLength(), 0, kindData));
+            plain = new byte[stored.length];
+            final int length = open(footerAad(slot.generation()), stored, plain);
+            final ByteBuffer footer = ByteBuffer.wrap(plain, 0, length);
+            final int flags = footer.getInt();
+            final int count = footer.getInt();
+            plaintextLength = footer.getLong();
+            entries.clear();
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(footer.getLong(), footer.getInt(), footer.getInt(), footer.get()));
+            }
+            segmentDigests = (flags & flagDigests) != 0;
+            digests.clear();
+            for (int i = 0; segmentDigests && i < count; i++) {
+                final byte[] digest = new byte[digestLength];
+                footer.get(digest);
+                digests.add(digest);
+            }
+            metadata = new byte[(flags & flagMetadata) != 0 ? footer.getInt() : 0];
+            footer.get(metadata);
+        } catch (AEADBadTagException e) {
+            return false;
+        }
+        generation = slot.generation();
+        footerLength = slot.footerLength();
+        return true;
+    }
+
+    /**
+     * Tells whether a buffer contains only zero bytes. The buffer is compared against a block of zeroes, which
+     * is much faster than a loop over the bytes.
+     */
+
+    private static boolean isZero(byte[] buffer, int length) {
+        for (int offset = 0; offset < length; offset += zeroes.length) {
+            final int chunk = Math.min(zeroes.length, length - offset);
+            if (Arrays.mismatch(buffer, offset, offset + chunk, zeroes, 0, chunk) >= 0) return false;
+        }
+        return length > 0;
+    }
+
+    private byte[] readStored(Entry entry) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(entry.storedLength());
+        readFully(channel, buffer, entry.offset());
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of file");
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Encrypts and authenticates a buffer. A new random nonce is used for each call.
+     *
+     * @return the stored representation: [nonce][ciphertext][tag].
+     */
+
+    private byte[] seal(byte[] aad, byte[] buffer, int offset, int length) throws FatalRuntimeException {
+        final CipherSuite suite = header.getSuite();
+        final byte[] stored = new byte[suite.getNonceLength() + length + suite.getTagLength()];
+        random.nextBytes(stored);
+        try {
+            final Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, suite.parameterSpec(stored, 0));
+            cipher.updateAAD(aad);
+            cipher.doFinal(buffer, offset, length, stored, suite.getNonceLength());
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while encrypting the file (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+        return stored;
+    }
+
+    /**
+     * Authenticates and decrypts a stored buffer.
+     *
+     * @return the number of plaintext bytes written into the destination buffer.
+     * @throws AEADBadTagException if the stored buffer cannot be authenticated.
+     */
+
+    private int open(byte[] aad, byte[] stored, byte[] destination) throws AEADBadTagException, FatalRuntimeException {
+        final CipherSuite suite = header.getSuite();
+        if (stored.length < suite.getNonceLength() + suite.getTagLength()) {
+            throw new AEADBadTagException("the stored segment is too short");
+        }
+        try {
+            final Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, suite.parameterSpec(stored, 0));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(stored, suite.getNonceLength(), stored.length - suite.getNonceLength(), destination, 0);
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while decrypting the file (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+
+    private byte[] segmentAad(long index, byte kind, int plainLength) {
+        return ByteBuffer.allocate(headerBytes.length + 13).put(headerBytes).putLong(index).put(kind).putInt(plainLength).array();
+    }
+
+    private byte[] footerAad(long generation) {
+        return ByteBuffer.allocate(headerBytes.length + 16).put(headerBytes).putLong(footerIndex).putLong(generation).array();
+    }
+
+    private static SecretKey deriveKey(String password, SegmentedHeader header) {
+        final SecretKey key = AES256.generateKeyFromPassword(password, header.getSalt(), header.getKdfIterations(), header.getKdfLanes());
+        return header.getSuite().toKey(key.getEncoded());
+    }
+}
@@ -0,0 +1,213 @@
+package org.shadow.lib.cryptography;
+
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * The SegmentedHeader class represents the immutable part of the header of a segmented file (see SegmentedFile).
+ *
+ * Layout (all integers are big-endian):
+ *
+ *     offset  length  field
+ *          0       8  magic ("SKRVSEGM")
+ *          8       1  format version
+ *          9       1  cipher suite identifier (see CipherSuite)
+ *         10       1  key derivation function identifier (1: PBKDF2-HmacSHA256)
+ *         11       1  number of key derivation lanes (PBKDF2 chains computed in parallel, see AES256)
+ *         12       4  number of key derivation iterations (fixed, or calibrated when the file is created)
+ *         16       4  segment size (number of plaintext bytes per segment)
+ *         20      16  salt
+ *         36       1  content type (0: a single file, 1: a container of files)
+ *         37      11  reserved (zeros)
+ *
+ * These 48 bytes are authenticated as associated data by every segment and by the footer.
+ *
+ * The header is read before any authentication: the segment size and the cost of the key derivation are bounded (see
+ * `maxSegmentSize`, `maxKdfIterations` and AES256.maxKdfLanes), so that a forged header cannot exhaust the memory or
+ * the processors of the host before the password is checked.
+ */
+
+public class SegmentedHeader {
+    private static final byte[] magic = "SKRVSEGM".getBytes(StandardCharsets.US_ASCII);
+    private static final byte currentVersion = 1;
+    private static final byte kdfPbkdf2HmacSha256 = 1;
+    private static final int saltLength = 16;
+    static final int length = 48;
+    public static final byte contentFile = 0;
+    public static final byte contentContainer = 1;
+    public static final int maxSegmentSize = 64 * 1024 * 1024;
+    public static final int maxKdfIterations = 1 << 24;
+
+    private final CipherSuite suite;
+    private final int kdfLanes;
+    private final int kdfIterations;
+    private final int segmentSize;
+    private final byte[] salt;
+    private final byte contentType;
+
+    private SegmentedHeader(CipherSuite suite, int kdfLanes, int kdfIterations, int segmentSize, byte[] salt, byte contentType) {
+        this.suite = suite;
+        this.kdfLanes = kdfLanes;
+        this.kdfIterations = kdfIterations;
+        this.segmentSize = segmentSize;
+        this.salt = salt;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Generates the header of a new file. A new random salt is generated.
+     *
+     * @param suite the cipher suite used to protect the segments.
+     * @param segmentSize the number of plaintext bytes per segment.
+     * @return the new header.
+     */
+
+    public static SegmentedHeader generate(CipherSuite suite, int segmentSize) {
+        return generate(suite, segmentSize, contentFile);
+    }
+
+    /**
+     * Generates the header of a new file, with a given content type. A new random salt is generated.
+     *
+     * @param suite the cipher suite used to protect the segments.
+     * @param segmentSize the number of plaintext bytes per segment.
+     * @param contentType the type of content (`contentFile` or `contentContainer`).
+     * @return the new header.
+     */
+
+    public static SegmentedHeader generate(CipherSuite suite, int segmentSize, byte contentType) {
+        return generate(suite, segmentSize, contentType, 1, AES256.defaultIterationCount);
+    }
+
+    /**
+     * Generates the header of a new file, with a given content type and key derivation cost. A new random salt is
+     * generated.
+     *
+     * @param suite the cipher suite used to protect the segments.
+     * @param segmentSize the number of plaintext bytes per segment.
+     * @param contentType the type of content (`contentFile` or `contentContainer`).
+     * @param kdfLanes the number of PBKDF2 chains computed in parallel to derive the key (see AES256).
+     * @param kdfIterations the number of PBKDF2 iterations of each lane.
+     * @return the new header.
+     */
+
+    public static SegmentedHeader generate(CipherSuite suite, int segmentSize, byte contentType, int kdfLanes, int kdfIterations) {
+        final byte[] salt = new byte[saltLength];
+        new SecureRandom().nextBytes(salt);
+        return new SegmentedHeader(suite, kdfLanes, kdfIterations, segmentSize, salt, contentType);
+    }
+
+    public CipherSuite getSuite() {
+        return suite;
+    }
+
+    public int getKdfLanes() {
+        return kdfLanes;
+    }
+
+    public int getKdfIterations() {
+        return kdfIterations;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public byte getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Serializes the header.
+     *
+     * @return the serialized header (its length is always `SegmentedHeader.length`).
+     */
+
+    public byte[] serialize() {
+        return ByteBuffer.allocate(length)
+                .put(magic)
+                .put(currentVersion)
+                .put(suite.getIdentifier())
+                .put(kdfPbkdf2HmacSha256)
+                .put((byte) kdfLanes)
+                .putInt(kdfIterations)
+                .putInt(segmentSize)
+                .put(salt)
+                .put(contentType)
+                .array();
+    }
+
+    /**
+     * Parses a serialized header.
+     *
+     * @param bytes the serialized header.
+     * @return the header.
+     * @throws FatalRuntimeException if the given bytes do not represent a valid header.
+     */
+
+    public static SegmentedHeader parse(byte[] bytes) throws FatalRuntimeException {
+        if (bytes.length < length || !Arrays.equals(bytes, 0, magic.length, magic, 0, magic.length)) {
+            throw new FatalRuntimeException("the input file is not a segmented encrypted file");
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, magic.length, length - magic.length);
+        final byte version = buffer.get();
+        if (version != currentVersion) {
+            throw new FatalRuntimeException("the encrypted file has been created by a newer version of the application",
+                    String.format("format version: %d", version));
+        }
+        final CipherSuite suite = CipherSuite.identifierToEnum(buffer.get());
+        final byte kdf = buffer.get();
+        if (kdf != kdfPbkdf2HmacSha256) {
+            throw new FatalRuntimeException("the encrypted file uses an unknown key derivation function",
+                    String.format("key derivation function identifier: %d", kdf));
+        }
+        final int kdfLanes = buffer.get() & 0xFF;
+        final int kdfIterations = buffer.getInt();
+        final int segmentSize = buffer.getInt();
+        final byte[] salt = new byte[saltLength];
+        buffer.get(salt);
+        final byte contentType = buffer.get();
+        if (kdfLanes < 1 || kdfIterations < 1 || segmentSize < 1) {
+            throw new FatalRuntimeException("the header of the encrypted file is corrupted");
+        }
+        if (kdfLanes > AES256.maxKdfLanes || kdfIterations > maxKdfIterations || segmentSize > maxSegmentSize) {
+            throw new FatalRuntimeException("the header of the encrypted file exceeds the supported limits",
+                    String.format("key derivation lanes: %d (at most %d), key derivation iterations: %d (at most %d), segment size: %d (at most %d)",
+                            kdfLanes, AES256.maxKdfLanes, kdfIterations, maxKdfIterations, segmentSize, maxSegmentSize));
+        }
+        if (contentType != contentFile && contentType != contentContainer) {
+            throw new FatalRuntimeException("the encrypted file has been created by a newer version of the application",
+                    String.format("content type: %d", contentType));
+        }
+        return new SegmentedHeader(suite, kdfLanes, kdfIterations, segmentSize, salt, contentType);
+    }
+
+    /**
+     * Tests whether a given file starts with the magic of a segmented file.
+     *
+     * @param path the path to the file to test.
+     * @return true if the file is a segmented file, false otherwise.
+     */
+
+    public static boolean isSegmentedFile(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(magic.length);
+            channel.read(buffer, 0);
+            return !buffer.hasRemaining() && Arrays.equals(buffer.array(), magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
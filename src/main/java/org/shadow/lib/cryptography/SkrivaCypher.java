@@ -5,4 +5,27 @@ import org.jetbrains.annotations.Nullable;
 public interface SkrivaCypher {
     void EncryptFile(String inputFile, String outputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws RuntimeException;
     void DecryptFile(String inputFile, String outputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws RuntimeException;
+
+    /**
+     * Returns the cypher able to decrypt a given encrypted file, based on the format of the file.
+     *
+     * @param path the path to the encrypted file.
+     * @return the cypher that must be used to decrypt the file.
+     */
+
+    static SkrivaCypher forEncryptedFile(String path) {
+        return forEncryptedFile(path, new SegmentedConfiguration());
+    }
+
+    /**
+     * Returns the cypher able to decrypt a given encrypted file, based on the format of the file.
+     *
+     * @param path the path to the encrypted file.
+     * @param configuration the configuration used if the file is segmented (only the number of threads matters).
+     * @return the cypher that must be used to decrypt the file.
+     */
+
+    static SkrivaCypher forEncryptedFile(String path, SegmentedConfiguration configuration) {
+        return SegmentedHeader.isSegmentedFile(path) ? new SkrivaCypherV2(configuration) : new SkrivaCypherV1();
+    }
 }
@@ -3,7 +3,10 @@ package org.shadow.lib.cryptography;
 import org.jetbrains.annotations.Nullable;
 import org.shadow.lib.exception.FatalRuntimeException;
 import org.shadow.lib.file.FileManip;
+import org.shadow.lib.monitoring.CryptoPhaseEvent;
+import org.shadow.lib.monitoring.CryptoStatistics;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -11,6 +14,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -18,10 +22,58 @@ import java.util.Arrays;
 
 /**
  * SkrivaCypherV1 is a utility class for encrypting and decrypting files using AES encryption and validating
- * file integrity through MD5 checksums. It supports updating progress through a TaskUpdater interface.
+ * file integrity through MD5 checksums. It reports a single, steady progress through a TaskUpdater interface (see
+ * ProgressTracker).
+ *
+ * Each phase of an operation is recorded by a JFR event (see CryptoPhaseEvent), and each file by the active
+ * CryptoStatistics collection, if any.
  */
 
 public class SkrivaCypherV1 implements SkrivaCypher {
+    // The relative costs of the phases, per byte: the copy and the digest are bound by the disk, the AES by the CPU.
+    private static final ProgressTracker.Phase[] encryptionPhases = {
+            new ProgressTracker.Phase("digest", 1),
+            new ProgressTracker.Phase("copy", 1),
+            new ProgressTracker.Phase("encrypt", 1.5)
+    };
+    private static final ProgressTracker.Phase[] decryptionPhases = {
+            new ProgressTracker.Phase("decrypt", 1.5),
+            new ProgressTracker.Phase("verify", 1)
+    };
+
+    @Nullable private final IntegrityTrailer.Algorithm trailerAlgorithm;
+    @Nullable private final DigestCache digestCache;
+
+    /**
+     * Creates a cypher that produces encrypted files without integrity trailer.
+     */
+
+    public SkrivaCypherV1() {
+        this(null, null);
+    }
+
+    /**
+     * Creates a cypher that seals the encrypted files it produces with a keyless integrity trailer.
+     *
+     * @param trailerAlgorithm the algorithm used to compute the trailer, or null for no trailer.
+     */
+
+    public SkrivaCypherV1(@Nullable IntegrityTrailer.Algorithm trailerAlgorithm) {
+        this(trailerAlgorithm, null);
+    }
+
+    /**
+     * Creates a cypher that may seal the encrypted files it produces, and that may reuse the cached digests of the
+     * files to encrypt.
+     *
+     * @param trailerAlgorithm the algorithm used to compute the trailer, or null for no trailer.
+     * @param digestCache the cache of the MD5 digests of the files to encrypt, or null to always calculate them.
+     */
+
+    public SkrivaCypherV1(@Nullable IntegrityTrailer.Algorithm trailerAlgorithm, @Nullable DigestCache digestCache) {
+        this.trailerAlgorithm = trailerAlgorithm;
+        this.digestCache = digestCache;
+    }
 
     /**
      * Creates a temporary file with the prefix "skriva-tmp" and suffix ".tmp".
@@ -41,26 +93,20 @@ public class SkrivaCypherV1 implements SkrivaCypher {
 
     /**
      * Calculates the MD5 checksum of a file specified by the given path and writes the result to the provided destination array.
-     * Optionally updates progress information through the provided TaskUpdater.
+     * Reports the bytes digested to the current phase of the provided ProgressTracker.
      *
      * @param path The path to the file for which the MD5 checksum is to be calculated.
      * @param destination A byte array where the calculated MD5 checksum will be stored.
-     * @param taskUpdater An optional TaskUpdater instance for reporting progress. Can be null.
+     * @param progress The tracker of the progress of the operation.
      * @throws FatalRuntimeException If an error occurs during the MD5 calculation, or if the MD5 algorithm is not available.
      */
 
-    private void calculateMd5Checksum(String path, byte[] destination, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+    private void calculateMd5Checksum(String path, byte[] destination, ProgressTracker progress) throws FatalRuntimeException {
         try (MD5File md5 = new MD5File(String.valueOf(path))) {
-            final long total = md5.calculateIterationNumber();
-            boolean progress = true;
-            long current = 0;
-
-            while (progress) {
-                progress = md5.digestChunk();
-                current++;
-                if (null != taskUpdater) taskUpdater.update(current, total);
+            final long chunkLength = md5.getChunkLength();
+            while (md5.digestChunk()) {
+                progress.advance(chunkLength);
             }
-            if (null != taskUpdater) taskUpdater.update(0, total);
             md5.getDigestAsBytes(destination);
         } catch (NoSuchAlgorithmException e) {
             throw new FatalRuntimeException("the MD5 algorithm is not available!");
@@ -71,7 +117,7 @@ public class SkrivaCypherV1 implements SkrivaCypher {
 
     /**
      * Appends the MD5 checksum of the specified input file to the end of a temporary file
-     * and returns the path to this temporary file. Optionally updates progress using the provided TaskUpdater.
+     * and returns the path to this temporary file. Reports its progress to the provided ProgressTracker.
      *
      * This method performs the following operations:
      * (1) It calculates the MD5 checksum of the input file (intended for encryption).
@@ -79,23 +125,40 @@ public class SkrivaCypherV1 implements SkrivaCypher {
      * (3) It appends the previously calculated MD5 checksum to the end of the temporary file.
      *
      * @param inputFile The path to the file for which the MD5 checksum is to be calculated and appended.
-     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @param progress The tracker of the progress of the operation.
      * @return The path to the temporary file with the appended MD5 checksum.
      * @throws FatalRuntimeException If an error occurs during file copying, checksum calculation, or file writing operations.
      */
 
-    private String appendChecksum(String inputFile, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+    private String appendChecksum(String inputFile, ProgressTracker progress) throws FatalRuntimeException {
         final String tempFilePath = createTemporaryPath();
 
-        // Calculate the MD5 checksum of the input file (intended for encryption).
+        // Calculate the MD5 checksum of the input file (intended for encryption), unless it is cached.
         final long digestLength = MD5File.getDigestLength();
         final byte[] actualDigest = new byte[(int) digestLength];
-        calculateMd5Checksum(inputFile, actualDigest, taskUpdater);
+        @Nullable final byte[] cachedDigest = null == digestCache ? null : digestCache.lookup(Paths.get(inputFile));
+        if (null != cachedDigest) {
+            System.arraycopy(cachedDigest, 0, actualDigest, 0, actualDigest.length);
+        } else {
+            @Nullable final BasicFileAttributes attributes = DigestCache.readAttributes(Paths.get(inputFile));
+            final long length = new File(inputFile).length();
+            final CryptoPhaseEvent event = CryptoPhaseEvent.start("encrypt", "digest", inputFile);
+            progress.begin("digest", length);
+            calculateMd5Checksum(inputFile, actualDigest, progress);
+            event.finish(length);
+            if (null != digestCache && null != attributes) digestCache.store(Paths.get(inputFile), attributes, actualDigest);
+        }
 
         // Create the temporary file that is a copy of the input file (to be encrypted).
         try {
+            final long length = Files.size(Paths.get(inputFile));
+            final CryptoPhaseEvent event = CryptoPhaseEvent.start("encrypt", "copy", inputFile);
+            progress.begin("copy", length);
             Files.copy(Paths.get(inputFile), Paths.get(tempFilePath), StandardCopyOption.REPLACE_EXISTING);
+            progress.advance(length);
+            event.finish(length);
         } catch (IOException e) {
+            FileManip.DeleteIfExists(tempFilePath);
             throw new FatalRuntimeException("an error occurred while encrypting the file. The input file has not been modified",
                     String.format("cannot copy the input file \"%s\" to \"%s\": %s", inputFile, tempFilePath, e.getMessage()));
         }
@@ -115,27 +178,25 @@ public class SkrivaCypherV1 implements SkrivaCypher {
 
     /**
      * Encrypts a given file using AES encryption and writes the encrypted content to an output file.
-     * The encryption process can optionally update progress information through the provided TaskUpdater.
+     * The encryption process reports its progress to the provided ProgressTracker.
      *
      * @param path The path to the input file that needs to be encrypted.
      * @param secretKey The secret key to be used for AES encryption.
      * @param outputFile The path to the output file where the encrypted content will be written.
-     * @param taskUpdater An optional TaskUpdater instance for reporting progress. Can be null.
+     * @param progress The tracker of the progress of the operation.
      * @throws FatalRuntimeException If an error occurs during the encryption process, such as issues with reading the
      *         file or writing the encrypted content.
      */
 
-    private void Encrypt(String path, String secretKey, String outputFile, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
-        try (AESFile aes = new AESFile(secretKey, path, outputFile)) {
-            final long total = aes.calculateIterationNumber();
-            boolean progress = true;
-            long current = 0;
-
-            while (progress) {
-                progress = aes.encryptChunk();
-                current++;
-                if (null != taskUpdater) taskUpdater.update(current, total);
+    private void Encrypt(String path, String secretKey, String outputFile, ProgressTracker progress) throws FatalRuntimeException {
+        final CryptoPhaseEvent event = CryptoPhaseEvent.start("encrypt", "encrypt", outputFile);
+        try (AESFile aes = new AESFile(secretKey, path, outputFile, -1L, trailerAlgorithm)) {
+            final long chunkLength = aes.getChunkLength();
+            progress.begin("encrypt", aes.getInputLength());
+            while (aes.encryptChunk()) {
+                progress.advance(chunkLength);
             }
+            event.finish(aes.getInputLength());
         } catch (IOException e) {
             throw new FatalRuntimeException(String.format("an error occurred while encrypting file \"%s\" to \"%s\n", path, outputFile),
                     Arrays.toString(e.getStackTrace()));
@@ -177,33 +238,30 @@ public class SkrivaCypherV1 implements SkrivaCypher {
 
     /**
      * Decrypts an encrypted input file using AES decryption, with the decrypted content written to a temporary file.
-     * This method can optionally update a progress indicator through the provided TaskUpdater.
+     * This method reports its progress to the provided ProgressTracker.
      *
      * @param inputFile The path to the encrypted input file.
      * @param secretKey The secret key used for AES decryption.
-     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @param progress The tracker of the progress of the operation.
      * @return The path of the temporary file containing the decrypted content.
      * @throws FatalRuntimeException If an error occurs during the decryption process, such as issues with reading
      *         the file, or writing the decrypted data.
      */
 
-    private String Decrypt(String inputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+    private String Decrypt(String inputFile, String secretKey, ProgressTracker progress) throws FatalRuntimeException {
         final String tempFilePath = createTemporaryPath();
 
         // Decrypt the input file. The result is written into the previously created temporary file.
-        try (AESFile aes = new AESFile(secretKey, inputFile, tempFilePath)) {
-            final long total = aes.calculateIterationNumber();
-            boolean progress = true;
-            long current = 0;
-
-            while (progress) {
-                progress = aes.decryptChunk();
-                current++;
-                if (null != taskUpdater) taskUpdater.update(current, total);
+        // Please note that the integrity trailer (if any) is not part of the ciphertext.
+        final long ciphertextLength = IntegrityTrailer.payloadLength(inputFile);
+        final CryptoPhaseEvent event = CryptoPhaseEvent.start("decrypt", "decrypt", inputFile);
+        try (AESFile aes = new AESFile(secretKey, inputFile, tempFilePath, ciphertextLength, null)) {
+            final long chunkLength = aes.getChunkLength();
+            progress.begin("decrypt", aes.getInputLength());
+            while (aes.decryptChunk()) {
+                progress.advance(chunkLength);
             }
-
-            // Reset the progress bar.
-            if (null != taskUpdater) taskUpdater.update(0, total);
+            event.finish(aes.getInputLength());
         } catch (IOException e) {
             FileManip.DeleteIfExists(tempFilePath);
             throw new FatalRuntimeException(String.format("an error occurred while decrypting file \"%s\" to \"%s\n", inputFile, tempFilePath),
@@ -218,6 +276,7 @@ public class SkrivaCypherV1 implements SkrivaCypher {
      * This method performs the following steps:
      * 1. Appends the MD5 checksum of the input file to the end of the file.
      * 2. Encrypts the resulting file with the appended checksum.
+     * 3. If an integrity trailer algorithm has been configured, appends the keyless trailer to the encrypted file.
      *
      * @param inputFile The path to the input file to be encrypted.
      * @param outputFile The path to the output file where the encrypted result will be saved.
@@ -227,7 +286,22 @@ public class SkrivaCypherV1 implements SkrivaCypher {
      */
 
     public void EncryptFile(String inputFile, String outputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
-        Encrypt(appendChecksum(inputFile, taskUpdater), secretKey, outputFile, taskUpdater);
+        final long startNanos = System.nanoTime();
+        final long length = new File(inputFile).length();
+        final ProgressTracker progress = new ProgressTracker(taskUpdater, length, encryptionPhases);
+        // The temporary file is a plaintext copy of the input file: it is deleted whatever happens.
+        final String tempFilePath = appendChecksum(inputFile, progress);
+        boolean encrypted = false;
+        try {
+            Encrypt(tempFilePath, secretKey, outputFile, progress);
+            encrypted = true;
+        } finally {
+            FileManip.DeleteIfExists(tempFilePath);
+            if (!encrypted) FileManip.DeleteIfExists(outputFile);
+        }
+        progress.finish();
+        @Nullable final CryptoStatistics statistics = CryptoStatistics.active();
+        if (null != statistics) statistics.file("encrypt", length, System.nanoTime() - startNanos);
     }
 
     /**
@@ -256,20 +330,37 @@ public class SkrivaCypherV1 implements SkrivaCypher {
         final byte[] actualDigest = new byte[(int) digestLength];
 
         // Decrypt the input file. The result is a temporary file.
-        String tempFilePath = Decrypt(inputFile, secretKey, taskUpdater);
-        // Extract the expected MD5 checksum from the end of the temporary file, which will reduce the file's length.
-        ExtractExpectedChecksum(tempFilePath, expectedDigest);
-        // Calculate the actual MD5 checksum of the decrypted file.
-        calculateMd5Checksum(tempFilePath, actualDigest, taskUpdater);
-        // Compare the MD5 checksums.
-        if (!MessageDigest.isEqual(expectedDigest, actualDigest)) {
-            throw new FatalRuntimeException("the encrypted file is corrupted or the given secret key is not valid",
-                    String.format("input file: \"%s\"", inputFile));
+        final long startNanos = System.nanoTime();
+        final ProgressTracker progress = new ProgressTracker(taskUpdater, new File(inputFile).length(), decryptionPhases);
+        String tempFilePath = Decrypt(inputFile, secretKey, progress);
+        final long decryptedLength;
+        try {
+            // Extract the expected MD5 checksum from the end of the temporary file, which will reduce the file's length.
+            ExtractExpectedChecksum(tempFilePath, expectedDigest);
+            // Calculate the actual MD5 checksum of the decrypted file.
+            decryptedLength = new File(tempFilePath).length();
+            final CryptoPhaseEvent verifyEvent = CryptoPhaseEvent.start("decrypt", "verify", inputFile);
+            progress.begin("verify", decryptedLength);
+            calculateMd5Checksum(tempFilePath, actualDigest, progress);
+            verifyEvent.finish(decryptedLength);
+            // Compare the MD5 checksums.
+            if (!MessageDigest.isEqual(expectedDigest, actualDigest)) {
+                throw new FatalRuntimeException("the encrypted file is corrupted or the given secret key is not valid",
+                        String.format("input file: \"%s\"", inputFile));
+            }
+        } catch (FatalRuntimeException e) {
+            // The temporary file holds unverified plaintext.
+            FileManip.DeleteIfExists(tempFilePath);
+            throw e;
         }
         // Move the temporary file to the expected output path.
         try {
+            final CryptoPhaseEvent moveEvent = CryptoPhaseEvent.start("decrypt", "move", outputFile);
             Files.move(Paths.get(tempFilePath), Paths.get(outputFile), StandardCopyOption.REPLACE_EXISTING);
-            if (null != taskUpdater) taskUpdater.update(1, 1);
+            moveEvent.finish(decryptedLength);
+            progress.finish();
+            @Nullable final CryptoStatistics statistics = CryptoStatistics.active();
+            if (null != statistics) statistics.file("decrypt", decryptedLength, System.nanoTime() - startNanos);
         } catch (Exception e) {
             FileManip.DeleteIfExists(tempFilePath);
             throw new FatalRuntimeException("an error occurred while decrypting the file. The input file has not been modified",
@@ -0,0 +1,559 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.compression.CompressibilityProbe;
+import org.shadow.lib.compression.DeflateCodec;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+import org.shadow.lib.monitoring.CryptoStatistics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SkrivaCypherV2 encrypts and decrypts files using the segmented format implemented by SegmentedFile.
+ * Each segment is authenticated independently, so that the file can be verified or decrypted piece by piece.
+ *
+ * The segments are compressed (optionally), encrypted and decrypted by a pool of threads (pigz-style), while a
+ * single thread reads the input and writes the segments in order. Segments that contain only zero bytes are
+ * neither stored nor written back: they become holes in the decrypted file. It supports updating progress through
+ * a TaskUpdater interface.
+ */
+
+public class SkrivaCypherV2 implements SkrivaCypher {
+    public static final long tailOffset = -1L;
+    private static final ProgressTracker.Phase encryptionPhase = new ProgressTracker.Phase("encrypt", 1);
+    private static final ProgressTracker.Phase updatePhase = new ProgressTracker.Phase("update", 1);
+    private static final ProgressTracker.Phase decryptionPhase = new ProgressTracker.Phase("decrypt", 1);
+    private final SegmentedConfiguration configuration;
+
+    /**
+     * Creates a cypher that uses the default configuration.
+     */
+
+    public SkrivaCypherV2() {
+        this(new SegmentedConfiguration());
+    }
+
+    /**
+     * Creates a cypher that uses a given configuration.
+     *
+     * @param configuration the configuration.
+     */
+
+    public SkrivaCypherV2(SegmentedConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Encrypts a file into a segmented file.
+     *
+     * If the compression is enabled, a few windows of the input file are compressed first. If they do not
+     * compress, the file is stored uncompressed, so that incompressible files do not pay the cost of the compression.
+     *
+     * @param inputFile The path to the input file to be encrypted.
+     * @param outputFile The path to the output file where the encrypted result will be saved.
+     * @param secretKey The secret key used for the encryption.
+     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @throws FatalRuntimeException If an error occurs during the encryption process.
+     */
+
+    public void EncryptFile(String inputFile, String outputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+        final long startNanos = System.nanoTime();
+        final int segmentSize = configuration.getSegmentSize();
+        final int threads = Math.max(1, configuration.getThreads());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (FileChannel input = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             SegmentedFile output = SegmentedFile.create(outputFile, secretKey, SegmentedHeader.generate(configuration.getSuite(), segmentSize,
+                     SegmentedHeader.contentFile, configuration.getKdfLanes(), configuration.getKdfIterations()));
+             @Nullable DeflateCodec compressor = configuration.isCompression() && CompressibilityProbe.isCompressible(input)
+                     ? new DeflateCodec(configuration.getCompressionLevel())
+                     : null) {
+            if (configuration.isSegmentDigests()) output.enableSegmentDigests();
+            final ProgressTracker progress = new ProgressTracker(taskUpdater, input.size(), encryptionPhase);
+            appendSegments(input, output, compressor, executor, threads, progress);
+            output.commit();
+            progress.finish();
+            @Nullable final CryptoStatistics statistics = CryptoStatistics.active();
+            if (null != statistics) statistics.file("encrypt", input.size(), System.nanoTime() - startNanos);
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(outputFile);
+            throw new FatalRuntimeException(String.format("an error occurred while encrypting file \"%s\" to \"%s\"", inputFile, outputFile),
+                    e.getMessage());
+        } catch (FatalRuntimeException e) {
+            FileManip.DeleteIfExists(outputFile);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Appends data to an encrypted file. The data is encrypted into new segments, which are written after the
+     * existing ones, then a new index is committed. If the last existing segment is shorter than the segment size,
+     * it is completed with the first appended bytes and sealed again; the other existing segments are neither read
+     * nor rewritten. Thus, the cost of an append is proportional to the appended data (plus one segment). If the
+     * append is interrupted, the encrypted file keeps its previous content.
+     *
+     * Each append leaves the previous index (and the previous version of the last segment) as unused space. When the
+     * unused space exceeds half of the encrypted file, the segments are copied into a new file, which replaces the
+     * encrypted file (see SegmentedFile.copyTo). The segments are copied as they are: they are not encrypted again.
+     *
+     * @param inputFile The path to the file that contains the data to append.
+     * @param inputOffset The position of the first byte to append within the input file, or `tailOffset` to append
+     *                    the bytes that follow the current content of the encrypted file (for a file that grows,
+     *                    such as a log).
+     * @param encryptedFile The path to the encrypted file.
+     * @param secretKey The secret key used for the encryption.
+     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @return the number of bytes appended.
+     * @throws FatalRuntimeException if the encrypted file cannot be opened, or if an error occurs during the append.
+     */
+
+    public long AppendFile(String inputFile, long inputOffset, String encryptedFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+        final int threads = Math.max(1, configuration.getThreads());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final long appendedLength;
+        @Nullable Path compactedFilePath = null;
+
+        try (FileChannel input = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             SegmentedFile output = SegmentedFile.open(encryptedFile, secretKey, true);
+             @Nullable DeflateCodec compressor = configuration.isCompression() ? new DeflateCodec(configuration.getCompressionLevel()) : null) {
+            if (output.getHeader().getContentType() != SegmentedHeader.contentFile) {
+                throw new FatalRuntimeException("the encrypted file is a container of files, not a single file",
+                        String.format("encrypted file: \"%s\"", encryptedFile));
+            }
+            final long offset = inputOffset == tailOffset ? output.getPlaintextLength() : inputOffset;
+            if (offset > input.size()) {
+                throw new FatalRuntimeException("the input file is shorter than the encrypted content",
+                        String.format("input file: \"%s\" (%d bytes, at least %d expected)", inputFile, input.size(), offset));
+            }
+            input.position(offset);
+            final long previousLength = output.getPlaintextLength();
+            final ProgressTracker progress = new ProgressTracker(taskUpdater, input.size() - offset, encryptionPhase);
+            int changed = 0;
+
+            // Complete the last segment first, so that repeated small appends do not leave a chain of short segments.
+            final int segmentSize = output.getHeader().getSegmentSize();
+            final int lastIndex = output.getSegmentCount() - 1;
+            if (lastIndex >= 0 && output.getEntry(lastIndex).plainLength() < segmentSize) {
+                final byte[] buffer = new byte[segmentSize];
+                final int previous = output.readSegment(lastIndex, buffer);
+                final int length = previous + readSegment(input, buffer, previous, segmentSize - previous);
+                if (length > previous) {
+                    output.replaceSealed(output.sealSegment(lastIndex, buffer, length, compressor));
+                    changed++;
+                }
+            }
+            changed += appendSegments(input, output, compressor, executor, threads, progress);
+            if (changed > 0) {
+                output.commit();
+                if (hasTooMuchUnusedSpace(output)) {
+                    compactedFilePath = createTemporaryPath(encryptedFile);
+                    output.copyTo(compactedFilePath.toString());
+                }
+            }
+            progress.finish();
+            appendedLength = output.getPlaintextLength() - previousLength;
+        } catch (IOException e) {
+            if (null != compactedFilePath) FileManip.DeleteIfExists(compactedFilePath.toString());
+            throw new FatalRuntimeException(String.format("an error occurred while appending file \"%s\" to \"%s\"", inputFile, encryptedFile),
+                    e.getMessage());
+        } catch (FatalRuntimeException e) {
+            if (null != compactedFilePath) FileManip.DeleteIfExists(compactedFilePath.toString());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (null != compactedFilePath) {
+            try {
+                Files.move(compactedFilePath, Paths.get(encryptedFile), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // The data has been appended: only the unused space has not been reclaimed.
+                FileManip.DeleteIfExists(compactedFilePath.toString());
+            }
+        }
+        return appendedLength;
+    }
+
+    /**
+     * Tells whether the unused space of a segmented file (see SegmentedFile.getUnusedLength) exceeds half of the file.
+     */
+
+    private static boolean hasTooMuchUnusedSpace(SegmentedFile file) throws IOException {
+        return 2 * file.getUnusedLength() > Files.size(Paths.get(file.getPath()));
+    }
+
+    /**
+     * Reads the input channel from its current position to its end, and appends the data to a segmented file.
+     * The segments are sealed by the threads of the executor, and appended in order by the current thread.
+     * At most 2 segments per thread are in flight. The buffers of the completed segments are reused.
+     *
+     * @return the number of segments appended.
+     */
+
+    private static int appendSegments(FileChannel input, SegmentedFile output, @Nullable DeflateCodec compressor, ExecutorService executor,
+                                      int threads, ProgressTracker progress) throws IOException, FatalRuntimeException {
+        final int segmentSize = output.getHeader().getSegmentSize();
+        progress.begin(encryptionPhase.name(), input.size() - input.position());
+        final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+        for (int i = 0; i < 2 * threads; i++) freeBuffers.add(new byte[segmentSize]);
+        final ArrayDeque<Future<SegmentedFile.Sealed>> pending = new ArrayDeque<>();
+        final ArrayDeque<byte[]> pendingBuffers = new ArrayDeque<>();
+        int index = output.getSegmentCount();
+        long current = 0;
+
+        while (true) {
+            if (freeBuffers.isEmpty()) {
+                output.appendSealed(await(pending.removeFirst()));
+                freeBuffers.add(pendingBuffers.removeFirst());
+                current++;
+                progress.advance(segmentSize);
+            }
+            final byte[] buffer = freeBuffers.removeFirst();
+            final int length = readSegment(input, buffer);
+            if (length == 0) break;
+            final int segmentIndex = index++;
+            pending.add(executor.submit(() -> output.sealSegment(segmentIndex, buffer, length, compressor)));
+            pendingBuffers.add(buffer);
+        }
+        while (!pending.isEmpty()) {
+            output.appendSealed(await(pending.removeFirst()));
+            current++;
+            progress.advance(segmentSize);
+        }
+        return (int) current;
+    }
+
+    /**
+     * An UpdateResult describes the outcome of the update of an encrypted file.
+     *
+     * @param segmentCount the number of segments of the updated file.
+     * @param changedSegments the number of segments that have been re-encrypted.
+     * @param rewritten true if the whole file has been re-encrypted (to reclaim the unused space).
+     */
+
+    public record UpdateResult(int segmentCount, int changedSegments, boolean rewritten) {}
+
+    /**
+     * Updates an encrypted file so that it matches a modified plaintext file. Only the segments that have changed are
+     * re-encrypted and written. The unchanged segments are detected by comparing the digests recorded in the
+     * encrypted file (if any), or else by decrypting them.
+     *
+     * The new versions of the changed segments are appended to the encrypted file, then a new index is committed.
+     * Thus, the encrypted file remains consistent if the update is interrupted. When the space used by the previous
+     * versions exceeds half of the encrypted file, the file is re-encrypted entirely instead.
+     *
+     * @param inputFile The path to the plaintext file.
+     * @param encryptedFile The path to the encrypted file to update.
+     * @param secretKey The secret key used for the encryption.
+     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @return the outcome of the update.
+     * @throws FatalRuntimeException if the encrypted file cannot be opened, or if an error occurs during the update.
+     */
+
+    public UpdateResult UpdateFile(String inputFile, String encryptedFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+        final int threads = Math.max(1, configuration.getThreads());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        @Nullable final SegmentedConfiguration rewriteConfiguration;
+
+        try (FileChannel input = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             SegmentedFile output = SegmentedFile.open(encryptedFile, secretKey, true);
+             @Nullable DeflateCodec compressor = configuration.isCompression() ? new DeflateCodec(configuration.getCompressionLevel()) : null) {
+            if (output.getHeader().getContentType() != SegmentedHeader.contentFile) {
+                throw new FatalRuntimeException("the encrypted file is a container of files, not a single file",
+                        String.format("encrypted file: \"%s\"", encryptedFile));
+            }
+            rewriteConfiguration = getRewriteConfiguration(output, threads);
+            if (null == rewriteConfiguration) {
+                return updateSegments(input, output, compressor, executor, threads, taskUpdater);
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("an error occurred while updating file \"%s\" from \"%s\"", encryptedFile, inputFile),
+                    e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Too much unused space: re-encrypt the whole file into a temporary file, then replace the encrypted file.
+        final Path tempFilePath = createTemporaryPath(encryptedFile);
+        new SkrivaCypherV2(rewriteConfiguration).EncryptFile(inputFile, tempFilePath.toString(), secretKey, taskUpdater);
+        try {
+            Files.move(tempFilePath, Paths.get(encryptedFile), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(tempFilePath.toString());
+            throw new FatalRuntimeException("an error occurred while updating the file. The encrypted file has not been modified",
+                    String.format("cannot move file \"%s\" to \"%s\"", tempFilePath, encryptedFile));
+        }
+        try (SegmentedFile output = SegmentedFile.open(encryptedFile, secretKey, false)) {
+            return new UpdateResult(output.getSegmentCount(), output.getSegmentCount(), true);
+        }
+    }
+
+    /**
+     * Returns the configuration used to re-encrypt an encrypted file entirely, if it has too much unused space (see
+     * `hasTooMuchUnusedSpace`). The new file keeps the cipher suite, the segment size and the cost of the key
+     * derivation of the encrypted file.
+     *
+     * @return the configuration, or null if the file can be updated in place.
+     */
+
+    private @Nullable SegmentedConfiguration getRewriteConfiguration(SegmentedFile output, int threads) throws IOException {
+        if (!hasTooMuchUnusedSpace(output)) return null;
+        final SegmentedConfiguration rewriteConfiguration = new SegmentedConfiguration();
+        rewriteConfiguration.setSuite(output.getHeader().getSuite());
+        rewriteConfiguration.setSegmentSize(output.getHeader().getSegmentSize());
+        rewriteConfiguration.setKdfLanes(output.getHeader().getKdfLanes());
+        rewriteConfiguration.setKdfIterations(output.getHeader().getKdfIterations());
+        rewriteConfiguration.setKdfTargetMillis(0);
+        rewriteConfiguration.setSegmentDigests(output.hasSegmentDigests() || configuration.isSegmentDigests());
+        rewriteConfiguration.setCompression(configuration.isCompression());
+        rewriteConfiguration.setCompressionLevel(configuration.getCompressionLevel());
+        rewriteConfiguration.setThreads(threads);
+        return rewriteConfiguration;
+    }
+
+    /**
+     * Updates the segments of an encrypted file in place: the segments that have changed are re-encrypted and
+     * appended, then a new index is committed (see UpdateFile).
+     */
+
+    private static UpdateResult updateSegments(FileChannel input, SegmentedFile output, @Nullable DeflateCodec compressor, ExecutorService executor,
+                                               int threads, @Nullable TaskUpdater taskUpdater) throws IOException, FatalRuntimeException {
+        final int segmentSize = output.getHeader().getSegmentSize();
+        final int previousCount = output.getSegmentCount();
+        final ProgressTracker progress = new ProgressTracker(taskUpdater, input.size(), updatePhase);
+        progress.begin(updatePhase.name(), input.size());
+        final ThreadLocal<byte[]> previousBuffers = ThreadLocal.withInitial(() -> new byte[segmentSize]);
+
+        // The main thread replaces the entries and the digests of the file while the tasks compare the segments:
+        // the tasks only read a snapshot of the previous ones.
+        final SegmentedFile.Entry[] previousEntries = new SegmentedFile.Entry[previousCount];
+        final byte[][] previousDigests = new byte[previousCount][];
+        for (int i = 0; i < previousCount; i++) {
+            previousEntries[i] = output.getEntry(i);
+            previousDigests[i] = output.getDigest(i);
+        }
+
+        // Same pipeline as EncryptFile. A task returns null if its segment has not changed.
+        final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+        for (int i = 0; i < 2 * threads; i++) freeBuffers.add(new byte[segmentSize]);
+        final ArrayDeque<Future<SegmentedFile.Sealed>> pending = new ArrayDeque<>();
+        final ArrayDeque<byte[]> pendingBuffers = new ArrayDeque<>();
+        int index = 0;
+        int changed = 0;
+
+        while (true) {
+            if (freeBuffers.isEmpty()) {
+                @Nullable final SegmentedFile.Sealed sealed = await(pending.removeFirst());
+                if (null != sealed) {
+                    output.replaceSealed(sealed);
+                    changed++;
+                }
+                freeBuffers.add(pendingBuffers.removeFirst());
+                progress.advance(segmentSize);
+            }
+            // The existing segments may be shorter than the segment size (appended by earlier versions): their lengths are kept.
+            final byte[] buffer = freeBuffers.removeFirst();
+            final int length = readSegment(input, buffer, index < previousCount ? previousEntries[index].plainLength() : segmentSize);
+            if (length == 0) break;
+            final int segmentIndex = index++;
+            pending.add(executor.submit(() -> {
+                if (segmentIndex < previousCount && previousEntries[segmentIndex].plainLength() == length) {
+                    final byte @Nullable [] digest = previousDigests[segmentIndex];
+                    if (null != digest) {
+                        if (MessageDigest.isEqual(digest, SegmentedFile.digest(buffer, length))) return null;
+                    } else {
+                        final byte[] previous = previousBuffers.get();
+                        output.readSegment(segmentIndex, previousEntries[segmentIndex], previous);
+                        if (Arrays.equals(previous, 0, length, buffer, 0, length)) return null;
+                    }
+                }
+                return output.sealSegment(segmentIndex, buffer, length, compressor);
+            }));
+            pendingBuffers.add(buffer);
+        }
+        while (!pending.isEmpty()) {
+            @Nullable final SegmentedFile.Sealed sealed = await(pending.removeFirst());
+            if (null != sealed) {
+                output.replaceSealed(sealed);
+                changed++;
+            }
+            progress.advance(segmentSize);
+        }
+        if (changed > 0 || index < previousCount) {
+            output.truncateSegments(index);
+            output.commit();
+        }
+        progress.finish();
+        return new UpdateResult(output.getSegmentCount(), changed, false);
+    }
+
+    /**
+     * Decrypts a segmented file. The segments are decrypted in parallel, and each one is written at its position
+     * in a temporary file (located in the directory of the output file). The temporary file is moved to the output
+     * path once all the segments have been authenticated.
+     *
+     * @param inputFile The path to the encrypted input file.
+     * @param outputFile The path where the decrypted output file will be saved.
+     * @param secretKey The secret key used for decryption.
+     * @param taskUpdater An optional TaskUpdater instance for reporting progress, can be null.
+     * @throws FatalRuntimeException If the decryption fails, the file is corrupted, or if the key is invalid.
+     */
+
+    public void DecryptFile(String inputFile, String outputFile, String secretKey, @Nullable TaskUpdater taskUpdater) throws FatalRuntimeException {
+        final long startNanos = System.nanoTime();
+        final Path tempFilePath = createTemporaryPath(outputFile);
+        final int threads = Math.max(1, configuration.getThreads());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try (SegmentedFile input = SegmentedFile.open(inputFile, secretKey, false);
+             FileChannel output = FileChannel.open(tempFilePath, StandardOpenOption.WRITE)) {
+            if (input.getHeader().getContentType() != SegmentedHeader.contentFile) {
+                throw new FatalRuntimeException("the encrypted file is a container of files, not a single file",
+                        String.format("input file: \"%s\"", inputFile));
+            }
+            final int total = input.getSegmentCount();
+            final ProgressTracker progress = new ProgressTracker(taskUpdater, input.getPlaintextLength(), decryptionPhase);
+            progress.begin(decryptionPhase.name(), input.getPlaintextLength());
+            final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[input.getHeader().getSegmentSize()]);
+            final List<Future<Void>> pending = new ArrayList<>();
+            long position = 0;
+
+            for (int i = 0; i < total; i++) {
+                final int index = i;
+                final long segmentPosition = position;
+                position += input.getEntry(i).plainLength();
+                if (input.getEntry(i).kind() == SegmentedFile.kindZero) {
+                    pending.add(CompletableFuture.completedFuture(null));
+                    continue;
+                }
+                pending.add(executor.submit(() -> {
+                    final byte[] buffer = buffers.get();
+                    final int length = input.readSegment(index, buffer);
+                    final ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, length);
+                    while (chunk.hasRemaining()) output.write(chunk, segmentPosition + chunk.position());
+                    return null;
+                }));
+            }
+            for (int i = 0; i < total; i++) {
+                await(pending.get(i));
+                progress.advance(input.getEntry(i).plainLength());
+            }
+            // If the file ends with zero segments, the last byte is written to set the length of the file.
+            if (output.size() < position) {
+                output.write(ByteBuffer.allocate(1), position - 1);
+            }
+            progress.finish();
+            @Nullable final CryptoStatistics statistics = CryptoStatistics.active();
+            if (null != statistics) statistics.file("decrypt", position, System.nanoTime() - startNanos);
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(tempFilePath.toString());
+            throw new FatalRuntimeException(String.format("an error occurred while decrypting file \"%s\" to \"%s\"", inputFile, tempFilePath),
+                    e.getMessage());
+        } catch (FatalRuntimeException e) {
+            FileManip.DeleteIfExists(tempFilePath.toString());
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Move the temporary file to the expected output path.
+        try {
+            Files.move(tempFilePath, Paths.get(outputFile), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(tempFilePath.toString());
+            throw new FatalRuntimeException("an error occurred while decrypting the file. The input file has not been modified",
+                    String.format("cannot move file \"%s\" to \"%s\"", tempFilePath, outputFile));
+        }
+    }
+
+    /**
+     * Waits for the completion of a task executed by the pool, and unwraps the exception it may have thrown.
+     */
+
+    private static <T> T await(Future<T> future) throws FatalRuntimeException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FatalRuntimeException("the operation has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FatalRuntimeException cause) throw cause;
+            if (e.getCause() instanceof IOException cause) throw cause;
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred (%s: %s)",
+                    e.getCause().getClass().getName(), e.getCause().getMessage()));
+        }
+    }
+
+    /**
+     * Reads up to one segment from a channel. Fewer bytes are returned only at the end of the input.
+     *
+     * @return the number of bytes read, 0 at the end of the input.
+     */
+
+    private static int readSegment(FileChannel input, byte[] buffer) throws IOException {
+        return readSegment(input, buffer, buffer.length);
+    }
+
+    /**
+     * Reads up to a given number of bytes from a channel. Fewer bytes are returned only at the end of the input.
+     *
+     * @return the number of bytes read, 0 at the end of the input.
+     */
+
+    private static int readSegment(FileChannel input, byte[] buffer, int length) throws IOException {
+        return readSegment(input, buffer, 0, length);
+    }
+
+    /**
+     * Reads up to a given number of bytes from a channel, at a given position of the buffer. Fewer bytes are returned
+     * only at the end of the input.
+     *
+     * @return the number of bytes read, 0 at the end of the input.
+     */
+
+    private static int readSegment(FileChannel input, byte[] buffer, int offset, int length) throws IOException {
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+        while (byteBuffer.hasRemaining()) {
+            if (input.read(byteBuffer) < 0) break;
+        }
+        return byteBuffer.position() - offset;
+    }
+
+    /**
+     * Creates a temporary file in the directory of a given file. Thus, moving the temporary file to its final
+     * location does not copy the data.
+     *
+     * @param path the path to the final file.
+     * @return the path to the temporary file.
+     * @throws FatalRuntimeException if the temporary file cannot be created.
+     */
+
+    private static Path createTemporaryPath(String path) throws FatalRuntimeException {
+        final Path parent = Paths.get(path).toAbsolutePath().getParent();
+        try {
+            return Files.createTempFile(parent, "skriva-tmp", ".tmp");
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot create temporary file: \"%s\"", e.getMessage()));
+        }
+    }
+}
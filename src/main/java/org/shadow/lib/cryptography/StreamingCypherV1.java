@@ -0,0 +1,198 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * StreamingCypherV1 encrypts and decrypts streams using the format v1 (see SkrivaCypherV1), without temporary files:
+ *
+ *     [IV (16)][AES-256-CBC(plaintext, MD5(plaintext))][optional integrity trailer]
+ *
+ * The plaintext flows through a buffer of fixed size, whatever the length of the stream. Thus, the memory used by
+ * an operation does not depend on the size of the data.
+ *
+ * Please note that the MD5 digest terminates the plaintext. When decrypting, the plaintext is therefore written to
+ * the output before it has been verified: the output must be considered invalid unless `decrypt` returns normally.
+ */
+
+public class StreamingCypherV1 extends AES256 {
+    public static final int defaultBufferLength = 64 * 1024;
+    private static final int ivLength = 16;
+
+    private final int bufferLength;
+
+    /**
+     * Creates a cypher that uses buffers of the default length.
+     */
+
+    public StreamingCypherV1() {
+        this(defaultBufferLength);
+    }
+
+    /**
+     * Creates a cypher.
+     *
+     * @param bufferLength the length of the buffers used to read the input streams.
+     */
+
+    public StreamingCypherV1(int bufferLength) {
+        this.bufferLength = bufferLength;
+    }
+
+    /**
+     * Encrypts a stream.
+     *
+     * @param input the stream of plaintext.
+     * @param output the stream that receives the encrypted data. It is not closed.
+     * @param secretKey the secret key used for the encryption.
+     * @param trailerAlgorithm if not null, the algorithm used to compute the integrity trailer appended to the output.
+     * @return the number of plaintext bytes encrypted.
+     * @throws FatalRuntimeException if the encryption fails.
+     * @throws IOException if the input stream cannot be read, or the output stream cannot be written.
+     */
+
+    public long encrypt(InputStream input, OutputStream output, String secretKey, @Nullable IntegrityTrailer.Algorithm trailerAlgorithm)
+            throws FatalRuntimeException, IOException {
+        final byte[] iv = generateIV();
+        final Cipher cipher = newCipher(Cipher.ENCRYPT_MODE, secretKey, iv);
+        final MessageDigest md5 = newMd5();
+        @Nullable final IntegrityTrailer.Accumulator trailer = null == trailerAlgorithm ? null : trailerAlgorithm.newAccumulator();
+        final byte[] buffer = new byte[bufferLength];
+        final byte[] encrypted = new byte[bufferLength + 2 * ivLength];
+        long length = 0;
+
+        write(output, trailer, iv, 0, iv.length);
+        try {
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) >= 0) {
+                md5.update(buffer, 0, bytesRead);
+                length += bytesRead;
+                write(output, trailer, encrypted, 0, cipher.update(buffer, 0, bytesRead, encrypted));
+            }
+            final byte[] last = cipher.doFinal(md5.digest());
+            write(output, trailer, last, 0, last.length);
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while encrypting (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+        if (null != trailer) output.write(IntegrityTrailer.buildTrailer(trailerAlgorithm, trailer.finish()));
+        output.flush();
+        return length;
+    }
+
+    /**
+     * Decrypts a stream. An integrity trailer that terminates the stream is ignored.
+     *
+     * @param input the stream of encrypted data.
+     * @param output the stream that receives the plaintext. It is not closed.
+     * @param secretKey the secret key used for the decryption.
+     * @return the number of plaintext bytes decrypted.
+     * @throws FatalRuntimeException if the data is corrupted, or if the secret key is not valid. In this case, the
+     *         bytes already written to the output stream must be discarded.
+     * @throws IOException if the input stream cannot be read, or the output stream cannot be written.
+     */
+
+    public long decrypt(InputStream input, OutputStream output, String secretKey) throws FatalRuntimeException, IOException {
+        final byte[] iv = input.readNBytes(ivLength);
+        if (iv.length != ivLength) {
+            throw new FatalRuntimeException("the data is not encrypted or is corrupted - its length is too short");
+        }
+        final Cipher cipher = newCipher(Cipher.DECRYPT_MODE, secretKey, iv);
+        final MessageDigest md5 = newMd5();
+        final int digestLength = md5.getDigestLength();
+
+        // The last bytes of the ciphertext may be an integrity trailer, and the last bytes of the plaintext are the
+        // MD5 digest: both are held back until the end of the stream.
+        final int heldBack = IntegrityTrailer.maximumLength();
+        final byte[] buffer = new byte[bufferLength + heldBack];
+        final byte[] plaintext = new byte[bufferLength + heldBack + digestLength + ivLength];
+        int filled = 0;
+        int pending = 0;
+        long length = 0;
+
+        try {
+            int bytesRead;
+            while ((bytesRead = input.read(buffer, filled, buffer.length - filled)) >= 0) {
+                filled += bytesRead;
+                if (filled < buffer.length) continue;
+                final int ready = filled - heldBack;
+                pending += cipher.update(buffer, 0, ready, plaintext, pending);
+                length += release(output, md5, plaintext, pending, digestLength);
+                pending = Math.min(pending, digestLength);
+                System.arraycopy(buffer, ready, buffer, 0, heldBack);
+                filled = heldBack;
+            }
+            final int payload = filled - IntegrityTrailer.trailerLength(buffer, filled);
+            pending += cipher.doFinal(buffer, 0, payload, plaintext, pending);
+        } catch (BadPaddingException | IllegalBlockSizeException e) {
+            throw new FatalRuntimeException("the encrypted data is corrupted or the given secret key is not valid");
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while decrypting (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+        if (pending < digestLength) {
+            throw new FatalRuntimeException("the encrypted data is corrupted or the given secret key is not valid");
+        }
+        length += release(output, md5, plaintext, pending, digestLength);
+        if (!MessageDigest.isEqual(md5.digest(), Arrays.copyOf(plaintext, digestLength))) {
+            throw new FatalRuntimeException("the encrypted data is corrupted or the given secret key is not valid");
+        }
+        output.flush();
+        return length;
+    }
+
+    /**
+     * Writes the plaintext, except its last bytes (which may be the digest), and moves these last bytes to the
+     * beginning of the buffer.
+     *
+     * @return the number of bytes written.
+     */
+
+    private static int release(OutputStream output, MessageDigest md5, byte[] plaintext, int pending, int digestLength) throws IOException {
+        final int releasable = pending - digestLength;
+        if (releasable <= 0) return 0;
+        md5.update(plaintext, 0, releasable);
+        output.write(plaintext, 0, releasable);
+        System.arraycopy(plaintext, releasable, plaintext, 0, digestLength);
+        return releasable;
+    }
+
+    private static void write(OutputStream output, @Nullable IntegrityTrailer.Accumulator trailer, byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) return;
+        if (null != trailer) trailer.update(buffer, offset, length);
+        output.write(buffer, offset, length);
+    }
+
+    private static Cipher newCipher(int mode, String secretKey, byte[] iv) throws FatalRuntimeException {
+        try {
+            final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(mode, generateKeyFromPassword(secretKey, iv), new IvParameterSpec(iv));
+            return cipher;
+        } catch (NoSuchAlgorithmException e) {
+            throw new FatalRuntimeException("AES algorithm is not available");
+        } catch (NoSuchPaddingException e) {
+            throw new FatalRuntimeException("PKCS5Padding algorithm is not available");
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+
+    private static MessageDigest newMd5() throws FatalRuntimeException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new FatalRuntimeException("the MD5 algorithm is not available!");
+        }
+    }
+}
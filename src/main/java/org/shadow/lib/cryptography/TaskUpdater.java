@@ -3,6 +3,9 @@ package org.shadow.lib.cryptography;
 /**
  * The TaskUpdater interface provides a mechanism for updating progress information.
  * It is intended to be implemented by classes that need to track and display the progress of a long-running task.
+ *
+ * The cyphers report their progress through a ProgressTracker: the updater receives a few reports per second, whose
+ * values never go backwards, whatever the number of chunks and phases of the operation.
  */
 
 public interface TaskUpdater {
@@ -15,4 +18,15 @@ public interface TaskUpdater {
      */
 
     void update(long current, long total);
+
+    /**
+     * Reports the progress of a task, including its throughput and the estimated time left. By default, the number
+     * of bytes processed and the size of the file are passed to `update`.
+     *
+     * @param report the progress of the task.
+     */
+
+    default void report(ProgressTracker.Report report) {
+        update(report.bytes(), report.totalBytes());
+    }
 }
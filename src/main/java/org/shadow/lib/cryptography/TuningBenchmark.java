@@ -0,0 +1,258 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * The TuningBenchmark class measures the performance of the host, and derives a tuning profile from it (see
+ * TuningProfile).
+ *
+ * The measurements are:
+ * (1) the sequential write throughput of the file store that holds a given directory (the file is flushed to the
+ *     device, so that the figure reflects the storage);
+ * (2) the sequential read throughput of the same file, for each I/O mode and each chunk length. Please note that
+ *     the file is likely to be in the page cache: these figures mostly reflect the cost of the calls per chunk;
+ * (3) the throughput of one core for AES-CBC and MD5;
+ * (4) the throughput of one core for each cipher suite of the segmented files (see CipherSuite);
+ * (5) the cost of the key derivation (PBKDF2).
+ *
+ * The profile uses the fastest way of reading (the smallest chunk within 5% of the best throughput, to save memory),
+ * as many workers as needed for the CPU to keep up with the storage (at most one per processor), and the fastest
+ * cipher suite.
+ */
+
+public class TuningBenchmark {
+    public static final int[] chunkLengths = {4096, 16384, 65536, 262144, 1 << 20};
+    private static final int writeBufferLength = 1 << 20;
+    private static final long cpuBytes = 64L << 20;
+    private static final double chunkTolerance = 0.95;
+
+    private record Read(TuningProfile.IoMode mode, int chunkLength, double bytesPerSecond) {}
+
+    private final Path directory;
+    private final long fileSize;
+    private final Consumer<String> log;
+
+    /**
+     * Creates a benchmark.
+     *
+     * @param directory the directory where the temporary file is written. It designates the file store to measure.
+     * @param fileSize the size of the temporary file.
+     * @param log the consumer of the progress messages (one line per measurement).
+     */
+
+    public TuningBenchmark(Path directory, long fileSize, Consumer<String> log) {
+        this.directory = directory;
+        this.fileSize = fileSize;
+        this.log = log;
+    }
+
+    /**
+     * Runs all the measurements.
+     *
+     * @return the profile that fits the host. The figures are recorded as its measurements.
+     * @throws FatalRuntimeException if the temporary file cannot be written or read.
+     */
+
+    public TuningProfile run() throws FatalRuntimeException {
+        final TuningProfile profile = new TuningProfile();
+        final int processors = Runtime.getRuntime().availableProcessors();
+        profile.getMeasurements().put("processors", Integer.toString(processors));
+
+        @Nullable Path file = null;
+        final double writeRate;
+        final List<Read> reads = new ArrayList<>();
+        try {
+            final FileStore store = Files.getFileStore(directory);
+            profile.getMeasurements().put("fileStore", String.format("%s (%s)", store.name(), store.type()));
+            log.accept(String.format("file store: %s (%s), %d processor(s)", store.name(), store.type(), processors));
+
+            file = Files.createTempFile(directory, "skriva-bench", ".tmp");
+            writeRate = measureWrite(file);
+            put(profile, "writeMBps", writeRate);
+            log.accept(String.format(Locale.ROOT, "write: %.1f MB/s", writeRate / 1e6));
+
+            for (TuningProfile.IoMode mode : TuningProfile.IoMode.values()) {
+                for (int chunkLength : chunkLengths) {
+                    final double rate = measureRead(file, mode, chunkLength);
+                    reads.add(new Read(mode, chunkLength, rate));
+                    put(profile, String.format("read.%s.%d.MBps", mode.name().toLowerCase(), chunkLength), rate);
+                    log.accept(String.format(Locale.ROOT, "read (%s, %d-byte chunks): %.1f MB/s", mode.name().toLowerCase(), chunkLength, rate / 1e6));
+                }
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot measure the file store of \"%s\"", directory), e.getMessage());
+        } finally {
+            if (null != file) FileManip.DeleteIfExists(file.toString());
+        }
+
+        // The smallest chunk within the tolerance of the best throughput wins (then the fastest mode for this chunk).
+        final double bestRate = reads.stream().mapToDouble(Read::bytesPerSecond).max().orElse(0);
+        reads.stream()
+                .filter(read -> read.bytesPerSecond() >= bestRate * chunkTolerance)
+                .min(Comparator.comparingInt(Read::chunkLength).thenComparing(Comparator.comparingDouble(Read::bytesPerSecond).reversed()))
+                .ifPresent(read -> {
+                    profile.setIoMode(read.mode());
+                    profile.setChunkLength(read.chunkLength());
+                });
+
+        final double aesRate = measureAes();
+        put(profile, "aesMBps", aesRate);
+        log.accept(String.format(Locale.ROOT, "AES-256-CBC: %.1f MB/s per core", aesRate / 1e6));
+        final double md5Rate = measureMd5();
+        put(profile, "md5MBps", md5Rate);
+        log.accept(String.format(Locale.ROOT, "MD5: %.1f MB/s per core", md5Rate / 1e6));
+        @Nullable CipherSuite fastest = null;
+        double fastestRate = 0;
+        for (CipherSuite suite : CipherSuite.values()) {
+            suite.measureThroughput((int) Math.min(cpuBytes, Integer.MAX_VALUE) / 8); // warm-up
+            final double rate = suite.measureThroughput((int) Math.min(cpuBytes, Integer.MAX_VALUE));
+            put(profile, String.format("suite.%s.MBps", CipherSuite.enumToName(suite)), rate);
+            log.accept(String.format(Locale.ROOT, "%s: %.1f MB/s per core", CipherSuite.enumToName(suite), rate / 1e6));
+            if (rate > fastestRate) {
+                fastest = suite;
+                fastestRate = rate;
+            }
+        }
+        profile.setSuite(fastest);
+        final double kdfMillis = measureKeyDerivation(AES256.defaultIterationCount);
+        profile.getMeasurements().put("pbkdf2Millis", String.format(Locale.ROOT, "%.1f", kdfMillis));
+        log.accept(String.format(Locale.ROOT, "PBKDF2 (%d iterations): %.1f ms", AES256.defaultIterationCount, kdfMillis));
+
+        // A file is digested then encrypted: the throughput of a worker combines both costs.
+        final double workerRate = 1 / (1 / aesRate + 1 / md5Rate);
+        profile.setWorkers((int) Math.max(1, Math.min(processors, Math.ceil(writeRate / workerRate))));
+        return profile;
+    }
+
+    /**
+     * Writes the temporary file, and flushes it to the device.
+     *
+     * @return the throughput, in bytes per second.
+     */
+
+    private double measureWrite(Path file) throws IOException {
+        final byte[] data = new byte[writeBufferLength];
+        new Random(0).nextBytes(data);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(writeBufferLength);
+        final long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long written = 0;
+            while (written < fileSize) {
+                buffer.clear().put(data, 0, (int) Math.min(data.length, fileSize - written)).flip();
+                while (buffer.hasRemaining()) written += channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        return rate(fileSize, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads the temporary file.
+     *
+     * @return the throughput, in bytes per second.
+     */
+
+    private static double measureRead(Path file, TuningProfile.IoMode mode, int chunkLength) throws IOException {
+        final byte[] buffer = new byte[chunkLength];
+        long total = 0;
+        final long start = System.nanoTime();
+        try (FileInputStream input = new FileInputStream(file.toFile())) {
+            int length;
+            if (mode == TuningProfile.IoMode.Channel) {
+                final FileChannel channel = input.getChannel();
+                while ((length = channel.read(ByteBuffer.wrap(buffer))) > 0) total += length;
+            } else {
+                while ((length = input.read(buffer)) > 0) total += length;
+            }
+        }
+        return rate(total, System.nanoTime() - start);
+    }
+
+    /**
+     * Encrypts data in memory.
+     *
+     * @return the throughput of one core, in bytes per second.
+     */
+
+    private static double measureAes() throws FatalRuntimeException {
+        try {
+            final byte[] iv = new byte[16];
+            final SecretKey key = AES256.generateKeyFromPassword("benchmark", iv, 1);
+            final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+            final byte[] input = new byte[1 << 16];
+            final byte[] output = new byte[input.length + 16];
+            final long start = System.nanoTime();
+            for (long done = 0; done < cpuBytes; done += input.length) cipher.update(input, 0, input.length, output);
+            cipher.doFinal(output, 0);
+            return rate(cpuBytes, System.nanoTime() - start);
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException("cannot measure the throughput of AES", e.getMessage());
+        }
+    }
+
+    /**
+     * Digests data in memory.
+     *
+     * @return the throughput of one core, in bytes per second.
+     */
+
+    private static double measureMd5() throws FatalRuntimeException {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("MD5");
+            final byte[] input = new byte[1 << 16];
+            final long start = System.nanoTime();
+            for (long done = 0; done < cpuBytes; done += input.length) md.update(input);
+            md.digest();
+            return rate(cpuBytes, System.nanoTime() - start);
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException("cannot measure the throughput of MD5", e.getMessage());
+        }
+    }
+
+    /**
+     * Derives keys.
+     *
+     * @param iterations the number of iterations of the derivation.
+     * @return the average duration of a derivation, in milliseconds.
+     */
+
+    public static double measureKeyDerivation(int iterations) {
+        final int rounds = 3;
+        final byte[] salt = new byte[16];
+        AES256.generateKeyFromPassword("benchmark", salt, iterations); // warm-up
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) AES256.generateKeyFromPassword("benchmark", salt, iterations);
+        return (System.nanoTime() - start) / 1e6 / rounds;
+    }
+
+    private static double rate(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : bytes / (nanos / 1e9);
+    }
+
+    private static void put(TuningProfile profile, String name, double bytesPerSecond) {
+        profile.getMeasurements().put(name, String.format(Locale.ROOT, "%.1f", bytesPerSecond / 1e6));
+    }
+}
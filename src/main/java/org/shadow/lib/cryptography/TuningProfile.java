@@ -0,0 +1,257 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The TuningProfile class holds the settings that fit the performance of the host: the length of the chunks read by
+ * AESFile and DigestFile, the way they read files, the number of workers of the parallel engines, and the cipher suite
+ * of the new segmented files (if none is set, the suite is selected at run time, see CipherSuite.preferred), and the
+ * time the derivation of their key should last (if none is set, a fixed number of iterations is used). The profile is
+ * produced by the command "bench", and stored as a properties file ("~/.skriva/profile.properties" by default, or the
+ * path given by the system property "skriva.profile").
+ *
+ * The profile of the host is loaded once, the first time it is needed (see current). If there is no profile, or if
+ * it cannot be read, the default settings apply: a bad profile must never prevent the application from working.
+ */
+
+public class TuningProfile {
+    public static final int defaultChunkLength = 4096;
+    public static final int maxChunkLength = 64 << 20;
+    public static final String pathProperty = "skriva.profile";
+    private static final String chunkLengthKey = "chunkLength";
+    private static final String ioModeKey = "ioMode";
+    private static final String workersKey = "workers";
+    private static final String suiteKey = "cipherSuite";
+    private static final String kdfTargetKey = "kdfTargetMillis";
+    private static final String measurementPrefix = "measured.";
+
+    @Nullable private static volatile TuningProfile current = null;
+
+    /**
+     * The IoMode enumeration lists the ways of reading a file.
+     */
+
+    public enum IoMode {
+        /** Through a FileInputStream. */
+        Stream,
+        /** Through the FileChannel of the file (which uses cached direct buffers for the large chunks). */
+        Channel;
+
+        /**
+         * Converts a name into an I/O mode.
+         *
+         * @param name the name (case-insensitive).
+         * @return the I/O mode, or null if the name is not valid.
+         */
+
+        public static @Nullable IoMode nameToEnum(String name) {
+            for (IoMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(name)) return mode;
+            }
+            return null;
+        }
+    }
+
+    private int chunkLength = defaultChunkLength;
+    private IoMode ioMode = IoMode.Stream;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    @Nullable private CipherSuite suite = null;
+    private int kdfTargetMillis = 0;
+    private final Map<String, String> measurements = new TreeMap<>();
+
+    public int getChunkLength() {
+        return chunkLength;
+    }
+
+    public void setChunkLength(int chunkLength) {
+        this.chunkLength = chunkLength;
+    }
+
+    public IoMode getIoMode() {
+        return ioMode;
+    }
+
+    public void setIoMode(IoMode ioMode) {
+        this.ioMode = ioMode;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public @Nullable CipherSuite getSuite() {
+        return suite;
+    }
+
+    public void setSuite(@Nullable CipherSuite suite) {
+        this.suite = suite;
+    }
+
+    /**
+     * Returns the time the derivation of the key of a new segmented file should last. This setting is not measured:
+     * it is a trade-off between the unlock time and the resistance to brute force, set by the administrator of the
+     * host (it is kept when the profile is produced again).
+     *
+     * @return the time, in milliseconds, or 0 if a fixed number of iterations is used.
+     */
+
+    public int getKdfTargetMillis() {
+        return kdfTargetMillis;
+    }
+
+    public void setKdfTargetMillis(int kdfTargetMillis) {
+        this.kdfTargetMillis = kdfTargetMillis;
+    }
+
+    /**
+     * Returns the figures measured on the host when the profile was produced (for information only).
+     *
+     * @return the figures, indexed by name.
+     */
+
+    public Map<String, String> getMeasurements() {
+        return measurements;
+    }
+
+    /**
+     * Returns the default path to the profile of the host.
+     *
+     * @return the path given by the system property "skriva.profile", or "~/.skriva/profile.properties".
+     */
+
+    public static Path defaultPath() {
+        @Nullable final String path = System.getProperty(pathProperty);
+        return null != path ? Paths.get(path) : Paths.get(System.getProperty("user.home"), ".skriva", "profile.properties");
+    }
+
+    /**
+     * Returns the profile of the host. The profile is loaded from the default path the first time.
+     *
+     * @return the profile. If it cannot be loaded, the default profile.
+     */
+
+    public static TuningProfile current() {
+        @Nullable TuningProfile profile = current;
+        if (null == profile) {
+            synchronized (TuningProfile.class) {
+                profile = current;
+                if (null == profile) {
+                    try {
+                        profile = load(defaultPath());
+                    } catch (FatalRuntimeException e) {
+                        profile = new TuningProfile();
+                    }
+                    current = profile;
+                }
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Replaces the profile of the host, for the rest of the execution.
+     *
+     * @param profile the profile, or null to load the profile from the default path again.
+     */
+
+    public static void setCurrent(@Nullable TuningProfile profile) {
+        current = profile;
+    }
+
+    /**
+     * Loads a profile. The settings that are missing or not valid keep their default values.
+     *
+     * @param path the path to the profile.
+     * @return the profile. If the file does not exist, the default profile.
+     * @throws FatalRuntimeException if the file exists but cannot be read.
+     */
+
+    public static TuningProfile load(Path path) throws FatalRuntimeException {
+        final TuningProfile profile = new TuningProfile();
+        if (!Files.exists(path)) return profile;
+        final Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(path)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new FatalRuntimeException(String.format("cannot read the tuning profile \"%s\"", path), e.getMessage());
+        }
+        final int chunkLength = parseInt(properties.getProperty(chunkLengthKey));
+        if (chunkLength >= 512 && chunkLength <= maxChunkLength) profile.chunkLength = chunkLength;
+        @Nullable final IoMode ioMode = IoMode.nameToEnum(properties.getProperty(ioModeKey, ""));
+        if (null != ioMode) profile.ioMode = ioMode;
+        final int workers = parseInt(properties.getProperty(workersKey));
+        if (workers > 0) profile.workers = workers;
+        final int kdfTargetMillis = parseInt(properties.getProperty(kdfTargetKey));
+        if (kdfTargetMillis > 0) profile.kdfTargetMillis = kdfTargetMillis;
+        @Nullable final String suite = properties.getProperty(suiteKey);
+        if (null != suite) {
+            try {
+                profile.suite = CipherSuite.nameToEnum(suite.trim());
+            } catch (FatalRuntimeException e) {
+                // The suite is selected at run time.
+            }
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(measurementPrefix)) {
+                profile.measurements.put(name.substring(measurementPrefix.length()), properties.getProperty(name));
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Saves the profile. The file is replaced atomically, so that it is never left half-written.
+     *
+     * @param path the path to the profile.
+     * @throws FatalRuntimeException if the file cannot be written.
+     */
+
+    public void save(Path path) throws FatalRuntimeException {
+        final Properties properties = new Properties();
+        properties.setProperty(chunkLengthKey, Integer.toString(chunkLength));
+        properties.setProperty(ioModeKey, ioMode.name().toLowerCase());
+        properties.setProperty(workersKey, Integer.toString(workers));
+        if (null != suite) properties.setProperty(suiteKey, CipherSuite.enumToName(suite));
+        if (kdfTargetMillis > 0) properties.setProperty(kdfTargetKey, Integer.toString(kdfTargetMillis));
+        for (Map.Entry<String, String> entry : measurements.entrySet()) {
+            properties.setProperty(measurementPrefix + entry.getKey(), entry.getValue());
+        }
+        try {
+            final Path parent = path.toAbsolutePath().getParent();
+            FileManip.createPrivateDirectories(parent);
+            final Path temp = Files.createTempFile(parent, "profile", ".tmp");
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                properties.store(output, "Skriva tuning profile (produced by the command \"bench\")");
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the tuning profile \"%s\"", path), e.getMessage());
+        }
+    }
+
+    private static int parseInt(@Nullable String value) {
+        if (null == value) return -1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package org.shadow.lib.file;
 
+import org.shadow.lib.exception.FatalRuntimeException;
+
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 public class FileManip {
 
@@ -11,4 +20,55 @@ public class FileManip {
         return false;
     }
 
+    /**
+     * Creates a directory and its missing parents. The directories created are only accessible to the current user
+     * ("rwx------"); the permissions of the existing directories are left as they are.
+     *
+     * @param directory the path to the directory.
+     * @throws IOException if the directory cannot be created.
+     */
+
+    public static void createPrivateDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) return;
+        try {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException e) {
+            // The file system is not POSIX.
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Lists the regular files designated by a list of paths. A path that designates a regular file is returned as is.
+     * A path that designates a directory is walked recursively, and the regular files whose names end with the given
+     * suffix are returned.
+     *
+     * @param paths the paths to files or directories.
+     * @param suffix the suffix of the files to return when walking directories (case-insensitive).
+     * @return the list of paths to regular files.
+     * @throws FatalRuntimeException if a path does not exist or if a directory cannot be walked.
+     */
+
+    public static List<Path> ListRegularFiles(List<String> paths, String suffix) throws FatalRuntimeException {
+        final List<Path> files = new ArrayList<>();
+        final String lowerSuffix = suffix.toLowerCase();
+
+        for (String path : paths) {
+            final Path root = Paths.get(path);
+            if (Files.isRegularFile(root)) {
+                files.add(root);
+            } else if (Files.isDirectory(root)) {
+                try (Stream<Path> stream = Files.walk(root)) {
+                    stream.filter(Files::isRegularFile)
+                            .filter(p -> p.getFileName().toString().toLowerCase().endsWith(lowerSuffix))
+                            .forEach(files::add);
+                } catch (IOException e) {
+                    throw new FatalRuntimeException(String.format("cannot walk the directory \"%s\"", path), e.getMessage());
+                }
+            } else {
+                throw new FatalRuntimeException("the path does not exist", String.format("path: \"%s\"", path));
+            }
+        }
+        return files;
+    }
 }
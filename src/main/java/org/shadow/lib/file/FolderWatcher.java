@@ -0,0 +1,245 @@
+package org.shadow.lib.file;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The FolderWatcher class watches a directory (the inbox) and hands the regular files dropped into it to a handler.
+ *
+ * - Debouncing: a file is handed to the handler only once its size and its modification time have not changed for
+ *   a given quiet period, so that files that are still being written are not picked up. Hidden files (whose names
+ *   start with a dot) are ignored, since they are usually temporary files.
+ * - Bounded pool: the files are processed by a fixed number of workers. When the queue of the pool is full, the
+ *   watching thread processes the file itself, which slows down the watching instead of queuing without limit.
+ * - Recovery: the directory is scanned when the watcher starts, and again whenever the operating system reports
+ *   that events have been lost (overflow).
+ *
+ * The subdirectories of the inbox are not watched.
+ */
+
+public class FolderWatcher implements AutoCloseable {
+    private static final long pollMillis = 100;
+
+    /**
+     * The Handler interface processes the files of the inbox.
+     * Please note that the methods of the handler are called from several threads.
+     */
+
+    public interface Handler {
+
+        /**
+         * Tests whether a file must be processed. It is typically used to skip the files that have already been
+         * processed, when the directory is scanned.
+         *
+         * @param file the path to the file.
+         * @return true if the file must be processed, false otherwise.
+         */
+
+        default boolean accept(Path file) {
+            return true;
+        }
+
+        /**
+         * Processes a file.
+         *
+         * @param file the path to the file.
+         * @throws RuntimeException if the file cannot be processed. The exception is passed to `failed`.
+         */
+
+        void process(Path file) throws RuntimeException;
+
+        /**
+         * Called when the processing of a file fails. The watcher goes on with the other files.
+         *
+         * @param file the path to the file.
+         * @param e the exception thrown by `process`.
+         */
+
+        default void failed(Path file, RuntimeException e) {}
+    }
+
+    private record Observation(long size, long modified, long deadline) {}
+
+    private final Path inbox;
+    private final long quietMillis;
+    private final Handler handler;
+    private final ThreadPoolExecutor executor;
+    private final WatchService watchService;
+    private final Map<Path, Observation> pending = new HashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a watcher. The directory is watched from the call to `run`.
+     *
+     * @param inbox the path to the directory to watch.
+     * @param quietMillis the number of milliseconds during which a file must not change before it is processed.
+     * @param workers the number of files processed in parallel.
+     * @param handler the handler that processes the files.
+     * @throws FatalRuntimeException if the directory cannot be watched.
+     */
+
+    public FolderWatcher(Path inbox, long quietMillis, int workers, Handler handler) throws FatalRuntimeException {
+        if (!Files.isDirectory(inbox)) {
+            throw new FatalRuntimeException("the directory to watch does not exist", String.format("path: \"%s\"", inbox));
+        }
+        this.inbox = inbox;
+        this.quietMillis = quietMillis;
+        this.handler = handler;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(4 * workers), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            this.watchService = inbox.getFileSystem().newWatchService();
+            inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            executor.shutdown();
+            throw new FatalRuntimeException(String.format("cannot watch the directory \"%s\"", inbox), e.getMessage());
+        }
+    }
+
+    /**
+     * Watches the directory until the watcher is closed (or the current thread is interrupted).
+     * The files already present in the directory are processed first.
+     *
+     * @throws FatalRuntimeException if the directory cannot be watched anymore (for example, if it has been deleted).
+     */
+
+    public void run() throws FatalRuntimeException {
+        scan();
+        try {
+            while (!closed) {
+                @Nullable final WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (null != key) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan();
+                        } else {
+                            observe(inbox.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        throw new FatalRuntimeException("the watched directory is no longer accessible", String.format("path: \"%s\"", inbox));
+                    }
+                }
+                dispatch();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // The watcher has been closed.
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops watching the directory, and waits for the files being processed.
+     */
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Observes all the files of the directory. It is called when the watcher starts, and when events have been lost.
+     */
+
+    private void scan() {
+        try (Stream<Path> stream = Files.list(inbox)) {
+            stream.forEach(this::observe);
+        } catch (IOException e) {
+            handler.failed(inbox, new FatalRuntimeException(String.format("cannot list the directory \"%s\"", inbox), e.getMessage()));
+        }
+    }
+
+    /**
+     * Records the current state of a file, and (re)starts its quiet period.
+     */
+
+    private void observe(Path file) {
+        if (file.getFileName().toString().startsWith(".")) return;
+        @Nullable final BasicFileAttributes attributes = readAttributes(file);
+        if (null == attributes || !attributes.isRegularFile() || !handler.accept(file)) return;
+        pending.put(file, new Observation(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                System.currentTimeMillis() + quietMillis));
+    }
+
+    /**
+     * Hands the files whose quiet period is over to the workers.
+     */
+
+    private void dispatch() {
+        final long now = System.currentTimeMillis();
+        final Map<Path, Observation> ready = new HashMap<>();
+        for (Iterator<Map.Entry<Path, Observation>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<Path, Observation> entry = iterator.next();
+            final Observation observation = entry.getValue();
+            if (observation.deadline() > now) continue;
+
+            @Nullable final BasicFileAttributes attributes = readAttributes(entry.getKey());
+            if (null == attributes) {
+                iterator.remove();
+            } else if (attributes.size() != observation.size() || attributes.lastModifiedTime().toMillis() != observation.modified()
+                    || inFlight.contains(entry.getKey())) {
+                // The file is still being written (or is still being processed): wait for another quiet period.
+                entry.setValue(new Observation(attributes.size(), attributes.lastModifiedTime().toMillis(), now + quietMillis));
+            } else {
+                iterator.remove();
+                ready.put(entry.getKey(), observation);
+            }
+        }
+
+        for (Path file : ready.keySet()) {
+            inFlight.add(file);
+            executor.execute(() -> {
+                try {
+                    handler.process(file);
+                } catch (RuntimeException e) {
+                    handler.failed(file, e);
+                } finally {
+                    inFlight.remove(file);
+                }
+            });
+        }
+    }
+
+    private static @Nullable BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.shadow.lib.file;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The SocketFiles class gathers the operations on the files of Unix domain sockets that are shared by the servers of
+ * the application (daemon, key agent and single instance of the graphical interface).
+ *
+ * The sockets are only protected by file permissions: whoever can connect to them can use the password (or the keys)
+ * held by the server. Thus, a socket is only bound in a directory that is accessible to its owner alone, so that
+ * nobody else can connect to it, even before its own permissions are restricted.
+ */
+
+public class SocketFiles {
+    private static final Set<PosixFilePermission> sharedPermissions = EnumSet.of(
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+    /**
+     * Tells whether a process is listening on a socket. A socket file left by a process that has not been stopped
+     * properly is stale: nothing is listening on it, and it can be replaced.
+     *
+     * @param socketPath the path to the socket.
+     * @return true if a connection to the socket can be established.
+     */
+
+    public static boolean isListening(Path socketPath) {
+        final SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The connection has been established: that is all that matters.
+        }
+        return true;
+    }
+
+    /**
+     * Binds a socket that only its owner can use. The directory of the socket is created if needed ("rwx------"),
+     * and the socket is not bound if that directory is accessible to other users. A stale socket is replaced.
+     *
+     * @param socketPath the path to the socket.
+     * @return the bound server channel.
+     * @throws FileAlreadyExistsException if a process is already listening on the socket.
+     * @throws IOException if the directory is accessible to other users, or if the socket cannot be bound.
+     */
+
+    public static ServerSocketChannel bind(Path socketPath) throws IOException {
+        final Path directory = socketPath.toAbsolutePath().getParent();
+        FileManip.createPrivateDirectories(directory);
+        try {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+            permissions.retainAll(sharedPermissions);
+            if (!permissions.isEmpty()) {
+                throw new IOException(String.format("the directory \"%s\" is accessible to other users (restrict it using \"chmod 700\")", directory));
+            }
+        } catch (UnsupportedOperationException e) {
+            // The file system is not POSIX: the socket inherits the permissions of its directory.
+        }
+
+        if (Files.exists(socketPath)) {
+            if (isListening(socketPath)) throw new FileAlreadyExistsException(socketPath.toString(), null, "a process is listening on the socket");
+            Files.deleteIfExists(socketPath);
+        }
+        final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // The file system is not POSIX: the socket inherits the permissions of its directory.
+        }
+        return server;
+    }
+}
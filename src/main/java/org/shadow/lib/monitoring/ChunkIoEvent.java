@@ -0,0 +1,91 @@
+package org.shadow.lib.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The ChunkIoEvent event records the read or the write of a chunk of a file. A file is processed in many small
+ * chunks: by default, only the chunks that take more than 20 ms are recorded (which reveals the stalls of the
+ * storage). The threshold can be lowered for a short recording.
+ *
+ * Please note that the write of a chunk by AESFile includes its encryption or its decryption (the chunk goes through
+ * a CipherOutputStream).
+ *
+ * The latency of the chunk is also recorded by the active CryptoStatistics collection, if any.
+ *
+ * Usage:
+ *
+ *     final ChunkIoEvent event = ChunkIoEvent.start();
+ *     final int bytesRead = inputStream.read(buffer);
+ *     event.finish(ChunkIoEvent.read, path, bytesRead);
+ */
+
+@Name("org.shadow.ChunkIO")
+@Label("Chunk I/O")
+@Category({"Skriva", "I/O"})
+@Description("Read or write of a chunk of a file")
+@StackTrace(false)
+@Threshold("20 ms")
+public class ChunkIoEvent extends jdk.jfr.Event {
+    public static final String read = "read";
+    public static final String write = "write";
+
+    @Label("Operation")
+    @Description("read or write")
+    public String operation;
+
+    @Label("File")
+    @Description("Path to the file")
+    public String file;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    // Not recorded (transient fields are ignored by JFR).
+    @Nullable private transient CryptoStatistics statistics;
+    private transient long startNanos;
+
+    /**
+     * Creates an event, and starts timing it.
+     *
+     * @return the event.
+     */
+
+    public static ChunkIoEvent start() {
+        final ChunkIoEvent event = new ChunkIoEvent();
+        event.statistics = CryptoStatistics.active();
+        if (null != event.statistics) event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing the event, and commits it if it is enabled and exceeds its threshold.
+     *
+     * @param operation read or write.
+     * @param file the path to the file.
+     * @param bytes the number of bytes read or written (a negative value means "none").
+     */
+
+    public void finish(String operation, String file, long bytes) {
+        end();
+        if (null != statistics) {
+            final long nanos = System.nanoTime() - startNanos;
+            if (operation.equals(read)) statistics.chunkRead(nanos, Math.max(0, bytes));
+            else statistics.chunkWrite(nanos, Math.max(0, bytes));
+        }
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.file = file;
+            this.bytes = Math.max(0, bytes);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.shadow.lib.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The CryptoPhaseEvent event records a phase of the processing of a file: for example, the digest, the copy and the
+ * encryption of a file to encrypt, or the decryption, the verification and the move of a file to decrypt.
+ * The phase is also recorded by the active CryptoStatistics collection, if any.
+ *
+ * Usage:
+ *
+ *     final CryptoPhaseEvent event = CryptoPhaseEvent.start("encrypt", "digest", path);
+ *     ...
+ *     event.finish(bytes);
+ */
+
+@Name("org.shadow.CryptoPhase")
+@Label("Cryptographic Phase")
+@Category({"Skriva", "Cryptography"})
+@Description("Phase of the encryption or the decryption of a file")
+@StackTrace(false)
+@Threshold("0 ms")
+public class CryptoPhaseEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("Operation the phase belongs to: encrypt or decrypt")
+    public String operation;
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("File")
+    @Description("Path to the file processed by the phase")
+    public String file;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    // Not recorded (transient fields are ignored by JFR).
+    @Nullable private transient CryptoStatistics statistics;
+    private transient long startNanos;
+
+    /**
+     * Creates an event, and starts timing it.
+     *
+     * @param operation the operation the phase belongs to.
+     * @param phase the name of the phase.
+     * @param file the path to the file processed by the phase.
+     * @return the event.
+     */
+
+    public static CryptoPhaseEvent start(String operation, String phase, String file) {
+        final CryptoPhaseEvent event = new CryptoPhaseEvent();
+        event.operation = operation;
+        event.phase = phase;
+        event.file = file;
+        event.statistics = CryptoStatistics.active();
+        if (null != event.statistics) event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing the event, and commits it if it is enabled and exceeds its threshold.
+     *
+     * @param bytes the number of bytes processed by the phase.
+     */
+
+    public void finish(long bytes) {
+        end();
+        if (null != statistics) statistics.phase(operation, phase, System.nanoTime() - startNanos, bytes);
+        if (shouldCommit()) {
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.shadow.lib.monitoring;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CryptoStatistics class accumulates the performance counters of a run: the wall time and the bytes of each
+ * phase, the throughput of each file, the latency of the chunk reads and writes, the time spent deriving keys, and
+ * the peak memory usage. At the end of the run, the counters are written as a JSON report.
+ *
+ * The counters are fed by the cryptographic classes (AESFile, DigestFile, SkrivaCypherV1...) while a collection is
+ * active (see start). Otherwise, these classes do not even read the clock.
+ *
+ * Usage:
+ *
+ *     final CryptoStatistics statistics = CryptoStatistics.start();
+ *     ...
+ *     statistics.stop();
+ *     Files.writeString(path, statistics.toJson());
+ */
+
+public class CryptoStatistics {
+    @Nullable private static volatile CryptoStatistics active = null;
+
+    /**
+     * The counters of a phase.
+     */
+
+    private static class PhaseCounters {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+
+    /**
+     * A File describes the processing of a file.
+     *
+     * @param operation the operation (encrypt or decrypt).
+     * @param bytes the size of the processed file.
+     * @param nanos the duration of the processing.
+     */
+
+    private record File(String operation, long bytes, long nanos) {
+        double bytesPerSecond() {
+            return nanos <= 0 ? 0 : bytes / (nanos / 1e9);
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private long endNanos = 0;
+    private long peakHeapBytes = 0;
+    private final Map<String, PhaseCounters> phases = Collections.synchronizedMap(new LinkedHashMap<>()); // in order of appearance
+    private final List<File> files = Collections.synchronizedList(new ArrayList<>());
+    private final LatencyHistogram chunkReads = new LatencyHistogram();
+    private final LatencyHistogram chunkWrites = new LatencyHistogram();
+    private final LatencyHistogram keyDerivations = new LatencyHistogram();
+    private final AtomicLong peakDirectBytes = new AtomicLong();
+    @Nullable private final BufferPoolMXBean directPool;
+
+    private CryptoStatistics() {
+        BufferPoolMXBean pool = null;
+        for (BufferPoolMXBean bean : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (bean.getName().equals("direct")) pool = bean;
+        }
+        this.directPool = pool;
+        for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (bean.getType() == MemoryType.HEAP && bean.isValid()) bean.resetPeakUsage();
+        }
+        sampleMemory();
+    }
+
+    /**
+     * Starts a collection. The counters of the collection previously started, if any, are no longer fed.
+     *
+     * @return the new collection.
+     */
+
+    public static CryptoStatistics start() {
+        final CryptoStatistics statistics = new CryptoStatistics();
+        active = statistics;
+        return statistics;
+    }
+
+    /**
+     * Returns the active collection.
+     *
+     * @return the collection, or null if no collection is active.
+     */
+
+    public static @Nullable CryptoStatistics active() {
+        return active;
+    }
+
+    /**
+     * Stops the collection.
+     */
+
+    public void stop() {
+        sampleMemory();
+        peakHeapBytes = readPeakHeapBytes();
+        endNanos = System.nanoTime();
+        if (active == this) active = null;
+    }
+
+    /**
+     * Records a phase of an operation.
+     *
+     * @param operation the operation (encrypt or decrypt).
+     * @param phase the name of the phase.
+     * @param nanos the wall time of the phase.
+     * @param bytes the number of bytes processed by the phase.
+     */
+
+    public void phase(String operation, String phase, long nanos, long bytes) {
+        final PhaseCounters counters = phases.computeIfAbsent(operation + "/" + phase, key -> new PhaseCounters());
+        counters.count.increment();
+        counters.nanos.add(nanos);
+        counters.bytes.add(bytes);
+        sampleMemory();
+    }
+
+    /**
+     * Records the read of a chunk.
+     *
+     * @param nanos the duration of the read.
+     * @param bytes the number of bytes read.
+     */
+
+    public void chunkRead(long nanos, long bytes) {
+        chunkReads.record(nanos, bytes);
+    }
+
+    /**
+     * Records the write of a chunk.
+     *
+     * @param nanos the duration of the write (including its encryption or decryption, if any).
+     * @param bytes the number of bytes written.
+     */
+
+    public void chunkWrite(long nanos, long bytes) {
+        chunkWrites.record(nanos, bytes);
+    }
+
+    /**
+     * Records the derivation of a key.
+     *
+     * @param nanos the duration of the derivation.
+     */
+
+    public void keyDerivation(long nanos) {
+        keyDerivations.record(nanos, 0);
+    }
+
+    /**
+     * Records the processing of a file.
+     *
+     * @param operation the operation (encrypt or decrypt).
+     * @param bytes the size of the file.
+     * @param nanos the duration of the processing.
+     */
+
+    public void file(String operation, long bytes, long nanos) {
+        files.add(new File(operation, bytes, nanos));
+        sampleMemory();
+    }
+
+    /**
+     * Returns the report of the collection.
+     *
+     * @return the report, as a JSON object.
+     */
+
+    public String toJson() {
+        final long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        final StringBuilder json = new StringBuilder();
+        json.append(String.format(Locale.ROOT, "{%n  \"wallMillis\": %.3f,%n", (end - startNanos) / 1e6));
+
+        final List<File> snapshot;
+        synchronized (files) { snapshot = new ArrayList<>(files); }
+        long totalBytes = 0;
+        final double[] rates = new double[snapshot.size()];
+        for (int i = 0; i < rates.length; i++) {
+            totalBytes += snapshot.get(i).bytes();
+            rates[i] = snapshot.get(i).bytesPerSecond() / 1e6;
+        }
+        Arrays.sort(rates);
+        json.append(String.format(Locale.ROOT, "  \"files\": {\"count\": %d, \"bytes\": %d, \"throughputMBps\": {\"min\": %.3f, \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"max\": %.3f}},%n",
+                rates.length, totalBytes, percentile(rates, 0), percentile(rates, 50), percentile(rates, 90), percentile(rates, 99), percentile(rates, 100)));
+
+        final List<Map.Entry<String, PhaseCounters>> phaseSnapshot;
+        synchronized (phases) { phaseSnapshot = new ArrayList<>(phases.entrySet()); }
+        json.append("  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, PhaseCounters> entry : phaseSnapshot) {
+            final String[] name = entry.getKey().split("/", 2);
+            final PhaseCounters counters = entry.getValue();
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT, "    {\"operation\": \"%s\", \"phase\": \"%s\", \"count\": %d, \"wallMillis\": %.3f, \"bytes\": %d}",
+                    escape(name[0]), escape(name[1]), counters.count.sum(), counters.nanos.sum() / 1e6, counters.bytes.sum()));
+            first = false;
+        }
+        json.append(first ? "],\n" : "\n  ],\n");
+
+        json.append("  \"chunkReads\": ");
+        chunkReads.appendJson(json);
+        json.append(",\n  \"chunkWrites\": ");
+        chunkWrites.appendJson(json);
+        json.append(String.format(Locale.ROOT, ",%n  \"keyDerivation\": {\"count\": %d, \"totalMillis\": %.3f},%n",
+                keyDerivations.getCount(), keyDerivations.getTotalNanos() / 1e6));
+
+        json.append(String.format(Locale.ROOT, "  \"memory\": {\"peakHeapBytes\": %d, \"peakDirectBytes\": %d}%n}%n",
+                endNanos == 0 ? readPeakHeapBytes() : peakHeapBytes, peakDirectBytes.get()));
+        return json.toString();
+    }
+
+    /**
+     * The direct memory has no peak counter: it is sampled at the end of each phase and of each file.
+     */
+
+    private void sampleMemory() {
+        if (null != directPool) peakDirectBytes.accumulateAndGet(directPool.getMemoryUsed(), Math::max);
+    }
+
+    /**
+     * Returns the peak usage of the heap since the start of the collection. Please note that the peaks of the memory
+     * pools are summed: they may not have been reached at the same time.
+     */
+
+    private static long readPeakHeapBytes() {
+        long bytes = 0;
+        for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (bean.getType() == MemoryType.HEAP && bean.isValid() && null != bean.getPeakUsage()) bytes += bean.getPeakUsage().getUsed();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns a percentile of sorted values, using the nearest rank method.
+     */
+
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
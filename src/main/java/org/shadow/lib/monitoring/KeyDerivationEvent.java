@@ -0,0 +1,71 @@
+package org.shadow.lib.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The KeyDerivationEvent event records the derivation of a key from a password (PBKDF2). With the default
+ * iteration count, a derivation takes a significant fraction of a second: it is recorded whatever its duration.
+ * The derivation is also recorded by the active CryptoStatistics collection, if any.
+ */
+
+@Name("org.shadow.KeyDerivation")
+@Label("Key Derivation")
+@Category({"Skriva", "Cryptography"})
+@Description("Derivation of a secret key from a password")
+@StackTrace(false)
+@Threshold("0 ms")
+public class KeyDerivationEvent extends jdk.jfr.Event {
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Iterations")
+    public int iterations;
+
+    @Label("Key Length")
+    @Description("Length of the derived key, in bits")
+    public int keyLength;
+
+    // Not recorded (transient fields are ignored by JFR).
+    @Nullable private transient CryptoStatistics statistics;
+    private transient long startNanos;
+
+    /**
+     * Creates an event, and starts timing it.
+     *
+     * @return the event.
+     */
+
+    public static KeyDerivationEvent start() {
+        final KeyDerivationEvent event = new KeyDerivationEvent();
+        event.statistics = CryptoStatistics.active();
+        if (null != event.statistics) event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Stops timing the event, and commits it if it is enabled.
+     *
+     * @param algorithm the name of the key derivation function.
+     * @param iterations the number of iterations.
+     * @param keyLength the length of the derived key, in bits.
+     */
+
+    public void finish(String algorithm, int iterations, int keyLength) {
+        end();
+        if (null != statistics) statistics.keyDerivation(System.nanoTime() - startNanos);
+        if (shouldCommit()) {
+            this.algorithm = algorithm;
+            this.iterations = iterations;
+            this.keyLength = keyLength;
+            commit();
+        }
+    }
+}
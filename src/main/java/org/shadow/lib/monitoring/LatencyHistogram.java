@@ -0,0 +1,94 @@
+package org.shadow.lib.monitoring;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts durations in buckets whose bounds are powers of 2 (in microseconds): the first
+ * bucket holds the durations shorter than 1 µs, the second one the durations from 1 µs to 2 µs, then 2 µs to 4 µs, and
+ * so on. Recording a duration is lock-free, so that the histogram can be fed by several threads.
+ *
+ * The percentiles are derived from the buckets: they are given as the upper bound of the bucket that holds them.
+ */
+
+public class LatencyHistogram {
+    private static final int bucketCount = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds.
+     * @param bytes the number of bytes processed during this duration.
+     */
+
+    public void record(long nanos, long bytes) {
+        final long micros = Math.max(0, nanos) / 1000;
+        final int index = Math.min(bucketCount - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(index);
+        count.increment();
+        totalNanos.add(Math.max(0, nanos));
+        totalBytes.add(Math.max(0, bytes));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.sum();
+    }
+
+    /**
+     * Returns an approximation of a percentile of the recorded durations.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound of the bucket that holds the percentile, in microseconds, or 0 if nothing was recorded.
+     */
+
+    public long getPercentileMicros(double percentile) {
+        final long total = getCount();
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return upperBoundMicros(i);
+        }
+        return upperBoundMicros(bucketCount - 1);
+    }
+
+    /**
+     * Writes the histogram as a JSON object: the count, the total duration and bytes, a few percentiles, and the
+     * non-empty buckets.
+     *
+     * @param json the builder to append the object to.
+     */
+
+    public void appendJson(StringBuilder json) {
+        json.append(String.format(Locale.ROOT, "{\"count\": %d, \"totalMillis\": %.3f, \"bytes\": %d, \"p50Micros\": %d, \"p90Micros\": %d, \"p99Micros\": %d, \"buckets\": [",
+                getCount(), getTotalNanos() / 1e6, getTotalBytes(), getPercentileMicros(50), getPercentileMicros(90), getPercentileMicros(99)));
+        boolean first = true;
+        for (int i = 0; i < bucketCount; i++) {
+            final long n = buckets.get(i);
+            if (n == 0) continue;
+            if (!first) json.append(", ");
+            json.append(String.format(Locale.ROOT, "{\"upToMicros\": %d, \"count\": %d}", upperBoundMicros(i), n));
+            first = false;
+        }
+        json.append("]}");
+    }
+
+    private static long upperBoundMicros(int index) {
+        return 1L << index;
+    }
+}
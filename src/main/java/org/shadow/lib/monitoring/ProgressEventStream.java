@@ -0,0 +1,231 @@
+package org.shadow.lib.monitoring;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.ProgressTracker;
+import org.shadow.lib.cryptography.TaskUpdater;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The ProgressEventStream class writes the progress of jobs as newline-delimited JSON events (one JSON object per
+ * line), for the tools that orchestrate the application. The events are:
+ *
+ *     {"event": "started", "job": 1, "operation": "encrypt", "input": "...", "output": "...", "totalBytes": 1000, "time": ...}
+ *     {"event": "phase", "job": 1, "phase": "digest", "time": ...}
+ *     {"event": "progress", "job": 1, "phase": "encrypt", "bytes": 500, "totalBytes": 1000, "fraction": 0.5, "bytesPerSecond": ..., "etaMillis": ..., "time": ...}
+ *     {"event": "finished", "job": 1, "totalBytes": 1000, "millis": ..., "bytesPerSecond": ..., "time": ...}
+ *     {"event": "failed", "job": 1, "message": "...", "details": "...", "time": ...}
+ *
+ * The "time" is the number of milliseconds since the epoch.
+ *
+ * The progress reports of the jobs are not written as they come: each job only keeps its latest report, and the
+ * latest reports are written by a background thread, at a fixed interval. Thus, the cost of a report for the
+ * processing thread is the cost of a reference assignment. The other events are written at once.
+ *
+ * Usage:
+ *
+ *     try (ProgressEventStream events = new ProgressEventStream(System.out, false, 1000)) {
+ *         final ProgressEventStream.Job job = events.start("encrypt", input, output, size);
+ *         cypher.EncryptFile(input, output, secretKey, job);
+ *         job.finished();
+ *     }
+ */
+
+public class ProgressEventStream implements AutoCloseable {
+    private final Writer writer;
+    private final boolean closeOutput;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger lastJobId = new AtomicInteger();
+    private final List<Job> activeJobs = new ArrayList<>();
+
+    /**
+     * The Job class receives the progress reports of a job (see TaskUpdater).
+     */
+
+    public class Job implements TaskUpdater {
+        private final int id;
+        private final long totalBytes;
+        private final long startNanos = System.nanoTime();
+        private final AtomicReference<ProgressTracker.Report> latest = new AtomicReference<>();
+        @Nullable private ProgressTracker.Report written = null; // guarded by the stream
+        private volatile String phase = "";
+
+        private Job(int id, long totalBytes) {
+            this.id = id;
+            this.totalBytes = totalBytes;
+        }
+
+        @Override
+        public void update(long current, long total) {
+            report(new ProgressTracker.Report(phase, current, total, total <= 0 ? 0 : (double) current / total, 0, -1));
+        }
+
+        @Override
+        public void report(ProgressTracker.Report report) {
+            if (!report.phase().equals(phase)) {
+                phase = report.phase();
+                write(String.format("{\"event\": \"phase\", \"job\": %d, \"phase\": %s, \"time\": %d}", id, quote(report.phase()), System.currentTimeMillis()));
+            }
+            latest.set(report);
+        }
+
+        /**
+         * Reports the success of the job.
+         */
+
+        public void finished() {
+            end();
+            final long nanos = System.nanoTime() - startNanos;
+            write(String.format(Locale.ROOT, "{\"event\": \"finished\", \"job\": %d, \"totalBytes\": %d, \"millis\": %d, \"bytesPerSecond\": %.1f, \"time\": %d}",
+                    id, totalBytes, nanos / 1_000_000, nanos <= 0 ? 0 : totalBytes / (nanos / 1e9), System.currentTimeMillis()));
+        }
+
+        /**
+         * Reports the failure of the job.
+         *
+         * @param exception the cause of the failure.
+         */
+
+        public void failed(Throwable exception) {
+            end();
+            @Nullable final String details = exception instanceof FatalRuntimeException fatal ? fatal.getDetails() : null;
+            write(String.format("{\"event\": \"failed\", \"job\": %d, \"message\": %s, \"details\": %s, \"time\": %d}",
+                    id, quote(String.valueOf(exception.getMessage())), null == details ? "null" : quote(details), System.currentTimeMillis()));
+        }
+
+        /**
+         * Writes the latest report, if it has not been written yet.
+         */
+
+        private void flush() {
+            @Nullable final ProgressTracker.Report report = latest.get();
+            if (null == report || report == written) return;
+            written = report;
+            write(String.format(Locale.ROOT, "{\"event\": \"progress\", \"job\": %d, \"phase\": %s, \"bytes\": %d, \"totalBytes\": %d, \"fraction\": %.4f, \"bytesPerSecond\": %.1f, \"etaMillis\": %d, \"time\": %d}",
+                    id, quote(report.phase()), report.bytes(), report.totalBytes(), report.fraction(), report.bytesPerSecond(), report.etaMillis(), System.currentTimeMillis()));
+        }
+
+        private void end() {
+            synchronized (ProgressEventStream.this) {
+                flush();
+                activeJobs.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Creates a stream of events.
+     *
+     * @param output the stream the events are written to (for example: the standard output).
+     * @param closeOutput if true, the output stream is closed with the stream of events.
+     * @param intervalMillis the interval between two writes of the progress reports.
+     */
+
+    public ProgressEventStream(OutputStream output, boolean closeOutput, long intervalMillis) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        this.closeOutput = closeOutput;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "skriva-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::flush, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a job.
+     *
+     * @param operation the operation (encrypt or decrypt).
+     * @param input the path to the input file.
+     * @param output the path to the output file.
+     * @param totalBytes the size of the input file.
+     * @return the job, to be passed to the cypher as a TaskUpdater.
+     */
+
+    public Job start(String operation, String input, String output, long totalBytes) {
+        final Job job = new Job(lastJobId.incrementAndGet(), totalBytes);
+        synchronized (this) {
+            activeJobs.add(job);
+        }
+        write(String.format("{\"event\": \"started\", \"job\": %d, \"operation\": %s, \"input\": %s, \"output\": %s, \"totalBytes\": %d, \"time\": %d}",
+                job.id, quote(operation), quote(input), quote(output), totalBytes, System.currentTimeMillis()));
+        return job;
+    }
+
+    /**
+     * Writes the pending progress reports, and stops the stream.
+     */
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        flush();
+        synchronized (this) {
+            try {
+                if (closeOutput) writer.close();
+            } catch (IOException e) {
+                // The orchestrator has gone away: the events are lost, not the job.
+            }
+        }
+    }
+
+    private synchronized void flush() {
+        for (Job job : activeJobs) job.flush();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            // The orchestrator has gone away: the events are lost, not the job.
+        }
+    }
+
+    /**
+     * Writes an event. The event is flushed at once, unless it is a progress report (the reports are flushed together).
+     */
+
+    private synchronized void write(String event) {
+        try {
+            writer.write(event);
+            writer.write('\n');
+            if (!event.startsWith("{\"event\": \"progress\"")) writer.flush();
+        } catch (IOException e) {
+            // The orchestrator has gone away: the events are lost, not the job.
+        }
+    }
+
+    /**
+     * Quotes a string as a JSON string.
+     */
+
+    static String quote(String value) {
+        final StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,496 @@
+package org.shadow.lib.store;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.AES256;
+import org.shadow.lib.cryptography.CipherSuite;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The ChunkStore class implements an encrypted, deduplicated store of files.
+ *
+ * Files are cut into chunks by a ContentDefinedChunker. Each chunk is identified by a keyed hash of its content
+ * (HMAC-SHA256), and it is encrypted and stored only if the store does not already contain it. A stored file is
+ * described by an encrypted manifest that lists its chunks. Thus, storing a file that shares most of its content
+ * with files already stored (VM snapshots, database dumps...) only costs the new chunks and a small manifest.
+ *
+ * The identifiers of the chunks are keyed, so that the store does not reveal whether it contains a known content.
+ *
+ * Layout of the store (a directory):
+ *
+ *     config                   [magic "SKRVSTOR" (8)][version (1)][KDF iterations (4)][salt (16)][key check (32)]
+ *     chunks/<xx>/<id>         [nonce][ciphertext][tag] (the associated data is the identifier of the chunk)
+ *     manifests/<id>           [nonce][ciphertext][tag] (the file is named after a keyed hash of the name of the manifest)
+ *
+ * Chunks and manifests are written into temporary files, then renamed. Thus, an interrupted operation never leaves a
+ * partial chunk or manifest. Chunks that are no longer referenced by any manifest are deleted by `collectGarbage`,
+ * which must not run while files are being stored.
+ *
+ * Please note that an instance of this class must not be used by several threads at the same time.
+ */
+
+public class ChunkStore {
+    private static final byte[] magic = "SKRVSTOR".getBytes(StandardCharsets.US_ASCII);
+    private static final byte currentVersion = 1;
+    private static final int saltLength = 16;
+    private static final int idLength = 32;
+    private static final int configLength = magic.length + 1 + 4 + saltLength + idLength;
+    private static final int manifestVersion = 1;
+    private static final CipherSuite suite = CipherSuite.AES_256_GCM;
+    private static final HexFormat hex = HexFormat.of();
+
+    /**
+     * A ChunkReference designates a chunk within a manifest.
+     *
+     * @param id the identifier of the chunk.
+     * @param length the length of the chunk.
+     */
+
+    public record ChunkReference(byte[] id, int length) {}
+
+    /**
+     * A Manifest describes a stored file.
+     *
+     * @param name the name of the file within the store.
+     * @param length the length of the file.
+     * @param lastModified the time of the last modification of the file (in milliseconds since the epoch).
+     * @param chunks the chunks of the file, in order.
+     */
+
+    public record Manifest(String name, long length, long lastModified, List<ChunkReference> chunks) {}
+
+    /**
+     * A PutResult describes the outcome of storing a file.
+     *
+     * @param chunks the number of chunks of the file.
+     * @param newChunks the number of chunks that were not already stored.
+     * @param length the length of the file.
+     * @param newLength the number of bytes of the new chunks.
+     */
+
+    public record PutResult(int chunks, int newChunks, long length, long newLength) {}
+
+    private final Path root;
+    private final SecretKey encryptionKey;
+    private final SecretKey idKey;
+    private final ContentDefinedChunker chunker = new ContentDefinedChunker();
+    private final Cipher cipher;
+    private final Mac mac;
+    private final SecureRandom random = new SecureRandom();
+
+    private ChunkStore(Path root, SecretKey masterKey) throws FatalRuntimeException {
+        this.root = root;
+        this.encryptionKey = suite.toKey(deriveSubKey(masterKey, "chunk-encryption"));
+        this.idKey = new SecretKeySpec(deriveSubKey(masterKey, "chunk-id"), "HmacSHA256");
+        this.cipher = suite.newCipher();
+        this.mac = newMac(idKey);
+    }
+
+    /**
+     * Initializes a new store in an empty (or nonexistent) directory.
+     *
+     * @param path the path to the directory.
+     * @param password the password used to derive the keys.
+     * @return the store.
+     * @throws FatalRuntimeException if the directory already contains a store, or if it cannot be written.
+     */
+
+    public static ChunkStore initialize(String path, String password) throws FatalRuntimeException {
+        final Path root = Paths.get(path);
+        if (Files.exists(root.resolve("config"))) {
+            throw new FatalRuntimeException("the directory already contains a store", String.format("path: \"%s\"", path));
+        }
+        final byte[] salt = new byte[saltLength];
+        new SecureRandom().nextBytes(salt);
+        final SecretKey masterKey = AES256.generateKeyFromPassword(password, salt, AES256.defaultIterationCount);
+
+        final byte[] config = ByteBuffer.allocate(configLength)
+                .put(magic)
+                .put(currentVersion)
+                .putInt(AES256.defaultIterationCount)
+                .put(salt)
+                .put(deriveSubKey(masterKey, "key-check"))
+                .array();
+        try {
+            Files.createDirectories(root.resolve("chunks"));
+            Files.createDirectories(root.resolve("manifests"));
+            writeAtomically(root.resolve("config"), config);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot initialize the store \"%s\"", path), e.getMessage());
+        }
+        return new ChunkStore(root, masterKey);
+    }
+
+    /**
+     * Opens an existing store.
+     *
+     * @param path the path to the directory of the store.
+     * @param password the password used to derive the keys.
+     * @return the store.
+     * @throws FatalRuntimeException if the directory does not contain a store, or if the password is not valid.
+     */
+
+    public static ChunkStore open(String path, String password) throws FatalRuntimeException {
+        final Path root = Paths.get(path);
+        final byte[] config;
+        try {
+            config = Files.readAllBytes(root.resolve("config"));
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the directory does not contain a store", String.format("path: \"%s\"", path));
+        }
+        if (config.length != configLength || !Arrays.equals(config, 0, magic.length, magic, 0, magic.length)) {
+            throw new FatalRuntimeException("the configuration of the store is corrupted", String.format("path: \"%s\"", path));
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(config, magic.length, configLength - magic.length);
+        final byte version = buffer.get();
+        if (version != currentVersion) {
+            throw new FatalRuntimeException("the store has been created by a newer version of the application",
+                    String.format("store version: %d", version));
+        }
+        final int iterations = buffer.getInt();
+        final byte[] salt = new byte[saltLength];
+        buffer.get(salt);
+        final byte[] check = new byte[idLength];
+        buffer.get(check);
+
+        final SecretKey masterKey = AES256.generateKeyFromPassword(password, salt, iterations);
+        if (!MessageDigest.isEqual(check, deriveSubKey(masterKey, "key-check"))) {
+            throw new FatalRuntimeException("the given secret key is not valid", String.format("store: \"%s\"", path));
+        }
+        return new ChunkStore(root, masterKey);
+    }
+
+    /**
+     * Stores a file. If a manifest with the same name already exists, it is replaced.
+     *
+     * @param name the name of the file within the store.
+     * @param path the path to the file to store.
+     * @return the outcome.
+     * @throws FatalRuntimeException if the file cannot be read, or if the store cannot be written.
+     */
+
+    public PutResult put(String name, Path path) throws FatalRuntimeException {
+        final List<ChunkReference> chunks = new ArrayList<>();
+        final byte[] buffer = new byte[chunker.getMaximumSize()];
+        int filled = 0;
+        boolean eof = false;
+        long length = 0;
+        long newLength = 0;
+        int newChunks = 0;
+
+        try (InputStream input = Files.newInputStream(path)) {
+            final long lastModified = Files.getLastModifiedTime(path).toMillis();
+            while (true) {
+                while (!eof && filled < buffer.length) {
+                    final int bytesRead = input.read(buffer, filled, buffer.length - filled);
+                    if (bytesRead < 0) eof = true;
+                    else filled += bytesRead;
+                }
+                if (filled == 0) break;
+
+                final int chunkLength = chunker.cut(buffer, 0, filled);
+                final byte[] id = computeId(buffer, 0, chunkLength);
+                final Path chunkPath = chunkPath(id);
+                if (!Files.exists(chunkPath)) {
+                    writeAtomically(chunkPath, seal(id, buffer, 0, chunkLength));
+                    newChunks++;
+                    newLength += chunkLength;
+                }
+                chunks.add(new ChunkReference(id, chunkLength));
+                length += chunkLength;
+                System.arraycopy(buffer, chunkLength, buffer, 0, filled - chunkLength);
+                filled -= chunkLength;
+            }
+            saveManifest(new Manifest(name, length, lastModified, chunks));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot store the file \"%s\"", path), e.getMessage());
+        }
+        return new PutResult(chunks.size(), newChunks, length, newLength);
+    }
+
+    /**
+     * Restores a stored file.
+     *
+     * @param name the name of the file within the store.
+     * @param output the stream that receives the content of the file.
+     * @return the manifest of the file.
+     * @throws FatalRuntimeException if the file does not exist, or if the store is corrupted.
+     * @throws IOException if the output stream cannot be written.
+     */
+
+    public Manifest get(String name, OutputStream output) throws FatalRuntimeException, IOException {
+        final Manifest manifest = loadManifest(manifestPath(name));
+        if (null == manifest) {
+            throw new FatalRuntimeException("the store has no such file", String.format("name: \"%s\"", name));
+        }
+        for (ChunkReference chunk : manifest.chunks()) {
+            output.write(readChunk(chunk));
+        }
+        return manifest;
+    }
+
+    /**
+     * Restores a stored file into a given path.
+     *
+     * @param name the name of the file within the store.
+     * @param path the path to the output file.
+     * @throws FatalRuntimeException if the file cannot be restored.
+     */
+
+    public void get(String name, Path path) throws FatalRuntimeException {
+        try {
+            final Manifest manifest;
+            try (OutputStream output = Files.newOutputStream(path)) {
+                manifest = get(name, output);
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(manifest.lastModified()));
+        } catch (IOException e) {
+            FileManip.DeleteIfExists(path.toString());
+            throw new FatalRuntimeException(String.format("cannot write the file \"%s\"", path), e.getMessage());
+        } catch (FatalRuntimeException e) {
+            FileManip.DeleteIfExists(path.toString());
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a stored file. The chunks are left in the store until the next garbage collection.
+     *
+     * @param name the name of the file within the store.
+     * @return true if the file has been removed, false if it does not exist.
+     * @throws FatalRuntimeException if the manifest cannot be deleted.
+     */
+
+    public boolean remove(String name) throws FatalRuntimeException {
+        try {
+            return Files.deleteIfExists(manifestPath(name));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot remove \"%s\" from the store", name), e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the manifests of all the stored files.
+     *
+     * @return the manifests.
+     * @throws FatalRuntimeException if a manifest cannot be read or authenticated.
+     */
+
+    public List<Manifest> list() throws FatalRuntimeException {
+        final List<Manifest> manifests = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(root.resolve("manifests"))) {
+            for (Path path : stream.filter(p -> !p.getFileName().toString().endsWith(".tmp")).sorted().toList()) {
+                @Nullable final Manifest manifest = loadManifest(path);
+                if (null != manifest) manifests.add(manifest);
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot list the store \"%s\"", root), e.getMessage());
+        }
+        return manifests;
+    }
+
+    /**
+     * Deletes the chunks that are not referenced by any manifest.
+     *
+     * @return the number of deleted chunks.
+     * @throws FatalRuntimeException if the store cannot be read or written.
+     */
+
+    public int collectGarbage() throws FatalRuntimeException {
+        final Set<String> referenced = new HashSet<>();
+        for (Manifest manifest : list()) {
+            for (ChunkReference chunk : manifest.chunks()) referenced.add(hex.formatHex(chunk.id()));
+        }
+        int deleted = 0;
+        try (Stream<Path> stream = Files.walk(root.resolve("chunks"))) {
+            for (Path path : stream.filter(Files::isRegularFile).toList()) {
+                if (!referenced.contains(path.getFileName().toString())) {
+                    Files.delete(path);
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot collect the garbage of the store \"%s\"", root), e.getMessage());
+        }
+        return deleted;
+    }
+
+    private byte[] readChunk(ChunkReference chunk) throws FatalRuntimeException {
+        final Path path = chunkPath(chunk.id());
+        try {
+            final byte[] plain = open(chunk.id(), Files.readAllBytes(path));
+            if (plain.length != chunk.length() || !MessageDigest.isEqual(chunk.id(), computeId(plain, 0, plain.length))) {
+                throw new AEADBadTagException("unexpected content");
+            }
+            return plain;
+        } catch (AEADBadTagException e) {
+            throw new FatalRuntimeException("the store is corrupted", String.format("chunk \"%s\" cannot be authenticated", path));
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the store is corrupted", String.format("chunk \"%s\" cannot be read: %s", path, e.getMessage()));
+        }
+    }
+
+    private void saveManifest(Manifest manifest) throws IOException, FatalRuntimeException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeInt(manifestVersion);
+            output.writeUTF(manifest.name());
+            output.writeLong(manifest.length());
+            output.writeLong(manifest.lastModified());
+            output.writeInt(manifest.chunks().size());
+            for (ChunkReference chunk : manifest.chunks()) {
+                output.write(chunk.id());
+                output.writeInt(chunk.length());
+            }
+        }
+        final Path path = manifestPath(manifest.name());
+        writeAtomically(path, seal(manifestAad(path), bytes.toByteArray(), 0, bytes.size()));
+    }
+
+    private @Nullable Manifest loadManifest(Path path) throws FatalRuntimeException {
+        if (!Files.exists(path)) return null;
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(open(manifestAad(path), Files.readAllBytes(path))))) {
+            if (input.readInt() != manifestVersion) {
+                throw new FatalRuntimeException("the store has been created by a newer version of the application",
+                        String.format("manifest: \"%s\"", path));
+            }
+            final String name = input.readUTF();
+            final long length = input.readLong();
+            final long lastModified = input.readLong();
+            final int count = input.readInt();
+            final List<ChunkReference> chunks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final byte[] id = new byte[idLength];
+                input.readFully(id);
+                chunks.add(new ChunkReference(id, input.readInt()));
+            }
+            return new Manifest(name, length, lastModified, chunks);
+        } catch (AEADBadTagException e) {
+            throw new FatalRuntimeException("the store is corrupted", String.format("manifest \"%s\" cannot be authenticated", path));
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the store is corrupted", String.format("manifest \"%s\" cannot be read: %s", path, e.getMessage()));
+        }
+    }
+
+    private Path chunkPath(byte[] id) {
+        final String name = hex.formatHex(id);
+        return root.resolve("chunks").resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private Path manifestPath(String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        final byte[] prefix = "manifest:".getBytes(StandardCharsets.US_ASCII);
+        mac.update(prefix);
+        return root.resolve("manifests").resolve(hex.formatHex(mac.doFinal(bytes)));
+    }
+
+    /**
+     * The associated data of a manifest is the name of its file, so that manifests cannot be swapped.
+     */
+
+    private static byte[] manifestAad(Path path) {
+        return path.getFileName().toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] computeId(byte[] buffer, int offset, int length) {
+        mac.update(buffer, offset, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * Encrypts and authenticates a buffer. A new random nonce is used for each call.
+     *
+     * @return the stored representation: [nonce][ciphertext][tag].
+     */
+
+    private byte[] seal(byte[] aad, byte[] buffer, int offset, int length) throws FatalRuntimeException {
+        final byte[] stored = new byte[suite.getNonceLength() + length + suite.getTagLength()];
+        random.nextBytes(stored);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, suite.parameterSpec(stored, 0));
+            cipher.updateAAD(aad);
+            cipher.doFinal(buffer, offset, length, stored, suite.getNonceLength());
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while encrypting (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+        return stored;
+    }
+
+    private byte[] open(byte[] aad, byte[] stored) throws AEADBadTagException, FatalRuntimeException {
+        if (stored.length < suite.getNonceLength() + suite.getTagLength()) {
+            throw new AEADBadTagException("the stored buffer is too short");
+        }
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, encryptionKey, suite.parameterSpec(stored, 0));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(stored, suite.getNonceLength(), stored.length - suite.getNonceLength());
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred while decrypting (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+
+    private static void writeAtomically(Path path, byte[] content) throws IOException {
+        Files.createDirectories(path.getParent());
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            Files.write(temporaryPath, content);
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    /**
+     * Derives a sub-key from the master key: HMAC-SHA256(master key, label).
+     */
+
+    private static byte[] deriveSubKey(SecretKey masterKey, String label) throws FatalRuntimeException {
+        final Mac mac = newMac(new SecretKeySpec(masterKey.getEncoded(), "HmacSHA256"));
+        return mac.doFinal(label.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Mac newMac(SecretKey key) throws FatalRuntimeException {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new FatalRuntimeException("the HmacSHA256 algorithm is not available!");
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.shadow.lib.store;
+
+import java.util.SplittableRandom;
+
+/**
+ * The ContentDefinedChunker class cuts a stream of bytes into chunks whose boundaries depend on the content, not on
+ * the positions. Thus, inserting or removing bytes in a file only changes the chunks around the modification: the
+ * other chunks are identical to the chunks of the original file, and they can be deduplicated.
+ *
+ * The boundaries are found using a "gear" rolling hash (as in FastCDC): for each byte, the hash is shifted by one bit
+ * and a random value associated with the byte is added. Thus, the hash only depends on the last 64 bytes. A boundary
+ * is declared when the masked bits of the hash are all zeros. A stricter mask is used before the average size and a
+ * looser one after it, which concentrates the chunk sizes around the average ("normalized chunking").
+ *
+ * Please note that the table of random values must never change: otherwise, the chunks produced by a new version
+ * would not match the chunks already stored (the data would remain readable, but it would not be deduplicated anymore).
+ */
+
+public class ContentDefinedChunker {
+    public static final int defaultMinimumSize = 16 * 1024;
+    public static final int defaultAverageSize = 64 * 1024;
+    public static final int defaultMaximumSize = 256 * 1024;
+    private static final long gearSeed = 0x534B524956414344L;
+    private static final long[] gear = new long[256];
+
+    static {
+        final SplittableRandom random = new SplittableRandom(gearSeed);
+        for (int i = 0; i < gear.length; i++) gear[i] = random.nextLong();
+    }
+
+    private final int minimumSize;
+    private final int averageSize;
+    private final int maximumSize;
+    private final long strictMask;
+    private final long looseMask;
+
+    public ContentDefinedChunker() {
+        this(defaultMinimumSize, defaultAverageSize, defaultMaximumSize);
+    }
+
+    /**
+     * Creates a chunker.
+     *
+     * @param minimumSize the minimum size of a chunk (except for the last chunk of a stream).
+     * @param averageSize the expected average size of a chunk (a power of 2).
+     * @param maximumSize the maximum size of a chunk.
+     */
+
+    public ContentDefinedChunker(int minimumSize, int averageSize, int maximumSize) {
+        if (minimumSize < 64 || averageSize <= minimumSize || maximumSize <= averageSize || Integer.bitCount(averageSize) != 1) {
+            throw new IllegalArgumentException("invalid chunk sizes");
+        }
+        this.minimumSize = minimumSize;
+        this.averageSize = averageSize;
+        this.maximumSize = maximumSize;
+        final int bits = Integer.numberOfTrailingZeros(averageSize);
+        this.strictMask = mask(bits + 1);
+        this.looseMask = mask(bits - 1);
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Finds the end of the chunk that starts at a given position. The caller must provide at least
+     * `getMaximumSize()` bytes, unless the end of the stream has been reached.
+     *
+     * @param buffer the buffer that contains the data.
+     * @param offset the position of the first byte of the chunk.
+     * @param length the number of bytes available from the offset.
+     * @return the length of the chunk.
+     */
+
+    public int cut(byte[] buffer, int offset, int length) {
+        if (length <= minimumSize) return length;
+        final int end = Math.min(length, maximumSize);
+        final int normal = Math.min(end, averageSize);
+        long hash = 0;
+        int i = minimumSize;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + gear[buffer[offset + i] & 0xFF];
+            if ((hash & strictMask) == 0) return i + 1;
+        }
+        for (; i < end; i++) {
+            hash = (hash << 1) + gear[buffer[offset + i] & 0xFF];
+            if ((hash & looseMask) == 0) return i + 1;
+        }
+        return end;
+    }
+
+    /**
+     * Creates a mask whose set bits are spread over the 48 most significant bits of the hash, since the least
+     * significant bits only depend on the last few bytes.
+     */
+
+    private static long mask(int bits) {
+        long mask = 0;
+        for (int i = 0; i < bits; i++) mask |= 1L << (63 - i * 48 / bits);
+        return mask;
+    }
+}
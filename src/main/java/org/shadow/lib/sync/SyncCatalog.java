@@ -0,0 +1,249 @@
+package org.shadow.lib.sync;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.AES256;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SyncCatalog class records, for each file of a plaintext tree, the state of the file when it was last encrypted
+ * into the encrypted tree: its size, its modification time and a digest of its content.
+ *
+ * - A file whose size and modification time match its entry is considered unchanged, without being read.
+ * - A file whose digest matches its entry (typically, a file that has only been touched) is not encrypted again.
+ *
+ * The digests are keyed (HMAC-SHA256, with a key derived from the password), so that the catalog, which is stored
+ * next to the encrypted files, does not reveal whether a plaintext file has a known content.
+ *
+ * Format of the catalog (big-endian):
+ *
+ *     [magic "SKRVSYNC" (8)][version (1)][KDF iterations (4)][salt (16)][key check (32)][number of entries (4)]
+ *     for each entry: [relative path (modified UTF-8, prefixed by its length (2))][size (8)][modification time (8)][digest (32)]
+ *
+ * The catalog is written into a temporary file, then renamed. The methods `get`, `put`, `remove` and `digest` may
+ * be called by several threads at the same time.
+ */
+
+public class SyncCatalog {
+    public static final String fileName = ".skriva-sync";
+    private static final byte[] magic = "SKRVSYNC".getBytes(StandardCharsets.US_ASCII);
+    private static final byte currentVersion = 1;
+    private static final int saltLength = 16;
+    private static final int digestLength = 32;
+
+    /**
+     * An Entry describes the state of a plaintext file when it was last encrypted.
+     *
+     * @param size the size of the file.
+     * @param lastModified the time of the last modification of the file (in milliseconds since the epoch).
+     * @param digest the keyed digest of the content of the file.
+     */
+
+    public record Entry(long size, long lastModified, byte[] digest) {}
+
+    private final Path path;
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] check;
+    private final SecretKey digestKey;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private SyncCatalog(Path path, int iterations, byte[] salt, String password) throws FatalRuntimeException {
+        this.path = path;
+        this.iterations = iterations;
+        this.salt = salt;
+        final SecretKey masterKey = AES256.generateKeyFromPassword(password, salt, iterations);
+        this.check = hmac(masterKey.getEncoded(), "key-check");
+        this.digestKey = new SecretKeySpec(hmac(masterKey.getEncoded(), "sync-digest"), "HmacSHA256");
+    }
+
+    /**
+     * Loads a catalog. If the catalog does not exist, an empty catalog is returned (it is created by `save`).
+     *
+     * @param path the path to the catalog.
+     * @param password the password used to derive the key of the digests.
+     * @return the catalog.
+     * @throws FatalRuntimeException if the catalog is corrupted, or if the password is not the one used to create it.
+     */
+
+    public static SyncCatalog load(Path path, String password) throws FatalRuntimeException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            final byte[] header = new byte[magic.length];
+            input.readFully(header);
+            if (!Arrays.equals(header, magic)) {
+                throw new FatalRuntimeException("the file is not a synchronization catalog", String.format("path: \"%s\"", path));
+            }
+            final byte version = input.readByte();
+            if (version != currentVersion) {
+                throw new FatalRuntimeException("the catalog has been created by a newer version of the application",
+                        String.format("catalog version: %d", version));
+            }
+            final int iterations = input.readInt();
+            final byte[] salt = new byte[saltLength];
+            input.readFully(salt);
+            final byte[] check = new byte[digestLength];
+            input.readFully(check);
+
+            final SyncCatalog catalog = new SyncCatalog(path, iterations, salt, password);
+            if (!MessageDigest.isEqual(check, catalog.check)) {
+                throw new FatalRuntimeException("the given secret key is not valid", String.format("catalog: \"%s\"", path));
+            }
+            final int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                final String name = input.readUTF();
+                final long size = input.readLong();
+                final long lastModified = input.readLong();
+                final byte[] digest = new byte[digestLength];
+                input.readFully(digest);
+                catalog.entries.put(name, new Entry(size, lastModified, digest));
+            }
+            return catalog;
+        } catch (NoSuchFileException e) {
+            final byte[] salt = new byte[saltLength];
+            new SecureRandom().nextBytes(salt);
+            return new SyncCatalog(path, AES256.defaultIterationCount, salt, password);
+        } catch (EOFException e) {
+            throw new FatalRuntimeException("the synchronization catalog is truncated", String.format("path: \"%s\"", path));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the synchronization catalog \"%s\"", path), e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the catalog. It may be called while entries are being modified: it writes a snapshot of the entries,
+     * which may or may not include the modifications made during the call.
+     *
+     * @throws FatalRuntimeException if the catalog cannot be written.
+     */
+
+    public void save() throws FatalRuntimeException {
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath), 1 << 16))) {
+                output.write(magic);
+                output.writeByte(currentVersion);
+                output.writeInt(iterations);
+                output.write(salt);
+                output.write(check);
+                final Map<String, Entry> snapshot = Map.copyOf(entries);
+                output.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().size());
+                    output.writeLong(entry.getValue().lastModified());
+                    output.write(entry.getValue().digest());
+                }
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the synchronization catalog \"%s\"", path), e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(temporaryPath);
+            } catch (IOException e) {
+                // Nothing more can be done.
+            }
+        }
+    }
+
+    /**
+     * Returns the entry of a file.
+     *
+     * @param name the path to the file, relative to the root of the plaintext tree.
+     * @return the entry, or null if the catalog has no entry for this file.
+     */
+
+    public @Nullable Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Sets the entry of a file.
+     *
+     * @param name the path to the file, relative to the root of the plaintext tree.
+     * @param entry the entry.
+     */
+
+    public void put(String name, Entry entry) {
+        entries.put(name, entry);
+    }
+
+    /**
+     * Removes the entry of a file.
+     *
+     * @param name the path to the file, relative to the root of the plaintext tree.
+     */
+
+    public void remove(String name) {
+        entries.remove(name);
+    }
+
+    /**
+     * Returns the names of the files of the catalog.
+     *
+     * @return the relative paths of the files.
+     */
+
+    public Set<String> names() {
+        return Set.copyOf(entries.keySet());
+    }
+
+    /**
+     * Calculates the keyed digest of the content of a file.
+     *
+     * @param file the path to the file.
+     * @return the digest.
+     * @throws FatalRuntimeException if the file cannot be read.
+     */
+
+    public byte[] digest(Path file) throws FatalRuntimeException {
+        final Mac mac = newMac(digestKey);
+        final byte[] buffer = new byte[1 << 16];
+        try (InputStream input = Files.newInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) > 0) mac.update(buffer, 0, bytesRead);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot read the file \"%s\"", file), e.getMessage());
+        }
+        return mac.doFinal();
+    }
+
+    private static byte[] hmac(byte[] key, String label) throws FatalRuntimeException {
+        return newMac(new SecretKeySpec(key, "HmacSHA256")).doFinal(label.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static Mac newMac(SecretKey key) throws FatalRuntimeException {
+        try {
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (NoSuchAlgorithmException e) {
+            throw new FatalRuntimeException("the HmacSHA256 algorithm is not available!");
+        } catch (GeneralSecurityException e) {
+            throw new FatalRuntimeException(String.format("An unexpected exception occurred (%s: %s)", e.getClass().getName(), e.getMessage()));
+        }
+    }
+}
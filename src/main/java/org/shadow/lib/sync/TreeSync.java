@@ -0,0 +1,269 @@
+package org.shadow.lib.sync;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The TreeSync class mirrors a plaintext tree into an encrypted tree. The encrypted file of "source/dir/file" is
+ * "target/dir/file.rmb". The state of the plaintext files is recorded into a SyncCatalog stored at the root of the
+ * encrypted tree, so that a synchronization only processes the changes made since the previous one:
+ *
+ * - A file whose size and modification time have not changed costs only the stat call made by the directory walk.
+ * - A file whose size or modification time has changed is read to calculate its digest. It is encrypted only if
+ *   its digest has changed.
+ * - The encrypted files of the plaintext files that no longer exist are deleted.
+ *
+ * The files to read are processed in parallel. The catalog is saved periodically while the files are processed (so
+ * that an interrupted synchronization does not start over), and at the end of the synchronization, even if some
+ * files could not be processed (these files are processed again by the next synchronization). The files and the
+ * directories that cannot be read are reported as failures: their encrypted files are kept.
+ */
+
+public class TreeSync {
+
+    /**
+     * A Result describes the outcome of a synchronization.
+     *
+     * @param files the number of plaintext files.
+     * @param unchanged the number of files skipped because their size and modification time have not changed.
+     * @param touched the number of files not encrypted because their content has not changed.
+     * @param encrypted the number of files encrypted.
+     * @param deleted the number of encrypted files deleted.
+     * @param failures the descriptions of the files that could not be processed.
+     */
+
+    public record Result(int files, int unchanged, int touched, int encrypted, int deleted, List<String> failures) {}
+
+    private static final long checkpointNanos = TimeUnit.MINUTES.toNanos(1);
+
+    private final SkrivaCypher encryptor;
+    private final int threads;
+
+    /**
+     * Creates a synchronizer.
+     *
+     * @param encryptor the cypher used to encrypt the files.
+     * @param threads the number of files processed in parallel.
+     */
+
+    public TreeSync(SkrivaCypher encryptor, int threads) {
+        this.encryptor = encryptor;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Synchronizes an encrypted tree with a plaintext tree.
+     *
+     * @param source the root of the plaintext tree.
+     * @param target the root of the encrypted tree. It is created if it does not exist.
+     * @param secretKey the secret key used for the encryption.
+     * @return the outcome of the synchronization.
+     * @throws FatalRuntimeException if the trees cannot be walked, or if the catalog cannot be read or written.
+     */
+
+    public Result sync(Path source, Path target, String secretKey) throws FatalRuntimeException {
+        final Path sourceRoot = source.toAbsolutePath().normalize();
+        final Path targetRoot = target.toAbsolutePath().normalize();
+        if (!Files.isDirectory(sourceRoot)) {
+            throw new FatalRuntimeException("the directory to synchronize does not exist", String.format("path: \"%s\"", source));
+        }
+        if (targetRoot.startsWith(sourceRoot) || sourceRoot.startsWith(targetRoot)) {
+            throw new FatalRuntimeException("the plaintext tree and the encrypted tree must not contain each other");
+        }
+        try {
+            Files.createDirectories(targetRoot);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot create the directory \"%s\"", target), e.getMessage());
+        }
+        final SyncCatalog catalog = SyncCatalog.load(targetRoot.resolve(SyncCatalog.fileName), secretKey);
+
+        // Walk the plaintext tree. The attributes come with the walk: unchanged files cost nothing more.
+        final Set<String> seen = new HashSet<>();
+        final Set<String> unreadable = new HashSet<>();
+        final List<Path> candidates = new ArrayList<>();
+        final List<BasicFileAttributes> candidateAttributes = new ArrayList<>();
+        final List<String> failures = new ArrayList<>();
+        try {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (!attributes.isRegularFile()) return FileVisitResult.CONTINUE;
+                    final String name = nameOf(sourceRoot, file);
+                    seen.add(name);
+                    @Nullable final SyncCatalog.Entry entry = catalog.get(name);
+                    if (null == entry || entry.size() != attributes.size() || entry.lastModified() != attributes.lastModifiedTime().toMillis()) {
+                        candidates.add(file);
+                        candidateAttributes.add(attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    failures.add(String.format("%s: cannot read the file (%s)", file, e.getMessage()));
+                    unreadable.add(nameOf(sourceRoot, file));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, @Nullable IOException e) {
+                    if (null != e) {
+                        failures.add(String.format("%s: cannot read the directory (%s)", directory, e.getMessage()));
+                        unreadable.add(nameOf(sourceRoot, directory));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot walk the directory \"%s\"", source), e.getMessage());
+        }
+
+        final AtomicInteger touched = new AtomicInteger();
+        final AtomicInteger encrypted = new AtomicInteger();
+        int deleted = 0;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                final Path file = candidates.get(i);
+                final BasicFileAttributes attributes = candidateAttributes.get(i);
+                futures.add(executor.submit(() -> {
+                    if (process(catalog, sourceRoot, targetRoot, file, attributes, secretKey)) encrypted.incrementAndGet();
+                    else touched.incrementAndGet();
+                }));
+            }
+            long lastCheckpoint = System.nanoTime();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    failures.add(String.format("%s: %s", candidates.get(i), e.getCause().getMessage()));
+                }
+                if (System.nanoTime() - lastCheckpoint > checkpointNanos) {
+                    catalog.save();
+                    lastCheckpoint = System.nanoTime();
+                }
+            }
+
+            // Propagate the deletions. The files that could not be read (or whose directory could not be read) may
+            // still exist: their encrypted files are kept.
+            for (String name : catalog.names()) {
+                if (seen.contains(name) || isUnder(name, unreadable)) continue;
+                try {
+                    Files.deleteIfExists(targetRoot.resolve(name + ".rmb"));
+                    catalog.remove(name);
+                    deleted++;
+                } catch (IOException e) {
+                    failures.add(String.format("%s: cannot delete the encrypted file (%s)", name, e.getMessage()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FatalRuntimeException("the synchronization has been interrupted");
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            catalog.save();
+        }
+        return new Result(seen.size(), seen.size() - candidates.size(), touched.get(), encrypted.get(), deleted, failures);
+    }
+
+    /**
+     * Processes a file whose size or modification time has changed.
+     *
+     * @return true if the file has been encrypted, false if its content has not changed.
+     */
+
+    private boolean process(SyncCatalog catalog, Path sourceRoot, Path targetRoot, Path file, BasicFileAttributes attributes,
+                            String secretKey) throws FatalRuntimeException {
+        final String name = nameOf(sourceRoot, file);
+        final Path output = targetRoot.resolve(name + ".rmb");
+        final byte[] digest = catalog.digest(file);
+        @Nullable final SyncCatalog.Entry entry = catalog.get(name);
+        final SyncCatalog.Entry newEntry = new SyncCatalog.Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), digest);
+
+        if (null != entry && Arrays.equals(entry.digest(), digest) && Files.exists(output)) {
+            catalog.put(name, newEntry);
+            return false;
+        }
+        final Path temporary = output.resolveSibling("." + output.getFileName() + ".part");
+        try {
+            Files.createDirectories(output.getParent());
+            encryptor.EncryptFile(file.toString(), temporary.toString(), secretKey, null);
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the encrypted file \"%s\"", output), e.getMessage());
+        } finally {
+            FileManip.DeleteIfExists(temporary.toString());
+        }
+        catalog.put(name, newEntry);
+        return true;
+    }
+
+    /**
+     * Waits until the workers have stopped, even if the current thread is interrupted (the workers modify the
+     * catalog, which must not be saved before they stop). The interrupt status is restored.
+     */
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.MINUTES)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Tells whether a name designates one of the given files, or a file within one of the given directories.
+     */
+
+    private static boolean isUnder(String name, Set<String> names) {
+        String current = name;
+        while (!names.contains(current)) {
+            final int separator = current.lastIndexOf('/');
+            // The name of the root is the empty string.
+            if (separator < 0) return names.contains("");
+            current = current.substring(0, separator);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the name of a file within the catalog: its path relative to the root, using "/" as separator.
+     */
+
+    private static String nameOf(Path root, Path file) {
+        final Path relative = root.relativize(file);
+        final StringBuilder name = new StringBuilder();
+        for (Path element : relative) {
+            if (!name.isEmpty()) name.append('/');
+            name.append(element);
+        }
+        return name.toString();
+    }
+}
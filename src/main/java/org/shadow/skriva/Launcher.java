@@ -0,0 +1,33 @@
+package org.shadow.skriva;
+
+import javafx.application.Application;
+import org.shadow.lib.cryptography.AES256;
+import org.shadow.skriva.agent.AgentClient;
+import org.shadow.skriva.cli.Cli;
+
+import java.util.Arrays;
+
+/**
+ * The Launcher class is the entry point of the application.
+ *
+ * Please note that this class must not extend `javafx.application.Application`. Otherwise, the Java launcher starts
+ * the JavaFX toolkit before calling `main`, and the headless commands could not be executed on hosts without display.
+ */
+
+public class Launcher {
+
+    public static void main(String[] args) {
+        // If the key agent is running, the keys derived from passwords are cached by it (see AgentServer).
+        AES256.setKeyCache(AgentClient.find());
+        // Headless commands (see `Cli`) are executed without starting the graphical interface.
+        final InterfaceMode mode = args.length > 0 && Cli.isCommand(args[0]) ? InterfaceMode.Cli : InterfaceMode.Gui;
+        if (mode == InterfaceMode.Cli) {
+            System.exit(Cli.execute(args));
+        }
+        // A single graphical interface runs at a time: the later launches hand their arguments over to it.
+        if (null == SingleInstance.acquire(SingleInstance.defaultSocketPath(), Arrays.asList(args))) {
+            System.exit(0);
+        }
+        Application.launch(Main.class, args);
+    }
+}
@@ -14,6 +14,7 @@ import org.shadow.skriva.form.encrypt_decrypt.EncryptDecrypt;
 import org.shadow.lib.gui.ModernAlert;
 
 import java.util.Arrays;
+import java.util.List;
 
 // How is the application initialized ?
 //
@@ -86,9 +87,62 @@ public class Main extends Application {
         runSetConfiguration = new RunSetConfiguration(configuration, getParameters().getRaw(), encryptDecryptForm);
         Platform.runLater(runSetConfiguration); // [M:001] load the configuration from the command line later
 
+        // The files opened while the application is running are queued (see `SingleInstance`).
+        @Nullable final SingleInstance instance = SingleInstance.current();
+        if (null != instance) {
+            instance.setReceiver(args -> Platform.runLater(() -> enqueue(stage, args)));
+        }
+
+        // The files dropped on the form are queued as well: the encrypted files (".rmb") are decrypted, and the
+        // other files are encrypted.
+        encryptDecryptForm.setOnFilesDropped(paths -> paths.forEach(path -> {
+            final Action action = path.toLowerCase().endsWith(".rmb") ? Action.Decrypt : Action.Encrypt;
+            enqueue(stage, List.of(Action.enumToName(action), path));
+        }));
+
         stage.show();
     }
 
+    /**
+     * Adds the file handed over by a later launch of the application (or dropped on the form) to the files to
+     * process. Unlike the file given on the command line, an invalid file does not terminate the application: the
+     * error is reported, and the file is ignored.
+     *
+     * @param stage the main window, brought to the front.
+     * @param args the arguments: the action and the path to the file.
+     */
+
+    private static void enqueue(Stage stage, List<String> args) {
+        stage.toFront();
+        if (args.isEmpty()) return;
+
+        final Configuration request = new Configuration();
+        request.setModernAlertCssPath(configuration.getModernAlertCssPath());
+        request.setModernYesNoCssPath(configuration.getModernYesNoCssPath());
+        request.setModernSuccessCssPath(configuration.getModernSuccessCssPath());
+        request.setVerbose(configuration.isVerbose());
+        try {
+            org.shadow.skriva.Parameters.ParseArguments(request, args);
+            RunVerifyConfiguration.verifyInputPath(request.getInput());
+            request.setOutput(RunVerifyConfiguration.calculateOutputPath(request.getInput(), request.getAction()));
+            try {
+                RunVerifyConfiguration.verifyOutputPath(request.getOutput());
+            } catch (RecoverableRuntimeException e) {
+                ModernYesNo yesNo = new ModernYesNo(String.format("The destination file already exists:\n%s\nOverride it?", request.getOutput()));
+                yesNo.getScene().getStylesheets().add(configuration.getModernYesNoCssPath());
+                yesNo.showAndWait();
+                if (!yesNo.isYes()) return;
+            }
+        } catch (FatalRuntimeException e) {
+            @Nullable String details = e.getDetails();
+            ModernAlert alert = null == details ? new ModernAlert(e.getMessage()) : new ModernAlert(e.getMessage(), details);
+            alert.getScene().getStylesheets().add(configuration.getModernAlertCssPath());
+            alert.showAndWait();
+            return;
+        }
+        encryptDecryptForm.addConfiguration(request);
+    }
+
     /**
      * Handles exceptions by printing the stack trace if in verbose mode,
      * displaying an alert to the user, and terminating the application.
@@ -101,6 +155,7 @@ public class Main extends Application {
 
         Platform.runLater(() -> {
             if (throwable instanceof FatalRuntimeException) {
+                closeSingleInstance();
                 encryptDecryptForm.setVisible(false);
                 ModernAlert alert;
                 @Nullable String details = ((FatalRuntimeException) throwable).getDetails();
@@ -127,6 +182,7 @@ public class Main extends Application {
             }
 
             // The code below should not be executed.
+            closeSingleInstance();
             encryptDecryptForm.setVisible(false);
             ModernAlert alert = new ModernAlert("An unexpected error occurred. Please report this error.", Arrays.toString(throwable.getStackTrace()));
             alert.getScene().getStylesheets().add(configuration.getModernAlertCssPath());
@@ -135,6 +191,17 @@ public class Main extends Application {
         });
     }
 
+    /**
+     * Stops receiving the files of the later launches before a terminal dialog is shown: the application exits once
+     * the dialog is closed, and the files received meanwhile would be lost. The later launches run as standalone
+     * instances instead.
+     */
+
+    private static void closeSingleInstance() {
+        @Nullable final SingleInstance instance = SingleInstance.current();
+        if (null != instance) instance.close();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
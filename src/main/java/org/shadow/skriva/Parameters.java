@@ -27,6 +27,23 @@ public class Parameters {
      */
 
     public static void ParseCommandLine(Configuration configuration, List<String> args) throws FatalRuntimeException, RecoverableRuntimeException {
+        ParseArguments(configuration, args);
+
+        // Please note that we need the configuration to be set for the main form to be initialized.
+        runVerifyConfiguration = new RunVerifyConfiguration(configuration);
+        Platform.runLater(runVerifyConfiguration); // [M:002] check the input and output files
+    }
+
+    /**
+     * Parses the arguments (action and input file) and sets the action and the input file of the provided
+     * configuration. Unlike `ParseCommandLine`, this method does not verify the input and output files.
+     *
+     * @param configuration the configuration instance that will be populated based on the parsed arguments
+     * @param args the list of arguments to be parsed
+     * @throws FatalRuntimeException if any of the provided arguments are invalid.
+     */
+
+    public static void ParseArguments(Configuration configuration, List<String> args) throws FatalRuntimeException {
         // Extract the parameters.
         if (args.size() < 2) {
             throw new FatalRuntimeException("Invalid number of parameters");
@@ -42,10 +59,6 @@ public class Parameters {
         // Create the configuration.
         configuration.setAction(Action.nameToEnum(action));
         configuration.setInput(inputPath);
-
-        // Please note that we need the configuration to be set for the main form to be initialized.
-        runVerifyConfiguration = new RunVerifyConfiguration(configuration);
-        Platform.runLater(runVerifyConfiguration); // [M:002] check the input and output files
     }
 
 }
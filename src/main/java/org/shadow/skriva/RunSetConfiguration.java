@@ -33,6 +33,6 @@ public class  RunSetConfiguration implements Runnable {
             System.out.println("Set the configuration for the interface");
         }
         org.shadow.skriva.Parameters.ParseCommandLine(configuration, args);
-        encryptDecryptForm.setConfiguration(configuration);
+        encryptDecryptForm.addConfiguration(configuration);
     }
 }
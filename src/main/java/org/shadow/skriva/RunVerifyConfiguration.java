@@ -34,7 +34,7 @@ public class RunVerifyConfiguration implements Runnable {
      *          the event loop has been started. Indeed, it may raise exceptions.
      */
 
-    private static String calculateOutputPath(String inputPath, Action action) {
+    public static String calculateOutputPath(String inputPath, Action action) {
         String newFileName;
         final Path originalPath = Paths.get(inputPath);
         final Path parentPath = originalPath.getParent();
@@ -0,0 +1,273 @@
+package org.shadow.skriva;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.file.SocketFiles;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The SingleInstance class makes sure that a single graphical interface runs for a user. The first launch listens on
+ * a Unix domain socket. The later launches hand their command-line arguments to the running instance through the
+ * socket, and exit at once: selecting many files in the file manager starts one JVM and one window, instead of one
+ * per file.
+ *
+ * The protocol is minimal: the client sends the number of arguments (int) followed by the arguments (UTF), and the
+ * running instance acknowledges them with a single byte. Each connection is served by its own thread, and both sides
+ * give up after a timeout: a client that stalls does not block the later launches, and a running instance that does
+ * not answer does not block the launch (which then runs as a standalone instance).
+ */
+
+public class SingleInstance implements AutoCloseable {
+    private static final int acknowledgement = 1;
+    private static final int maxArguments = 1024;
+    private static final int maxAttempts = 3;
+    private static final long timeoutMillis = 10_000;
+
+    @Nullable private static SingleInstance current = null;
+
+    private final Path socketPath;
+    @Nullable private final ServerSocketChannel server;
+    private final List<List<String>> received = new ArrayList<>();
+    @Nullable private Consumer<List<String>> receiver = null;
+    private boolean closed = false;
+    private int connections = 0; // the connections being served, see close
+
+    private SingleInstance(Path socketPath, @Nullable ServerSocketChannel server) {
+        this.socketPath = socketPath;
+        this.server = server;
+    }
+
+    /**
+     * Returns the default path to the socket: "~/.skriva/gui.sock".
+     *
+     * @return the path to the socket.
+     */
+
+    public static Path defaultSocketPath() {
+        return Path.of(System.getProperty("user.home"), ".skriva", "gui.sock");
+    }
+
+    /**
+     * Returns the instance acquired by the current process.
+     *
+     * @return the instance, or null if `acquire` has not been called (or if the arguments have been handed over).
+     */
+
+    public static @Nullable SingleInstance current() {
+        return current;
+    }
+
+    /**
+     * Hands the arguments over to the running instance, or becomes the running instance.
+     *
+     * Please note that if the socket cannot be used at all (for example, because the file system does not support
+     * Unix domain sockets), the process runs as a standalone instance.
+     *
+     * @param socketPath the path to the socket.
+     * @param args the command-line arguments. The paths are made absolute, since the running instance does not
+     *        share the working directory of the current process.
+     * @return null if the arguments have been handed over to a running instance: the process must exit. Otherwise,
+     *         the instance that receives the arguments of the later launches.
+     */
+
+    public static @Nullable SingleInstance acquire(Path socketPath, List<String> args) {
+        final List<String> absoluteArgs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            absoluteArgs.add(i == 0 ? args.get(i) : absolutePath(args.get(i)));
+        }
+
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            if (forward(socketPath, absoluteArgs)) return null;
+            try {
+                current = new SingleInstance(socketPath, SocketFiles.bind(socketPath));
+                current.start();
+                return current;
+            } catch (IOException e) {
+                // Another launch has bound the socket in the meantime: hand the arguments over to it.
+            }
+        }
+        current = new SingleInstance(socketPath, null);
+        return current;
+    }
+
+    /**
+     * Sets the receiver of the arguments handed over by the later launches. The arguments received before the
+     * receiver is set are delivered at once.
+     *
+     * Please note that the receiver is called by the threads that serve the connections (one thread per connection).
+     *
+     * @param receiver the receiver.
+     */
+
+    public void setReceiver(Consumer<List<String>> receiver) {
+        final List<List<String>> pending;
+        synchronized (this) {
+            this.receiver = receiver;
+            pending = new ArrayList<>(received);
+            received.clear();
+        }
+        pending.forEach(receiver);
+    }
+
+    /**
+     * Stops listening, deletes the socket, and waits for the connections being served (at most the timeout). Thus,
+     * once this method returns, the arguments acknowledged to the later launches have all been delivered, and the
+     * next launches run as standalone instances.
+     */
+
+    @Override
+    public void close() {
+        if (null == server) return;
+        synchronized (this) {
+            closed = true;
+        }
+        try {
+            server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            // Nothing more can be done. The next launch replaces the stale socket.
+        }
+        final long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        synchronized (this) {
+            try {
+                for (long left = timeoutMillis; connections > 0 && left > 0; left = (deadline - System.nanoTime()) / 1_000_000) {
+                    wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void start() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+        final Thread thread = new Thread(this::serve, "skriva-single-instance");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void serve() {
+        while (null != server && server.isOpen()) {
+            final SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // The socket has been closed.
+                break;
+            }
+            synchronized (this) {
+                if (closed) {
+                    // Not acknowledged: the launch runs as a standalone instance.
+                    closeQuietly(channel);
+                    break;
+                }
+                connections++;
+            }
+            Thread.ofVirtual().name("skriva-single-instance-connection").start(() -> handle(channel));
+        }
+    }
+
+    /**
+     * Serves a connection: receives the arguments, acknowledges them and delivers them.
+     */
+
+    private void handle(SocketChannel channel) {
+        final Thread watchdog = closeAfterTimeout(channel);
+        try (channel) {
+            final DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            final int count = input.readInt();
+            if (count < 0 || count > maxArguments) return;
+            final List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) args.add(input.readUTF());
+            Channels.newOutputStream(channel).write(acknowledgement);
+            deliver(args);
+        } catch (IOException e) {
+            // The client has gone away, or it has stalled.
+        } finally {
+            watchdog.interrupt();
+            synchronized (this) {
+                connections--;
+                notifyAll();
+            }
+        }
+    }
+
+    private void deliver(List<String> args) {
+        @Nullable final Consumer<List<String>> target;
+        synchronized (this) {
+            target = receiver;
+            if (null == target) received.add(args);
+        }
+        if (null != target) target.accept(args);
+    }
+
+    /**
+     * Hands the arguments over to the instance that listens on the socket.
+     *
+     * @return true if the running instance has acknowledged the arguments, false if no instance is running.
+     */
+
+    private static boolean forward(Path socketPath, List<String> args) {
+        if (!Files.exists(socketPath)) return false;
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            final Thread watchdog = closeAfterTimeout(channel);
+            try {
+                final DataOutputStream output = new DataOutputStream(Channels.newOutputStream(channel));
+                output.writeInt(args.size());
+                for (String arg : args) output.writeUTF(arg);
+                output.flush();
+                return Channels.newInputStream(channel).read() == acknowledgement;
+            } finally {
+                watchdog.interrupt();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a channel if it is still in use after the timeout, which makes its blocked reads and writes fail. The
+     * channels of Unix domain sockets have no read timeout of their own.
+     *
+     * @return the thread that closes the channel: interrupt it once the channel is no longer used.
+     */
+
+    private static Thread closeAfterTimeout(SocketChannel channel) {
+        return Thread.ofVirtual().name("skriva-single-instance-timeout").start(() -> {
+            try {
+                Thread.sleep(timeoutMillis);
+                channel.close();
+            } catch (InterruptedException | IOException e) {
+                // The channel has been used in time, or it is already closed.
+            }
+        });
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+    }
+
+    private static String absolutePath(String path) {
+        try {
+            return Path.of(path).toAbsolutePath().toString();
+        } catch (RuntimeException e) {
+            // The path is not valid: it is reported by the running instance.
+            return path;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.shadow.skriva.agent;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.KeyCache;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.daemon.DaemonProtocol;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * The AgentClient class asks the key agent for the keys derived from passwords (see AgentServer), and hands it the
+ * keys it derives. An agent that is not running, or that does not answer properly, is ignored: the keys are derived
+ * as if there was no agent.
+ */
+
+public class AgentClient implements KeyCache {
+    private final Path socketPath;
+    @Nullable private volatile byte[] secret = null; // fetched once, see getSecret
+
+    /**
+     * Creates a client.
+     *
+     * @param socketPath the path to the socket of the agent.
+     */
+
+    public AgentClient(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Creates a client of the agent listening on the default socket, if any (see AgentProtocol.defaultSocketPath).
+     *
+     * @return the client, or null if no agent is running.
+     */
+
+    public static @Nullable AgentClient find() {
+        final Path socketPath = AgentProtocol.defaultSocketPath();
+        return Files.exists(socketPath) ? new AgentClient(socketPath) : null;
+    }
+
+    @Override
+    public @Nullable byte[] get(String identifier) {
+        try {
+            final String[] answer = request(AgentProtocol.get, identifier);
+            return answer.length == 2 && answer[0].equals(AgentProtocol.key) ? Base64.getDecoder().decode(answer[1]) : null;
+        } catch (IOException | IllegalArgumentException | FatalRuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String identifier, byte[] key) {
+        try {
+            request(AgentProtocol.put, identifier, Base64.getEncoder().encodeToString(key));
+        } catch (IOException | FatalRuntimeException e) {
+            // The key will be derived again next time.
+        }
+    }
+
+    /**
+     * Returns the secret of the agent, asked the first time.
+     */
+
+    @Override
+    public @Nullable byte[] getSecret() {
+        @Nullable byte[] value = secret;
+        if (null == value) {
+            try {
+                final String[] answer = request(AgentProtocol.secret);
+                if (answer.length != 2 || !answer[0].equals(AgentProtocol.secret)) return null;
+                value = Base64.getDecoder().decode(answer[1]);
+                if (value.length < 16) return null;
+                secret = value;
+            } catch (IOException | IllegalArgumentException | FatalRuntimeException e) {
+                return null;
+            }
+        }
+        return value.clone();
+    }
+
+    /**
+     * Asks the agent to forget all its keys.
+     *
+     * @return the number of keys forgotten.
+     * @throws FatalRuntimeException if the agent is not running, or if it does not answer properly.
+     */
+
+    public int lock() throws FatalRuntimeException {
+        final String[] answer = requestOrFail(AgentProtocol.lock);
+        if (answer.length != 2 || !answer[0].equals(AgentProtocol.ok)) throw unexpected(answer);
+        return parseInt(answer, 1);
+    }
+
+    /**
+     * Asks the agent for its state.
+     *
+     * @return the number of keys, the time-to-live of the keys (in seconds) and the capacity of the agent.
+     * @throws FatalRuntimeException if the agent is not running, or if it does not answer properly.
+     */
+
+    public int[] status() throws FatalRuntimeException {
+        final String[] answer = requestOrFail(AgentProtocol.status);
+        if (answer.length != 4 || !answer[0].equals(AgentProtocol.status)) throw unexpected(answer);
+        return new int[]{parseInt(answer, 1), parseInt(answer, 2), parseInt(answer, 3)};
+    }
+
+    private String[] requestOrFail(Object... fields) throws FatalRuntimeException {
+        try {
+            return request(fields);
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the agent is not running", String.format("socket: \"%s\" (%s)", socketPath, e.getMessage()));
+        }
+    }
+
+    /**
+     * Sends a request, and returns the fields of the answer.
+     */
+
+    private String[] request(Object... fields) throws IOException, FatalRuntimeException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            final Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+            writer.write(DaemonProtocol.format(fields));
+            writer.write('\n');
+            writer.flush();
+            channel.shutdownOutput();
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            @Nullable final String line = reader.readLine();
+            if (null == line) throw new IOException("the agent has closed the connection");
+            return DaemonProtocol.parse(line);
+        }
+    }
+
+    private static int parseInt(String[] answer, int index) throws FatalRuntimeException {
+        try {
+            return Integer.parseInt(answer[index]);
+        } catch (NumberFormatException e) {
+            throw unexpected(answer);
+        }
+    }
+
+    private static FatalRuntimeException unexpected(String[] answer) {
+        return new FatalRuntimeException("unexpected message from the agent", String.format("message: \"%s\"", String.join(" ", answer)));
+    }
+}
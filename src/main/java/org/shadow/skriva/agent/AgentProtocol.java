@@ -0,0 +1,49 @@
+package org.shadow.skriva.agent;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The AgentProtocol class defines the protocol spoken over the socket of the key agent (see AgentServer).
+ *
+ * Messages are lines of UTF-8 text, whose fields are separated by tabulations (see DaemonProtocol.format). The client
+ * sends requests, and the server answers each request with one line:
+ *
+ *     client: get <identifier>                server: key <key (Base64)>, or miss
+ *     client: put <identifier> <key (Base64)> server: ok
+ *     client: lock                            server: ok <number of keys forgotten>
+ *     client: status                          server: status <number of keys> <time-to-live (s)> <capacity>
+ *     client: secret                          server: secret <secret of the identifiers (Base64)>
+ *
+ * The server answers "error <message>" to the requests it does not understand.
+ *
+ * The identifiers are calculated by the clients, keyed by the secret of the agent (see KeyCache.identifier). The
+ * secret and the keys travel in clear: the socket is only accessible to the user who started the agent.
+ */
+
+public class AgentProtocol {
+    public static final String socketVariable = "SKRIVA_AGENT_SOCK";
+    public static final String get = "get";
+    public static final String put = "put";
+    public static final String lock = "lock";
+    public static final String status = "status";
+    public static final String secret = "secret";
+    public static final String key = "key";
+    public static final String miss = "miss";
+    public static final String ok = "ok";
+    public static final String error = "error";
+
+    /**
+     * Returns the path to the socket of the agent: the value of the environment variable "SKRIVA_AGENT_SOCK", or
+     * "~/.skriva/agent.sock".
+     *
+     * @return the path.
+     */
+
+    public static Path defaultSocketPath() {
+        @Nullable final String path = System.getenv(socketVariable);
+        return null != path && !path.isEmpty() ? Paths.get(path) : Paths.get(System.getProperty("user.home"), ".skriva", "agent.sock");
+    }
+}
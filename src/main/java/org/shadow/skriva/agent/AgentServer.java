@@ -0,0 +1,171 @@
+package org.shadow.skriva.agent;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.MemoryKeyCache;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.SocketFiles;
+import org.shadow.skriva.daemon.DaemonProtocol;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AgentServer class keeps the keys derived from passwords in memory, and hands them over to the other processes
+ * of the application through a Unix domain socket (see AgentProtocol), in the spirit of ssh-agent. Thus, opening a
+ * recently used file again does not pay the cost of the key derivation (see AES256.setKeyCache).
+ *
+ * The keys expire a fixed time after they have been cached, the least recently used keys are evicted when the agent
+ * is full (see MemoryKeyCache), and all the keys can be forgotten at once ("lock"). The expired keys are wiped from
+ * memory by a background thread.
+ */
+
+public class AgentServer implements AutoCloseable {
+    private final Path socketPath;
+    private final long ttlMillis;
+    private final int capacity;
+    private final MemoryKeyCache cache;
+    private final ScheduledExecutorService sweeper;
+    @Nullable private ServerSocketChannel server = null;
+
+    /**
+     * Creates an agent.
+     *
+     * @param socketPath the path to the socket.
+     * @param ttlMillis the time a key is kept, in milliseconds.
+     * @param capacity the maximum number of keys.
+     */
+
+    public AgentServer(Path socketPath, long ttlMillis, int capacity) {
+        this.socketPath = socketPath;
+        this.ttlMillis = ttlMillis;
+        this.capacity = capacity;
+        this.cache = new MemoryKeyCache(ttlMillis, capacity);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "skriva-agent-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Binds the socket (see SocketFiles.bind), and starts wiping the expired keys. A stale socket (left by an agent
+     * that has not been stopped properly) is replaced.
+     *
+     * @throws FatalRuntimeException if another agent is listening on the socket, if its directory is accessible to
+     *         other users, or if the socket cannot be bound.
+     */
+
+    public void start() throws FatalRuntimeException {
+        try {
+            server = SocketFiles.bind(socketPath);
+        } catch (FileAlreadyExistsException e) {
+            throw new FatalRuntimeException("an agent is already listening on the socket", String.format("socket: \"%s\"", socketPath));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot listen on the socket \"%s\"", socketPath), e.getMessage());
+        }
+        final long period = Math.max(1000, Math.min(ttlMillis, 60_000));
+        sweeper.scheduleAtFixedRate(cache::purge, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accepts connections until the agent is closed.
+     *
+     * @throws FatalRuntimeException if the agent has not been started.
+     */
+
+    public void serve() throws FatalRuntimeException {
+        if (null == server) throw new FatalRuntimeException("the agent has not been started");
+        while (server.isOpen()) {
+            final SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // The socket has been closed.
+                break;
+            }
+            Thread.ofVirtual().name("skriva-agent-connection").start(() -> handle(channel));
+        }
+    }
+
+    /**
+     * Stops accepting connections, forgets all the keys, and deletes the socket.
+     */
+
+    @Override
+    public void close() {
+        try {
+            if (null != server) server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+        sweeper.shutdownNow();
+        cache.clear();
+    }
+
+    /**
+     * Serves a connection: answers the requests until the client closes the connection.
+     */
+
+    private void handle(SocketChannel channel) {
+        try (channel;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                writer.write(answer(DaemonProtocol.parse(line)));
+                writer.write('\n');
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // The client has gone away.
+        }
+    }
+
+    private String answer(String[] fields) {
+        try {
+            return switch (fields[0]) {
+                case AgentProtocol.get -> {
+                    if (fields.length != 2) yield malformed();
+                    @Nullable final byte[] key = cache.get(fields[1]);
+                    if (null == key) yield AgentProtocol.miss;
+                    final String encoded = Base64.getEncoder().encodeToString(key);
+                    Arrays.fill(key, (byte) 0);
+                    yield DaemonProtocol.format(AgentProtocol.key, encoded);
+                }
+                case AgentProtocol.put -> {
+                    if (fields.length != 3) yield malformed();
+                    final byte[] key = Base64.getDecoder().decode(fields[2]);
+                    cache.put(fields[1], key);
+                    Arrays.fill(key, (byte) 0);
+                    yield AgentProtocol.ok;
+                }
+                case AgentProtocol.lock -> DaemonProtocol.format(AgentProtocol.ok, cache.clear());
+                case AgentProtocol.status -> DaemonProtocol.format(AgentProtocol.status, cache.size(), ttlMillis / 1000, capacity);
+                case AgentProtocol.secret -> DaemonProtocol.format(AgentProtocol.secret, Base64.getEncoder().encodeToString(cache.getSecret()));
+                default -> malformed();
+            };
+        } catch (IllegalArgumentException | FatalRuntimeException e) {
+            return malformed();
+        }
+    }
+
+    private static String malformed() {
+        return DaemonProtocol.format(AgentProtocol.error, "malformed request");
+    }
+}
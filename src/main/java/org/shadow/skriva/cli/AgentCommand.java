@@ -0,0 +1,77 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.agent.AgentClient;
+import org.shadow.skriva.agent.AgentProtocol;
+import org.shadow.skriva.agent.AgentServer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The "agent" command runs the key agent (see AgentServer): while it is running, the keys derived from passwords by
+ * the other executions of the application (graphical interface and headless commands) are cached, so that opening
+ * a recently used file again skips the key derivation. The agent keeps no password.
+ *
+ * With "--lock", the running agent forgets all its keys. With "--status", the state of the running agent is printed.
+ *
+ * Usage: agent [--socket <path>] [--ttl <minutes>] [--max-keys <count>] [--lock | --status]
+ */
+
+public class AgentCommand implements Command {
+    private static final int defaultTtlMinutes = 60;
+    private static final int defaultMaxKeys = 256;
+
+    @Override
+    public String getName() {
+        return "agent";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Run an agent that caches the keys derived from passwords, until interrupted (or lock the running agent).";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("socket").hasArg().argName("path")
+                .desc(String.format("path to the socket of the agent (default: $%s, or %s)", AgentProtocol.socketVariable,
+                        AgentProtocol.defaultSocketPath())).build());
+        options.addOption(Option.builder().longOpt("ttl").hasArg().argName("minutes")
+                .desc(String.format("time a key is kept after it has been cached (default: %d)", defaultTtlMinutes)).build());
+        options.addOption(Option.builder().longOpt("max-keys").hasArg().argName("count")
+                .desc(String.format("maximum number of keys; the least recently used keys are evicted (default: %d)", defaultMaxKeys)).build());
+        options.addOption(Option.builder().longOpt("lock").desc("make the running agent forget all its keys").build());
+        options.addOption(Option.builder().longOpt("status").desc("print the state of the running agent").build());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (!commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final Path socketPath = commandLine.hasOption("socket") ? Paths.get(commandLine.getOptionValue("socket")) : AgentProtocol.defaultSocketPath();
+        if (commandLine.hasOption("lock")) {
+            System.out.printf("%d key(s) forgotten%n", new AgentClient(socketPath).lock());
+            return 0;
+        }
+        if (commandLine.hasOption("status")) {
+            final int[] status = new AgentClient(socketPath).status();
+            System.out.printf("%d key(s) cached (at most %d), kept %d minute(s)%n", status[0], status[2], status[1] / 60);
+            return 0;
+        }
+
+        final long ttlMillis = Cli.getPositiveInt(commandLine, "ttl", defaultTtlMinutes) * 60_000L;
+        final AgentServer server = new AgentServer(socketPath, ttlMillis, Cli.getPositiveInt(commandLine, "max-keys", defaultMaxKeys));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.printf("listening on %s (set %s to use another socket)%n", socketPath, AgentProtocol.socketVariable);
+        server.serve();
+        return 0;
+    }
+}
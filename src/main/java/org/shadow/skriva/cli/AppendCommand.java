@@ -0,0 +1,92 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.RunVerifyConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The "append" command appends data to encrypted files (format v2), without rewriting their existing content.
+ *
+ * - Without "--to": each given file is a file that grows (such as a log). The bytes that follow the content already
+ *   encrypted into "file.rmb" are appended to "file.rmb".
+ * - With "--to": the whole content of each given file is appended to the given encrypted file (for example, hourly
+ *   log files appended to a daily archive). The encrypted file is created if it does not exist.
+ *
+ * Usage: append [--to <encrypted file>] [--compress] [--segment-size <size>] [--threads <count>] <file>...
+ */
+
+public class AppendCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "append";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Append data to encrypted files (format v2). Only the new data is encrypted and written.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("t").longOpt("to").hasArg().argName("path")
+                .desc("encrypted file to which the whole content of the given files is appended").build());
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, if the encrypted file is created (default: 1M)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the appended segments").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("no path given");
+        }
+        @Nullable final String archive = commandLine.getOptionValue("to");
+        final SkrivaCypherV2 cypher = new SkrivaCypherV2(BatchCommand.createSegmentedConfiguration(commandLine));
+
+        // Verify all the paths before processing the first file.
+        for (String input : commandLine.getArgList()) {
+            RunVerifyConfiguration.verifyInputPath(input);
+            final String encrypted = null == archive ? RunVerifyConfiguration.calculateOutputPath(input, Action.Encrypt) : archive;
+            if (null == archive && !Files.exists(Paths.get(encrypted))) {
+                throw new FatalRuntimeException("the encrypted file does not exist", String.format("encrypted file: \"%s\"", encrypted));
+            }
+            if (Files.exists(Paths.get(encrypted)) && !SegmentedHeader.isSegmentedFile(encrypted)) {
+                throw new FatalRuntimeException("data can only be appended to files encrypted using the format v2",
+                        String.format("encrypted file: \"%s\"", encrypted));
+            }
+        }
+
+        final boolean create = null != archive && !Files.exists(Paths.get(archive));
+        final String secretKey = Cli.readPassword(commandLine, create);
+        for (String input : commandLine.getArgList()) {
+            if (null == archive) {
+                final String encrypted = RunVerifyConfiguration.calculateOutputPath(input, Action.Encrypt);
+                final long length = cypher.AppendFile(input, SkrivaCypherV2.tailOffset, encrypted, secretKey, null);
+                System.out.printf("%s -> %s (%d bytes appended)%n", input, encrypted, length);
+            } else if (!Files.exists(Paths.get(archive))) {
+                cypher.EncryptFile(input, archive, secretKey, null);
+                System.out.printf("%s -> %s (created)%n", input, archive);
+            } else {
+                final long length = cypher.AppendFile(input, 0L, archive, secretKey, null);
+                System.out.printf("%s -> %s (%d bytes appended)%n", input, archive, length);
+            }
+        }
+        return 0;
+    }
+}
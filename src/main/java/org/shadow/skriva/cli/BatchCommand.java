@@ -0,0 +1,250 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.AES256;
+import org.shadow.lib.cryptography.CipherSuite;
+import org.shadow.lib.cryptography.DigestCache;
+import org.shadow.lib.cryptography.IntegrityTrailer;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.cryptography.SegmentedFile;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.cryptography.SkrivaCypherV1;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.monitoring.CryptoStatistics;
+import org.shadow.lib.monitoring.ProgressEventStream;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.RunVerifyConfiguration;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * The "batch" command encrypts or decrypts files without graphical interface.
+ * The output paths are calculated the same way as in the graphical interface ("file" <-> "file.rmb").
+ * The format of the files to decrypt is detected.
+ *
+ * Usage: batch encrypt|decrypt [--format v1|v2] [--suite <suite>] [--kdf-lanes <count>] [--kdf-target <milliseconds>]
+ *                              [--segment-size <size>] [--compress] [--compression-level <level>] [--threads <count>] [--digests] [--trailer <algorithm>] [--digest-cache] [--stats <file>]
+ *                              [--events <target>] [--events-interval <milliseconds>] [--force] <file>...
+ *
+ * With "--stats", a JSON performance report is written at the end of the run (see CryptoStatistics): the wall time
+ * and the bytes of each phase, the throughput percentiles of the files, the latency histograms of the chunk reads and
+ * writes, the time spent deriving keys, and the peak memory usage.
+ *
+ * With "--events", the progress of the files is written as newline-delimited JSON events (see ProgressEventStream)
+ * to the standard output ("-") or to a file (for example "/dev/fd/3"), for the tools that orchestrate the
+ * application. If the events are written to the standard output, the usual messages are not.
+ *
+ * Unless "--suite" is given, the files encrypted using the format v2 use the cipher suite of the tuning profile, or
+ * the fastest suite on the host (see CipherSuite.preferred). With "--kdf-target" (or the setting "kdfTargetMillis" of
+ * the tuning profile), the number of iterations of the key derivation is calibrated so that unlocking a file takes the
+ * given time on the host; the number is recorded in the header of each file.
+ */
+
+public class BatchCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "batch";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Encrypt or decrypt files without graphical interface. The first argument is \"encrypt\" or \"decrypt\".";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("format").hasArg().argName("format")
+                .desc("format of the encrypted files: v1 (default, AES-CBC) or v2 (segmented, authenticated)").build());
+        options.addOption(Option.builder().longOpt("suite").hasArg().argName("suite")
+                .desc("cipher suite, for the format v2: auto (default, fastest on the host), aes-256-gcm or chacha20-poly1305").build());
+        options.addOption(Option.builder().longOpt("kdf-lanes").hasArg().argName("count")
+                .desc("number of key derivation chains computed in parallel, for the format v2 (default: 1)").build());
+        options.addOption(Option.builder().longOpt("kdf-target").hasArg().argName("milliseconds")
+                .desc(String.format("calibrate the key derivation to last the given time on this host, for the format v2 (default: %d iterations)",
+                        AES256.defaultIterationCount)).build());
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, for the format v2 (default: 1M)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the segments before encryption, for the format v2 (skipped for incompressible files)").build());
+        options.addOption(Option.builder().longOpt("compression-level").hasArg().argName("level")
+                .desc("Deflate level, from 1 (fastest, default) to 9 (smallest)").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel, for the format v2 (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Option.builder().longOpt("digests")
+                .desc("record the digest of each segment, for the format v2 (speeds up the command \"update\")").build());
+        options.addOption(Option.builder().longOpt("trailer").hasArg().argName("algorithm")
+                .desc("append a keyless integrity trailer (crc32c or sha256), for the format v1").build());
+        options.addOption(Option.builder().longOpt("digest-cache")
+                .desc("cache the digests of the files to encrypt in their extended attributes, for the format v1 (speeds up re-encryption)").build());
+        options.addOption(Option.builder().longOpt("stats").hasArg().argName("file")
+                .desc("write a JSON performance report to the given file at the end of the run").build());
+        options.addOption(Option.builder().longOpt("events").hasArg().argName("target")
+                .desc("write the progress as newline-delimited JSON events to the standard output (-) or to a file").build());
+        options.addOption(Option.builder().longOpt("events-interval").hasArg().argName("milliseconds")
+                .desc("interval between two progress events of a file (default: 1000)").build());
+        options.addOption(Option.builder("f").longOpt("force").desc("overwrite the output files").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        final List<String> args = commandLine.getArgList();
+        if (args.size() < 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final Action action = Action.nameToEnum(args.get(0));
+        if (action == Action.Undefined) {
+            throw new FatalRuntimeException("the given action \"" + args.get(0) + "\" is not valid");
+        }
+        final List<String> inputs = args.subList(1, args.size());
+        final SkrivaCypher encryptor = createEncryptor(commandLine);
+        final SegmentedConfiguration configuration = createSegmentedConfiguration(commandLine);
+        final boolean force = commandLine.hasOption("force");
+        final String secretKey = Cli.readPassword(commandLine, action == Action.Encrypt);
+
+        // Verify all the paths before processing the first file.
+        for (String input : inputs) {
+            RunVerifyConfiguration.verifyInputPath(input);
+            final String output = RunVerifyConfiguration.calculateOutputPath(input, action);
+            if (!force && Files.exists(Paths.get(output))) {
+                throw new FatalRuntimeException("the output file already exists", String.format("output path: \"%s\"", output));
+            }
+        }
+
+        // The report is written even if a file fails: the counters of the files processed so far are still useful.
+        @Nullable final CryptoStatistics statistics = commandLine.hasOption("stats") ? CryptoStatistics.start() : null;
+        @Nullable final String eventTarget = commandLine.getOptionValue("events");
+        @Nullable final ProgressEventStream events = null == eventTarget ? null
+                : openEvents(eventTarget, Cli.getPositiveInt(commandLine, "events-interval", 1000));
+        try {
+            for (String input : inputs) {
+                final String output = RunVerifyConfiguration.calculateOutputPath(input, action);
+                @Nullable final ProgressEventStream.Job job = null == events ? null
+                        : events.start(action == Action.Encrypt ? "encrypt" : "decrypt", input, output, new File(input).length());
+                try {
+                    if (action == Action.Encrypt) {
+                        encryptor.EncryptFile(input, output, secretKey, job);
+                    } else {
+                        SkrivaCypher.forEncryptedFile(input, configuration).DecryptFile(input, output, secretKey, job);
+                    }
+                } catch (RuntimeException e) {
+                    if (null != job) job.failed(e);
+                    throw e;
+                }
+                if (null != job) job.finished();
+                if (!"-".equals(eventTarget)) System.out.printf("%s -> %s%n", input, output);
+            }
+        } finally {
+            if (null != events) events.close();
+            if (null != statistics) writeStatistics(statistics, commandLine.getOptionValue("stats"));
+        }
+        return 0;
+    }
+
+    /**
+     * Opens the stream of the progress events.
+     *
+     * @param target "-" for the standard output, or the path to a file.
+     * @param intervalMillis the interval between two progress events of a file.
+     */
+
+    private static ProgressEventStream openEvents(String target, long intervalMillis) throws FatalRuntimeException {
+        if (target.equals("-")) return new ProgressEventStream(System.out, false, intervalMillis);
+        try {
+            return new ProgressEventStream(new FileOutputStream(target), true, intervalMillis);
+        } catch (IOException e) {
+            throw new FatalRuntimeException("cannot open the stream of the progress events", String.format("target: \"%s\": %s", target, e.getMessage()));
+        }
+    }
+
+    /**
+     * Stops a collection of performance counters, and writes its report.
+     */
+
+    private static void writeStatistics(CryptoStatistics statistics, String path) throws FatalRuntimeException {
+        statistics.stop();
+        try {
+            Files.writeString(Paths.get(path), statistics.toJson());
+        } catch (IOException e) {
+            throw new FatalRuntimeException("cannot write the performance report", String.format("path: \"%s\": %s", path, e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates the cypher used to encrypt files, depending on the options "--format" and "--trailer".
+     */
+
+    static SkrivaCypher createEncryptor(CommandLine commandLine) throws FatalRuntimeException {
+        return createEncryptor(commandLine, "v1");
+    }
+
+    /**
+     * Creates the cypher used to encrypt files, depending on the options "--format" and "--trailer".
+     *
+     * @param defaultFormat the format used if the option "--format" is not given.
+     */
+
+    static SkrivaCypher createEncryptor(CommandLine commandLine, String defaultFormat) throws FatalRuntimeException {
+        final String format = commandLine.getOptionValue("format", defaultFormat).toLowerCase();
+        return switch (format) {
+            case "v1" -> new SkrivaCypherV1(commandLine.hasOption("trailer")
+                    ? IntegrityTrailer.Algorithm.nameToEnum(commandLine.getOptionValue("trailer"))
+                    : null, commandLine.hasOption("digest-cache") ? new DigestCache() : null);
+            case "v2" -> new SkrivaCypherV2(createSegmentedConfiguration(commandLine));
+            default -> throw new FatalRuntimeException(String.format("unknown format \"%s\"", format));
+        };
+    }
+
+    /**
+     * Creates the configuration used to decrypt files, and to encrypt files using the format v2.
+     */
+
+    static SegmentedConfiguration createSegmentedConfiguration(CommandLine commandLine) throws FatalRuntimeException {
+        final SegmentedConfiguration configuration = new SegmentedConfiguration();
+        configuration.setSegmentSize(getSegmentSize(commandLine));
+        @Nullable final String suite = commandLine.getOptionValue("suite");
+        if (null != suite && !suite.equalsIgnoreCase("auto")) configuration.setSuite(CipherSuite.nameToEnum(suite));
+        configuration.setCompression(commandLine.hasOption("compress"));
+        configuration.setSegmentDigests(commandLine.hasOption("digests"));
+        final int level = Cli.getPositiveInt(commandLine, "compression-level", configuration.getCompressionLevel());
+        if (level > Deflater.BEST_COMPRESSION) {
+            throw new FatalRuntimeException(String.format("invalid compression level %d (expected: 1 to 9)", level));
+        }
+        configuration.setCompressionLevel(level);
+        configuration.setThreads(Cli.getPositiveInt(commandLine, "threads", configuration.getThreads()));
+        final int lanes = Cli.getPositiveInt(commandLine, "kdf-lanes", configuration.getKdfLanes());
+        if (lanes > AES256.maxKdfLanes) {
+            throw new FatalRuntimeException(String.format("invalid number of key derivation lanes %d (expected: 1 to %d)", lanes, AES256.maxKdfLanes));
+        }
+        configuration.setKdfLanes(lanes);
+        configuration.setKdfTargetMillis(Cli.getPositiveInt(commandLine, "kdf-target", configuration.getKdfTargetMillis()));
+        return configuration;
+    }
+
+    /**
+     * Returns the value of the option "--segment-size", within the limits accepted when a header is read (see
+     * SegmentedHeader.maxSegmentSize).
+     */
+
+    static int getSegmentSize(CommandLine commandLine) throws FatalRuntimeException {
+        final long segmentSize = Cli.getByteSize(commandLine, "segment-size", SegmentedFile.defaultSegmentSize);
+        if (segmentSize > SegmentedHeader.maxSegmentSize) {
+            throw new FatalRuntimeException(String.format("invalid segment size %d (expected: 1 to %d)", segmentSize, SegmentedHeader.maxSegmentSize));
+        }
+        return (int) segmentSize;
+    }
+}
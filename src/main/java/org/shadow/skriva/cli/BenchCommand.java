@@ -0,0 +1,78 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.TuningBenchmark;
+import org.shadow.lib.cryptography.TuningProfile;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The "bench" command measures the performance of the host (storage, AES, MD5 and key derivation), and saves the
+ * tuning profile that fits it: the length of the chunks, the way files are read, and the number of workers (see
+ * TuningBenchmark and TuningProfile). The profile is loaded by the next executions of the application.
+ *
+ * The storage that is measured is the file store that holds the given directory (by default: the temporary directory).
+ *
+ * Usage: bench [--size <size>] [--profile <file>] [--dry-run] [<directory>]
+ */
+
+public class BenchCommand implements Command {
+    private static final long defaultSize = 256L << 20;
+
+    @Override
+    public String getName() {
+        return "bench";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Measure the performance of the host, and save the tuning profile used by the next executions.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("size").hasArg().argName("size")
+                .desc("size of the file written to measure the storage (default: 256M)").build());
+        options.addOption(Option.builder().longOpt("profile").hasArg().argName("file")
+                .desc(String.format("path to the tuning profile (default: %s)", TuningProfile.defaultPath())).build());
+        options.addOption(Option.builder().longOpt("dry-run")
+                .desc("print the tuning profile without saving it").build());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        final List<String> args = commandLine.getArgList();
+        if (args.size() > 1) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final Path directory = Paths.get(args.isEmpty() ? System.getProperty("java.io.tmpdir") : args.getFirst());
+        if (!Files.isDirectory(directory)) {
+            throw new FatalRuntimeException("the given path is not a directory", String.format("path: \"%s\"", directory));
+        }
+        final long size = Cli.getByteSize(commandLine, "size", defaultSize);
+        final Path profilePath = commandLine.hasOption("profile") ? Paths.get(commandLine.getOptionValue("profile")) : TuningProfile.defaultPath();
+
+        final TuningProfile profile = new TuningBenchmark(directory, size, System.out::println).run();
+        try {
+            // The target unlock time is not measured: it is kept from the previous profile.
+            profile.setKdfTargetMillis(TuningProfile.load(profilePath).getKdfTargetMillis());
+        } catch (FatalRuntimeException e) {
+            // The previous profile is replaced.
+        }
+        System.out.printf("profile: chunk length %d, I/O mode %s, %d worker(s)%n",
+                profile.getChunkLength(), profile.getIoMode().name().toLowerCase(), profile.getWorkers());
+        if (!commandLine.hasOption("dry-run")) {
+            profile.save(profilePath);
+            System.out.printf("saved to \"%s\"%n", profilePath);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,101 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.IntegrityTrailer;
+import org.shadow.lib.cryptography.TuningProfile;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The "check" command verifies the keyless integrity trailers of encrypted files. It does not need the password.
+ *
+ * Directories are walked recursively, and the files are verified in parallel.
+ *
+ * Usage: check [--threads <count>] [--allow-unsealed] <path>...
+ */
+
+public class CheckCommand implements Command {
+
+    private record Result(Path path, IntegrityTrailer.Status status, String error) {}
+
+    @Override
+    public String getName() {
+        return "check";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Verify the integrity trailers of encrypted files (no password needed).";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("t").longOpt("threads").hasArg().argName("count")
+                .desc("number of files verified in parallel (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Option.builder().longOpt("allow-unsealed")
+                .desc("do not report files without trailer as failures").build());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("no path given");
+        }
+        final int threads = Cli.getPositiveInt(commandLine, "threads", TuningProfile.current().getWorkers());
+        final boolean allowUnsealed = commandLine.hasOption("allow-unsealed");
+        final List<Path> files = FileManip.ListRegularFiles(commandLine.getArgList(), ".rmb");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Result>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(executor.submit(() -> verify(file)));
+        }
+        executor.shutdown();
+
+        long valid = 0, corrupted = 0, unsealed = 0, errors = 0;
+        for (Future<Result> future : futures) {
+            final Result result;
+            try {
+                result = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                executor.shutdownNow();
+                throw new FatalRuntimeException("the verification has been interrupted", e.getMessage());
+            }
+            if (null != result.error()) {
+                errors++;
+                System.out.printf("ERROR      %s: %s%n", result.path(), result.error());
+                continue;
+            }
+            switch (result.status()) {
+                case VALID -> valid++;
+                case CORRUPTED -> corrupted++;
+                case UNSEALED -> unsealed++;
+            }
+            System.out.printf("%-10s %s%n", result.status(), result.path());
+        }
+
+        System.out.printf("%d file(s): %d valid, %d corrupted, %d unsealed, %d error(s)%n",
+                files.size(), valid, corrupted, unsealed, errors);
+        return corrupted + errors > 0 || (unsealed > 0 && !allowUnsealed) ? 1 : 0;
+    }
+
+    private static Result verify(Path file) {
+        try {
+            return new Result(file, IntegrityTrailer.verify(file.toString()), null);
+        } catch (FatalRuntimeException e) {
+            return new Result(file, null, null == e.getDetails() ? e.getMessage() : e.getDetails());
+        }
+    }
+}
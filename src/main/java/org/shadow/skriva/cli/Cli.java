@@ -0,0 +1,191 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.ParseException;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.Console;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Cli class dispatches the headless commands.
+ *
+ * The application starts the graphical interface unless the first command-line argument is the name of a
+ * headless command. Please see `Main.main`.
+ */
+
+public class Cli {
+    private static final String defaultPasswordVariable = "SKRIVA_PASSWORD";
+    private static final Map<String, Command> commands = new LinkedHashMap<>();
+
+    static {
+        register(new CheckCommand());
+        register(new SealCommand());
+        register(new BatchCommand());
+        register(new ScrubCommand());
+        register(new UpdateCommand());
+        register(new AppendCommand());
+        register(new ContainerCommand());
+        register(new StoreCommand());
+        register(new WatchCommand());
+        register(new SyncCommand());
+        register(new DaemonCommand());
+        register(new SubmitCommand());
+        register(new ServeCommand());
+        register(new BenchCommand());
+        register(new AgentCommand());
+    }
+
+    private static void register(Command command) {
+        commands.put(command.getName(), command);
+    }
+
+    /**
+     * Tests whether a given name is the name of a headless command.
+     *
+     * @param name the name to test.
+     * @return true if the name is the name of a headless command, false otherwise.
+     */
+
+    public static boolean isCommand(String name) {
+        return commands.containsKey(name.toLowerCase());
+    }
+
+    /**
+     * Executes the headless command designated by the first element of the given arguments.
+     *
+     * @param args the command-line arguments. The first element is the name of the command.
+     * @return the exit status of the command.
+     */
+
+    public static int execute(String[] args) {
+        final Command command = commands.get(args[0].toLowerCase());
+        final String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        try {
+            final CommandLine commandLine = new DefaultParser().parse(command.getOptions(), commandArgs);
+            return command.execute(commandLine);
+        } catch (ParseException e) {
+            System.err.printf("error: %s%n", e.getMessage());
+            printUsage(command);
+            return 2;
+        } catch (FatalRuntimeException e) {
+            System.err.printf("error: %s%n", e.getMessage());
+            if (null != e.getDetails()) System.err.printf("       %s%n", e.getDetails());
+            return 1;
+        }
+    }
+
+    /**
+     * Prints the usage of a given command to the standard error.
+     *
+     * @param command the command.
+     */
+
+    public static void printUsage(Command command) {
+        new HelpFormatter().printHelp(String.format("%s [options] <path>...", command.getName()),
+                command.getDescription(), command.getOptions(), null);
+    }
+
+    /**
+     * Returns the value of a size option, expressed in bytes. The value may end with a unit: K, M or G (powers of 1024).
+     *
+     * @param commandLine the parsed command line.
+     * @param name the long name of the option.
+     * @param defaultValue the value returned if the option is not set.
+     * @return the value of the option, in bytes.
+     * @throws FatalRuntimeException if the value of the option is not a strictly positive size, or if the size does not
+     *         fit in a long.
+     */
+
+    public static long getByteSize(CommandLine commandLine, String name, long defaultValue) throws FatalRuntimeException {
+        @Nullable final String value = commandLine.getOptionValue(name);
+        if (null == value) return defaultValue;
+        final String text = value.trim().toUpperCase();
+        final int shift = switch (text.isEmpty() ? ' ' : text.charAt(text.length() - 1)) {
+            case 'K' -> 10;
+            case 'M' -> 20;
+            case 'G' -> 30;
+            default -> 0;
+        };
+        try {
+            final long result = Long.parseLong(shift == 0 ? text : text.substring(0, text.length() - 1));
+            if (result > 0 && result <= Long.MAX_VALUE >> shift) return result << shift;
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new FatalRuntimeException(String.format("the value of the option \"--%s\" must be a strictly positive size (ex: 512K, 64M, 1G)", name),
+                String.format("value: \"%s\"", value));
+    }
+
+    /**
+     * Creates the option that designates the environment variable that contains the password.
+     *
+     * @return the option.
+     */
+
+    public static Option passwordOption() {
+        return Option.builder().longOpt("password-env").hasArg().argName("variable")
+                .desc(String.format("environment variable that contains the password (default: %s). If it is not set, the password is read from the console", defaultPasswordVariable))
+                .build();
+    }
+
+    /**
+     * Returns the password. The password is read from an environment variable (see `passwordOption`) or, if this
+     * variable is not set, from the console. Please note that the password is never given as a command-line argument,
+     * since the arguments of a process are visible to the other users of the host.
+     *
+     * @param commandLine the parsed command line.
+     * @param confirm true to ask the password twice when it is read from the console.
+     * @return the password.
+     * @throws FatalRuntimeException if the password cannot be obtained.
+     */
+
+    public static String readPassword(CommandLine commandLine, boolean confirm) throws FatalRuntimeException {
+        final String variable = commandLine.getOptionValue("password-env", defaultPasswordVariable);
+        @Nullable final String value = System.getenv(variable);
+        if (null != value && !value.isEmpty()) return value;
+
+        @Nullable final Console console = System.console();
+        if (null == console) {
+            throw new FatalRuntimeException("no password given",
+                    String.format("set the environment variable \"%s\" or run the command from a console", variable));
+        }
+        final char[] password = console.readPassword("Enter password: ");
+        if (null == password || password.length == 0) throw new FatalRuntimeException("no password given");
+        if (confirm) {
+            final char[] confirmation = console.readPassword("Confirm password: ");
+            if (!Arrays.equals(password, confirmation)) throw new FatalRuntimeException("the passwords do not match");
+        }
+        return new String(password);
+    }
+
+    /**
+     * Returns the value of an integer option.
+     *
+     * @param commandLine the parsed command line.
+     * @param name the long name of the option.
+     * @param defaultValue the value returned if the option is not set.
+     * @return the value of the option.
+     * @throws FatalRuntimeException if the value of the option is not a strictly positive integer.
+     */
+
+    public static int getPositiveInt(CommandLine commandLine, String name, int defaultValue) throws FatalRuntimeException {
+        @Nullable final String value = commandLine.getOptionValue(name);
+        if (null == value) return defaultValue;
+        try {
+            final int result = Integer.parseInt(value);
+            if (result > 0) return result;
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new FatalRuntimeException(String.format("the value of the option \"--%s\" must be a strictly positive integer", name),
+                String.format("value: \"%s\"", value));
+    }
+}
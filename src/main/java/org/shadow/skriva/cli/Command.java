@@ -0,0 +1,46 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+/**
+ * The Command interface describes a headless command (that is: a command that does not start the graphical interface).
+ */
+
+public interface Command {
+
+    /**
+     * Returns the name used to invoke the command from the command line.
+     *
+     * @return the name of the command.
+     */
+
+    String getName();
+
+    /**
+     * Returns a one-line description of the command.
+     *
+     * @return the description of the command.
+     */
+
+    String getDescription();
+
+    /**
+     * Returns the options accepted by the command.
+     *
+     * @return the options accepted by the command.
+     */
+
+    Options getOptions();
+
+    /**
+     * Executes the command.
+     *
+     * @param commandLine the parsed command line. Please note that the name of the command is not part of the arguments.
+     * @return the exit status of the command.
+     * @throws FatalRuntimeException if the command cannot be executed.
+     */
+
+    int execute(CommandLine commandLine) throws FatalRuntimeException;
+}
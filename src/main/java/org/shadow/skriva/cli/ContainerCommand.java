@@ -0,0 +1,210 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.compression.DeflateCodec;
+import org.shadow.lib.container.EncryptedContainer;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The "container" command manages containers of files (see EncryptedContainer).
+ *
+ * Usage: container create|add|list|extract|remove|compact [options] <container> [<path>...]
+ *
+ * - create: creates a container that contains the given files and directories.
+ * - add: adds files and directories to an existing container (existing members with the same names are replaced).
+ * - list: lists the members of a container.
+ * - extract: extracts the given members (all the members if none is given) into the output directory.
+ * - remove: removes the given members.
+ * - compact: rewrites the container without the space left by removed or replaced members, and by the previous
+ *   indexes. The cipher suite, the segment size and the compression of the container are kept, unless
+ *   "--segment-size" or "--compress" is given.
+ */
+
+public class ContainerCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "container";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Pack many files into a single encrypted container. The first argument is \"create\", \"add\", \"list\", "
+                + "\"extract\", \"remove\" or \"compact\", the second one is the path to the container.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, for \"create\" and \"compact\" (default: 1M, or the segment size of the compacted container)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the data added to the container (for \"compact\": compress the whole container)").build());
+        options.addOption(Option.builder("o").longOpt("output").hasArg().argName("directory")
+                .desc("directory into which members are extracted (default: current directory)").build());
+        options.addOption(Option.builder().longOpt("threshold").hasArg().argName("fraction")
+                .desc("for \"compact\": only compact if the unused fraction of the container exceeds this value (default: 0)").build());
+        options.addOption(Option.builder("f").longOpt("force").desc("overwrite the container, for \"create\"").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        final List<String> args = commandLine.getArgList();
+        if (args.size() < 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final String action = args.get(0).toLowerCase();
+        final String container = args.get(1);
+        final List<String> paths = args.subList(2, args.size());
+        final SegmentedConfiguration configuration = new SegmentedConfiguration();
+        configuration.setSegmentSize(BatchCommand.getSegmentSize(commandLine));
+        configuration.setCompression(commandLine.hasOption("compress"));
+
+        switch (action) {
+            case "create" -> {
+                if (!commandLine.hasOption("force") && Files.exists(Paths.get(container))) {
+                    throw new FatalRuntimeException("the container already exists", String.format("path: \"%s\"", container));
+                }
+                final String secretKey = Cli.readPassword(commandLine, true);
+                try (EncryptedContainer archive = EncryptedContainer.create(container, secretKey, configuration)) {
+                    addPaths(archive, paths);
+                    archive.commit();
+                }
+            }
+            case "add" -> {
+                final String secretKey = Cli.readPassword(commandLine, false);
+                @Nullable final DeflateCodec compressor = configuration.isCompression()
+                        ? new DeflateCodec(configuration.getCompressionLevel())
+                        : null;
+                try (EncryptedContainer archive = EncryptedContainer.open(container, secretKey, true, compressor)) {
+                    addPaths(archive, paths);
+                    archive.commit();
+                }
+            }
+            case "list" -> {
+                final String secretKey = Cli.readPassword(commandLine, false);
+                try (EncryptedContainer archive = EncryptedContainer.open(container, secretKey, false, null)) {
+                    for (EncryptedContainer.Member member : archive.getMembers()) {
+                        System.out.printf("%12d  %s%n", member.length(), member.name());
+                    }
+                    System.out.printf("%d member(s), %d unused byte(s)%n", archive.getMembers().size(), archive.getUnusedLength());
+                }
+            }
+            case "extract" -> {
+                final String secretKey = Cli.readPassword(commandLine, false);
+                final Path output = Paths.get(commandLine.getOptionValue("output", "."));
+                try (EncryptedContainer archive = EncryptedContainer.open(container, secretKey, false, null)) {
+                    for (EncryptedContainer.Member member : selectMembers(archive, paths)) {
+                        System.out.printf("%s -> %s%n", member.name(), archive.extract(member, output));
+                    }
+                }
+            }
+            case "remove" -> {
+                final String secretKey = Cli.readPassword(commandLine, false);
+                try (EncryptedContainer archive = EncryptedContainer.open(container, secretKey, true, null)) {
+                    for (EncryptedContainer.Member member : selectMembers(archive, paths)) {
+                        archive.remove(member.name());
+                        System.out.printf("removed %s%n", member.name());
+                    }
+                    archive.commit();
+                }
+            }
+            case "compact" -> {
+                final String secretKey = Cli.readPassword(commandLine, false);
+                final double threshold = getThreshold(commandLine);
+                final long unused, total;
+                final SegmentedConfiguration compactConfiguration;
+                try (EncryptedContainer archive = EncryptedContainer.open(container, secretKey, false, null)) {
+                    unused = archive.getUnusedLength() + archive.getUnusedFileLength();
+                    total = Files.size(Paths.get(container));
+                    compactConfiguration = archive.getConfiguration();
+                } catch (IOException e) {
+                    throw new FatalRuntimeException(String.format("cannot read the container \"%s\"", container), e.getMessage());
+                }
+                if (commandLine.hasOption("segment-size")) compactConfiguration.setSegmentSize(configuration.getSegmentSize());
+                if (commandLine.hasOption("compress")) compactConfiguration.setCompression(true);
+                if (unused == 0 || unused <= threshold * total) {
+                    System.out.printf("nothing to do (%d unused byte(s) out of %d)%n", unused, total);
+                } else {
+                    EncryptedContainer.compact(container, secretKey, compactConfiguration);
+                    System.out.printf("compacted %s (%d byte(s) reclaimed)%n", container, unused);
+                }
+            }
+            default -> throw new FatalRuntimeException(String.format("the given action \"%s\" is not valid", args.get(0)));
+        }
+        return 0;
+    }
+
+    /**
+     * Adds files and directories to a container. The name of a member is the path of the file relative to the
+     * parent of the given path. Thus, a directory "a" that contains a file "b" produces the member "a/b".
+     */
+
+    private static void addPaths(EncryptedContainer archive, List<String> paths) throws FatalRuntimeException {
+        for (String path : paths) {
+            final Path root = Paths.get(path).toAbsolutePath().normalize();
+            final Path base = null == root.getParent() ? root : root.getParent();
+            final List<Path> files = new ArrayList<>();
+            if (Files.isRegularFile(root)) {
+                files.add(root);
+            } else if (Files.isDirectory(root)) {
+                try (Stream<Path> stream = Files.walk(root)) {
+                    stream.filter(Files::isRegularFile).sorted().forEach(files::add);
+                } catch (IOException e) {
+                    throw new FatalRuntimeException(String.format("cannot walk the directory \"%s\"", path), e.getMessage());
+                }
+            } else {
+                throw new FatalRuntimeException("the path does not exist", String.format("path: \"%s\"", path));
+            }
+
+            for (Path file : files) {
+                final String name = base.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                archive.add(name, file);
+                System.out.printf("added %s%n", name);
+            }
+        }
+    }
+
+    /**
+     * Returns the members designated by the given names, or all the members if no name is given.
+     */
+
+    private static List<EncryptedContainer.Member> selectMembers(EncryptedContainer archive, List<String> names) throws FatalRuntimeException {
+        if (names.isEmpty()) return archive.getMembers();
+        final List<EncryptedContainer.Member> members = new ArrayList<>();
+        for (String name : names) {
+            @Nullable final EncryptedContainer.Member member = archive.getMember(name);
+            if (null == member) {
+                throw new FatalRuntimeException("the container has no such member", String.format("member: \"%s\"", name));
+            }
+            members.add(member);
+        }
+        return members;
+    }
+
+    private static double getThreshold(CommandLine commandLine) throws FatalRuntimeException {
+        final String value = commandLine.getOptionValue("threshold", "0");
+        try {
+            final double threshold = Double.parseDouble(value);
+            if (threshold >= 0 && threshold < 1) return threshold;
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new FatalRuntimeException("the value of the option \"--threshold\" must be a number between 0 (inclusive) and 1 (exclusive)",
+                String.format("value: \"%s\"", value));
+    }
+}
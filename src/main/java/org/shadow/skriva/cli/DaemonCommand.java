@@ -0,0 +1,92 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+import org.shadow.lib.cryptography.TuningProfile;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.daemon.DaemonProtocol;
+import org.shadow.skriva.daemon.DaemonServer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The "daemon" command runs a daemon that encrypts, decrypts and verifies the files submitted by the command "submit"
+ * through a Unix domain socket (see DaemonServer). The password is read once, when the daemon starts.
+ *
+ * Usage: daemon [--socket <path>] [--workers <count>] [--format v1|v2] [--segment-size <size>] [--compress] [--threads <count>]
+ */
+
+public class DaemonCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "daemon";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Run a daemon that processes the files submitted by the command \"submit\", until interrupted.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(socketOption());
+        options.addOption(Option.builder().longOpt("workers").hasArg().argName("count")
+                .desc("number of files processed in parallel (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Option.builder().longOpt("format").hasArg().argName("format")
+                .desc("format of the encrypted files: v1 (AES-CBC) or v2 (default, segmented, authenticated)").build());
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, for the format v2 (default: 1M)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the segments before encryption, for the format v2 (skipped for incompressible files)").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel for each file, for the format v2 (default: 1)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (!commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final int workers = Cli.getPositiveInt(commandLine, "workers", TuningProfile.current().getWorkers());
+        final String secretKey = Cli.readPassword(commandLine, true);
+        // The files are processed in parallel: by default, the segments of a file are processed sequentially.
+        final SegmentedConfiguration configuration = BatchCommand.createSegmentedConfiguration(commandLine);
+        configuration.setThreads(Cli.getPositiveInt(commandLine, "threads", 1));
+        final SkrivaCypher encryptor = "v2".equalsIgnoreCase(commandLine.getOptionValue("format", "v2"))
+                ? new SkrivaCypherV2(configuration)
+                : BatchCommand.createEncryptor(commandLine);
+
+        final DaemonServer server = new DaemonServer(getSocketPath(commandLine), encryptor, configuration, secretKey, workers);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.printf("listening on %s (JMX: %s)%n", getSocketPath(commandLine), DaemonServer.objectName);
+        server.serve();
+        return 0;
+    }
+
+    /**
+     * Creates the option that designates the socket of the daemon.
+     */
+
+    static Option socketOption() {
+        return Option.builder().longOpt("socket").hasArg().argName("path")
+                .desc(String.format("path to the socket of the daemon (default: %s)", DaemonProtocol.defaultSocketPath())).build();
+    }
+
+    /**
+     * Returns the path to the socket of the daemon.
+     */
+
+    static Path getSocketPath(CommandLine commandLine) {
+        return commandLine.hasOption("socket") ? Paths.get(commandLine.getOptionValue("socket")) : DaemonProtocol.defaultSocketPath();
+    }
+}
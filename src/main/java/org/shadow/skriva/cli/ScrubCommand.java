@@ -0,0 +1,115 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.concurrent.RateLimiter;
+import org.shadow.lib.cryptography.ScrubState;
+import org.shadow.lib.cryptography.SegmentScrubber;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The "scrub" command verifies a random sample of the segments of segmented files (see SegmentScrubber).
+ * Files that are not segmented are skipped.
+ *
+ * Usage: scrub [--sample <fraction>] [--rate <size>] [--state <path>] <path>...
+ */
+
+public class ScrubCommand implements Command {
+    private static final double defaultSampleFraction = 0.01;
+
+    @Override
+    public String getName() {
+        return "scrub";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Verify a random sample of the segments of segmented encrypted files. An interrupted scrub resumes where it stopped.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("s").longOpt("sample").hasArg().argName("fraction")
+                .desc(String.format("fraction of the segments of each file to verify (default: %s)", defaultSampleFraction)).build());
+        options.addOption(Option.builder("r").longOpt("rate").hasArg().argName("size")
+                .desc("maximum number of bytes read per second (ex: 50M). Unlimited by default").build());
+        options.addOption(Option.builder().longOpt("state").hasArg().argName("path")
+                .desc("file used to save the progress (default: ~/.skriva/scrub.properties)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("no path given");
+        }
+        final double sampleFraction = getSampleFraction(commandLine);
+        final long rate = Cli.getByteSize(commandLine, "rate", 0L);
+        final String statePath = commandLine.getOptionValue("state",
+                Paths.get(System.getProperty("user.home"), ".skriva", "scrub.properties").toString());
+
+        final List<String> files = new ArrayList<>();
+        for (Path file : FileManip.ListRegularFiles(commandLine.getArgList(), ".rmb")) {
+            final String path = file.toAbsolutePath().toString();
+            if (SegmentedHeader.isSegmentedFile(path)) {
+                files.add(path);
+            } else {
+                System.out.printf("SKIPPED    %s (not segmented)%n", path);
+            }
+        }
+
+        final String secretKey = Cli.readPassword(commandLine, false);
+        final SegmentScrubber scrubber = new SegmentScrubber(sampleFraction, new RateLimiter(rate), ScrubState.load(statePath));
+        final int[] failures = new int[]{0};
+
+        try {
+            scrubber.scrub(files, secretKey, new SegmentScrubber.Listener() {
+                @Override
+                public void scrubbed(SegmentScrubber.Report report) {
+                    if (report.corruptions().isEmpty()) {
+                        System.out.printf("CLEAN      %s (%d of %d segments verified, detects 1%% corruption with probability %.4f)%n",
+                                report.path(), report.verified(), report.segmentCount(), report.detectionProbability(0.01));
+                        return;
+                    }
+                    failures[0]++;
+                    System.out.printf("CORRUPTED  %s%n", report.path());
+                    for (SegmentScrubber.Corruption corruption : report.corruptions()) {
+                        System.out.printf("           segment %d: offset %d, length %d%n",
+                                corruption.segment(), corruption.offset(), corruption.storedLength());
+                    }
+                }
+
+                @Override
+                public void failed(String path, FatalRuntimeException exception) {
+                    failures[0]++;
+                    System.out.printf("ERROR      %s: %s%n", path, exception.getMessage());
+                }
+            });
+        } catch (InterruptedException e) {
+            throw new FatalRuntimeException("the scrub has been interrupted. It will resume where it stopped");
+        }
+        return failures[0] > 0 ? 1 : 0;
+    }
+
+    private static double getSampleFraction(CommandLine commandLine) throws FatalRuntimeException {
+        final String value = commandLine.getOptionValue("sample", Double.toString(defaultSampleFraction));
+        try {
+            final double fraction = Double.parseDouble(value);
+            if (fraction > 0 && fraction <= 1) return fraction;
+        } catch (NumberFormatException e) {
+            // Handled below.
+        }
+        throw new FatalRuntimeException("the value of the option \"--sample\" must be a number between 0 (exclusive) and 1 (inclusive)",
+                String.format("value: \"%s\"", value));
+    }
+}
@@ -0,0 +1,54 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.IntegrityTrailer;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The "seal" command appends a keyless integrity trailer to encrypted files that do not have one yet.
+ * It does not need the password. Files that are already sealed are left unchanged.
+ *
+ * Usage: seal [--algorithm crc32c|sha256] <path>...
+ */
+
+public class SealCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "seal";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Append an integrity trailer to encrypted files (no password needed).";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("a").longOpt("algorithm").hasArg().argName("name")
+                .desc("crc32c (default) or sha256").build());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("no path given");
+        }
+        final IntegrityTrailer.Algorithm algorithm = IntegrityTrailer.Algorithm.nameToEnum(commandLine.getOptionValue("algorithm", "crc32c"));
+        final List<Path> files = FileManip.ListRegularFiles(commandLine.getArgList(), ".rmb");
+
+        for (Path file : files) {
+            final boolean sealed = IntegrityTrailer.seal(file.toString(), algorithm);
+            System.out.printf("%-10s %s%n", sealed ? "SEALED" : "UNCHANGED", file);
+        }
+        return 0;
+    }
+}
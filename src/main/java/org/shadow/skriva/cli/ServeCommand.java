@@ -0,0 +1,97 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.StreamingCypherV1;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.gateway.GatewayServer;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * The "serve" command runs an HTTP gateway that encrypts and decrypts request bodies (see GatewayServer), until it
+ * is interrupted. It listens to the loopback interface by default.
+ *
+ * The clients must present the token written to the token file ("~/.skriva/gateway.token" by default, readable only
+ * by the current user), which changes each time the server starts. Please note that listening to an address other
+ * than a loopback address exposes the password to the network: anyone who obtains the token can decrypt data.
+ *
+ * Usage: serve [--host <address>] [--port <port>] [--token-file <path>] [--max-concurrent <count>] [--max-memory <size>]
+ *              [--buffer-size <size>]
+ */
+
+public class ServeCommand implements Command {
+    private static final int defaultPort = 8750;
+    private static final long defaultMaxMemory = 64L << 20;
+
+    @Override
+    public String getName() {
+        return "serve";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Run an HTTP gateway that encrypts (POST /encrypt) and decrypts (POST /decrypt) request bodies, until interrupted.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("host").hasArg().argName("address")
+                .desc("address to listen to (default: 127.0.0.1). Any other address than loopback exposes the password to the network").build());
+        options.addOption(Option.builder().longOpt("port").hasArg().argName("port")
+                .desc(String.format("port to listen to (default: %d)", defaultPort)).build());
+        options.addOption(Option.builder().longOpt("token-file").hasArg().argName("path")
+                .desc(String.format("file the token of the clients is written to (default: %s)", defaultTokenPath())).build());
+        options.addOption(Option.builder().longOpt("max-concurrent").hasArg().argName("count")
+                .desc("maximum number of requests processed at the same time (default: 4 x number of processors)").build());
+        options.addOption(Option.builder().longOpt("max-memory").hasArg().argName("size")
+                .desc("maximum memory used by the buffers of the requests (default: 64M)").build());
+        options.addOption(Option.builder().longOpt("buffer-size").hasArg().argName("size")
+                .desc("length of the buffers of a request (default: 64K)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (!commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final String host = commandLine.getOptionValue("host", "127.0.0.1");
+        final int port = Cli.getPositiveInt(commandLine, "port", defaultPort);
+        final int maxConcurrent = Cli.getPositiveInt(commandLine, "max-concurrent", 4 * Runtime.getRuntime().availableProcessors());
+        final long maxMemory = Cli.getByteSize(commandLine, "max-memory", defaultMaxMemory);
+        final int bufferLength = (int) Math.min(64L << 20, Cli.getByteSize(commandLine, "buffer-size", StreamingCypherV1.defaultBufferLength));
+        final Path tokenPath = commandLine.hasOption("token-file") ? Paths.get(commandLine.getOptionValue("token-file")) : defaultTokenPath();
+        final String secretKey = Cli.readPassword(commandLine, true);
+
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        if (null == address.getAddress() || !address.getAddress().isLoopbackAddress()) {
+            System.err.printf("warning: %s is not a loopback address: the gateway, hence the password, is exposed to the network%n", host);
+        }
+        final String token = GatewayServer.writeToken(tokenPath);
+        final GatewayServer server = new GatewayServer(address, secretKey, token, maxConcurrent, maxMemory, bufferLength);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        server.start();
+        System.out.printf("listening on http://%s:%d, token in %s (press Ctrl+C to stop)%n", host, server.getAddress().getPort(), tokenPath);
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private static Path defaultTokenPath() {
+        return Paths.get(System.getProperty("user.home"), ".skriva", "gateway.token");
+    }
+}
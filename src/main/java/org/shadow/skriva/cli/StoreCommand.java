@@ -0,0 +1,110 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.store.ChunkStore;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * The "store" command manages deduplicated stores of encrypted files (see ChunkStore).
+ *
+ * Usage: store init|put|get|list|remove|gc [options] <store> [<path or name>...]
+ *
+ * - init: initializes a new store in the given directory.
+ * - put: stores the given files. The name of a stored file is its file name, unless "--name" is given.
+ * - get: restores the given files into the output directory.
+ * - list: lists the stored files.
+ * - remove: removes the given files from the store.
+ * - gc: deletes the chunks that are no longer used by any stored file.
+ */
+
+public class StoreCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "store";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Store files into a deduplicated encrypted store. The first argument is \"init\", \"put\", \"get\", "
+                + "\"list\", \"remove\" or \"gc\", the second one is the path to the store.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder("n").longOpt("name").hasArg().argName("name")
+                .desc("name of the stored file, for \"put\" with a single file (default: the file name)").build());
+        options.addOption(Option.builder("o").longOpt("output").hasArg().argName("directory")
+                .desc("directory into which files are restored (default: current directory)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        final List<String> args = commandLine.getArgList();
+        if (args.size() < 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final String action = args.get(0).toLowerCase();
+        final String storePath = args.get(1);
+        final List<String> operands = args.subList(2, args.size());
+
+        switch (action) {
+            case "init" -> {
+                ChunkStore.initialize(storePath, Cli.readPassword(commandLine, true));
+                System.out.printf("initialized %s%n", storePath);
+            }
+            case "put" -> {
+                if (commandLine.hasOption("name") && operands.size() != 1) {
+                    throw new FatalRuntimeException("the option \"--name\" requires a single file");
+                }
+                final ChunkStore store = ChunkStore.open(storePath, Cli.readPassword(commandLine, false));
+                for (String operand : operands) {
+                    final Path path = Paths.get(operand);
+                    final String name = commandLine.getOptionValue("name", path.getFileName().toString());
+                    final ChunkStore.PutResult result = store.put(name, path);
+                    System.out.printf("%s: %d bytes, %d chunks, %d new (%d bytes)%n",
+                            name, result.length(), result.chunks(), result.newChunks(), result.newLength());
+                }
+            }
+            case "get" -> {
+                final ChunkStore store = ChunkStore.open(storePath, Cli.readPassword(commandLine, false));
+                final Path output = Paths.get(commandLine.getOptionValue("output", "."));
+                for (String name : operands) {
+                    final Path target = output.resolve(Paths.get(name).getFileName());
+                    store.get(name, target);
+                    System.out.printf("%s -> %s%n", name, target);
+                }
+            }
+            case "list" -> {
+                final ChunkStore store = ChunkStore.open(storePath, Cli.readPassword(commandLine, false));
+                for (ChunkStore.Manifest manifest : store.list()) {
+                    System.out.printf("%12d  %s%n", manifest.length(), manifest.name());
+                }
+            }
+            case "remove" -> {
+                final ChunkStore store = ChunkStore.open(storePath, Cli.readPassword(commandLine, false));
+                for (String name : operands) {
+                    if (!store.remove(name)) {
+                        throw new FatalRuntimeException("the store has no such file", String.format("name: \"%s\"", name));
+                    }
+                    System.out.printf("removed %s%n", name);
+                }
+            }
+            case "gc" -> {
+                final ChunkStore store = ChunkStore.open(storePath, Cli.readPassword(commandLine, false));
+                System.out.printf("%d unused chunk(s) deleted%n", store.collectGarbage());
+            }
+            default -> throw new FatalRuntimeException(String.format("the given action \"%s\" is not valid", args.get(0)));
+        }
+        return 0;
+    }
+}
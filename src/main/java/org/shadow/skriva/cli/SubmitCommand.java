@@ -0,0 +1,91 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.RunVerifyConfiguration;
+import org.shadow.skriva.daemon.DaemonClient;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The "submit" command submits files to the daemon started by the command "daemon", and waits for the results.
+ * It replaces launching the command "batch" once per file: the files are processed by a process that is already
+ * running (and warm). The output paths are calculated as for the command "batch" ("file" <-> "file.rmb").
+ *
+ * Usage: submit encrypt|decrypt|verify [--socket <path>] [--force] <file>...
+ */
+
+public class SubmitCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "submit";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Submit files to the daemon. The first argument is \"encrypt\", \"decrypt\" or \"verify\".";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(DaemonCommand.socketOption());
+        options.addOption(Option.builder("f").longOpt("force").desc("overwrite the output files").build());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        final List<String> args = commandLine.getArgList();
+        if (args.size() < 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final String actionName = args.get(0).toLowerCase();
+        final boolean verify = actionName.equals("verify");
+        final Action action = verify ? Action.Decrypt : Action.nameToEnum(actionName);
+        if (action == Action.Undefined) {
+            throw new FatalRuntimeException("the given action \"" + args.get(0) + "\" is not valid");
+        }
+
+        // Verify all the paths before submitting the first file. The daemon may run in another directory.
+        final List<DaemonClient.Job> jobs = new ArrayList<>();
+        for (String input : args.subList(1, args.size())) {
+            RunVerifyConfiguration.verifyInputPath(input);
+            final String absoluteInput = Paths.get(input).toAbsolutePath().toString();
+            final String output = verify ? "" : RunVerifyConfiguration.calculateOutputPath(absoluteInput, action);
+            if (!verify && !commandLine.hasOption("force") && Files.exists(Paths.get(output))) {
+                throw new FatalRuntimeException("the output file already exists", String.format("output path: \"%s\"", output));
+            }
+            jobs.add(new DaemonClient.Job(actionName, absoluteInput, output));
+        }
+
+        final boolean console = null != System.console();
+        final int failures = new DaemonClient(DaemonCommand.getSocketPath(commandLine)).submit(jobs, new DaemonClient.Listener() {
+            @Override
+            public void progress(int job, int percentage) {
+                if (console) System.out.printf("\r%s: %d%%", jobs.get(job).input(), percentage);
+            }
+
+            @Override
+            public void done(int job, long bytes, long queueMillis, long processingMillis, String message) {
+                if (console) System.out.print("\r");
+                System.out.printf("%s -> %s (%d bytes, queued %d ms, processed in %d ms)%n",
+                        jobs.get(job).input(), message, bytes, queueMillis, processingMillis);
+            }
+
+            @Override
+            public void failed(int job, String message) {
+                if (console) System.out.print("\r");
+                System.err.printf("error: %s: %s%n", jobs.get(job).input(), message);
+            }
+        });
+        return failures == 0 ? 0 : 1;
+    }
+}
@@ -0,0 +1,72 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.TuningProfile;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.sync.SyncCatalog;
+import org.shadow.lib.sync.TreeSync;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The "sync" command mirrors a plaintext tree into an encrypted tree (see TreeSync). Only the files created or
+ * modified since the previous synchronization are encrypted, and the encrypted files of the deleted files are deleted.
+ *
+ * Usage: sync [--workers <count>] [--format v1|v2] [--segment-size <size>] [--compress] [--threads <count>] <source> <target>
+ */
+
+public class SyncCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "sync";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Mirror a plaintext tree (the first argument) into an encrypted tree (the second argument). Only the changes are processed.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("workers").hasArg().argName("count")
+                .desc("number of files processed in parallel (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Option.builder().longOpt("format").hasArg().argName("format")
+                .desc("format of the encrypted files: v1 (AES-CBC) or v2 (default, segmented, authenticated)").build());
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, for the format v2 (default: 1M)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the segments before encryption, for the format v2 (skipped for incompressible files)").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel for each file, for the format v2 (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().size() != 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final Path source = Paths.get(commandLine.getArgList().get(0));
+        final Path target = Paths.get(commandLine.getArgList().get(1));
+        final int workers = Cli.getPositiveInt(commandLine, "workers", TuningProfile.current().getWorkers());
+        final TreeSync sync = new TreeSync(BatchCommand.createEncryptor(commandLine, "v2"), workers);
+        final String secretKey = Cli.readPassword(commandLine, !Files.exists(target.resolve(SyncCatalog.fileName)));
+
+        final long start = System.nanoTime();
+        final TreeSync.Result result = sync.sync(source, target, secretKey);
+        for (String failure : result.failures()) {
+            System.err.printf("error: %s%n", failure);
+        }
+        System.out.printf("%d file(s): %d unchanged, %d touched, %d encrypted, %d deleted, %d failed (%d ms)%n",
+                result.files(), result.unchanged(), result.touched(), result.encrypted(), result.deleted(),
+                result.failures().size(), (System.nanoTime() - start) / 1_000_000);
+        return result.failures().isEmpty() ? 0 : 1;
+    }
+}
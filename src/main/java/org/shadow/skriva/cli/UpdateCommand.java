@@ -0,0 +1,80 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.RunVerifyConfiguration;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * The "update" command updates encrypted files (format v2) after their plaintext files have been modified.
+ * Only the segments that have changed are re-encrypted and written.
+ * The encrypted file of "file" is "file.rmb", as for the command "batch".
+ *
+ * Usage: update [--compress] [--compression-level <level>] [--threads <count>] <file>...
+ */
+
+public class UpdateCommand implements Command {
+
+    @Override
+    public String getName() {
+        return "update";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Re-encrypt only the segments of encrypted files (format v2) whose plaintext has changed.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the re-encrypted segments").build());
+        options.addOption(Option.builder().longOpt("compression-level").hasArg().argName("level")
+                .desc("Deflate level, from 1 (fastest, default) to 9 (smallest)").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().isEmpty()) {
+            throw new FatalRuntimeException("no path given");
+        }
+        final SkrivaCypherV2 cypher = new SkrivaCypherV2(BatchCommand.createSegmentedConfiguration(commandLine));
+
+        // Verify all the paths before processing the first file.
+        for (String input : commandLine.getArgList()) {
+            RunVerifyConfiguration.verifyInputPath(input);
+            final String encrypted = RunVerifyConfiguration.calculateOutputPath(input, Action.Encrypt);
+            if (!Files.exists(Paths.get(encrypted))) {
+                throw new FatalRuntimeException("the encrypted file does not exist", String.format("encrypted file: \"%s\"", encrypted));
+            }
+            if (!SegmentedHeader.isSegmentedFile(encrypted)) {
+                throw new FatalRuntimeException("only the files encrypted using the format v2 can be updated",
+                        String.format("encrypted file: \"%s\"", encrypted));
+            }
+        }
+
+        final String secretKey = Cli.readPassword(commandLine, false);
+        for (String input : commandLine.getArgList()) {
+            final String encrypted = RunVerifyConfiguration.calculateOutputPath(input, Action.Encrypt);
+            final SkrivaCypherV2.UpdateResult result = cypher.UpdateFile(input, encrypted, secretKey, null);
+            if (result.rewritten()) {
+                System.out.printf("%s -> %s (re-encrypted entirely to reclaim unused space)%n", input, encrypted);
+            } else {
+                System.out.printf("%s -> %s (%d of %d segments changed)%n", input, encrypted, result.changedSegments(), result.segmentCount());
+            }
+        }
+        return 0;
+    }
+}
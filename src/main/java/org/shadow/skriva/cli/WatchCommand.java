@@ -0,0 +1,127 @@
+package org.shadow.skriva.cli;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.exception.DetailsSupplier;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+import org.shadow.lib.file.FolderWatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The "watch" command encrypts the files dropped into a directory (the inbox) into another directory (the outbox),
+ * until it is interrupted. The encrypted file of "inbox/file" is "outbox/file.rmb".
+ *
+ * The process stays alive between files: the password is read once, and the code of the cypher stays compiled,
+ * which makes the latency per file much lower than launching the command "batch" for each file.
+ * An encrypted file is written under a hidden temporary name, then renamed, so that the outbox never contains
+ * partially written files. A file whose encrypted file is more recent than itself is not encrypted again (for
+ * example, after a restart).
+ *
+ * Usage: watch [--quiet <milliseconds>] [--workers <count>] [--remove] [--format v1|v2] [...] <inbox> <outbox>
+ */
+
+public class WatchCommand implements Command {
+    private static final long defaultQuietMillis = 2000;
+    private static final int defaultWorkers = 2;
+
+    @Override
+    public String getName() {
+        return "watch";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Encrypt the files dropped into a directory (the first argument) into another directory (the second argument), until interrupted.";
+    }
+
+    @Override
+    public Options getOptions() {
+        Options options = new Options();
+        options.addOption(Option.builder().longOpt("quiet").hasArg().argName("milliseconds")
+                .desc(String.format("time during which a file must not change before it is encrypted (default: %d)", defaultQuietMillis)).build());
+        options.addOption(Option.builder().longOpt("workers").hasArg().argName("count")
+                .desc(String.format("number of files encrypted in parallel (default: %d)", defaultWorkers)).build());
+        options.addOption(Option.builder().longOpt("remove")
+                .desc("delete the files of the inbox once they have been encrypted").build());
+        options.addOption(Option.builder().longOpt("format").hasArg().argName("format")
+                .desc("format of the encrypted files: v1 (AES-CBC) or v2 (default, segmented, authenticated)").build());
+        options.addOption(Option.builder().longOpt("segment-size").hasArg().argName("size")
+                .desc("number of plaintext bytes per segment, for the format v2 (default: 1M)").build());
+        options.addOption(Option.builder().longOpt("compress")
+                .desc("compress the segments before encryption, for the format v2 (skipped for incompressible files)").build());
+        options.addOption(Option.builder().longOpt("threads").hasArg().argName("count")
+                .desc("number of segments processed in parallel for each file, for the format v2 (default: workers of the tuning profile, or number of processors)").build());
+        options.addOption(Cli.passwordOption());
+        return options;
+    }
+
+    @Override
+    public int execute(CommandLine commandLine) throws FatalRuntimeException {
+        if (commandLine.getArgList().size() != 2) {
+            throw new FatalRuntimeException("Invalid number of parameters");
+        }
+        final Path inbox = Paths.get(commandLine.getArgList().get(0)).toAbsolutePath().normalize();
+        final Path outbox = Paths.get(commandLine.getArgList().get(1)).toAbsolutePath().normalize();
+        if (!Files.isDirectory(outbox)) {
+            throw new FatalRuntimeException("the output directory does not exist", String.format("path: \"%s\"", outbox));
+        }
+        if (inbox.equals(outbox)) {
+            throw new FatalRuntimeException("the output directory must not be the watched directory");
+        }
+        final long quietMillis = Cli.getPositiveInt(commandLine, "quiet", (int) defaultQuietMillis);
+        final int workers = Cli.getPositiveInt(commandLine, "workers", defaultWorkers);
+        final boolean remove = commandLine.hasOption("remove");
+        final SkrivaCypher encryptor = BatchCommand.createEncryptor(commandLine, "v2");
+        final String secretKey = Cli.readPassword(commandLine, true);
+
+        final FolderWatcher watcher = new FolderWatcher(inbox, quietMillis, workers, new FolderWatcher.Handler() {
+            @Override
+            public boolean accept(Path file) {
+                final Path output = outbox.resolve(file.getFileName() + ".rmb");
+                try {
+                    return !Files.exists(output) || Files.getLastModifiedTime(output).compareTo(Files.getLastModifiedTime(file)) < 0;
+                } catch (IOException e) {
+                    return true;
+                }
+            }
+
+            @Override
+            public void process(Path file) throws FatalRuntimeException {
+                final long start = System.nanoTime();
+                final Path output = outbox.resolve(file.getFileName() + ".rmb");
+                final Path temporary = outbox.resolve("." + file.getFileName() + ".rmb.part");
+                try {
+                    encryptor.EncryptFile(file.toString(), temporary.toString(), secretKey, null);
+                    Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    if (remove) Files.delete(file);
+                } catch (IOException e) {
+                    throw new FatalRuntimeException(String.format("cannot move the encrypted file to \"%s\"", output), e.getMessage());
+                } finally {
+                    FileManip.DeleteIfExists(temporary.toString());
+                }
+                System.out.printf("%s -> %s (%d ms)%n", file, output, (System.nanoTime() - start) / 1_000_000);
+            }
+
+            @Override
+            public void failed(Path file, RuntimeException e) {
+                System.err.printf("error: %s: %s%n", file, e.getMessage());
+                if (e instanceof DetailsSupplier supplier && null != supplier.getDetails()) {
+                    System.err.printf("       %s%n", supplier.getDetails());
+                }
+            }
+        });
+
+        System.out.printf("watching %s (press Ctrl+C to stop)%n", inbox);
+        Runtime.getRuntime().addShutdownHook(new Thread(watcher::close));
+        watcher.run();
+        return 0;
+    }
+}
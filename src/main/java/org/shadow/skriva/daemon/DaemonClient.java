@@ -0,0 +1,117 @@
+package org.shadow.skriva.daemon;
+
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The DaemonClient class submits jobs to a daemon (see DaemonServer), and receives their progress and their outcome.
+ */
+
+public class DaemonClient {
+
+    /**
+     * A Job describes a file to process.
+     *
+     * @param action the action: "encrypt", "decrypt" or "verify".
+     * @param input the absolute path to the input file.
+     * @param output the absolute path to the output file (empty for "verify").
+     */
+
+    public record Job(String action, String input, String output) {}
+
+    /**
+     * The Listener interface receives the messages of the daemon. The jobs are designated by their index.
+     */
+
+    public interface Listener {
+        void progress(int job, int percentage);
+        void done(int job, long bytes, long queueMillis, long processingMillis, String message);
+        void failed(int job, String message);
+    }
+
+    private final Path socketPath;
+
+    /**
+     * Creates a client.
+     *
+     * @param socketPath the path to the socket of the daemon.
+     */
+
+    public DaemonClient(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Submits jobs, and waits until all of them are finished.
+     *
+     * @param jobs the jobs.
+     * @param listener the listener that receives the messages of the daemon.
+     * @return the number of jobs that failed.
+     * @throws FatalRuntimeException if the daemon is not running, or if the connection is lost.
+     */
+
+    public int submit(List<Job> jobs, Listener listener) throws FatalRuntimeException {
+        final SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the daemon is not running", String.format("socket: \"%s\" (%s)", socketPath, e.getMessage()));
+        }
+
+        int failures = 0;
+        int finished = 0;
+        try (channel;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8))) {
+            final Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+            for (int i = 0; i < jobs.size(); i++) {
+                final Job job = jobs.get(i);
+                writer.write(DaemonProtocol.format(i, job.action(), job.input(), job.output()));
+                writer.write('\n');
+            }
+            writer.flush();
+            channel.shutdownOutput();
+
+            String line;
+            while (null != (line = reader.readLine())) {
+                final String[] fields = DaemonProtocol.parse(line);
+                final int job = Integer.parseInt(fields[0]);
+                switch (fields[1]) {
+                    case DaemonProtocol.progress -> listener.progress(job, Integer.parseInt(fields[2]));
+                    case DaemonProtocol.done -> {
+                        finished++;
+                        listener.done(job, Long.parseLong(fields[2]), Long.parseLong(fields[3]), Long.parseLong(fields[4]), fields[5]);
+                    }
+                    case DaemonProtocol.failed -> {
+                        finished++;
+                        failures++;
+                        listener.failed(job, fields[2]);
+                    }
+                    default -> throw new FatalRuntimeException("unexpected message from the daemon", String.format("message: \"%s\"", line));
+                }
+            }
+        } catch (IOException e) {
+            throw new FatalRuntimeException("the connection to the daemon has been lost", e.getMessage());
+        } catch (RuntimeException e) {
+            if (e instanceof FatalRuntimeException) throw e;
+            throw new FatalRuntimeException("unexpected message from the daemon", e.getMessage());
+        }
+        if (finished != jobs.size()) {
+            throw new FatalRuntimeException("the daemon has stopped before finishing the jobs",
+                    String.format("%d of %d jobs finished", finished, jobs.size()));
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,114 @@
+package org.shadow.skriva.daemon;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DaemonMetrics class gathers the live counters of the daemon. Please see DaemonMetricsMBean.
+ */
+
+public class DaemonMetrics implements DaemonMetricsMBean {
+    private static final long rateIntervalNanos = 1_000_000_000L;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong jobsSubmitted = new AtomicLong();
+    private final AtomicLong jobsCompleted = new AtomicLong();
+    private final AtomicLong jobsFailed = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong bytesProcessed = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private long rateSampleBytes = 0;
+    private long rateSampleNanos = System.nanoTime();
+    private double bytesPerSecond = 0;
+
+    /**
+     * Creates the metrics of the daemon.
+     *
+     * @param executor the executor that runs the jobs (used for the number of running and queued jobs).
+     */
+
+    public DaemonMetrics(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    void jobSubmitted() {
+        jobsSubmitted.incrementAndGet();
+    }
+
+    void jobFinished(boolean success, long bytes, long queue, long processing) {
+        (success ? jobsCompleted : jobsFailed).incrementAndGet();
+        bytesProcessed.addAndGet(bytes);
+        queueNanos.addAndGet(queue);
+        processingNanos.addAndGet(processing);
+    }
+
+    void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    @Override
+    public long getJobsSubmitted() {
+        return jobsSubmitted.get();
+    }
+
+    @Override
+    public long getJobsCompleted() {
+        return jobsCompleted.get();
+    }
+
+    @Override
+    public long getJobsFailed() {
+        return jobsFailed.get();
+    }
+
+    @Override
+    public int getJobsRunning() {
+        return executor.getActiveCount();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return bytesProcessed.get();
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond() {
+        // The rate is sampled at most once per interval, so that several JMX clients see the same value.
+        final long now = System.nanoTime();
+        if (now - rateSampleNanos >= rateIntervalNanos) {
+            final long bytes = bytesProcessed.get();
+            bytesPerSecond = (bytes - rateSampleBytes) * 1e9 / (now - rateSampleNanos);
+            rateSampleBytes = bytes;
+            rateSampleNanos = now;
+        }
+        return bytesPerSecond;
+    }
+
+    @Override
+    public double getAverageQueueMillis() {
+        final long jobs = jobsCompleted.get() + jobsFailed.get();
+        return jobs == 0 ? 0 : queueNanos.get() / 1e6 / jobs;
+    }
+
+    @Override
+    public double getAverageProcessingMillis() {
+        final long jobs = jobsCompleted.get() + jobsFailed.get();
+        return jobs == 0 ? 0 : processingNanos.get() / 1e6 / jobs;
+    }
+}
@@ -0,0 +1,34 @@
+package org.shadow.skriva.daemon;
+
+/**
+ * The DaemonMetricsMBean interface exposes the live counters of the daemon through JMX
+ * (object name "org.shadow.skriva:type=Daemon").
+ */
+
+public interface DaemonMetricsMBean {
+    long getJobsSubmitted();
+    long getJobsCompleted();
+    long getJobsFailed();
+    int getJobsRunning();
+    int getQueueDepth();
+    int getConnections();
+    long getBytesProcessed();
+
+    /**
+     * Returns the number of bytes processed per second, since the previous call of this method.
+     */
+
+    double getBytesPerSecond();
+
+    /**
+     * Returns the average time spent by the jobs in the queue, in milliseconds.
+     */
+
+    double getAverageQueueMillis();
+
+    /**
+     * Returns the average time spent processing (encrypting, decrypting or verifying) the jobs, in milliseconds.
+     */
+
+    double getAverageProcessingMillis();
+}
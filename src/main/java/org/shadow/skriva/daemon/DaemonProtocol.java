@@ -0,0 +1,72 @@
+package org.shadow.skriva.daemon;
+
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The DaemonProtocol class defines the protocol spoken over the socket of the daemon (see DaemonServer).
+ *
+ * Messages are lines of UTF-8 text, whose fields are separated by tabulations. The client sends one line per job,
+ * then shuts down its side of the connection. The server answers with any number of lines per job, and closes the
+ * connection once all the jobs of the connection are finished.
+ *
+ *     client: <job id> <action (encrypt, decrypt or verify)> <input path> <output path (empty for verify)>
+ *     server: <job id> progress <percentage>
+ *             <job id> done <bytes> <time spent in queue (ms)> <time spent processing (ms)> <message>
+ *             <job id> failed <message>
+ *
+ * The password is not part of the protocol: the daemon reads it once, when it starts. The socket is therefore only
+ * accessible to the user who started the daemon.
+ */
+
+public class DaemonProtocol {
+    public static final String progress = "progress";
+    public static final String done = "done";
+    public static final String failed = "failed";
+    public static final String separator = "\t";
+
+    /**
+     * Returns the default path to the socket of the daemon ("~/.skriva/daemon.sock").
+     *
+     * @return the path.
+     */
+
+    public static Path defaultSocketPath() {
+        return Paths.get(System.getProperty("user.home"), ".skriva", "daemon.sock");
+    }
+
+    /**
+     * Joins the fields of a message.
+     *
+     * @param fields the fields.
+     * @return the line, without line terminator.
+     * @throws FatalRuntimeException if a field contains a tabulation or a line terminator.
+     */
+
+    public static String format(Object... fields) throws FatalRuntimeException {
+        final StringBuilder line = new StringBuilder();
+        for (Object field : fields) {
+            final String text = String.valueOf(field);
+            if (text.contains(separator) || text.contains("\n") || text.contains("\r")) {
+                throw new FatalRuntimeException("a field of the message contains a tabulation or a line terminator",
+                        String.format("field: \"%s\"", text));
+            }
+            if (!line.isEmpty()) line.append(separator);
+            line.append(text);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Splits a message into its fields.
+     *
+     * @param line the line, without line terminator.
+     * @return the fields.
+     */
+
+    public static String[] parse(String line) {
+        return line.split(separator, -1);
+    }
+}
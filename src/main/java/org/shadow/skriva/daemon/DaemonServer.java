@@ -0,0 +1,315 @@
+package org.shadow.skriva.daemon;
+
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.cryptography.SegmentedFile;
+import org.shadow.lib.cryptography.SegmentedHeader;
+import org.shadow.lib.cryptography.SkrivaCypher;
+import org.shadow.lib.cryptography.TaskUpdater;
+import org.shadow.lib.exception.DetailsSupplier;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+import org.shadow.lib.file.SocketFiles;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DaemonServer class runs encryption, decryption and verification jobs submitted through a Unix domain socket
+ * (see DaemonProtocol). A single process serves all the jobs, so that the start of the JVM, the loading of the
+ * classes and the compilation of the cryptographic code are paid once, instead of once per file.
+ *
+ * Each connection is served by a virtual thread. The jobs themselves are run by a fixed pool of platform threads,
+ * whose size is bounded by the number of processors, since they are CPU-bound. The live counters of the daemon are
+ * exposed through JMX (see DaemonMetricsMBean).
+ */
+
+public class DaemonServer implements AutoCloseable {
+    public static final String objectName = "org.shadow.skriva:type=Daemon";
+
+    private final Path socketPath;
+    private final SkrivaCypher encryptor;
+    private final SegmentedConfiguration configuration;
+    private final String secretKey;
+    private final ThreadPoolExecutor executor;
+    private final DaemonMetrics metrics;
+    @Nullable private ServerSocketChannel server = null;
+    @Nullable private ObjectName registeredName = null;
+
+    /**
+     * Creates a daemon.
+     *
+     * @param socketPath the path to the socket.
+     * @param encryptor the cypher used to encrypt files.
+     * @param configuration the configuration used to decrypt the segmented files.
+     * @param secretKey the secret key used for all the jobs.
+     * @param workers the number of jobs run in parallel.
+     */
+
+    public DaemonServer(Path socketPath, SkrivaCypher encryptor, SegmentedConfiguration configuration, String secretKey, int workers) {
+        this.socketPath = socketPath;
+        this.encryptor = encryptor;
+        this.configuration = configuration;
+        this.secretKey = secretKey;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        this.metrics = new DaemonMetrics(executor);
+    }
+
+    /**
+     * Returns the live counters of the daemon.
+     *
+     * @return the counters.
+     */
+
+    public DaemonMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Binds the socket (see SocketFiles.bind) and registers the MBean. A stale socket (left by a daemon that has not
+     * been stopped properly) is replaced.
+     *
+     * @throws FatalRuntimeException if another daemon is listening on the socket, if its directory is accessible to
+     *         other users, or if the socket cannot be bound.
+     */
+
+    public void start() throws FatalRuntimeException {
+        try {
+            server = SocketFiles.bind(socketPath);
+        } catch (FileAlreadyExistsException e) {
+            throw new FatalRuntimeException("a daemon is already listening on the socket", String.format("socket: \"%s\"", socketPath));
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot listen on the socket \"%s\"", socketPath), e.getMessage());
+        }
+
+        try {
+            final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            registeredName = new ObjectName(objectName);
+            if (!mbeanServer.isRegistered(registeredName)) mbeanServer.registerMBean(metrics, registeredName);
+        } catch (JMException e) {
+            registeredName = null;
+        }
+    }
+
+    /**
+     * Accepts connections until the daemon is closed.
+     *
+     * @throws FatalRuntimeException if the daemon has not been started.
+     */
+
+    public void serve() throws FatalRuntimeException {
+        if (null == server) throw new FatalRuntimeException("the daemon has not been started");
+        while (server.isOpen()) {
+            final SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // The socket has been closed.
+                break;
+            }
+            Thread.ofVirtual().name("skriva-connection").start(() -> handle(channel));
+        }
+    }
+
+    /**
+     * Stops accepting connections, waits for the running jobs, and deletes the socket.
+     */
+
+    @Override
+    public void close() {
+        try {
+            if (null != server) server.close();
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            // Nothing more can be done.
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.HOURS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        if (null != registeredName) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                // Nothing more can be done.
+            }
+        }
+    }
+
+    /**
+     * Serves a connection: reads the jobs, submits them, and waits for all of them before closing the connection.
+     */
+
+    private void handle(SocketChannel channel) {
+        metrics.connectionOpened();
+        try (channel;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)) {
+            final List<Future<?>> jobs = new ArrayList<>();
+            String line;
+            while (null != (line = reader.readLine())) {
+                final String[] fields = DaemonProtocol.parse(line);
+                final String id = fields[0];
+                if (fields.length != 4) {
+                    send(writer, id, DaemonProtocol.failed, "malformed request");
+                    continue;
+                }
+                metrics.jobSubmitted();
+                final long submitted = System.nanoTime();
+                jobs.add(executor.submit(() -> run(writer, id, fields[1], fields[2], fields[3], submitted)));
+            }
+            for (Future<?> job : jobs) {
+                try {
+                    job.get();
+                } catch (ExecutionException e) {
+                    // The failure has already been reported to the client.
+                }
+            }
+        } catch (IOException e) {
+            // The client has gone away.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            metrics.connectionClosed();
+        }
+    }
+
+    /**
+     * Runs a job, and reports its progress and its outcome to the client.
+     */
+
+    private void run(Writer writer, String id, String actionName, String input, String output, long submitted) {
+        final long started = System.nanoTime();
+        final TaskUpdater progress = new TaskUpdater() {
+            private long lastPercentage = -1;
+
+            @Override
+            public void update(long current, long total) {
+                final long percentage = total <= 0 ? 100 : Math.min(100, 100 * current / total);
+                if (percentage == lastPercentage) return;
+                lastPercentage = percentage;
+                send(writer, id, DaemonProtocol.progress, percentage);
+            }
+        };
+
+        boolean success = false;
+        long bytes = 0;
+        try {
+            bytes = Files.size(Path.of(input));
+            final String message = switch (actionName.toLowerCase()) {
+                case "encrypt" -> {
+                    encrypt(input, output, progress);
+                    yield output;
+                }
+                case "decrypt" -> {
+                    decrypt(input, output, progress);
+                    yield output;
+                }
+                case "verify" -> verify(input);
+                default -> throw new FatalRuntimeException(String.format("the given action \"%s\" is not valid", actionName));
+            };
+            success = true;
+            send(writer, id, DaemonProtocol.done, bytes, (started - submitted) / 1_000_000, (System.nanoTime() - started) / 1_000_000, message);
+        } catch (IOException | RuntimeException e) {
+            @Nullable final String details = e instanceof DetailsSupplier supplier ? supplier.getDetails() : null;
+            final String message = null == details ? e.getMessage() : String.format("%s (%s)", e.getMessage(), details);
+            send(writer, id, DaemonProtocol.failed, String.valueOf(message).replaceAll("[\\t\\r\\n]+", " "));
+        } finally {
+            metrics.jobFinished(success, bytes, started - submitted, System.nanoTime() - started);
+        }
+    }
+
+    private void encrypt(String input, String output, TaskUpdater progress) throws FatalRuntimeException {
+        final Path temporary = temporaryPath(output);
+        try {
+            encryptor.EncryptFile(input, temporary.toString(), secretKey, progress);
+            Files.move(temporary, Path.of(output), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the file \"%s\"", output), e.getMessage());
+        } finally {
+            FileManip.DeleteIfExists(temporary.toString());
+        }
+    }
+
+    private void decrypt(String input, String output, TaskUpdater progress) throws FatalRuntimeException {
+        final Path temporary = temporaryPath(output);
+        try {
+            SkrivaCypher.forEncryptedFile(input, configuration).DecryptFile(input, temporary.toString(), secretKey, progress);
+            Files.move(temporary, Path.of(output), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the file \"%s\"", output), e.getMessage());
+        } finally {
+            FileManip.DeleteIfExists(temporary.toString());
+        }
+    }
+
+    /**
+     * Verifies an encrypted file. All the segments of a segmented file are authenticated. A file encrypted using the
+     * format v1 is decrypted into a temporary file, which is deleted once its checksum has been verified.
+     */
+
+    private String verify(String input) throws FatalRuntimeException, IOException {
+        if (SegmentedHeader.isSegmentedFile(input)) {
+            try (SegmentedFile file = SegmentedFile.open(input, secretKey, false)) {
+                int corrupted = 0;
+                for (int i = 0; i < file.getSegmentCount(); i++) {
+                    if (!file.verifySegment(i)) corrupted++;
+                }
+                if (corrupted > 0) {
+                    throw new FatalRuntimeException("the encrypted file is corrupted",
+                            String.format("%d of %d segments cannot be authenticated", corrupted, file.getSegmentCount()));
+                }
+                return String.format("%d segments verified", file.getSegmentCount());
+            }
+        }
+        final Path temporary = Files.createTempFile("skriva-verify", ".tmp");
+        try {
+            SkrivaCypher.forEncryptedFile(input, configuration).DecryptFile(input, temporary.toString(), secretKey, null);
+            return "checksum verified";
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static Path temporaryPath(String output) {
+        final Path path = Path.of(output).toAbsolutePath();
+        return path.resolveSibling("." + path.getFileName() + ".part");
+    }
+
+    private static void send(Writer writer, Object... fields) {
+        synchronized (writer) {
+            try {
+                writer.write(DaemonProtocol.format(fields));
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException | FatalRuntimeException e) {
+                // The client has gone away: the job goes on.
+            }
+        }
+    }
+}
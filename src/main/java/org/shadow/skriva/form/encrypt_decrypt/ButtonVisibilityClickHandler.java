@@ -5,6 +5,12 @@ import javafx.event.EventHandler;
 import javafx.scene.control.*;
 
 public class ButtonVisibilityClickHandler implements EventHandler<ActionEvent> {
+    private final Components components;
+
+    public ButtonVisibilityClickHandler(Components components) {
+        this.components = components;
+    }
+
 //    private final BooleanProperty isVisible;
 //    private final String showLabel;
 //    private final String hideLabel;
@@ -18,11 +24,11 @@ public class ButtonVisibilityClickHandler implements EventHandler<ActionEvent> {
     @Override
     public void handle(ActionEvent event) {
         Button source = (Button) event.getSource();
-        Components.isVisible.set(! Components.isVisible.get());
+        components.isVisible.set(! components.isVisible.get());
 
         // If the password is visible, then the button that changes its visibility must be labeled "hide".
         // If the password is not visible, then the button that changes its visibility must be labeled "show".
-        if (Components.isVisible.get()) {
+        if (components.isVisible.get()) {
             source.setText(Components.hideLabel);
         } else {
             source.setText(Components.showLabel);
@@ -4,12 +4,15 @@ import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
-import org.shadow.skriva.Configuration;
+import javafx.scene.layout.VBox;
 
 /**
  * The Components class encapsulates the UI components and their configurations that are used in the form
  * implemented by the current package.
  *
+ * Each form owns its components: several forms can live in the same process. The form passes its components to the
+ * handlers it creates.
+ *
  * Please note that this class contains "package-private" variables.
  */
 
@@ -26,20 +29,23 @@ public class Components {
 //    static final String encryptLabel = "encrypt"; // https://www.compart.com/en/unicode/U+1F512
 //    static final String decryptLabel = "decrypt"; // https://www.compart.com/en/unicode/U+1F512
 
-    static Configuration configuration;
-    static final BooleanProperty isVisible = new SimpleBooleanProperty(false);
-    static final Button visibilityButton = new Button();
-    static final Button actionButton = new Button();
-    static final PasswordField password1NonVisible = new PasswordField();
-    static final PasswordField password2NonVisible = new PasswordField();
-    static final TextField password1Visible = new TextField();
-    static final TextField password2Visible = new TextField();
-    static final HBox p1box = new HBox(password1Visible, password1NonVisible);
-    static final HBox p2box = new HBox(password2Visible, password2NonVisible);
-    static final Label enterPassword1Label = new Label("Enter password:");
-    static final Label enterPassword2Label = new Label("Confirm password:");
-    static final Label passwordStrengthLabel = new Label("Password strength:");
-    static final Label progressionLabel = new Label("Progression:");
-    static final ProgressBar progressBar = new ProgressBar(0);
-    static final ProgressBar passwordStrengthBar = new ProgressBar(0);
+    final BooleanProperty isVisible = new SimpleBooleanProperty(false);
+    final Button visibilityButton = new Button();
+    final Button actionButton = new Button();
+    final PasswordField password1NonVisible = new PasswordField();
+    final PasswordField password2NonVisible = new PasswordField();
+    final TextField password1Visible = new TextField();
+    final TextField password2Visible = new TextField();
+    final HBox p1box = new HBox(password1Visible, password1NonVisible);
+    final HBox p2box = new HBox(password2Visible, password2NonVisible);
+    final Label enterPassword1Label = new Label("Enter password:");
+    final Label enterPassword2Label = new Label("Confirm password:");
+    final Label passwordStrengthLabel = new Label("Password strength:");
+    final Label progressionLabel = new Label("Progression:");
+    final Label throughputLabel = new Label();
+    final ProgressBar progressBar = new ProgressBar(0);
+    final ProgressBar passwordStrengthBar = new ProgressBar(0);
+    final VBox jobRows = new VBox();
+    final ScrollPane jobList = new ScrollPane(jobRows);
+    final JobQueue jobs = new JobQueue(this);
 }
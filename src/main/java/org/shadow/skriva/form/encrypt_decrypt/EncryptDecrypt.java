@@ -1,11 +1,25 @@
 package org.shadow.skriva.form.encrypt_decrypt;
 
 import javafx.geometry.HPos;
+import javafx.scene.input.DragEvent;
+import javafx.scene.input.TransferMode;
 import javafx.scene.layout.GridPane;
-import org.shadow.skriva.Action;
+import org.jetbrains.annotations.Nullable;
 import org.shadow.skriva.Configuration;
 
+import java.io.File;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The EncryptDecrypt class is the form that processes files: it holds the passwords, and the list of the files to
+ * process with their progress and their throughput (see JobQueue). Files can be dropped on the form, including while
+ * other files are being processed.
+ */
+
 public class EncryptDecrypt extends GridPane {
+    private final Components components = new Components();
+    @Nullable private Consumer<List<String>> onFilesDropped = null;
 
     // public EncryptDecrypt(String[] args, String alertErrorCssPath) {
     public EncryptDecrypt() {
@@ -15,100 +29,122 @@ public class EncryptDecrypt extends GridPane {
         setEventHandlers();
     }
 
-    public void setConfiguration(Configuration configuration) {
-        Components.configuration = configuration;
+    /**
+     * Adds a file to process. The file is processed the next time the user clicks on the action button.
+     *
+     * @param configuration the configuration of the file (action, input and output paths).
+     */
 
-        if (Components.configuration.getAction() == Action.Encrypt) {
-            Components.actionButton.setText(Components.encryptLabel);
-        } else {
-            Components.actionButton.setText(Components.decryptLabel);
-        }
+    public void addConfiguration(Configuration configuration) {
+        components.jobs.add(configuration);
+    }
+
+    /**
+     * Sets the handler of the files dropped on the form. The handler is responsible for verifying the files, and for
+     * adding them to the form (see `addConfiguration`).
+     *
+     * @param onFilesDropped the handler, which receives the absolute paths to the dropped files.
+     */
+
+    public void setOnFilesDropped(Consumer<List<String>> onFilesDropped) {
+        this.onFilesDropped = onFilesDropped;
     }
 
     private void style() {
         getStyleClass().add("grid");
-        Components.enterPassword1Label.getStyleClass().add("label");
-        Components.enterPassword2Label.getStyleClass().add("label");
-        Components.passwordStrengthLabel.getStyleClass().add("label");
-        Components.progressionLabel.getStyleClass().add("label");
-        Components.actionButton.getStyleClass().add("button-action");
-        Components.visibilityButton.getStyleClass().add("button-action");
-        Components.password1Visible.getStyleClass().add("input-text");
-        Components.password1NonVisible.getStyleClass().add("input-text");
-        Components.password2Visible.getStyleClass().add("input-text");
-        Components.password2NonVisible.getStyleClass().add("input-text");
+        components.enterPassword1Label.getStyleClass().add("label");
+        components.enterPassword2Label.getStyleClass().add("label");
+        components.passwordStrengthLabel.getStyleClass().add("label");
+        components.progressionLabel.getStyleClass().add("label");
+        components.throughputLabel.getStyleClass().add("label");
+        components.jobList.getStyleClass().add("job-list");
+        components.actionButton.getStyleClass().add("button-action");
+        components.visibilityButton.getStyleClass().add("button-action");
+        components.password1Visible.getStyleClass().add("input-text");
+        components.password1NonVisible.getStyleClass().add("input-text");
+        components.password2Visible.getStyleClass().add("input-text");
+        components.password2NonVisible.getStyleClass().add("input-text");
     }
 
     private void create() {
         // Configure the button used to trigger the action (encryption or decryption).
-        Components.actionButton.setText("    ");
-        Components.actionButton.setDisable(true);
-        Components.actionButton.setMaxWidth(Double.MAX_VALUE);
-        Components.actionButton.setMaxHeight(Double.MAX_VALUE);
-        GridPane.setHalignment(Components.actionButton, HPos.RIGHT);
+        components.actionButton.setText("    ");
+        components.actionButton.setDisable(true);
+        components.actionButton.setMaxWidth(Double.MAX_VALUE);
+        components.actionButton.setMaxHeight(Double.MAX_VALUE);
+        GridPane.setHalignment(components.actionButton, HPos.RIGHT);
 
         // Configure the button used to modify the visibility of the passwords.
-        Components.visibilityButton.setMaxWidth(Double.MAX_VALUE);
-        Components.visibilityButton.setMaxHeight(Double.MAX_VALUE);
-        Components.visibilityButton.setText(Components.showLabel);
+        components.visibilityButton.setMaxWidth(Double.MAX_VALUE);
+        components.visibilityButton.setMaxHeight(Double.MAX_VALUE);
+        components.visibilityButton.setText(Components.showLabel);
 
         // Configure the progress bar.
-        Components.progressBar.setMaxWidth(Double.MAX_VALUE);
-        Components.progressBar.setMaxHeight(Double.MAX_VALUE);
-        Components.progressBar.setVisible(true);
-        GridPane.setHgrow(Components.progressBar, javafx.scene.layout.Priority.ALWAYS);
-        GridPane.setVgrow(Components.progressBar, javafx.scene.layout.Priority.ALWAYS);
+        components.progressBar.setMaxWidth(Double.MAX_VALUE);
+        components.progressBar.setMaxHeight(Double.MAX_VALUE);
+        components.progressBar.setVisible(true);
+        GridPane.setHgrow(components.progressBar, javafx.scene.layout.Priority.ALWAYS);
+        GridPane.setVgrow(components.progressBar, javafx.scene.layout.Priority.ALWAYS);
 
         // Configure the password strength bae.
-        Components.passwordStrengthBar.setMaxWidth(Double.MAX_VALUE);
-        Components.passwordStrengthBar.setMaxHeight(Double.MAX_VALUE);
-        Components.passwordStrengthBar.setVisible(true);
-        GridPane.setHgrow(Components.passwordStrengthBar, javafx.scene.layout.Priority.ALWAYS);
-        GridPane.setVgrow(Components.passwordStrengthBar, javafx.scene.layout.Priority.ALWAYS);
-
-        Components.password1NonVisible.setPrefColumnCount(Components.passwordMaxLength);
-        Components.password2NonVisible.setPrefColumnCount(Components.passwordMaxLength);
-        Components.password1Visible.setPrefColumnCount(Components.passwordMaxLength);
-        Components.password2Visible.setPrefColumnCount(Components.passwordMaxLength);
-
-        Components.password1NonVisible.setMaxHeight(Double.MAX_VALUE);
-        Components.password2NonVisible.setMaxHeight(Double.MAX_VALUE);
-        Components.password1Visible.setMaxHeight(Double.MAX_VALUE);
-        Components.password2Visible.setMaxHeight(Double.MAX_VALUE);
+        components.passwordStrengthBar.setMaxWidth(Double.MAX_VALUE);
+        components.passwordStrengthBar.setMaxHeight(Double.MAX_VALUE);
+        components.passwordStrengthBar.setVisible(true);
+        GridPane.setHgrow(components.passwordStrengthBar, javafx.scene.layout.Priority.ALWAYS);
+        GridPane.setVgrow(components.passwordStrengthBar, javafx.scene.layout.Priority.ALWAYS);
+
+        // Configure the list of the files to process.
+        components.jobRows.setSpacing(4);
+        components.jobList.setFitToWidth(true);
+        components.jobList.setPrefViewportHeight(120);
+
+        components.password1NonVisible.setPrefColumnCount(Components.passwordMaxLength);
+        components.password2NonVisible.setPrefColumnCount(Components.passwordMaxLength);
+        components.password1Visible.setPrefColumnCount(Components.passwordMaxLength);
+        components.password2Visible.setPrefColumnCount(Components.passwordMaxLength);
+
+        components.password1NonVisible.setMaxHeight(Double.MAX_VALUE);
+        components.password2NonVisible.setMaxHeight(Double.MAX_VALUE);
+        components.password1Visible.setMaxHeight(Double.MAX_VALUE);
+        components.password2Visible.setMaxHeight(Double.MAX_VALUE);
 
         // First line of this grid.
-        add(Components.enterPassword1Label, 0, 0);
-        add(Components.p1box, 1, 0);
-        add(Components.visibilityButton, 2, 0);
+        add(components.enterPassword1Label, 0, 0);
+        add(components.p1box, 1, 0);
+        add(components.visibilityButton, 2, 0);
 
         // Second line of this grid.
-        add(Components.enterPassword2Label, 0, 1);
-        add(Components.p2box, 1, 1);
-        add(Components.actionButton, 2, 1);
+        add(components.enterPassword2Label, 0, 1);
+        add(components.p2box, 1, 1);
+        add(components.actionButton, 2, 1);
 
         // Third line of this grid.
-        add(Components.passwordStrengthLabel, 0, 2);
-        add(Components.passwordStrengthBar, 1, 2);
+        add(components.passwordStrengthLabel, 0, 2);
+        add(components.passwordStrengthBar, 1, 2);
 
         // Fourth line of this grid.
-        add(Components.progressionLabel, 0, 3);
-        add(Components.progressBar, 1, 3);
+        add(components.progressionLabel, 0, 3);
+        add(components.progressBar, 1, 3);
+        add(components.throughputLabel, 2, 3);
+
+        // Fifth line of this grid: the files to process.
+        add(components.jobList, 0, 4, 3, 1);
     }
 
     private void setEventHandlers() {
 
-        Components.password1Visible.managedProperty().bind(Components.password1Visible.visibleProperty());
-        Components.password1NonVisible.managedProperty().bind(Components.password1NonVisible.visibleProperty());
-        Components.password1Visible.visibleProperty().bind(Components.isVisible.asObject().isEqualTo(true));
-        Components.password1NonVisible.visibleProperty().bind(Components.isVisible.asObject().isEqualTo(false));
+        components.password1Visible.managedProperty().bind(components.password1Visible.visibleProperty());
+        components.password1NonVisible.managedProperty().bind(components.password1NonVisible.visibleProperty());
+        components.password1Visible.visibleProperty().bind(components.isVisible.asObject().isEqualTo(true));
+        components.password1NonVisible.visibleProperty().bind(components.isVisible.asObject().isEqualTo(false));
 
-        Components.password2Visible.managedProperty().bind(Components.password2Visible.visibleProperty());
-        Components.password2NonVisible.managedProperty().bind(Components.password2NonVisible.visibleProperty());
-        Components.password2Visible.visibleProperty().bind(Components.isVisible.asObject().isEqualTo(true));
-        Components.password2NonVisible.visibleProperty().bind(Components.isVisible.asObject().isEqualTo(false));
+        components.password2Visible.managedProperty().bind(components.password2Visible.visibleProperty());
+        components.password2NonVisible.managedProperty().bind(components.password2NonVisible.visibleProperty());
+        components.password2Visible.visibleProperty().bind(components.isVisible.asObject().isEqualTo(true));
+        components.password2NonVisible.visibleProperty().bind(components.isVisible.asObject().isEqualTo(false));
 
-        Components.password1Visible.textProperty().bindBidirectional(Components.password1NonVisible.textProperty());
-        Components.password2Visible.textProperty().bindBidirectional(Components.password2NonVisible.textProperty());
+        components.password1Visible.textProperty().bindBidirectional(components.password1NonVisible.textProperty());
+        components.password2Visible.textProperty().bindBidirectional(components.password2NonVisible.textProperty());
 
         // Please note that the contents of the "clear" and "masked" password input fields are synchronized.
         // That is: - if the content of `password1Visible` changes, then the content of `password1NonVisible` also changes.
@@ -117,12 +153,32 @@ public class EncryptDecrypt extends GridPane {
         // Below, we set the listener that compares the contents of the (two) password fields whenever the content
         // of a password input field changes. Based on the result of the comparison, the listener changes the
         // appearance of the password input fields.
-        PasswordFieldChangeListener passwordFieldChangeListener = new PasswordFieldChangeListener();
-        Components.password1NonVisible.textProperty().addListener(passwordFieldChangeListener);
-        Components.password2NonVisible.textProperty().addListener(passwordFieldChangeListener);
+        PasswordFieldChangeListener passwordFieldChangeListener = new PasswordFieldChangeListener(components);
+        components.password1NonVisible.textProperty().addListener(passwordFieldChangeListener);
+        components.password2NonVisible.textProperty().addListener(passwordFieldChangeListener);
 
         // Create the button that toggles the password visibility.
-        Components.visibilityButton.setOnAction(new ButtonVisibilityClickHandler());
-        Components.actionButton.setOnAction(new ActionClickHandler());
+        components.visibilityButton.setOnAction(new ButtonVisibilityClickHandler(components));
+        components.actionButton.setOnAction(new ActionClickHandler(components));
+
+        // Files can be dropped on the form at any time.
+        setOnDragOver(this::handleDragOver);
+        setOnDragDropped(this::handleDragDropped);
+    }
+
+    private void handleDragOver(DragEvent event) {
+        if (null != onFilesDropped && event.getDragboard().hasFiles()) {
+            event.acceptTransferModes(TransferMode.COPY);
+        }
+        event.consume();
+    }
+
+    private void handleDragDropped(DragEvent event) {
+        final boolean accepted = null != onFilesDropped && event.getDragboard().hasFiles();
+        if (accepted) {
+            onFilesDropped.accept(event.getDragboard().getFiles().stream().map(File::getAbsolutePath).toList());
+        }
+        event.setDropCompleted(accepted);
+        event.consume();
     }
 }
@@ -1,31 +1,50 @@
 package org.shadow.skriva.form.encrypt_decrypt;
 
-import javafx.application.Platform;
 import javafx.concurrent.Task;
+import org.shadow.lib.cryptography.ProgressTracker;
 import org.shadow.lib.cryptography.TaskUpdater;
 import org.shadow.lib.exception.FatalRuntimeException;
-import org.shadow.lib.gui.ModernSuccess;
 import org.shadow.skriva.Action;
+import org.shadow.lib.cryptography.SkrivaCypher;
 import org.shadow.lib.cryptography.SkrivaCypherV1;
-
-import java.io.IOException;
+import org.shadow.skriva.Configuration;
 
 /**
- * This task is responsible for processing (encrypt or decrypt) the input file.
- * It is executed when the user clicks on the "Encrypt / Decrypt" button.
+ * This task is responsible for processing (encrypt or decrypt) an input file.
+ * It is executed when the user clicks on the "Encrypt / Decrypt" button (see JobQueue).
  */
 
 public class EncryptDecryptTask extends Task<Void> implements TaskUpdater {
+    private final Configuration configuration;
     private final String secretKey;
 
-    public EncryptDecryptTask(String secretKey) {
+    public EncryptDecryptTask(Configuration configuration, String secretKey) {
+        this.configuration = configuration;
         this.secretKey = secretKey;
     }
 
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
     public void update(long current, long total) {
         this.updateProgress(current, total);
     }
 
+    /**
+     * Updates the progress and the message of the task: the throughput and the estimated time left.
+     * Please note that the cyphers limit the rate of the reports (see ProgressTracker).
+     *
+     * @param report the progress of the operation.
+     */
+
+    @Override
+    public void report(ProgressTracker.Report report) {
+        this.updateProgress(report.fraction(), 1.0);
+        this.updateMessage(report.fraction() >= 1.0 ? JobRow.formatRate(report.bytesPerSecond())
+                : String.format("%s, %s", JobRow.formatRate(report.bytesPerSecond()), JobRow.formatEta(report.etaMillis())));
+    }
+
     /**
      * Performs the file encryption or decryption operation based on the configuration settings.
      * The method uses the SkrivaCypherV1 class to either encrypt or decrypt the specified input file and writes the result to the output file.
@@ -37,24 +56,16 @@ public class EncryptDecryptTask extends Task<Void> implements TaskUpdater {
 
     @Override
     protected Void call() throws FatalRuntimeException {
-        SkrivaCypherV1 cypher = new SkrivaCypherV1();
-
         // Proceed to the encryption or decryption.
-        if (Components.configuration.getAction() == Action.Encrypt) {
-            cypher.EncryptFile(Components.configuration.getInput(), Components.configuration.getOutput(), secretKey, this);
+        // Please note that the format of the file to decrypt is detected.
+        if (configuration.getAction() == Action.Encrypt) {
+            SkrivaCypher cypher = new SkrivaCypherV1();
+            cypher.EncryptFile(configuration.getInput(), configuration.getOutput(), secretKey, this);
         } else {
-            cypher.DecryptFile(Components.configuration.getInput(), Components.configuration.getOutput(), secretKey, this);
+            SkrivaCypher cypher = SkrivaCypher.forEncryptedFile(configuration.getInput());
+            cypher.DecryptFile(configuration.getInput(), configuration.getOutput(), secretKey, this);
         }
 
-        // If the execution pointer reaches this point, it means that the operation was successful.
-        // Let's show the box that signal the user that the operation is successful.
-        Platform.runLater(() -> {
-            ModernSuccess success = new ModernSuccess("Operation completed successfully");
-            success.getScene().getStylesheets().add(Components.configuration.getModernSuccessCssPath());
-            success.showAndWait();
-            System.exit(0);
-        });
-
         return null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package org.shadow.skriva.form.encrypt_decrypt;
+
+import javafx.application.Platform;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.gui.ModernSuccess;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.Configuration;
+import org.shadow.skriva.SingleInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JobQueue class holds the files to process by a form: the file given on the command line, the files handed
+ * over by the later launches of the application (see SingleInstance), and the files dropped on the form. Each file
+ * is shown by a row of the job list (see JobRow).
+ *
+ * The files of all the forms are processed by a shared pool of threads whose size is bounded, so that the jobs do
+ * not compete for the disk.
+ *
+ * Please note that all the methods of this class must be called by the JavaFX application thread.
+ */
+
+class JobQueue {
+    private static final int maxWorkers = 2;
+    private static final ExecutorService executor = createExecutor();
+
+    private final Components components;
+    private final List<JobRow> pending = new ArrayList<>();
+    private final List<JobRow> submitted = new ArrayList<>();
+    private final List<String> failures = new ArrayList<>();
+    private int finished = 0;
+    private long startNanos = 0;
+
+    JobQueue(Components components) {
+        this.components = components;
+    }
+
+    /**
+     * Adds a file to the queue. The file is processed the next time the user clicks on the action button.
+     *
+     * @param configuration the configuration of the file (action, input and output paths).
+     */
+
+    void add(Configuration configuration) {
+        final JobRow row = new JobRow(configuration);
+        pending.add(row);
+        components.jobRows.getChildren().add(row);
+        updateLabels();
+        if (!submitted.isEmpty()) {
+            // Files are being processed: the new files can be submitted using the passwords already entered.
+            final String secretKey1 = components.password1Visible.getText();
+            final String secretKey2 = components.password2Visible.getText();
+            components.actionButton.setDisable(secretKey1.isEmpty() || !secretKey1.equals(secretKey2));
+        }
+    }
+
+    /**
+     * Returns the action of the next file to process.
+     *
+     * @return the action, or null if no file is pending.
+     */
+
+    @Nullable Action nextAction() {
+        return pending.isEmpty() ? null : pending.getFirst().getConfiguration().getAction();
+    }
+
+    /**
+     * Submits all the pending files, using the given secret key.
+     *
+     * @param secretKey the secret key.
+     */
+
+    void submitPending(String secretKey) {
+        if (startNanos == 0) startNanos = System.nanoTime();
+        for (JobRow row : pending) {
+            final EncryptDecryptTask task = new EncryptDecryptTask(row.getConfiguration(), secretKey);
+            task.progressProperty().addListener((observable, oldValue, newValue) -> {
+                row.progress(newValue.doubleValue());
+                updateProgress();
+            });
+            task.messageProperty().addListener((observable, oldValue, newValue) -> row.status(newValue));
+            task.setOnRunning(event -> row.started());
+            task.setOnSucceeded(event -> {
+                row.succeeded();
+                finished(row, null);
+            });
+            task.setOnFailed(event -> {
+                row.failed(task.getException().getMessage());
+                finished(row, task.getException());
+            });
+            submitted.add(row);
+            executor.execute(task);
+        }
+        pending.clear();
+        updateLabels();
+        updateProgress();
+    }
+
+    /**
+     * Records the outcome of a task. Once all the files have been processed, the outcome of the whole queue is
+     * reported: the application terminates, unless new files have been added meanwhile.
+     */
+
+    private void finished(JobRow row, @Nullable Throwable exception) {
+        finished++;
+        if (null != exception) {
+            failures.add(String.format("%s: %s", row.getConfiguration().getInput(), exception.getMessage()));
+        }
+        updateLabels();
+        updateProgress();
+        if (finished < submitted.size() || !pending.isEmpty()) return;
+
+        // The files handed over by the later launches while the outcome is reported would be lost when the
+        // application terminates. Thus, the single instance stops listening first (in the background, since it waits
+        // for the connections being served), and the queue is checked again once the files it has received have
+        // been added.
+        Thread.ofVirtual().name("skriva-single-instance-close").start(() -> {
+            @Nullable final SingleInstance instance = SingleInstance.current();
+            if (null != instance) instance.close();
+            Platform.runLater(() -> report(row));
+        });
+    }
+
+    /**
+     * Reports the outcome of the whole queue, unless new files have been added meanwhile.
+     */
+
+    private void report(JobRow row) {
+        if (finished < submitted.size() || !pending.isEmpty()) return;
+
+        if (!failures.isEmpty()) {
+            components.progressBar.setDisable(true);
+            components.progressBar.setProgress(0); // this prevents the "wave" from continuously bouncing inside the progress bar
+            final String message = failures.size() == 1 ? "the file could not be processed"
+                    : String.format("%d of %d files could not be processed", failures.size(), submitted.size());
+            // Will be handled by the application's level exception handling mechanism.
+            throw new FatalRuntimeException(message, String.join("\n", failures));
+        }
+
+        // If the execution pointer reaches this point, it means that all the operations were successful.
+        // Let's show the box that signal the user that the operation is successful.
+        final String message = submitted.size() == 1 ? "Operation completed successfully"
+                : String.format("%d files processed successfully", submitted.size());
+        ModernSuccess success = new ModernSuccess(message);
+        success.getScene().getStylesheets().add(row.getConfiguration().getModernSuccessCssPath());
+        success.showAndWait();
+        // The files dropped on the form while the box was shown are still to be processed.
+        if (pending.isEmpty()) System.exit(0);
+    }
+
+    /**
+     * The progress bar shows the number of bytes processed over the total size of the submitted files, and the
+     * throughput label shows the total throughput since the first submission and the estimated time left.
+     */
+
+    private void updateProgress() {
+        if (submitted.isEmpty()) return;
+        long processed = 0;
+        long total = 0;
+        for (JobRow row : submitted) {
+            processed += row.getProcessedBytes();
+            total += row.getSize();
+        }
+        final double fraction = total == 0 ? (double) finished / submitted.size() : (double) processed / total;
+        final double seconds = (System.nanoTime() - startNanos) / 1e9;
+        components.progressBar.setProgress(fraction);
+        if (finished == submitted.size() || fraction <= 0) {
+            components.throughputLabel.setText(JobRow.formatRate(seconds <= 0 ? 0 : processed / seconds));
+        } else {
+            final long etaMillis = Math.round(seconds * (1 - fraction) / fraction * 1000);
+            components.throughputLabel.setText(String.format("%s, %s", JobRow.formatRate(processed / seconds), JobRow.formatEta(etaMillis)));
+        }
+    }
+
+    private void updateLabels() {
+        final int total = submitted.size() + pending.size();
+        components.progressionLabel.setText(total <= 1 ? "Progression:" : String.format("Progression (%d/%d):", finished, total));
+        @Nullable final Action action = nextAction();
+        if (null != action) {
+            components.actionButton.setText(action == Action.Encrypt ? Components.encryptLabel : Components.decryptLabel);
+        }
+    }
+
+    private static ExecutorService createExecutor() {
+        final int workers = Math.max(1, Math.min(maxWorkers, Runtime.getRuntime().availableProcessors()));
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "skriva-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
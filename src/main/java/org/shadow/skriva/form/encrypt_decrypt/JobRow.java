@@ -0,0 +1,123 @@
+package org.shadow.skriva.form.encrypt_decrypt;
+
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import org.shadow.skriva.Action;
+import org.shadow.skriva.Configuration;
+
+import java.io.File;
+
+/**
+ * The JobRow class shows the state of a file in the job list: its name, its progress and its throughput.
+ *
+ * Please note that all the methods of this class must be called by the JavaFX application thread.
+ */
+
+class JobRow extends HBox {
+    private final Configuration configuration;
+    private final long size;
+    private final Label statusLabel = new Label("waiting");
+    private final ProgressBar progressBar = new ProgressBar(0);
+    private long startNanos = 0;
+    private long endNanos = 0;
+
+    JobRow(Configuration configuration) {
+        super(10);
+        this.configuration = configuration;
+        this.size = new File(configuration.getInput()).length();
+
+        final String symbol = configuration.getAction() == Action.Encrypt ? Components.encryptLabel : Components.decryptLabel;
+        final Label nameLabel = new Label(String.format("%s %s", symbol, new File(configuration.getInput()).getName()));
+        nameLabel.getStyleClass().add("job-name");
+        nameLabel.setMaxWidth(Double.MAX_VALUE);
+        HBox.setHgrow(nameLabel, Priority.ALWAYS);
+        statusLabel.getStyleClass().add("job-status");
+        progressBar.setPrefWidth(150);
+        setAlignment(Pos.CENTER_LEFT);
+        getChildren().addAll(nameLabel, progressBar, statusLabel);
+    }
+
+    Configuration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns the size of the input file.
+     *
+     * @return the number of bytes.
+     */
+
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the input file processed so far, derived from the progress of the task.
+     *
+     * @return the number of bytes.
+     */
+
+    long getProcessedBytes() {
+        return (long) (Math.max(0, progressBar.getProgress()) * size);
+    }
+
+    void started() {
+        startNanos = System.nanoTime();
+        statusLabel.setText(formatRate(0));
+    }
+
+    void progress(double progress) {
+        progressBar.setProgress(progress);
+    }
+
+    /**
+     * Shows the throughput and the estimated time left reported by the task.
+     *
+     * @param message the message of the task.
+     */
+
+    void status(String message) {
+        if (endNanos == 0 && !message.isEmpty()) statusLabel.setText(message);
+    }
+
+    void succeeded() {
+        endNanos = System.nanoTime();
+        progressBar.setProgress(1);
+        statusLabel.setText("done, " + formatRate(endNanos > startNanos ? size / ((endNanos - startNanos) / 1e9) : 0));
+    }
+
+    void failed(String message) {
+        endNanos = System.nanoTime();
+        progressBar.setProgress(0);
+        progressBar.setDisable(true);
+        statusLabel.setText("failed");
+        statusLabel.setTooltip(new javafx.scene.control.Tooltip(message));
+    }
+
+    /**
+     * Formats a throughput.
+     *
+     * @param bytesPerSecond the throughput, in bytes per second.
+     * @return the throughput, in megabytes per second.
+     */
+
+    static String formatRate(double bytesPerSecond) {
+        return String.format("%.1f MB/s", bytesPerSecond / 1e6);
+    }
+
+    /**
+     * Formats an estimated time left.
+     *
+     * @param etaMillis the time left in milliseconds, or a negative value if it is not known.
+     * @return the time left, in seconds or minutes.
+     */
+
+    static String formatEta(long etaMillis) {
+        if (etaMillis < 0) return "estimating";
+        final long seconds = (etaMillis + 999) / 1000;
+        return seconds < 60 ? String.format("%d s left", seconds) : String.format("%d min %02d s left", seconds / 60, seconds % 60);
+    }
+}
@@ -12,16 +12,20 @@ import org.shadow.lib.cryptography.SecretKeyTools;
  */
 
 public class PasswordFieldChangeListener implements ChangeListener<String> {
+    private final Components components;
     private final TextField[] password1Fields;
     private final TextField[] password2Fields;
     private final TextField[] passwordFields;
 
     /**
      * Constructs an InputPasswordFieldChangeListener to monitor two sets of password TextField arrays.
+     *
+     * @param components the components of the form.
      */
-    public PasswordFieldChangeListener() {
-        password1Fields = new TextField[]{Components.password1Visible, Components.password1NonVisible};
-        password2Fields = new TextField[]{Components.password2Visible, Components.password2NonVisible};
+    public PasswordFieldChangeListener(Components components) {
+        this.components = components;
+        password1Fields = new TextField[]{components.password1Visible, components.password1NonVisible};
+        password2Fields = new TextField[]{components.password2Visible, components.password2NonVisible};
         passwordFields = new TextField[password1Fields.length + password2Fields.length];
         System.arraycopy(password1Fields, 0, passwordFields, 0, password1Fields.length);
         System.arraycopy(password2Fields, 0, passwordFields, password1Fields.length, password2Fields.length);
@@ -47,7 +51,7 @@ public class PasswordFieldChangeListener implements ChangeListener<String> {
     private void updateStrength(String secretKey1, String secretKey2) {
         // Calculate the strength of the key. This is the strength of the strongest key.
         if (secretKey1.isEmpty() && secretKey2.isEmpty()) {
-            Components.passwordStrengthBar.setProgress(0);
+            components.passwordStrengthBar.setProgress(0);
             return;
         }
 
@@ -56,17 +60,17 @@ public class PasswordFieldChangeListener implements ChangeListener<String> {
         final double entropy = Math.max(entropy1, entropy2);
         final SecretKeyTools.Strength strength = SecretKeyTools.calculateStrength(entropy);
 
-        Components.passwordStrengthBar.setProgress(entropy / 100);
+        components.passwordStrengthBar.setProgress(entropy / 100);
 
-        Components.passwordStrengthBar.getStyleClass().clear();
+        components.passwordStrengthBar.getStyleClass().clear();
         if (strength == SecretKeyTools.Strength.LOW) {
-            Components.passwordStrengthBar.getStyleClass().addAll("strength-low", "progress-bar");
+            components.passwordStrengthBar.getStyleClass().addAll("strength-low", "progress-bar");
         } else if (strength == SecretKeyTools.Strength.MEDIUM) {
-            Components.passwordStrengthBar.getStyleClass().addAll("strength-medium", "progress-bar");
+            components.passwordStrengthBar.getStyleClass().addAll("strength-medium", "progress-bar");
         } else if (strength == SecretKeyTools.Strength.HIGH) {
-            Components.passwordStrengthBar.getStyleClass().addAll("strength-high", "progress-bar");
+            components.passwordStrengthBar.getStyleClass().addAll("strength-high", "progress-bar");
         } else {
-            Components.passwordStrengthBar.getStyleClass().addAll("strength-very-high", "progress-bar");
+            components.passwordStrengthBar.getStyleClass().addAll("strength-very-high", "progress-bar");
         }
     }
 
@@ -80,13 +84,13 @@ public class PasswordFieldChangeListener implements ChangeListener<String> {
     private void updateBackground(String secretKey1, String secretKey2) {
         if (! secretKey1.equals(secretKey2) && !secretKey1.isEmpty() && !secretKey2.isEmpty()) {
             changeInput("-fx-background-color: lightpink;"); // passwords mismatch
-            Components.actionButton.setDisable(true);
+            components.actionButton.setDisable(true);
         } else if (secretKey1.isEmpty() || secretKey2.isEmpty()) {
             changeInput("-fx-background-color: white;"); // reset inputs
-            Components.actionButton.setDisable(true);
+            components.actionButton.setDisable(true);
         } else {
             changeInput("-fx-background-color: lightgreen;"); // passwords match
-            Components.actionButton.setDisable(false);
+            components.actionButton.setDisable(false);
         }
     }
 
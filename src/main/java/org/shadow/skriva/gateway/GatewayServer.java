@@ -0,0 +1,305 @@
+package org.shadow.skriva.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.Nullable;
+import org.shadow.lib.cryptography.IntegrityTrailer;
+import org.shadow.lib.cryptography.StreamingCypherV1;
+import org.shadow.lib.exception.FatalRuntimeException;
+import org.shadow.lib.file.FileManip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The GatewayServer class encrypts and decrypts data over HTTP, for co-located services that are not written in Java.
+ * The data uses the format v1, as the files produced by the graphical interface (see StreamingCypherV1).
+ *
+ *     POST /encrypt[?trailer=crc32c|sha256]   request body: plaintext   response body: encrypted data
+ *     POST /decrypt                           request body: encrypted   response body: plaintext
+ *     GET  /health                            response body: counters (text)
+ *
+ * The request body flows through the cypher straight into the response body (chunked transfer encoding): neither
+ * temporary files nor buffers proportional to the size of the data are used. Each exchange is served by a virtual
+ * thread.
+ *
+ * - The number of exchanges processed at the same time is limited. The memory used by an exchange is bounded by the
+ *   length of its buffers, and the total memory of the buffers is limited too. An exchange that exceeds a limit is
+ *   rejected immediately with the status 429 (Too Many Requests).
+ * - The plaintext is verified only once the whole stream has been decrypted. If the verification fails, the
+ *   connection is closed without terminating the chunked response: the client sees a truncated response, and must
+ *   discard the data it has received.
+ *
+ * The password is read once, when the server starts: it never travels over HTTP. Since the server holds the password,
+ * it would decrypt the data of anyone who can reach it. Therefore:
+ *
+ * - Every exchange must carry the token of the server ("Authorization: Bearer <token>"), otherwise it is rejected
+ *   with the status 401 (Unauthorized). A new random token is generated each time the server starts, and written to
+ *   a file that only the owner of the server can read (see writeToken).
+ * - The exchanges whose "Host" header does not designate a loopback address (or the address given to listen to) are
+ *   rejected with the status 421 (Misdirected Request), so that a web page cannot reach the server through DNS
+ *   rebinding.
+ *
+ * Please note that listening to an address other than a loopback address exposes the server (hence the password)
+ * to the network: the token is then the only protection, and it travels in clear.
+ */
+
+public class GatewayServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final StreamingCypherV1 cypher;
+    private final String secretKey;
+    private final byte[] authorization;
+    private final Set<String> allowedHosts;
+    private final Semaphore slots;
+    private final Semaphore memory;
+    private final int exchangeMemoryKiB;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Creates a server.
+     *
+     * @param address the address to listen to (typically, a loopback address).
+     * @param secretKey the secret key used for all the exchanges.
+     * @param token the token the clients must present (see writeToken).
+     * @param maxConcurrent the maximum number of exchanges processed at the same time.
+     * @param maxMemory the maximum number of bytes used by the buffers of all the exchanges.
+     * @param bufferLength the length of the buffers used by an exchange.
+     * @throws FatalRuntimeException if the server cannot listen to the address.
+     */
+
+    public GatewayServer(InetSocketAddress address, String secretKey, String token, int maxConcurrent, long maxMemory, int bufferLength) throws FatalRuntimeException {
+        this.cypher = new StreamingCypherV1(bufferLength);
+        this.secretKey = secretKey;
+        this.authorization = ("Bearer " + token).getBytes(StandardCharsets.US_ASCII);
+        final String boundHost = address.getHostString().toLowerCase(Locale.ROOT);
+        this.allowedHosts = new HashSet<>(List.of("localhost", "127.0.0.1", "[::1]", boundHost.contains(":") ? "[" + boundHost + "]" : boundHost));
+        this.slots = new Semaphore(maxConcurrent);
+        // An exchange uses two buffers (input and output) of about the given length.
+        this.exchangeMemoryKiB = Math.max(1, (2 * bufferLength + 1023) / 1024);
+        this.memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, maxMemory / 1024));
+        try {
+            this.server = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot listen to %s", address), e.getMessage());
+        }
+        server.setExecutor(executor);
+        server.createContext("/encrypt", exchange -> {
+            if (authorize(exchange)) serve(exchange, true);
+        });
+        server.createContext("/decrypt", exchange -> {
+            if (authorize(exchange)) serve(exchange, false);
+        });
+        server.createContext("/health", exchange -> {
+            if (authorize(exchange)) health(exchange);
+        });
+    }
+
+    /**
+     * Generates a new random token, and writes it to a file that only the current user can read and write. The file
+     * is replaced atomically: the previous token is no longer valid.
+     *
+     * @param path the path to the file.
+     * @return the token.
+     * @throws FatalRuntimeException if the file cannot be written.
+     */
+
+    public static String writeToken(Path path) throws FatalRuntimeException {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        try {
+            final Path parent = path.toAbsolutePath().getParent();
+            FileManip.createPrivateDirectories(parent);
+            Path temporary;
+            try {
+                temporary = Files.createTempFile(parent, "token", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                // The file system is not POSIX: the file inherits the permissions of its directory.
+                temporary = Files.createTempFile(parent, "token", ".tmp");
+            }
+            Files.writeString(temporary, token + "\n", StandardCharsets.US_ASCII);
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new FatalRuntimeException(String.format("cannot write the token file \"%s\"", path), e.getMessage());
+        }
+        return token;
+    }
+
+    /**
+     * Starts serving the exchanges.
+     */
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the address the server listens to.
+     *
+     * @return the address.
+     */
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops the server. The exchanges in progress are given one second to finish.
+     */
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    private void serve(HttpExchange exchange, boolean encrypt) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            reply(exchange, 405, "only POST is allowed");
+            return;
+        }
+        @Nullable final IntegrityTrailer.Algorithm trailer;
+        try {
+            @Nullable final String name = queryParameter(exchange.getRequestURI(), "trailer");
+            trailer = null == name ? null : IntegrityTrailer.Algorithm.nameToEnum(name);
+        } catch (FatalRuntimeException e) {
+            reply(exchange, 400, e.getMessage());
+            return;
+        }
+        if (!slots.tryAcquire()) {
+            reject(exchange, "too many concurrent requests");
+            return;
+        }
+        try {
+            if (!memory.tryAcquire(exchangeMemoryKiB)) {
+                reject(exchange, "memory limit reached");
+                return;
+            }
+            active.incrementAndGet();
+            try {
+                process(exchange, encrypt, trailer);
+            } finally {
+                active.decrementAndGet();
+                memory.release(exchangeMemoryKiB);
+            }
+        } finally {
+            slots.release();
+        }
+    }
+
+    /**
+     * Streams the request body through the cypher into the response body.
+     *
+     * Please note that the exchange is not closed if the processing fails: the exception thrown to the HTTP server
+     * makes it close the connection, without writing the last chunk of the response.
+     */
+
+    private void process(HttpExchange exchange, boolean encrypt, @Nullable IntegrityTrailer.Algorithm trailer) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        // A length of 0 selects the chunked transfer encoding.
+        exchange.sendResponseHeaders(200, 0);
+        final InputStream input = exchange.getRequestBody();
+        final OutputStream output = exchange.getResponseBody();
+        try {
+            final long length = encrypt ? cypher.encrypt(input, output, secretKey, trailer) : cypher.decrypt(input, output, secretKey);
+            exchange.close();
+            processed.incrementAndGet();
+            bytes.addAndGet(length);
+        } catch (FatalRuntimeException | IOException e) {
+            failed.incrementAndGet();
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Verifies the "Host" header and the token of an exchange. If they are not valid, the exchange is answered.
+     *
+     * @return true if the exchange can be served.
+     */
+
+    private boolean authorize(HttpExchange exchange) throws IOException {
+        @Nullable final String host = exchange.getRequestHeaders().getFirst("Host");
+        if (null == host || !allowedHosts.contains(hostName(host))) {
+            rejected.incrementAndGet();
+            reply(exchange, 421, "the host is not allowed");
+            return false;
+        }
+        @Nullable final String value = exchange.getRequestHeaders().getFirst("Authorization");
+        if (null == value || !MessageDigest.isEqual(authorization, value.trim().getBytes(StandardCharsets.US_ASCII))) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            reply(exchange, 401, "missing or invalid token");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the host of a "Host" header, without the port.
+     */
+
+    private static String hostName(String header) {
+        final String host = header.trim().toLowerCase(Locale.ROOT);
+        if (host.startsWith("[")) {
+            final int end = host.indexOf(']');
+            return end < 0 ? host : host.substring(0, end + 1);
+        }
+        final int colon = host.lastIndexOf(':');
+        return colon < 0 ? host : host.substring(0, colon);
+    }
+
+    private void reject(HttpExchange exchange, String message) throws IOException {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        reply(exchange, 429, message);
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        reply(exchange, 200, String.format("processed %d%nfailed %d%nrejected %d%nactive %d%nbytes %d%n",
+                processed.get(), failed.get(), rejected.get(), active.get(), bytes.get()));
+    }
+
+    private static void reply(HttpExchange exchange, int status, String message) throws IOException {
+        final byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (exchange) {
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private static @Nullable String queryParameter(URI uri, String name) {
+        @Nullable final String query = uri.getRawQuery();
+        if (null == query) return null;
+        for (String pair : query.split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name)) return pair.substring(equals + 1);
+        }
+        return null;
+    }
+}
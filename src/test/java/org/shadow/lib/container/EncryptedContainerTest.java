@@ -0,0 +1,134 @@
+package org.shadow.lib.container;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.cryptography.CipherSuite;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptedContainerTest {
+
+    private static File createFile(int length) throws Exception {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        final File file = File.createTempFile("test", "txt");
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static byte[] extract(EncryptedContainer container, String name) throws Exception {
+        final EncryptedContainer.Member member = container.getMember(name);
+        assertNotNull(member);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        container.extract(member, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void testAddExtractRemoveCompact() {
+        try {
+            final File archive = File.createTempFile("test", "rmb");
+            final File small = createFile(10);
+            final File large = createFile(2500);
+            final File empty = createFile(0);
+            final SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(1000);
+
+            try (EncryptedContainer container = EncryptedContainer.create(archive.getAbsolutePath(), "secret", configuration)) {
+                container.add("a/small", small.toPath());
+                container.add("a/large", large.toPath());
+                container.commit();
+            }
+
+            // Append a member, and replace an existing one.
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", true, null)) {
+                assertEquals(2, container.getMembers().size());
+                container.add("b/empty", empty.toPath());
+                container.add("a/small", large.toPath());
+                container.commit();
+            }
+
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", true, null)) {
+                assertEquals(3, container.getMembers().size());
+                assertArrayEquals(Files.readAllBytes(large.toPath()), extract(container, "a/large"));
+                assertArrayEquals(Files.readAllBytes(large.toPath()), extract(container, "a/small"));
+                assertArrayEquals(new byte[0], extract(container, "b/empty"));
+                assertEquals(10, container.getUnusedLength());
+
+                assertTrue(container.remove("a/large"));
+                container.commit();
+                assertEquals(2510, container.getUnusedLength());
+            }
+
+            final long length = archive.length();
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", false, null)) {
+                // The indexes written by the previous commits.
+                assertTrue(container.getUnusedFileLength() > 0);
+            }
+            EncryptedContainer.compact(archive.getAbsolutePath(), "secret", configuration);
+            assertTrue(archive.length() < length);
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", false, null)) {
+                assertEquals(2, container.getMembers().size());
+                assertEquals(0, container.getUnusedLength());
+                assertEquals(0, container.getUnusedFileLength());
+                assertNull(container.getMember("a/large"));
+                assertArrayEquals(Files.readAllBytes(large.toPath()), extract(container, "a/small"));
+            }
+
+            // Wrong password.
+            assertThrows(FatalRuntimeException.class,
+                    () -> EncryptedContainer.open(archive.getAbsolutePath(), "wrong", false, null));
+
+            if (!archive.delete() || !small.delete() || !large.delete() || !empty.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testCompactKeepsTheConfiguration() {
+        try {
+            final File archive = File.createTempFile("test", "rmb");
+            final File text = File.createTempFile("test", "txt");
+            Files.writeString(text.toPath(), "compressible ".repeat(500));
+            final SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSuite(CipherSuite.CHACHA20_POLY1305);
+            configuration.setSegmentSize(2000);
+            configuration.setCompression(true);
+
+            try (EncryptedContainer container = EncryptedContainer.create(archive.getAbsolutePath(), "secret", configuration)) {
+                container.add("first", text.toPath());
+                container.add("second", text.toPath());
+                container.commit();
+                assertTrue(container.remove("first"));
+                container.commit();
+            }
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", false, null)) {
+                EncryptedContainer.compact(archive.getAbsolutePath(), "secret", container.getConfiguration());
+            }
+
+            try (EncryptedContainer container = EncryptedContainer.open(archive.getAbsolutePath(), "secret", false, null)) {
+                final SegmentedConfiguration compacted = container.getConfiguration();
+                assertEquals(CipherSuite.CHACHA20_POLY1305, compacted.getSuite());
+                assertEquals(2000, compacted.getSegmentSize());
+                assertTrue(compacted.isCompression());
+                assertEquals(1, container.getMembers().size());
+                assertArrayEquals(Files.readAllBytes(text.toPath()), extract(container, "second"));
+            }
+
+            if (!archive.delete() || !text.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DigestCacheTest {
+
+    @Test
+    void testDigestIsReusedUntilTheFileChanges() {
+        try {
+            final File newFile = File.createTempFile("test", "txt");
+            final File index = File.createTempFile("test", "index");
+            final Path path = newFile.toPath();
+            Files.writeString(path, "Testing the digest cache");
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+            final DigestCache cache = new DigestCache(index.toPath());
+            assertNull(cache.lookup(path));
+            final BasicFileAttributes attributes = DigestCache.readAttributes(path);
+            assertNotNull(attributes);
+            final byte[] digest = new byte[MD5File.getDigestLength()];
+            digest[0] = 42;
+            cache.store(path, attributes, digest);
+            assertArrayEquals(digest, cache.lookup(path));
+            // A new instance reads the digest from the extended attribute, or from the sidecar index.
+            assertArrayEquals(digest, new DigestCache(index.toPath()).lookup(path));
+
+            // The digest is ignored once the file has been modified.
+            Files.writeString(path, "Testing the digest cache again");
+            assertNull(cache.lookup(path));
+
+            // A cypher that uses the cache still produces files that can be decrypted.
+            final File encrypted = File.createTempFile("test", "rmb");
+            final File decrypted = File.createTempFile("test", "txt");
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+            final SkrivaCypherV1 cypher = new SkrivaCypherV1(null, cache);
+            for (int i = 0; i < 2; i++) {
+                cypher.EncryptFile(newFile.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertEquals("Testing the digest cache again", Files.readString(decrypted.toPath()));
+                assertNotNull(cache.lookup(path));
+            }
+
+            if (!newFile.delete() || !index.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntegrityTrailerTest {
+
+    @Test
+    void testSealAndVerify() {
+        try {
+            for (IntegrityTrailer.Algorithm algorithm : IntegrityTrailer.Algorithm.values()) {
+                File newFile = File.createTempFile("test", "rmb");
+                Files.writeString(newFile.toPath(), "Testing integrity trailer");
+                final String path = newFile.getAbsolutePath();
+
+                assertEquals(IntegrityTrailer.Status.UNSEALED, IntegrityTrailer.verify(path));
+                assertTrue(IntegrityTrailer.seal(path, algorithm));
+                assertFalse(IntegrityTrailer.seal(path, algorithm));
+                assertEquals(algorithm, IntegrityTrailer.detect(path));
+                assertEquals(25, IntegrityTrailer.payloadLength(path));
+                assertEquals(IntegrityTrailer.Status.VALID, IntegrityTrailer.verify(path));
+
+                // Flip one bit of the payload.
+                try (RandomAccessFile raf = new RandomAccessFile(newFile, "rw")) {
+                    raf.seek(3);
+                    final int b = raf.read();
+                    raf.seek(3);
+                    raf.write(b ^ 0x01);
+                }
+                assertEquals(IntegrityTrailer.Status.CORRUPTED, IntegrityTrailer.verify(path));
+
+                if (!newFile.delete()) {
+                    fail("Failed to delete temporary file");
+                }
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testTruncatedFileIsUnsealed() {
+        try {
+            File newFile = File.createTempFile("test", "rmb");
+            Files.writeString(newFile.toPath(), "A".repeat(100));
+            final String path = newFile.getAbsolutePath();
+            IntegrityTrailer.seal(path, IntegrityTrailer.Algorithm.CRC32C);
+
+            try (RandomAccessFile raf = new RandomAccessFile(newFile, "rw")) {
+                raf.setLength(raf.length() - 1);
+            }
+            assertEquals(IntegrityTrailer.Status.UNSEALED, IntegrityTrailer.verify(path));
+            assertEquals(newFile.length(), IntegrityTrailer.payloadLength(path));
+
+            if (!newFile.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testSealedEncryptionRoundTrip() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final String text = "0123456789".repeat(1000);
+            Files.writeString(input.toPath(), text);
+
+            new SkrivaCypherV1(IntegrityTrailer.Algorithm.SHA256).EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            assertEquals(IntegrityTrailer.Status.VALID, IntegrityTrailer.verify(encrypted.getAbsolutePath()));
+
+            new SkrivaCypherV1().DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertEquals(text, Files.readString(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.shadow.lib.cryptography;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyCacheTest {
+
+    @Test
+    void testKeysExpireAndAreEvicted() {
+        final AtomicLong now = new AtomicLong();
+        final MemoryKeyCache cache = new MemoryKeyCache(1000, 2, now::get);
+        final byte[] key = {1, 2, 3};
+        cache.put("a", key);
+        cache.put("b", key);
+        assertArrayEquals(key, cache.get("a"));
+        // "b" is the least recently used key.
+        cache.put("c", key);
+        assertNull(cache.get("b"));
+        assertArrayEquals(key, cache.get("a"));
+        assertArrayEquals(key, cache.get("c"));
+
+        // The keys expire after their time-to-live, whether they are used or not.
+        now.set(999_000_000L);
+        assertNotNull(cache.get("a"));
+        now.set(1_000_000_000L);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.purge());
+        assertEquals(0, cache.size());
+
+        cache.put("d", key);
+        assertEquals(1, cache.clear());
+        assertNull(cache.get("d"));
+    }
+
+    @Test
+    void testDerivedKeysAreCached() {
+        final MemoryKeyCache memory = new MemoryKeyCache(60_000, 16);
+        final AtomicInteger hits = new AtomicInteger();
+        AES256.setKeyCache(new KeyCache() {
+            @Override
+            public @Nullable byte[] get(String identifier) {
+                @Nullable final byte[] key = memory.get(identifier);
+                if (null != key) hits.incrementAndGet();
+                return key;
+            }
+
+            @Override
+            public void put(String identifier, byte[] key) {
+                memory.put(identifier, key);
+            }
+
+            @Override
+            public byte[] getSecret() {
+                return memory.getSecret();
+            }
+        });
+        try {
+            final byte[] salt = new byte[16];
+            final byte[] key = AES256.generateKeyFromPassword("secret", salt, 1000, 2).getEncoded();
+            assertEquals(0, hits.get());
+            assertArrayEquals(key, AES256.generateKeyFromPassword("secret", salt, 1000, 2).getEncoded());
+            assertEquals(1, hits.get());
+            // Another password, salt or cost is another key.
+            assertFalse(Arrays.equals(key, AES256.generateKeyFromPassword("Secret", salt, 1000, 2).getEncoded()));
+            AES256.generateKeyFromPassword("secret", new byte[8], 1000, 2);
+            AES256.generateKeyFromPassword("secret", salt, 1001, 2);
+            assertEquals(1, hits.get());
+            assertEquals(4, memory.size());
+            // The keys salted with a random IV are never used again: they are not cached.
+            AES256.generateKeyFromPassword("secret", salt);
+            assertEquals(4, memory.size());
+        } finally {
+            AES256.setKeyCache(null);
+        }
+    }
+
+    @Test
+    void testIdentifiersAreKeyedBySecret() {
+        final byte[] salt = new byte[16];
+        final byte[] secret = new MemoryKeyCache(1000, 2).getSecret();
+        final String identifier = KeyCache.identifier(secret, "secret", salt, 1000, 2);
+        assertEquals(identifier, KeyCache.identifier(secret.clone(), "secret", salt, 1000, 2));
+        // Without the secret of the cache, the identifier of a password cannot be calculated.
+        assertNotEquals(identifier, KeyCache.identifier(new MemoryKeyCache(1000, 2).getSecret(), "secret", salt, 1000, 2));
+        assertNotEquals(identifier, KeyCache.identifier(secret, "Secret", salt, 1000, 2));
+    }
+}
@@ -0,0 +1,107 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressTrackerTest {
+
+    /**
+     * Collects the reports received by a task.
+     */
+
+    private static class Collector implements TaskUpdater {
+        final List<ProgressTracker.Report> reports = new ArrayList<>();
+
+        @Override
+        public void update(long current, long total) {
+            fail("the reports must not be converted when `report` is implemented");
+        }
+
+        @Override
+        public synchronized void report(ProgressTracker.Report report) {
+            reports.add(report);
+        }
+    }
+
+    @Test
+    void testPhasesAreCombinedIntoASteadyProgress() {
+        final Collector collector = new Collector();
+        final ProgressTracker tracker = new ProgressTracker(collector, 1000, 0L,
+                new ProgressTracker.Phase("digest", 1), new ProgressTracker.Phase("copy", 1), new ProgressTracker.Phase("encrypt", 2));
+
+        tracker.begin("digest", 1000);
+        for (int i = 0; i < 10; i++) tracker.advance(100);
+        assertEquals(0.25, tracker.getFraction(), 1e-9);
+        // The copy is skipped: it is considered as done.
+        tracker.begin("encrypt", 1000);
+        assertEquals(0.5, tracker.getFraction(), 1e-9);
+        for (int i = 0; i < 20; i++) tracker.advance(100); // more bytes than announced
+        assertEquals(1.0, tracker.getFraction(), 1e-9);
+        tracker.finish();
+
+        double previous = 0;
+        for (ProgressTracker.Report report : collector.reports) {
+            assertTrue(report.fraction() >= previous, "the progress must never go backwards");
+            assertEquals(1000, report.totalBytes());
+            previous = report.fraction();
+        }
+        final ProgressTracker.Report last = collector.reports.getLast();
+        assertEquals(1.0, last.fraction());
+        assertEquals(1000, last.bytes());
+        assertEquals(0, last.etaMillis());
+    }
+
+    @Test
+    void testReportsAreRateLimited() {
+        final Collector collector = new Collector();
+        final ProgressTracker tracker = new ProgressTracker(collector, 1L << 30, 60_000_000_000L, new ProgressTracker.Phase("encrypt", 1));
+        tracker.begin("encrypt", 1L << 30);
+        for (int i = 0; i < 262_144; i++) tracker.advance(4096);
+        tracker.finish();
+        // The first report, and the final one.
+        assertEquals(2, collector.reports.size());
+    }
+
+    @Test
+    void testCypherReportsAMonotonicProgress() {
+        try {
+            final File input = File.createTempFile("test", "txt");
+            final File encrypted = File.createTempFile("test", "rmb");
+            final File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = new byte[3 * 1024 * 1024 + 17];
+            new Random(1).nextBytes(data);
+            Files.write(input.toPath(), data);
+
+            final List<long[]> updates = new ArrayList<>();
+            final TaskUpdater updater = (current, total) -> updates.add(new long[]{current, total});
+            new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", updater);
+            long previous = 0;
+            for (long[] update : updates) {
+                assertTrue(update[0] >= previous, "the progress must never go backwards");
+                assertEquals(data.length, update[1]);
+                previous = update[0];
+            }
+            assertEquals(data.length, updates.getLast()[0]);
+            // A few reports per second, not one per chunk.
+            assertTrue(updates.size() < 100, String.format("%d updates", updates.size()));
+
+            updates.clear();
+            new SkrivaCypherV1().DecryptFile(encrypted.getPath(), decrypted.getPath(), "password", updater);
+            assertEquals(updates.getLast()[0], updates.getLast()[1]);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            assertTrue(input.delete());
+            assertTrue(encrypted.delete());
+            assertTrue(decrypted.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.concurrent.RateLimiter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentScrubberTest {
+
+    @Test
+    void testDrawSample() {
+        final int[] sample = SegmentScrubber.drawSample(100, 10, 42L);
+        assertEquals(10, sample.length);
+        assertEquals(10, Arrays.stream(sample).distinct().count());
+        assertTrue(Arrays.stream(sample).allMatch(i -> i >= 0 && i < 100));
+        // The same seed produces the same sample.
+        assertArrayEquals(sample, SegmentScrubber.drawSample(100, 10, 42L));
+    }
+
+    @Test
+    void testScrubReportsCorruptedSegmentAndResumes() {
+        try {
+            File encrypted = File.createTempFile("test", "rmb");
+            File state = File.createTempFile("test", "properties");
+            long offset;
+            try (SegmentedFile file = SegmentedFile.create(encrypted.getAbsolutePath(), "secret", SegmentedHeader.generate(CipherSuite.AES_256_GCM, 100))) {
+                final byte[] segment = new byte[100];
+                Arrays.fill(segment, (byte) 'x');
+                for (int i = 0; i < 10; i++) file.appendSegment(segment, 100);
+                file.commit();
+                offset = file.getEntry(4).offset();
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(encrypted, "rw")) {
+                raf.seek(offset + 30);
+                raf.write(0xFF);
+            }
+
+            SegmentScrubber scrubber = new SegmentScrubber(1.0, new RateLimiter(0), ScrubState.load(state.getAbsolutePath()));
+            SegmentScrubber.Report report = scrubber.scrub(encrypted.getAbsolutePath(), "secret");
+            assertEquals(10, report.sampleSize());
+            assertEquals(10, report.verified());
+            assertEquals(1, report.corruptions().size());
+            assertEquals(4, report.corruptions().get(0).segment());
+            assertEquals(offset, report.corruptions().get(0).offset());
+
+            // The position has been saved: the file is complete for the current round.
+            ScrubState.Position position = ScrubState.load(state.getAbsolutePath()).get(encrypted.getAbsolutePath());
+            assertNotNull(position);
+            assertTrue(position.isComplete());
+
+            if (!encrypted.delete() || !state.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedFileTest {
+    private static final int segmentSize = 1000;
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void testEncryptDecryptRoundTrip() {
+        try {
+            for (int length : new int[]{0, 1, segmentSize, 3 * segmentSize + 7}) {
+                File input = File.createTempFile("test", "txt");
+                File encrypted = File.createTempFile("test", "rmb");
+                File decrypted = File.createTempFile("test", "txt");
+                final byte[] data = randomBytes(length);
+                Files.write(input.toPath(), data);
+
+                SegmentedConfiguration configuration = new SegmentedConfiguration();
+                configuration.setSegmentSize(segmentSize);
+                SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+                cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                assertTrue(SegmentedHeader.isSegmentedFile(encrypted.getAbsolutePath()));
+                assertInstanceOf(SkrivaCypherV2.class, SkrivaCypher.forEncryptedFile(encrypted.getAbsolutePath()));
+
+                cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+                if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                    fail("Failed to delete temporary file");
+                }
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testSuiteIsReadFromTheHeader() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = randomBytes(3 * segmentSize + 7);
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            configuration.setSuite(CipherSuite.CHACHA20_POLY1305);
+            new SkrivaCypherV2(configuration).EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(CipherSuite.CHACHA20_POLY1305, file.getHeader().getSuite());
+            }
+
+            // The suite of the decryptor does not matter.
+            configuration.setSuite(CipherSuite.AES_256_GCM);
+            new SkrivaCypherV2(configuration).DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testKeyDerivationLanes() {
+        try {
+            final byte[] salt = randomBytes(16);
+            assertArrayEquals(AES256.generateKeyFromPassword("secret", salt, 1000).getEncoded(),
+                    AES256.generateKeyFromPassword("secret", salt, 1000, 1).getEncoded());
+            assertFalse(Arrays.equals(AES256.generateKeyFromPassword("secret", salt, 1000, 1).getEncoded(),
+                    AES256.generateKeyFromPassword("secret", salt, 1000, 4).getEncoded()));
+
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = randomBytes(2 * segmentSize + 3);
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            configuration.setKdfLanes(4);
+            new SkrivaCypherV2(configuration).EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(4, file.getHeader().getKdfLanes());
+            }
+            new SkrivaCypherV2().DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testCalibratedIterationCountIsRecorded() {
+        try {
+            final int shortCount = AES256.calibrateIterationCount(20, 1);
+            final int longCount = AES256.calibrateIterationCount(400, 1);
+            assertTrue(shortCount >= AES256.minCalibratedIterationCount);
+            assertTrue(longCount > shortCount, String.format("%d <= %d", longCount, shortCount));
+
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = randomBytes(segmentSize + 1);
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            configuration.setKdfTargetMillis(400);
+            new SkrivaCypherV2(configuration).EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(longCount, file.getHeader().getKdfIterations());
+            }
+            new SkrivaCypherV2().DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testCompressedParallelRoundTrip() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 2000; i++) text.append("line ").append(i % 17).append('\n');
+            final byte[] data = text.toString().getBytes();
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            configuration.setCompression(true);
+            configuration.setThreads(4);
+            SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+            cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            assertTrue(encrypted.length() < data.length);
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(data.length, file.getPlaintextLength());
+                assertEquals(SegmentedFile.kindDeflate, file.getEntry(0).kind());
+            }
+
+            cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testZeroSegmentsAreNotStored() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            // Data, 3 zero segments, data, then 2 zero segments and a partial one at the end.
+            final byte[] data = new byte[8 * segmentSize + 10];
+            System.arraycopy(randomBytes(segmentSize), 0, data, 0, segmentSize);
+            System.arraycopy(randomBytes(segmentSize), 0, data, 4 * segmentSize, segmentSize);
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+            cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(9, file.getSegmentCount());
+                assertEquals(SegmentedFile.kindData, file.getEntry(0).kind());
+                assertEquals(SegmentedFile.kindZero, file.getEntry(1).kind());
+                assertEquals(0, file.getEntry(1).storedLength());
+                assertEquals(SegmentedFile.kindZero, file.getEntry(8).kind());
+                assertTrue(file.verifySegment(8));
+            }
+            assertTrue(encrypted.length() < 3 * segmentSize);
+
+            cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testUpdateRewritesOnlyChangedSegments() {
+        try {
+            for (boolean segmentDigests : new boolean[]{true, false}) {
+                File input = File.createTempFile("test", "txt");
+                File encrypted = File.createTempFile("test", "rmb");
+                File decrypted = File.createTempFile("test", "txt");
+                byte[] data = randomBytes(5 * segmentSize + 100);
+                Files.write(input.toPath(), data);
+
+                SegmentedConfiguration configuration = new SegmentedConfiguration();
+                configuration.setSegmentSize(segmentSize);
+                configuration.setSegmentDigests(segmentDigests);
+                SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+                cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+
+                // Unchanged file: nothing is written.
+                final long length = encrypted.length();
+                SkrivaCypherV2.UpdateResult result = cypher.UpdateFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                assertEquals(0, result.changedSegments());
+                assertEquals(length, encrypted.length());
+
+                // Modify one byte in the third segment, and append data (the short last segment is kept as is).
+                data[2 * segmentSize + 5] ^= 1;
+                data = Arrays.copyOf(data, 6 * segmentSize + 10);
+                Files.write(input.toPath(), data);
+                result = cypher.UpdateFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                assertFalse(result.rewritten());
+                assertEquals(7, result.segmentCount());
+                assertEquals(2, result.changedSegments());
+                cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+                // Truncate the file.
+                data = Arrays.copyOf(data, segmentSize + 1);
+                Files.write(input.toPath(), data);
+                result = cypher.UpdateFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                assertEquals(2, result.segmentCount());
+                cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+                // Most of the file is now unused: the next update re-encrypts it entirely.
+                data[0] ^= 1;
+                Files.write(input.toPath(), data);
+                result = cypher.UpdateFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                assertTrue(result.rewritten());
+                assertEquals(2, result.segmentCount());
+                try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                    assertEquals(0, file.getUnusedLength());
+                    assertEquals(segmentDigests, file.hasSegmentDigests());
+                }
+                cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+                if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                    fail("Failed to delete temporary file");
+                }
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testAppendToGrowingFile() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            byte[] data = randomBytes(2 * segmentSize + 10);
+            Files.write(input.toPath(), data);
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+            cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            final byte[] previous = Files.readAllBytes(encrypted.toPath());
+
+            // The file grows: only the new bytes are appended (the last segment is completed), the existing bytes are left untouched.
+            data = Arrays.copyOf(randomBytes(4 * segmentSize), 3 * segmentSize + 500);
+            System.arraycopy(randomBytes(2 * segmentSize + 10), 0, data, 0, 2 * segmentSize + 10);
+            Files.write(input.toPath(), data);
+            assertEquals(segmentSize + 490, cypher.AppendFile(input.getAbsolutePath(), SkrivaCypherV2.tailOffset,
+                    encrypted.getAbsolutePath(), "secret", null));
+            final byte[] current = Files.readAllBytes(encrypted.toPath());
+            assertArrayEquals(Arrays.copyOfRange(previous, SegmentedFile.dataOffset, previous.length),
+                    Arrays.copyOfRange(current, SegmentedFile.dataOffset, previous.length));
+
+            cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            // The appended file can be updated incrementally.
+            data[5] ^= 1;
+            Files.write(input.toPath(), data);
+            assertEquals(1, cypher.UpdateFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null).changedSegments());
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testManySmallAppendsKeepTheFileBounded() {
+        try {
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = randomBytes(3 * segmentSize);
+            Files.write(input.toPath(), Arrays.copyOf(data, 1));
+
+            SegmentedConfiguration configuration = new SegmentedConfiguration();
+            configuration.setSegmentSize(segmentSize);
+            configuration.setSegmentDigests(true);
+            SkrivaCypherV2 cypher = new SkrivaCypherV2(configuration);
+            cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+
+            // Appends of a few bytes: the last segment is completed, and the unused space is reclaimed.
+            long maximumLength = 0;
+            for (int length = 1; length < data.length; ) {
+                length = Math.min(data.length, length + 37);
+                Files.write(input.toPath(), Arrays.copyOf(data, length));
+                cypher.AppendFile(input.getAbsolutePath(), SkrivaCypherV2.tailOffset, encrypted.getAbsolutePath(), "secret", null);
+                maximumLength = Math.max(maximumLength, encrypted.length());
+            }
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(3, file.getSegmentCount());
+                assertTrue(2 * file.getUnusedLength() <= encrypted.length());
+            }
+            assertTrue(maximumLength < 3 * data.length, String.format("%d bytes", maximumLength));
+
+            cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testForgedHeaderLimitsAreRejected() {
+        final byte[] header = SegmentedHeader.generate(CipherSuite.AES_256_GCM, segmentSize).serialize();
+        assertEquals(segmentSize, SegmentedHeader.parse(header).getSegmentSize());
+        // Lanes (offset 11), iterations (offset 12) and segment size (offset 16) beyond the limits.
+        final byte[] lanes = header.clone();
+        lanes[11] = (byte) (AES256.maxKdfLanes + 1);
+        final byte[] iterations = header.clone();
+        ByteBuffer.wrap(iterations).putInt(12, SegmentedHeader.maxKdfIterations + 1);
+        final byte[] size = header.clone();
+        ByteBuffer.wrap(size).putInt(16, Integer.MAX_VALUE);
+        for (byte[] forged : new byte[][]{lanes, iterations, size}) {
+            assertThrows(FatalRuntimeException.class, () -> SegmentedHeader.parse(forged));
+        }
+    }
+
+    @Test
+    void testWrongPassword() {
+        try {
+            File encrypted = File.createTempFile("test", "rmb");
+            try (SegmentedFile file = SegmentedFile.create(encrypted.getAbsolutePath(), "secret", SegmentedHeader.generate(CipherSuite.AES_256_GCM, segmentSize))) {
+                file.appendSegment(randomBytes(10), 10);
+                file.commit();
+            }
+
+            Exception exception = assertThrows(FatalRuntimeException.class,
+                    () -> SegmentedFile.open(encrypted.getAbsolutePath(), "wrong", false));
+            assertTrue(exception.getMessage().contains("the given secret key is not valid"));
+
+            if (!encrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testCorruptedSegmentIsDetected() {
+        try {
+            File encrypted = File.createTempFile("test", "rmb");
+            long secondSegmentOffset;
+            try (SegmentedFile file = SegmentedFile.create(encrypted.getAbsolutePath(), "secret", SegmentedHeader.generate(CipherSuite.AES_256_GCM, segmentSize))) {
+                for (int i = 0; i < 3; i++) file.appendSegment(randomBytes(segmentSize), segmentSize);
+                file.commit();
+                secondSegmentOffset = file.getEntry(1).offset();
+            }
+
+            try (RandomAccessFile raf = new RandomAccessFile(encrypted, "rw")) {
+                raf.seek(secondSegmentOffset + 20);
+                final int b = raf.read();
+                raf.seek(secondSegmentOffset + 20);
+                raf.write(b ^ 0x01);
+            }
+
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertTrue(file.verifySegment(0));
+                assertFalse(file.verifySegment(1));
+                assertTrue(file.verifySegment(2));
+                assertThrows(FatalRuntimeException.class, () -> file.readSegment(1, new byte[segmentSize]));
+            }
+
+            if (!encrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testInterruptedCommitKeepsPreviousState() {
+        try {
+            File encrypted = File.createTempFile("test", "rmb");
+            try (SegmentedFile file = SegmentedFile.create(encrypted.getAbsolutePath(), "secret", SegmentedHeader.generate(CipherSuite.AES_256_GCM, segmentSize))) {
+                file.appendSegment(randomBytes(10), 10);
+                file.commit();
+                file.appendSegment(randomBytes(20), 20);
+                file.commit();
+            }
+
+            // Damage the last footer (at the end of the file): the previous footer must be used.
+            try (RandomAccessFile raf = new RandomAccessFile(encrypted, "rw")) {
+                raf.seek(raf.length() - 1);
+                final int b = raf.read();
+                raf.seek(raf.length() - 1);
+                raf.write(b ^ 0x01);
+            }
+
+            try (SegmentedFile file = SegmentedFile.open(encrypted.getAbsolutePath(), "secret", false)) {
+                assertEquals(1, file.getGeneration());
+                assertEquals(1, file.getSegmentCount());
+                assertEquals(10, file.getPlaintextLength());
+            }
+
+            if (!encrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkrivaCypherV1Test {
+
+    /**
+     * Returns the temporary files of the cypher whose content starts with a given text.
+     */
+
+    private static List<Path> findTemporaryCopies(String text) throws Exception {
+        final byte[] prefix = text.getBytes();
+        try (Stream<Path> stream = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return stream.filter(path -> path.getFileName().toString().startsWith("skriva-tmp")).filter(path -> {
+                try {
+                    final byte[] content = Files.readAllBytes(path);
+                    return content.length >= prefix.length && Arrays.equals(content, 0, prefix.length, prefix, 0, prefix.length);
+                } catch (Exception e) {
+                    return false;
+                }
+            }).toList();
+        }
+    }
+
+    @Test
+    void testEncryptDecryptLeaveNoTemporaryFile() {
+        try {
+            final String text = "plaintext " + UUID.randomUUID();
+            File input = File.createTempFile("test", "txt");
+            File encrypted = File.createTempFile("test", "rmb");
+            File decrypted = File.createTempFile("test", "txt");
+            Files.writeString(input.toPath(), text);
+
+            SkrivaCypherV1 cypher = new SkrivaCypherV1();
+            cypher.EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+            assertEquals(List.of(), findTemporaryCopies(text));
+            cypher.DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+            assertEquals(text, Files.readString(decrypted.toPath()));
+            assertEquals(List.of(), findTemporaryCopies(text));
+
+            if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
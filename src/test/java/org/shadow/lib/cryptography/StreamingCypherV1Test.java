@@ -0,0 +1,57 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingCypherV1Test {
+
+    @Test
+    void testStreamsMatchTheFileFormat() {
+        try {
+            final StreamingCypherV1 cypher = new StreamingCypherV1(1000);
+            for (int length : new int[]{0, 15, 16, 999, 1000, 1041, 100_000}) {
+                final byte[] data = new byte[length];
+                new Random(length).nextBytes(data);
+                final File input = File.createTempFile("test", "txt");
+                final File encrypted = File.createTempFile("test", "rmb");
+                final File decrypted = File.createTempFile("test", "txt");
+                Files.write(input.toPath(), data);
+
+                // Stream -> file.
+                try (FileInputStream in = new FileInputStream(input); FileOutputStream out = new FileOutputStream(encrypted)) {
+                    assertEquals(length, cypher.encrypt(in, out, "secret", IntegrityTrailer.Algorithm.SHA256));
+                }
+                assertEquals(IntegrityTrailer.Status.VALID, IntegrityTrailer.verify(encrypted.getAbsolutePath()));
+                new SkrivaCypherV1().DecryptFile(encrypted.getAbsolutePath(), decrypted.getAbsolutePath(), "secret", null);
+                assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+
+                // File -> stream.
+                new SkrivaCypherV1(IntegrityTrailer.Algorithm.CRC32C).EncryptFile(input.getAbsolutePath(), encrypted.getAbsolutePath(), "secret", null);
+                final ByteArrayOutputStream output = new ByteArrayOutputStream();
+                try (FileInputStream in = new FileInputStream(encrypted)) {
+                    assertEquals(length, cypher.decrypt(in, output, "secret"));
+                }
+                assertArrayEquals(data, output.toByteArray());
+
+                final byte[] ciphertext = Files.readAllBytes(encrypted.toPath());
+                assertThrows(FatalRuntimeException.class, () -> cypher.decrypt(new ByteArrayInputStream(ciphertext), new ByteArrayOutputStream(), "wrong"));
+
+                if (!input.delete() || !encrypted.delete() || !decrypted.delete()) {
+                    fail("Failed to delete temporary file");
+                }
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.shadow.lib.cryptography;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TuningProfileTest {
+
+    @Test
+    void testProfileIsSavedAndLoaded() {
+        try {
+            final File file = File.createTempFile("test", "properties");
+            final TuningProfile profile = new TuningProfile();
+            profile.setChunkLength(65536);
+            profile.setIoMode(TuningProfile.IoMode.Channel);
+            profile.setWorkers(3);
+            profile.setSuite(CipherSuite.CHACHA20_POLY1305);
+            profile.setKdfTargetMillis(250);
+            profile.getMeasurements().put("writeMBps", "512.0");
+            profile.save(file.toPath());
+
+            final TuningProfile loaded = TuningProfile.load(file.toPath());
+            assertEquals(65536, loaded.getChunkLength());
+            assertEquals(TuningProfile.IoMode.Channel, loaded.getIoMode());
+            assertEquals(3, loaded.getWorkers());
+            assertEquals(CipherSuite.CHACHA20_POLY1305, loaded.getSuite());
+            assertEquals(250, loaded.getKdfTargetMillis());
+            assertEquals("512.0", loaded.getMeasurements().get("writeMBps"));
+
+            // Invalid settings keep their default values.
+            Files.writeString(file.toPath(), "chunkLength=12\nioMode=carrier-pigeon\nworkers=-4\n");
+            final TuningProfile defaults = TuningProfile.load(file.toPath());
+            assertEquals(TuningProfile.defaultChunkLength, defaults.getChunkLength());
+            assertEquals(TuningProfile.IoMode.Stream, defaults.getIoMode());
+            assertEquals(Runtime.getRuntime().availableProcessors(), defaults.getWorkers());
+
+            assertTrue(file.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testCypherUsesTheCurrentProfile() {
+        final TuningProfile profile = new TuningProfile();
+        profile.setChunkLength(1 << 20);
+        profile.setIoMode(TuningProfile.IoMode.Channel);
+        TuningProfile.setCurrent(profile);
+        try {
+            final File input = File.createTempFile("test", "txt");
+            final File encrypted = File.createTempFile("test", "rmb");
+            final File decrypted = File.createTempFile("test", "txt");
+            final byte[] data = new byte[3 * 1024 * 1024 + 5];
+            new Random(2).nextBytes(data);
+            Files.write(input.toPath(), data);
+
+            new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", null);
+            new SkrivaCypherV1().DecryptFile(encrypted.getPath(), decrypted.getPath(), "password", null);
+            assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+            try (AESFile aes = new AESFile("password", input.getPath(), encrypted.getPath())) {
+                assertEquals(1 << 20, aes.getChunkLength());
+                assertEquals(4, aes.calculateIterationNumber());
+                aes.encrypt();
+            }
+
+            assertTrue(input.delete());
+            assertTrue(encrypted.delete());
+            assertTrue(decrypted.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        } finally {
+            TuningProfile.setCurrent(null);
+        }
+    }
+}
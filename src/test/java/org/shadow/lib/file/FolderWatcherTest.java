@@ -0,0 +1,58 @@
+package org.shadow.lib.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FolderWatcherTest {
+
+    @Test
+    void testFilesAreProcessedOnceStable() {
+        try {
+            final Path inbox = Files.createTempDirectory("inbox");
+            // A file present before the watcher starts is found by the initial scan.
+            Files.writeString(inbox.resolve("early.txt"), "early");
+            final List<Path> processed = new CopyOnWriteArrayList<>();
+            final FolderWatcher watcher = new FolderWatcher(inbox, 300, 2, new FolderWatcher.Handler() {
+                @Override
+                public void process(Path file) {
+                    processed.add(file.getFileName());
+                }
+            });
+            final Thread thread = new Thread(watcher::run);
+            thread.start();
+
+            // A file written in several steps is processed once, after the last write.
+            final Path late = inbox.resolve("late.txt");
+            for (int i = 0; i < 5; i++) {
+                Files.writeString(late, "line " + i + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Thread.sleep(100);
+                assertFalse(processed.contains(late.getFileName()));
+            }
+            Files.writeString(inbox.resolve(".hidden"), "ignored");
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (processed.size() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(50);
+            Thread.sleep(500);
+            watcher.close();
+            thread.join();
+
+            assertEquals(2, processed.size());
+            assertTrue(processed.contains(Path.of("early.txt")));
+            assertTrue(processed.contains(Path.of("late.txt")));
+
+            try (Stream<Path> stream = Files.walk(inbox)) {
+                for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
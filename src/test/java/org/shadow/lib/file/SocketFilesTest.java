@@ -0,0 +1,47 @@
+package org.shadow.lib.file;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketFilesTest {
+
+    @Test
+    void testSocketIsOnlyBoundInPrivateDirectory() {
+        try {
+            final Path root = Files.createTempDirectory("sockets");
+            final Path socket = root.resolve("private/test.sock");
+
+            // The missing directory is created for the owner alone.
+            try (ServerSocketChannel server = SocketFiles.bind(socket)) {
+                assertTrue(server.isOpen());
+                assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket.getParent())));
+                assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socket)));
+                assertTrue(SocketFiles.isListening(socket));
+                assertThrows(FileAlreadyExistsException.class, () -> SocketFiles.bind(socket).close());
+            }
+
+            // The socket left behind is stale: it is replaced.
+            assertFalse(SocketFiles.isListening(socket));
+            SocketFiles.bind(socket).close();
+
+            // A directory that other users can enter is refused.
+            Files.setPosixFilePermissions(socket.getParent(), PosixFilePermissions.fromString("rwxr-xr-x"));
+            final IOException exception = assertThrows(IOException.class, () -> SocketFiles.bind(socket).close());
+            assertTrue(exception.getMessage().contains("accessible to other users"));
+
+            Files.deleteIfExists(socket);
+            Files.delete(socket.getParent());
+            Files.delete(root);
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
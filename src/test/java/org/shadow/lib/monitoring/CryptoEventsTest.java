@@ -0,0 +1,105 @@
+package org.shadow.lib.monitoring;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.cryptography.SkrivaCypherV1;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoEventsTest {
+
+    @Test
+    void testPhasesAndKeyDerivationsAreRecorded() {
+        try {
+            final File input = File.createTempFile("test", "txt");
+            final File encrypted = File.createTempFile("test", "rmb");
+            final File decrypted = File.createTempFile("test", "txt");
+            final File recordingFile = File.createTempFile("test", "jfr");
+            Files.write(input.toPath(), new byte[100_000]);
+
+            try (Recording recording = new Recording()) {
+                recording.enable(KeyDerivationEvent.class);
+                recording.enable(CryptoPhaseEvent.class);
+                recording.enable(ChunkIoEvent.class).withThreshold(java.time.Duration.ZERO);
+                recording.start();
+                new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", null);
+                new SkrivaCypherV1().DecryptFile(encrypted.getPath(), decrypted.getPath(), "password", null);
+                recording.stop();
+                recording.dump(recordingFile.toPath());
+            }
+
+            final List<String> phases = new ArrayList<>();
+            int derivations = 0;
+            long bytesRead = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+                switch (event.getEventType().getName()) {
+                    case "org.shadow.CryptoPhase" -> phases.add(event.getString("operation") + "/" + event.getString("phase"));
+                    case "org.shadow.KeyDerivation" -> {
+                        derivations++;
+                        assertTrue(event.getInt("iterations") > 0);
+                    }
+                    case "org.shadow.ChunkIO" -> {
+                        if (event.getString("operation").equals(ChunkIoEvent.read) && event.getString("file").equals(input.getPath())) {
+                            bytesRead += event.getLong("bytes");
+                        }
+                    }
+                    default -> {}
+                }
+            }
+            assertEquals(List.of("encrypt/digest", "encrypt/copy", "encrypt/encrypt", "decrypt/decrypt", "decrypt/verify", "decrypt/move"), phases);
+            assertEquals(2, derivations);
+            // The input file is read by the digest.
+            assertEquals(100_000, bytesRead);
+
+            assertTrue(input.delete());
+            assertTrue(encrypted.delete());
+            assertTrue(decrypted.delete());
+            assertTrue(recordingFile.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testStatisticsAreCollectedOnlyWhileActive() {
+        try {
+            final File input = File.createTempFile("test", "txt");
+            final File encrypted = File.createTempFile("test", "rmb");
+            final File decrypted = File.createTempFile("test", "txt");
+            Files.write(input.toPath(), new byte[100_000]);
+
+            final CryptoStatistics statistics = CryptoStatistics.start();
+            assertSame(statistics, CryptoStatistics.active());
+            new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", null);
+            new SkrivaCypherV1().DecryptFile(encrypted.getPath(), decrypted.getPath(), "password", null);
+            statistics.stop();
+            assertNull(CryptoStatistics.active());
+            final String report = statistics.toJson();
+            // Once stopped, the collection is no longer fed.
+            new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", null);
+            assertEquals(report.replaceAll("\"wallMillis\": [0-9.]+", ""), statistics.toJson().replaceAll("\"wallMillis\": [0-9.]+", ""));
+
+            assertTrue(report.contains("\"files\": {\"count\": 2, \"bytes\": 200000,"), report);
+            assertTrue(report.contains("{\"operation\": \"encrypt\", \"phase\": \"digest\", \"count\": 1,"), report);
+            assertTrue(report.contains("{\"operation\": \"decrypt\", \"phase\": \"verify\", \"count\": 1,"), report);
+            assertTrue(report.contains("\"keyDerivation\": {\"count\": 2,"), report);
+            // The file is read by the digest and by the encryption, then the encrypted file is read by the decryption,
+            // and the decrypted file is read by the verification.
+            assertTrue(report.contains("\"chunkReads\": {\"count\": "), report);
+            assertFalse(report.contains("\"chunkReads\": {\"count\": 0,"), report);
+
+            assertTrue(input.delete());
+            assertTrue(encrypted.delete());
+            assertTrue(decrypted.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
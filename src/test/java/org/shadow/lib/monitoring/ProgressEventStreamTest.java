@@ -0,0 +1,52 @@
+package org.shadow.lib.monitoring;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.cryptography.SkrivaCypherV1;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgressEventStreamTest {
+
+    @Test
+    void testJobsAreReportedAsOneJsonObjectPerLine() {
+        try {
+            final File input = File.createTempFile("test", "txt");
+            final File encrypted = File.createTempFile("test", "rmb");
+            Files.write(input.toPath(), new byte[1024 * 1024]);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            try (ProgressEventStream events = new ProgressEventStream(output, false, 60_000)) {
+                final ProgressEventStream.Job job = events.start("encrypt", input.getPath(), encrypted.getPath(), input.length());
+                new SkrivaCypherV1().EncryptFile(input.getPath(), encrypted.getPath(), "password", job);
+                job.finished();
+                events.start("decrypt", "a \"quoted\"\nname", "b", 0).failed(new FatalRuntimeException("wrong key", "details"));
+            }
+
+            final List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+            for (String line : lines) {
+                assertTrue(line.startsWith("{\"event\": \"") && line.endsWith("}"), line);
+            }
+            assertTrue(lines.getFirst().startsWith("{\"event\": \"started\", \"job\": 1, \"operation\": \"encrypt\""), lines.getFirst());
+            assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"event\": \"phase\", \"job\": 1, \"phase\": \"encrypt\"")));
+            // The interval is long: only the latest report is written, when the job ends.
+            final List<String> progress = lines.stream().filter(line -> line.startsWith("{\"event\": \"progress\"")).toList();
+            assertEquals(1, progress.size());
+            assertTrue(progress.getFirst().contains("\"fraction\": 1.0000"), progress.getFirst());
+            assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"event\": \"finished\", \"job\": 1, \"totalBytes\": 1048576,")));
+            assertTrue(lines.stream().anyMatch(line -> line.startsWith("{\"event\": \"started\", \"job\": 2, \"operation\": \"decrypt\", \"input\": \"a \\\"quoted\\\"\\nname\"")));
+            assertTrue(lines.getLast().startsWith("{\"event\": \"failed\", \"job\": 2, \"message\": \"wrong key\", \"details\": \"details\""), lines.getLast());
+
+            assertTrue(input.delete());
+            assertTrue(encrypted.delete());
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.shadow.lib.store;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkStoreTest {
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    @Test
+    void testChunkerBoundariesFollowContent() {
+        final ContentDefinedChunker chunker = new ContentDefinedChunker(256, 1024, 4096);
+        final byte[] data = new byte[100_000];
+        new Random(1).nextBytes(data);
+        final byte[] shifted = new byte[data.length + 7];
+        System.arraycopy(data, 0, shifted, 7, data.length);
+
+        // Collect the boundaries of both buffers (relative to the original data).
+        final Set<Integer> boundaries = new HashSet<>();
+        for (int offset = 0; offset < data.length; ) {
+            offset += chunker.cut(data, offset, data.length - offset);
+            boundaries.add(offset);
+        }
+        int common = 0, total = 0;
+        for (int offset = 0; offset < shifted.length; ) {
+            final int length = chunker.cut(shifted, offset, shifted.length - offset);
+            assertTrue(length <= 4096);
+            offset += length;
+            total++;
+            if (boundaries.contains(offset - 7)) common++;
+        }
+        assertTrue(common >= total - 2);
+    }
+
+    @Test
+    void testDeduplicatedRoundTrip() {
+        try {
+            final Path directory = Files.createTempDirectory("store");
+            final File first = File.createTempFile("test", "bin");
+            final File second = File.createTempFile("test", "bin");
+            final byte[] data = new byte[1_000_000];
+            new Random(2).nextBytes(data);
+            Files.write(first.toPath(), data);
+            // The second file has a few bytes inserted near the beginning.
+            final byte[] modified = new byte[data.length + 3];
+            System.arraycopy(data, 0, modified, 0, 1000);
+            System.arraycopy(data, 1000, modified, 1003, data.length - 1000);
+            Files.write(second.toPath(), modified);
+
+            ChunkStore store = ChunkStore.initialize(directory.resolve("store").toString(), "secret");
+            final ChunkStore.PutResult firstResult = store.put("first", first.toPath());
+            assertEquals(firstResult.chunks(), firstResult.newChunks());
+            final ChunkStore.PutResult secondResult = store.put("second", second.toPath());
+            assertTrue(secondResult.newLength() < data.length / 5);
+
+            store = ChunkStore.open(directory.resolve("store").toString(), "secret");
+            assertEquals(2, store.list().size());
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            store.get("second", output);
+            assertArrayEquals(modified, output.toByteArray());
+
+            assertTrue(store.remove("first"));
+            assertTrue(store.collectGarbage() > 0);
+            output.reset();
+            store.get("second", output);
+            assertArrayEquals(modified, output.toByteArray());
+
+            assertThrows(FatalRuntimeException.class, () -> ChunkStore.open(directory.resolve("store").toString(), "wrong"));
+
+            deleteDirectory(directory);
+            if (!first.delete() || !second.delete()) {
+                fail("Failed to delete temporary file");
+            }
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
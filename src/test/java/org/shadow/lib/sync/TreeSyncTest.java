@@ -0,0 +1,60 @@
+package org.shadow.lib.sync;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeSyncTest {
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    @Test
+    void testOnlyChangesAreProcessed() {
+        try {
+            final Path root = Files.createTempDirectory("sync");
+            final Path source = root.resolve("plain");
+            final Path target = root.resolve("encrypted");
+            Files.createDirectories(source.resolve("dir"));
+            Files.writeString(source.resolve("a.txt"), "first file");
+            Files.writeString(source.resolve("dir/b.txt"), "second file");
+            Files.writeString(source.resolve("dir/c.txt"), "third file");
+            final TreeSync sync = new TreeSync(new SkrivaCypherV2(), 2);
+
+            TreeSync.Result result = sync.sync(source, target, "secret");
+            assertEquals(new TreeSync.Result(3, 0, 0, 3, 0, result.failures()), result);
+            assertTrue(Files.exists(target.resolve("dir/b.txt.rmb")));
+
+            result = sync.sync(source, target, "secret");
+            assertEquals(new TreeSync.Result(3, 3, 0, 0, 0, result.failures()), result);
+
+            // Modify a file, touch another one and delete the third one.
+            Files.writeString(source.resolve("a.txt"), "first file, modified");
+            Files.setLastModifiedTime(source.resolve("dir/b.txt"), FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            Files.delete(source.resolve("dir/c.txt"));
+            result = sync.sync(source, target, "secret");
+            assertEquals(new TreeSync.Result(2, 0, 1, 1, 1, result.failures()), result);
+            assertTrue(result.failures().isEmpty());
+            assertFalse(Files.exists(target.resolve("dir/c.txt.rmb")));
+
+            final Path decrypted = root.resolve("a.txt");
+            new SkrivaCypherV2().DecryptFile(target.resolve("a.txt.rmb").toString(), decrypted.toString(), "secret", null);
+            assertEquals("first file, modified", Files.readString(decrypted));
+
+            assertThrows(RuntimeException.class, () -> sync.sync(source, target, "wrong"));
+            deleteDirectory(root);
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}
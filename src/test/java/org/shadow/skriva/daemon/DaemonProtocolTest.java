@@ -0,0 +1,30 @@
+package org.shadow.skriva.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.exception.FatalRuntimeException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonProtocolTest {
+
+    @Test
+    void testFormatAndParse() {
+        try {
+            final String line = DaemonProtocol.format(7, DaemonProtocol.done, 1024L, "", "/tmp/a file.rmb");
+            assertEquals("7\tdone\t1024\t\t/tmp/a file.rmb", line);
+            assertArrayEquals(new String[]{"7", "done", "1024", "", "/tmp/a file.rmb"}, DaemonProtocol.parse(line));
+
+            // The empty fields at the end of the line are kept.
+            assertArrayEquals(new String[]{"1", "verify", "/tmp/a.rmb", ""}, DaemonProtocol.parse(DaemonProtocol.format(1, "verify", "/tmp/a.rmb", "")));
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+
+    @Test
+    void testFieldsCannotContainSeparators() {
+        assertThrows(FatalRuntimeException.class, () -> DaemonProtocol.format("a\tb"));
+        assertThrows(FatalRuntimeException.class, () -> DaemonProtocol.format(1, "line\nbreak"));
+        assertThrows(FatalRuntimeException.class, () -> DaemonProtocol.format(1, "carriage\rreturn"));
+    }
+}
@@ -0,0 +1,95 @@
+package org.shadow.skriva.daemon;
+
+import org.junit.jupiter.api.Test;
+import org.shadow.lib.cryptography.SegmentedConfiguration;
+import org.shadow.lib.cryptography.SkrivaCypherV2;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonServerTest {
+
+    /**
+     * Records the outcome of the jobs.
+     */
+
+    private static class Outcomes implements DaemonClient.Listener {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void progress(int job, int percentage) {
+            assertTrue(percentage >= 0 && percentage <= 100);
+        }
+
+        @Override
+        public void done(int job, long bytes, long queueMillis, long processingMillis, String message) {
+            messages.add(String.format("%d done %s", job, message));
+        }
+
+        @Override
+        public void failed(int job, String message) {
+            messages.add(String.format("%d failed %s", job, message));
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) Files.delete(path);
+        }
+    }
+
+    @Test
+    void testEncryptDecryptVerify() {
+        try {
+            final Path root = Files.createTempDirectory("daemon");
+            final Path socket = root.resolve("daemon.sock");
+            final Path input = root.resolve("input.txt");
+            final Path encrypted = root.resolve("input.txt.rmb");
+            final Path decrypted = root.resolve("output.txt");
+            final byte[] data = new byte[100_000];
+            new Random(1).nextBytes(data);
+            Files.write(input, data);
+
+            final SegmentedConfiguration configuration = new SegmentedConfiguration();
+            final Thread serving;
+            try (DaemonServer server = new DaemonServer(socket, new SkrivaCypherV2(configuration), configuration, "secret", 2)) {
+                server.start();
+                serving = Thread.ofPlatform().daemon().start(() -> server.serve());
+                final DaemonClient client = new DaemonClient(socket);
+
+                Outcomes outcomes = new Outcomes();
+                assertEquals(0, client.submit(List.of(new DaemonClient.Job("encrypt", input.toString(), encrypted.toString())), outcomes));
+                assertEquals(List.of("0 done " + encrypted), outcomes.messages);
+
+                // Several jobs on the same connection. The job that fails does not prevent the others.
+                outcomes = new Outcomes();
+                assertEquals(1, client.submit(List.of(
+                        new DaemonClient.Job("decrypt", encrypted.toString(), decrypted.toString()),
+                        new DaemonClient.Job("verify", encrypted.toString(), ""),
+                        new DaemonClient.Job("verify", input.toString(), "")), outcomes));
+                outcomes.messages.sort(null);
+                assertEquals(3, outcomes.messages.size());
+                assertEquals("0 done " + decrypted, outcomes.messages.get(0));
+                assertTrue(outcomes.messages.get(1).matches("1 done \\d+ segments verified"), outcomes.messages.get(1));
+                assertTrue(outcomes.messages.get(2).startsWith("2 failed"), outcomes.messages.get(2));
+                assertArrayEquals(data, Files.readAllBytes(decrypted));
+                assertFalse(Files.exists(root.resolve(".output.txt.part")));
+                assertEquals(4, server.getMetrics().getJobsSubmitted());
+            }
+            // Closing the server stops serving, and deletes the socket.
+            serving.join(10_000);
+            assertFalse(serving.isAlive());
+            assertFalse(Files.exists(socket));
+            deleteDirectory(root);
+        } catch (Exception ex) {
+            fail(ex.getMessage());
+        }
+    }
+}